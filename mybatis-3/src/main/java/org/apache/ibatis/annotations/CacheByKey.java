@@ -0,0 +1,61 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.annotations;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The annotation that specify the statement selecting a single key, whose second-level cache is used per key
+ * by a method selecting a collection of keys.
+ *
+ * <p>
+ * Keys found in the cache are not queried, the others are selected with one execution of the annotated method's statement.
+ * The results are returned in the order of the keys, with null for keys without a row.
+ * The rows are only cached per key when both statements use the same result map.
+ *
+ * <p>
+ * <b>How to use:</b>
+ *
+ * <pre>
+ * public interface UserMapper {
+ *   &#064;Select("SELECT id, name FROM users WHERE id = #{id}")
+ *   &#064;ResultMap("user")
+ *   User selectById(int id);
+ *
+ *   &#064;CacheByKey("selectById")
+ *   &#064;Select("&lt;script&gt;SELECT id, name FROM users WHERE id IN &lt;foreach collection='list' item='id' open='(' separator=',' close=')'&gt;#{id}&lt;/foreach&gt;&lt;/script&gt;")
+ *   &#064;Results(id = "user", value = &#064;Result(property = "id", column = "id", id = true))
+ *   List&lt;User&gt; selectByIds(List&lt;Integer&gt; ids);
+ * }
+ * </pre>
+ *
+ * @see org.apache.ibatis.session.SqlSession#selectByKeys(String, String, java.util.Collection)
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface CacheByKey {
+  /**
+   * Returns the id of the statement selecting a single key. An id without a namespace refers to the same mapper.
+   *
+   * @return the statement id
+   */
+  String value();
+}
@@ -0,0 +1,61 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.annotations;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The annotation that declares the SQL returned by an SQL provider method is deterministic,
+ * so the parsed SQL can be cached instead of invoking the provider method on every execution.
+ * It can be specified on either the mapper method or the provider method.
+ *
+ * <p>
+ * <b>How to use:</b>
+ *
+ * <pre>
+ * public interface UserMapper {
+ *   &#064;DeterministicProvider({"name", "orderBy"})
+ *   &#064;SelectProvider(type = UserSqlBuilder.class, method = "buildFindUsers")
+ *   List&lt;User&gt; findUsers(&#064;Param("name") String name, &#064;Param("orderBy") String orderBy);
+ * }
+ * </pre>
+ *
+ * @since 3.5.6
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface DeterministicProvider {
+  /**
+   * Returns the parameter properties that the provided SQL depends on.
+   * When omitted, the provided SQL depends only on the statement.
+   *
+   * @return the parameter properties
+   */
+  String[] value() default {};
+
+  /**
+   * Returns the maximum number of parsed SQL kept per statement.
+   * Once exceeded, the provider method is invoked for uncached parameters as usual.
+   *
+   * @return the maximum number of parsed SQL
+   */
+  int cacheSize() default 64;
+}
@@ -23,6 +23,7 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.mapping.StatementRoute;
 import org.apache.ibatis.mapping.StatementType;
 
 /**
@@ -138,6 +139,32 @@ public @interface Options {
    */
   String resultSets() default "";
 
+  /**
+   * Returns the data source route used when read replicas are configured.
+   *
+   * @return the statement route
+   * @since 3.5.6
+   */
+  StatementRoute route() default StatementRoute.DEFAULT;
+
+  /**
+   * Returns whether this statement selects a single entity by the id of its result map.
+   * When the identity map is enabled, an entity already materialized in the session is returned without a query.
+   *
+   * @return {@code true} if this statement looks up an entity by its id
+   * @since 3.5.6
+   */
+  boolean identityLookup() default false;
+
+  /**
+   * Returns the number of rows a background thread reads ahead when this statement is executed as a cursor.
+   * A value of 0 reads rows on the consumer thread.
+   *
+   * @return the number of rows to read ahead
+   * @since 3.5.6
+   */
+  int cursorPrefetchSize() default 0;
+
   /**
    * @return A database id that correspond this options
    * @since 3.5.5
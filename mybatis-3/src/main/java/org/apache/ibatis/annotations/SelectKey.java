@@ -99,6 +99,18 @@ public @interface SelectKey {
    */
   String databaseId() default "";
 
+  /**
+   * Returns the number of keys to prefetch with one query.
+   * <p>
+   * When greater than 1, the statement must return up to that many rows (e.g. by using {@code generate_series}
+   * or a sequence with a matching increment) and must not depend on the parameter.
+   * The keys are handed out to subsequent inserts. Requires {@link #before()} to be {@code true}.
+   * </p>
+   *
+   * @return the number of keys to prefetch
+   */
+  int prefetch() default 0;
+
   /**
    * The container annotation for {@link SelectKey}.
    * @author Kazuki Shimizu
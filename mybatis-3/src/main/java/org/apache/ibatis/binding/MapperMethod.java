@@ -19,14 +19,21 @@ import java.lang.reflect.Array;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 
+import org.apache.ibatis.annotations.CacheByKey;
 import org.apache.ibatis.annotations.Flush;
 import org.apache.ibatis.annotations.MapKey;
 import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.cursor.Publisher;
+import org.apache.ibatis.cursor.defaults.CursorPublisher;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.SqlCommandType;
 import org.apache.ibatis.mapping.StatementType;
@@ -37,6 +44,7 @@ import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
 
 /**
  * @author Clinton Begin
@@ -54,10 +62,50 @@ public class MapperMethod {
     this.method = new MethodSignature(config, mapperInterface, method);
   }
 
+  public Object execute(SqlSession sqlSession, Object[] args) {
+    if (method.returnsFuture()) {
+      return executeAsync(sqlSession, args);
+    }
+    return executeSync(sqlSession, args);
+  }
+
+  /**
+   * 返回 CompletableFuture 的方法在 asyncExecutor 上执行，每次调用从打开当前会话的工厂打开一个新的会话，
+   * 不参与调用方会话的事务，增删改执行后提交
+   */
+  private CompletableFuture<Object> executeAsync(SqlSession sqlSession, Object[] args) {
+    final SqlSessionFactory sqlSessionFactory = owningFactory(sqlSession);
+    final Executor executor = sqlSession.getConfiguration().getAsyncExecutor();
+    final Object[] arguments = args == null ? null : args.clone();
+    return CompletableFuture.supplyAsync(() -> executeInNewSession(sqlSessionFactory, arguments), executor);
+  }
+
+  /**
+   * 新会话要与当前会话使用相同的数据源和事务管理方式（分片、受管理的会话等），所以从打开当前会话的工厂获取
+   */
+  private SqlSessionFactory owningFactory(SqlSession sqlSession) {
+    SqlSessionFactory sqlSessionFactory = sqlSession.getSqlSessionFactory();
+    if (sqlSessionFactory == null) {
+      throw new BindingException("Mapper method '" + command.getName() + "' opens its own sessions, but "
+          + sqlSession.getClass().getName() + " does not expose the SqlSessionFactory that opened it.");
+    }
+    return sqlSessionFactory;
+  }
+
+  private Object executeInNewSession(SqlSessionFactory sqlSessionFactory, Object[] args) {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Object result = executeSync(sqlSession, args);
+      if (command.getType() != SqlCommandType.SELECT) {
+        sqlSession.commit();
+      }
+      return result;
+    }
+  }
+
   /**
    * 根据SQL类型选择具体操作
    */
-  public Object execute(SqlSession sqlSession, Object[] args) {
+  private Object executeSync(SqlSession sqlSession, Object[] args) {
     Object result;
 
     switch (command.getType()) {
@@ -89,6 +137,8 @@ public class MapperMethod {
           result = executeForMap(sqlSession, args);
         } else if (method.returnsCursor()) {
           result = executeForCursor(sqlSession, args);
+        } else if (method.returnsPublisher()) {
+          result = executeForPublisher(sqlSession, args);
         } else {
           Object param = method.convertArgsToSqlCommandParam(args);
           result = sqlSession.selectOne(command.getName(), param);
@@ -158,7 +208,9 @@ public class MapperMethod {
     List<E> result;
     Object param = method.convertArgsToSqlCommandParam(args);
 
-    if (method.hasRowBounds()) {
+    if (method.getKeyStatement() != null) {
+      result = sqlSession.selectByKeys(method.getKeyStatement(), command.getName(), (Collection<?>) args[0]);
+    } else if (method.hasRowBounds()) {
       RowBounds rowBounds = method.extractRowBounds(args);
       result = sqlSession.selectList(command.getName(), param, rowBounds);
     } else {
@@ -189,6 +241,15 @@ public class MapperMethod {
     return result;
   }
 
+  /**
+   * 返回的发布者在订阅后打开自己的会话，查询完成、出错或取消时关闭会话
+   */
+  private <T> Publisher<T> executeForPublisher(SqlSession sqlSession, Object[] args) {
+    Object param = method.convertArgsToSqlCommandParam(args);
+    RowBounds rowBounds = method.hasRowBounds() ? method.extractRowBounds(args) : RowBounds.DEFAULT;
+    return new CursorPublisher<>(owningFactory(sqlSession), command.getName(), param, rowBounds);
+  }
+
   private <E> Object convertToDeclaredCollection(Configuration config, List<E> list) {
     Object collection = config.getObjectFactory().create(method.getReturnType());
     MetaObject metaObject = config.newMetaObject(collection);
@@ -322,6 +383,9 @@ public class MapperMethod {
     // 不知道什么
     private final boolean returnsCursor;
     private final boolean returnsOptional;
+    private final boolean returnsPublisher;
+    // 返回值是CompletableFuture或CompletionStage，此时returnType是泛型参数的类型
+    private final boolean returnsFuture;
     // 返回值类型，如果返回值是泛型，returnType=泛型的原始类型
     private final Class<?> returnType;
     // @MapKey注解的value，使用selectMap时，通过@MapKey制定Map的key用哪个属性
@@ -331,6 +395,8 @@ public class MapperMethod {
     // rowBounds参数在方法参数列表中的索引位置
     private final Integer rowBoundsIndex;
     private final ParamNameResolver paramNameResolver;
+    // @CacheByKey注解指定的单个主键查询语句，按主键读写它的二级缓存
+    private final String keyStatement;
 
     /**
      *
@@ -341,21 +407,29 @@ public class MapperMethod {
     public MethodSignature(Configuration configuration, Class<?> mapperInterface, Method method) {
       // 获取Mapper方法的返回值类型
       Type resolvedReturnType = TypeParameterResolver.resolveReturnType(method, mapperInterface);
-
-      if (resolvedReturnType instanceof Class<?>) {
-        this.returnType = (Class<?>) resolvedReturnType;
-      } else if (resolvedReturnType instanceof ParameterizedType) {
-        this.returnType = (Class<?>) ((ParameterizedType) resolvedReturnType).getRawType();
+      Class<?> rawReturnType = toRawType(resolvedReturnType, method.getReturnType());
+
+      // 返回 CompletableFuture 时按泛型参数的类型执行查询
+      this.returnsFuture = CompletableFuture.class.equals(rawReturnType) || CompletionStage.class.equals(rawReturnType);
+      if (this.returnsFuture) {
+        Type futureType = resolvedReturnType instanceof ParameterizedType
+            ? ((ParameterizedType) resolvedReturnType).getActualTypeArguments()[0] : Object.class;
+        this.returnType = toRawType(futureType, Object.class);
+        if (Cursor.class.equals(this.returnType) || Publisher.class.equals(this.returnType)) {
+          throw new BindingException("Mapper method '" + mapperInterface.getName() + "." + method.getName()
+              + "' cannot return a Cursor or Publisher asynchronously because the session is closed when the future completes.");
+        }
       } else {
-        this.returnType = method.getReturnType();
+        this.returnType = rawReturnType;
       }
-      this.returnsVoid = void.class.equals(this.returnType);
+      this.returnsVoid = void.class.equals(this.returnType) || (this.returnsFuture && Void.class.equals(this.returnType));
       // true：returnType是Collection或者array
       this.returnsMany = configuration.getObjectFactory().isCollection(this.returnType) || this.returnType.isArray();
       this.returnsCursor = Cursor.class.equals(this.returnType);
       this.returnsOptional = Optional.class.equals(this.returnType);
+      this.returnsPublisher = Publisher.class.equals(this.returnType);
       // @MapKey注解 的value
-      this.mapKey = getMapKey(method);
+      this.mapKey = getMapKey(method, this.returnType);
       // 此处可能有bug，如果返回值类型时Map，但是没有指定@MapKey注解，returnsMap=null
       this.returnsMap = this.mapKey != null;
 
@@ -366,6 +440,7 @@ public class MapperMethod {
 
       // 创建ParamNameResolver对象。ParamNameResolver对象用于解析Mapper方法中的参数名称及参数注解信息。
       this.paramNameResolver = new ParamNameResolver(configuration, method);
+      this.keyStatement = getKeyStatement(mapperInterface, method, this.returnsMany);
     }
 
     /**
@@ -423,6 +498,24 @@ public class MapperMethod {
       return returnsOptional;
     }
 
+    public boolean returnsPublisher() {
+      return returnsPublisher;
+    }
+
+    public boolean returnsFuture() {
+      return returnsFuture;
+    }
+
+    private static Class<?> toRawType(Type type, Class<?> defaultType) {
+      if (type instanceof Class<?>) {
+        return (Class<?>) type;
+      } else if (type instanceof ParameterizedType) {
+        return (Class<?>) ((ParameterizedType) type).getRawType();
+      } else {
+        return defaultType;
+      }
+    }
+
     /**
      * 获取RowBounds参数在方法参数列表的索引位置，不能同时指定多个RowBounds参数，会抛出异常
      */
@@ -447,9 +540,27 @@ public class MapperMethod {
       return mapKey;
     }
 
-    private String getMapKey(Method method) {
+    public String getKeyStatement() {
+      return keyStatement;
+    }
+
+    private static String getKeyStatement(Class<?> mapperInterface, Method method, boolean returnsMany) {
+      final CacheByKey cacheByKey = method.getAnnotation(CacheByKey.class);
+      if (cacheByKey == null) {
+        return null;
+      }
+      Class<?>[] paramTypes = method.getParameterTypes();
+      if (!returnsMany || paramTypes.length != 1 || !Collection.class.isAssignableFrom(paramTypes[0])) {
+        throw new BindingException("Mapper method '" + mapperInterface.getName() + "." + method.getName()
+            + "' annotated with @CacheByKey must take a collection of keys as its only parameter and return a collection or an array.");
+      }
+      String statement = cacheByKey.value();
+      return statement.contains(".") ? statement : mapperInterface.getName() + "." + statement;
+    }
+
+    private String getMapKey(Method method, Class<?> returnType) {
       String mapKey = null;
-      if (Map.class.isAssignableFrom(method.getReturnType())) {
+      if (Map.class.isAssignableFrom(returnType)) {
         final MapKey mapKeyAnnotation = method.getAnnotation(MapKey.class);
         if (mapKeyAnnotation != null) {
           mapKey = mapKeyAnnotation.value();
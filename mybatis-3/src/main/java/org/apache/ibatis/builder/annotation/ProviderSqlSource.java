@@ -19,12 +19,17 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.ibatis.annotations.DeterministicProvider;
 import org.apache.ibatis.annotations.Lang;
 import org.apache.ibatis.builder.BuilderException;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.ParamNameResolver;
 import org.apache.ibatis.scripting.LanguageDriver;
 import org.apache.ibatis.session.Configuration;
@@ -46,6 +51,17 @@ public class ProviderSqlSource implements SqlSource {
   private final ProviderContext providerContext;
   private final Integer providerContextIndex;
 
+  /**
+   * 通过@DeterministicProvider声明的SQL所依赖的参数属性，为null时表示不缓存SQL
+   */
+  private final String[] cacheKeyProperties;
+
+  /**
+   * 缓存提供方法生成并解析好的SqlSource，key为参数类型和cacheKeyProperties对应的参数值
+   */
+  private final Map<List<Object>, SqlSource> sqlSourceCache;
+  private final int sqlSourceCacheSize;
+
   /**
    * This constructor will remove at a future version.
    *
@@ -150,14 +166,59 @@ public class ProviderSqlSource implements SqlSource {
     }
     this.providerContext = candidateProviderContext;
     this.providerContextIndex = candidateProviderContextIndex;
+
+    // mapper方法上的声明优先于提供方法上的声明
+    DeterministicProvider deterministic = mapperMethod == null ? null : mapperMethod.getAnnotation(DeterministicProvider.class);
+    if (deterministic == null) {
+      deterministic = providerMethod.getAnnotation(DeterministicProvider.class);
+    }
+    this.cacheKeyProperties = deterministic == null ? null : deterministic.value();
+    this.sqlSourceCache = deterministic == null ? null : new ConcurrentHashMap<>();
+    this.sqlSourceCacheSize = deterministic == null ? 0 : deterministic.cacheSize();
   }
 
   @Override
   public BoundSql getBoundSql(Object parameterObject) {
-    SqlSource sqlSource = createSqlSource(parameterObject);
+    SqlSource sqlSource;
+    if (sqlSourceCache == null) {
+      sqlSource = createSqlSource(parameterObject);
+    } else {
+      List<Object> cacheKey = createCacheKey(parameterObject);
+      sqlSource = sqlSourceCache.get(cacheKey);
+      if (sqlSource == null) {
+        sqlSource = createSqlSource(parameterObject);
+        if (sqlSourceCache.size() < sqlSourceCacheSize) {
+          sqlSourceCache.putIfAbsent(cacheKey, sqlSource);
+        }
+      }
+    }
     return sqlSource.getBoundSql(parameterObject);
   }
 
+  /**
+   * 创建SqlSource缓存的key，参数类型会影响#{}参数的解析，所以也作为key的一部分
+   */
+  private List<Object> createCacheKey(Object parameterObject) {
+    List<Object> cacheKey = new ArrayList<>(cacheKeyProperties.length + 1);
+    if (parameterObject == null) {
+      cacheKey.add(null);
+      return cacheKey;
+    }
+    cacheKey.add(parameterObject.getClass());
+    if (cacheKeyProperties.length > 0) {
+      if (configuration.getTypeHandlerRegistry().hasTypeHandler(parameterObject.getClass())) {
+        // 单个简单类型的参数，SQL只能依赖参数本身
+        cacheKey.add(parameterObject);
+      } else {
+        MetaObject metaObject = configuration.newMetaObject(parameterObject);
+        for (String property : cacheKeyProperties) {
+          cacheKey.add(metaObject.getValue(property));
+        }
+      }
+    }
+    return cacheKey;
+  }
+
   private SqlSource createSqlSource(Object parameterObject) {
     try {
       String sql;
@@ -17,6 +17,8 @@ package org.apache.ibatis.builder.xml;
 
 import java.io.InputStream;
 import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 import javax.sql.DataSource;
@@ -24,6 +26,9 @@ import javax.sql.DataSource;
 import org.apache.ibatis.builder.BaseBuilder;
 import org.apache.ibatis.builder.BuilderException;
 import org.apache.ibatis.datasource.DataSourceFactory;
+import org.apache.ibatis.datasource.routing.LoadBalancing;
+import org.apache.ibatis.datasource.routing.Replica;
+import org.apache.ibatis.datasource.routing.ReplicaSet;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.loader.ProxyFactory;
 import org.apache.ibatis.io.Resources;
@@ -41,6 +46,7 @@ import org.apache.ibatis.reflection.factory.ObjectFactory;
 import org.apache.ibatis.reflection.wrapper.ObjectWrapperFactory;
 import org.apache.ibatis.session.AutoMappingBehavior;
 import org.apache.ibatis.session.AutoMappingUnknownColumnBehavior;
+import org.apache.ibatis.session.BatchGrouping;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.LocalCacheScope;
@@ -356,6 +362,27 @@ public class XMLConfigBuilder extends BaseBuilder {
     configuration.setLogPrefix(props.getProperty("logPrefix"));
     configuration.setConfigurationFactory(resolveClass(props.getProperty("configurationFactory")));
     configuration.setShrinkWhitespacesInSql(booleanValueOf(props.getProperty("shrinkWhitespacesInSql"), false));
+    configuration.setDynamicSqlShapeCacheSize(integerValueOf(props.getProperty("dynamicSqlShapeCacheSize"), 0));
+    configuration.setBatchGrouping(BatchGrouping.valueOf(props.getProperty("batchGrouping", "NONE")));
+    configuration.setBatchMaxStatementRows(integerValueOf(props.getProperty("batchMaxStatementRows"), 0));
+    configuration.setBatchMaxPendingRows(integerValueOf(props.getProperty("batchMaxPendingRows"), 0));
+    configuration.setBatchMaxPendingBytes(integerValueOf(props.getProperty("batchMaxPendingBytes"), 0));
+    configuration.setBatchInsertRewrite(booleanValueOf(props.getProperty("batchInsertRewrite"), false));
+    configuration.setBatchInsertRewriteMaxParameters(integerValueOf(props.getProperty("batchInsertRewriteMaxParameters"), 0));
+    configuration.setMetricsEnabled(booleanValueOf(props.getProperty("metricsEnabled"), false));
+    String metricsJmxName = props.getProperty("metricsJmxName");
+    if (metricsJmxName != null) {
+      configuration.setMetricsJmxName(metricsJmxName);
+    }
+    configuration.setAsyncExecutor((java.util.concurrent.Executor) createInstance(props.getProperty("asyncExecutor")));
+    configuration.setAsyncExecutorPoolSize(integerValueOf(props.getProperty("asyncExecutorPoolSize"), 10));
+    configuration.setStreamingResults(booleanValueOf(props.getProperty("streamingResults"), false));
+    configuration.setAdaptiveFetchSize(booleanValueOf(props.getProperty("adaptiveFetchSize"), false));
+    configuration.setAdaptiveFetchSizeMin(integerValueOf(props.getProperty("adaptiveFetchSizeMin"), 10));
+    configuration.setAdaptiveFetchSizeMax(integerValueOf(props.getProperty("adaptiveFetchSizeMax"), 1000));
+    configuration.setCoalesceQueries(booleanValueOf(props.getProperty("coalesceQueries"), false));
+    configuration.setUseIdentityMap(booleanValueOf(props.getProperty("useIdentityMap"), false));
+    configuration.setDirtyChecking(booleanValueOf(props.getProperty("dirtyChecking"), false));
   }
 
   /**
@@ -391,13 +418,35 @@ public class XMLConfigBuilder extends BaseBuilder {
           DataSource dataSource = dsFactory.getDataSource();
           Environment.Builder environmentBuilder = new Environment.Builder(id)
               .transactionFactory(txFactory)
-              .dataSource(dataSource);
+              .dataSource(dataSource)
+              .replicas(replicasElement(child.evalNode("replicas")));
           configuration.setEnvironment(environmentBuilder.build());
         }
       }
     }
   }
 
+  /**
+   * 解析只读副本
+   * <replicas loadBalancing="LEAST_OUTSTANDING">
+   *   <replica weight="2">
+   *     <dataSource type="POOLED">...</dataSource>
+   *   </replica>
+   * </replicas>
+   */
+  private ReplicaSet replicasElement(XNode context) throws Exception {
+    if (context == null) {
+      return null;
+    }
+    LoadBalancing loadBalancing = LoadBalancing.valueOf(context.getStringAttribute("loadBalancing", LoadBalancing.WEIGHTED.name()));
+    List<Replica> replicas = new ArrayList<>();
+    for (XNode child : context.getChildren()) {
+      DataSource dataSource = dataSourceElement(child.evalNode("dataSource")).getDataSource();
+      replicas.add(new Replica(dataSource, child.getIntAttribute("weight", 1)));
+    }
+    return new ReplicaSet(loadBalancing, replicas);
+  }
+
   /**
    * Mybatis可以根据不同的数据库厂商执行不同的语句，依赖于Mapper映射语句的databaseId属性
    * 解析<databaseIdProvider>标签
@@ -44,4 +44,15 @@ public interface Cursor<T> extends Closeable, Iterable<T> {
    * @return -1 if the first cursor item has not been retrieved. The index of the current item retrieved.
    */
   int getCurrentIndex();
+
+  /**
+   * Hints the number of rows to fetch per database round trip for the rest of the cursor.
+   * Cursors that do not read from a {@code ResultSet} ignore it.
+   *
+   * @param fetchSize
+   *          the number of rows to fetch per round trip
+   * @since 3.5.6
+   */
+  default void setFetchSize(int fetchSize) {
+  }
 }
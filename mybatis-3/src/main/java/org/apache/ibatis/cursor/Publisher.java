@@ -0,0 +1,36 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cursor;
+
+/**
+ * 按订阅者的需求推送查询结果的发布者。
+ * <p>
+ * 方法签名与 {@code java.util.concurrent.Flow.Publisher} 及 Reactive Streams 保持一致，
+ * 可以直接适配到这些 API。
+ *
+ * @param <T> the published item type
+ */
+public interface Publisher<T> {
+
+  /**
+   * 添加订阅者，订阅者通过 {@link Subscription#request(long)} 声明需求后才会收到数据
+   *
+   * @param subscriber
+   *          the subscriber
+   */
+  void subscribe(Subscriber<? super T> subscriber);
+
+}
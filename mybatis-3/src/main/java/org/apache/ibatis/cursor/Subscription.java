@@ -0,0 +1,36 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cursor;
+
+/**
+ * 连接 {@link Publisher} 与 {@link Subscriber} 的订阅，方法签名与 {@code java.util.concurrent.Flow.Subscription} 一致。
+ */
+public interface Subscription {
+
+  /**
+   * 再请求 n 条数据
+   *
+   * @param n
+   *          the increment of demand, must be positive
+   */
+  void request(long n);
+
+  /**
+   * 取消订阅，释放数据库资源
+   */
+  void cancel();
+
+}
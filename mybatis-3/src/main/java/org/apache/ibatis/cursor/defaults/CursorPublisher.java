@@ -0,0 +1,219 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cursor.defaults;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.cursor.Publisher;
+import org.apache.ibatis.cursor.Subscriber;
+import org.apache.ibatis.cursor.Subscription;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+
+/**
+ * 基于 {@link Cursor} 的发布者，只有订阅者请求数据时才从数据库读取，并按需求调整 fetchSize。
+ * <p>
+ * 第一次请求数据时才执行查询，数据在调用 {@link Subscription#request(long)} 的线程上推送。
+ * 查询完成、出错或取消时关闭游标；由 {@link SqlSessionFactory} 创建的发布者还会关闭自己打开的会话。
+ * 只支持一个订阅者。
+ *
+ * @param <T> the published item type
+ */
+public class CursorPublisher<T> implements Publisher<T> {
+
+  /**
+   * 按需求调整 fetchSize 时的上限
+   */
+  private static final int MAX_FETCH_SIZE = 1000;
+
+  private final Supplier<SqlSession> sqlSessionSupplier;
+  private final boolean closeSession;
+  private final String statement;
+  private final Object parameter;
+  private final RowBounds rowBounds;
+  private final AtomicBoolean subscribed = new AtomicBoolean();
+
+  /**
+   * 在指定的会话上执行查询，完成后不关闭会话
+   */
+  public CursorPublisher(SqlSession sqlSession, String statement, Object parameter, RowBounds rowBounds) {
+    this(() -> sqlSession, false, statement, parameter, rowBounds);
+  }
+
+  /**
+   * 订阅后打开新的会话执行查询，完成、出错或取消时关闭会话
+   */
+  public CursorPublisher(SqlSessionFactory sqlSessionFactory, String statement, Object parameter, RowBounds rowBounds) {
+    this(sqlSessionFactory::openSession, true, statement, parameter, rowBounds);
+  }
+
+  private CursorPublisher(Supplier<SqlSession> sqlSessionSupplier, boolean closeSession, String statement, Object parameter,
+      RowBounds rowBounds) {
+    this.sqlSessionSupplier = sqlSessionSupplier;
+    this.closeSession = closeSession;
+    this.statement = statement;
+    this.parameter = parameter;
+    this.rowBounds = rowBounds;
+  }
+
+  @Override
+  public void subscribe(Subscriber<? super T> subscriber) {
+    if (subscriber == null) {
+      throw new NullPointerException("subscriber must not be null");
+    }
+    if (!subscribed.compareAndSet(false, true)) {
+      subscriber.onSubscribe(new Subscription() {
+        @Override
+        public void request(long n) {
+          // no-op
+        }
+
+        @Override
+        public void cancel() {
+          // no-op
+        }
+      });
+      subscriber.onError(new IllegalStateException("CursorPublisher of '" + statement + "' allows only one subscriber."));
+      return;
+    }
+    subscriber.onSubscribe(new CursorSubscription(subscriber));
+  }
+
+  private class CursorSubscription implements Subscription {
+
+    private final Subscriber<? super T> subscriber;
+    private final AtomicLong demand = new AtomicLong();
+    /**
+     * 正在推送数据的请求数，保证同一时刻只有一个线程读取游标
+     */
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile boolean cancelled;
+    private volatile Throwable invalidRequest;
+    private boolean done;
+    private SqlSession sqlSession;
+    private Cursor<T> cursor;
+    private Iterator<T> iterator;
+    private int fetchSize;
+
+    CursorSubscription(Subscriber<? super T> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        invalidRequest = new IllegalArgumentException("Subscription of '" + statement + "' requested " + n + " items, must be positive.");
+      } else {
+        demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+      }
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      drain();
+    }
+
+    private void drain() {
+      if (wip.getAndIncrement() != 0) {
+        return;
+      }
+      int missed = 1;
+      do {
+        if (!done) {
+          emit();
+        }
+        missed = wip.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private void emit() {
+      try {
+        if (cancelled) {
+          finish();
+          return;
+        }
+        if (invalidRequest != null) {
+          finish();
+          subscriber.onError(invalidRequest);
+          return;
+        }
+        long requested = demand.get();
+        if (requested == 0) {
+          return;
+        }
+        if (cursor == null) {
+          sqlSession = sqlSessionSupplier.get();
+          cursor = sqlSession.selectCursor(statement, parameter, rowBounds);
+          iterator = cursor.iterator();
+        }
+        adjustFetchSize(requested);
+        long emitted = 0;
+        while (emitted < requested) {
+          if (cancelled) {
+            finish();
+            return;
+          }
+          if (!iterator.hasNext()) {
+            finish();
+            subscriber.onComplete();
+            return;
+          }
+          subscriber.onNext(iterator.next());
+          emitted++;
+        }
+        demand.addAndGet(-emitted);
+      } catch (RuntimeException e) {
+        finish();
+        subscriber.onError(e);
+      }
+    }
+
+    /**
+     * 需求较小时按需求获取，避免一次读取订阅者还不需要的大量数据
+     */
+    private void adjustFetchSize(long requested) {
+      int size = (int) Math.min(requested, MAX_FETCH_SIZE);
+      if (size != fetchSize) {
+        cursor.setFetchSize(size);
+        fetchSize = size;
+      }
+    }
+
+    private void finish() {
+      done = true;
+      try {
+        if (cursor != null) {
+          cursor.close();
+        }
+      } catch (Exception e) {
+        // ignore
+      } finally {
+        if (closeSession && sqlSession != null) {
+          sqlSession.close();
+        }
+      }
+    }
+  }
+
+}
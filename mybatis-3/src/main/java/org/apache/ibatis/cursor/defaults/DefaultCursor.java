@@ -121,6 +121,24 @@ public class DefaultCursor<T> implements Cursor<T> {
     }
   }
 
+  /**
+   * 调整之后从数据库读取数据时每次获取的行数
+   *
+   * @param fetchSize
+   *          the number of rows to fetch per round trip
+   */
+  @Override
+  public void setFetchSize(int fetchSize) {
+    if (isClosed()) {
+      return;
+    }
+    try {
+      rsw.getResultSet().setFetchSize(fetchSize);
+    } catch (SQLException e) {
+      // 只是提示，驱动不支持时忽略
+    }
+  }
+
   protected T fetchNextUsingRowBound() {
     T result = fetchNextObjectFromDatabase();
     while (objectWrapperResultHandler.fetched && indexWithRowBound < rowBounds.getOffset()) {
@@ -0,0 +1,306 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cursor.defaults;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.exceptions.PersistenceException;
+
+/**
+ * 由后台线程提前读取的游标。
+ * <p>
+ * 后台线程遍历被包装的游标，把映射好的对象放进有界缓冲区，消费者从缓冲区取，数据库的往返和消费者的处理因此可以重叠。
+ * 缓冲区满时后台线程等待消费者；后台线程的异常在消费者取到该位置时抛出；关闭游标会取消正在执行的语句，让后台线程尽快停止。
+ * <p>
+ * 被包装的游标只由后台线程读取。游标打开期间不能在同一个会话上执行其它语句，结果映射也不能有延迟加载或嵌套查询。
+ */
+public class PrefetchingCursor<T> implements Cursor<T> {
+
+  private static final Object END = new Object();
+  private static final Object NULL = new Object();
+  private static final long POLL_MILLIS = 100;
+
+  private final Cursor<T> delegate;
+  private final BlockingQueue<Object> buffer;
+  private final Executor executor;
+  private final Statement statement;
+  private final CountDownLatch producerDone = new CountDownLatch(1);
+  private final int initialIndex;
+  /**
+   * 消费者请求的 fetchSize，由后台线程在读取下一行之前设置，0表示没有新的请求
+   */
+  private final AtomicInteger pendingFetchSize = new AtomicInteger();
+  private final Object fetchLock = new Object();
+  /**
+   * 后台线程是否正在从被包装的游标读取，由 fetchLock 保护
+   */
+  private boolean fetching;
+
+  private volatile boolean closed;
+  private boolean started;
+  private boolean consumed;
+  private int consumedCount;
+
+  /**
+   * @param delegate
+   *          被包装的游标，还没有开始读取
+   * @param bufferSize
+   *          最多提前读取的行数
+   * @param executor
+   *          运行后台读取的线程池，为null时为每个游标启动一个守护线程
+   */
+  public PrefetchingCursor(Cursor<T> delegate, int bufferSize, Executor executor) {
+    this(delegate, bufferSize, executor, null);
+  }
+
+  /**
+   * @param statement
+   *          被包装的游标正在读取的语句，关闭时取消它，为null时等待后台线程读完当前行
+   */
+  public PrefetchingCursor(Cursor<T> delegate, int bufferSize, Executor executor, Statement statement) {
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException("bufferSize must be positive but was " + bufferSize);
+    }
+    this.delegate = delegate;
+    this.buffer = new ArrayBlockingQueue<>(bufferSize);
+    this.executor = executor;
+    this.statement = statement;
+    this.initialIndex = delegate.getCurrentIndex();
+  }
+
+  @Override
+  public boolean isOpen() {
+    return started && !closed && !consumed;
+  }
+
+  @Override
+  public boolean isConsumed() {
+    return consumed;
+  }
+
+  @Override
+  public int getCurrentIndex() {
+    return initialIndex + consumedCount;
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    if (started) {
+      throw new IllegalStateException("Cannot open more than one iterator on a Cursor");
+    }
+    if (closed) {
+      throw new IllegalStateException("A Cursor is already closed.");
+    }
+    // 在调用线程上取得迭代器，重复获取或已关闭的错误不会被推迟到后台线程
+    Iterator<T> source = delegate.iterator();
+    started = true;
+    Runnable producer = () -> produce(source);
+    if (executor == null) {
+      Thread thread = new Thread(producer, "mybatis-cursor-prefetch");
+      thread.setDaemon(true);
+      thread.start();
+    } else {
+      executor.execute(producer);
+    }
+    return new PrefetchingIterator();
+  }
+
+  /**
+   * 后台线程使用 ResultSet，不能在消费者线程上直接设置
+   */
+  @Override
+  public void setFetchSize(int fetchSize) {
+    pendingFetchSize.set(fetchSize);
+  }
+
+  /**
+   * 停止后台读取并关闭被包装的游标。先取消正在执行的语句，后台线程阻塞在数据库往返上时不必等它读完；
+   * 之后等待后台线程退出，避免与它同时使用 ResultSet
+   */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    buffer.clear();
+    if (started) {
+      cancelStatement();
+      try {
+        producerDone.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    try {
+      delegate.close();
+    } catch (Exception e) {
+      // ignore
+    }
+  }
+
+  /**
+   * 只在后台线程正在读取时取消，有的驱动会让空闲时的取消作用到连接上执行的下一条语句
+   */
+  private void cancelStatement() {
+    synchronized (fetchLock) {
+      if (statement == null || !fetching) {
+        return;
+      }
+      try {
+        statement.cancel();
+      } catch (SQLException | RuntimeException e) {
+        // 驱动不支持取消时等待后台线程读完当前行
+      }
+    }
+  }
+
+  private void produce(Iterator<T> source) {
+    try {
+      while (true) {
+        synchronized (fetchLock) {
+          if (closed) {
+            return;
+          }
+          fetching = true;
+        }
+        T item;
+        try {
+          applyFetchSize();
+          if (!source.hasNext()) {
+            break;
+          }
+          item = source.next();
+        } finally {
+          synchronized (fetchLock) {
+            fetching = false;
+          }
+        }
+        if (!put(item == null ? NULL : item)) {
+          return;
+        }
+      }
+      put(END);
+    } catch (Throwable t) {
+      put(new Failure(t));
+    } finally {
+      producerDone.countDown();
+    }
+  }
+
+  private void applyFetchSize() {
+    int fetchSize = pendingFetchSize.getAndSet(0);
+    if (fetchSize > 0) {
+      delegate.setFetchSize(fetchSize);
+    }
+  }
+
+  private boolean put(Object element) {
+    try {
+      while (!closed) {
+        if (buffer.offer(element, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+          return true;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return false;
+  }
+
+  private Object take() {
+    try {
+      while (!closed) {
+        Object element = buffer.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (element != null) {
+          return element;
+        }
+      }
+      return END;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      close();
+      throw new PersistenceException("Interrupted while waiting for the next row of a prefetching cursor.", e);
+    }
+  }
+
+  private static final class Failure {
+    private final Throwable cause;
+
+    Failure(Throwable cause) {
+      this.cause = cause;
+    }
+  }
+
+  private class PrefetchingIterator implements Iterator<T> {
+
+    /**
+     * 已取出但还没有通过 next() 返回的元素，null 表示还没取
+     */
+    private Object next;
+
+    @Override
+    public boolean hasNext() {
+      if (next == null && !consumed && !closed) {
+        Object element = take();
+        if (element == END) {
+          if (!closed) {
+            consumed = true;
+          }
+        } else if (element instanceof Failure) {
+          close();
+          Throwable cause = ((Failure) element).cause;
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw new PersistenceException("Error prefetching cursor rows.  Cause: " + cause, cause);
+        } else {
+          next = element;
+        }
+      }
+      return next != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Object element = next;
+      next = null;
+      consumedCount++;
+      return element == NULL ? null : (T) element;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Cannot remove element from Cursor");
+    }
+  }
+}
@@ -29,6 +29,7 @@ import org.apache.ibatis.reflection.ExceptionUtil;
 class PooledConnection implements InvocationHandler {
 
   private static final String CLOSE = "close";
+  private static final String PREPARE_STATEMENT = "prepareStatement";
   private static final Class<?>[] IFACES = new Class<?>[] { Connection.class };
 
   private final int hashCode;
@@ -40,6 +41,7 @@ class PooledConnection implements InvocationHandler {
   private long lastUsedTimestamp;
   private int connectionTypeCode;
   private boolean valid;
+  private PooledStatementCache statementCache;
 
   /**
    * Constructor for SimplePooledConnection that uses the Connection and PooledDataSource passed in.
@@ -56,6 +58,8 @@ class PooledConnection implements InvocationHandler {
     this.createdTimestamp = System.currentTimeMillis();
     this.lastUsedTimestamp = System.currentTimeMillis();
     this.valid = true;
+    int statementCacheSize = dataSource.getPoolPreparedStatementCacheSize();
+    this.statementCache = statementCacheSize > 0 ? new PooledStatementCache(statementCacheSize) : null;
     this.proxyConnection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), IFACES, this);
   }
 
@@ -66,6 +70,35 @@ class PooledConnection implements InvocationHandler {
     valid = false;
   }
 
+  /**
+   * 接管另一个包装同一物理连接的池化连接的语句缓存。
+   *
+   * @param connection
+   *          - the previous pooled connection of the same real connection
+   */
+  void inheritStatementCache(PooledConnection connection) {
+    PooledStatementCache own = this.statementCache;
+    this.statementCache = connection.statementCache;
+    connection.statementCache = null;
+    if (own != null) {
+      own.close();
+    }
+  }
+
+  /**
+   * 关闭语句缓存，需要在关闭物理连接之前调用。
+   */
+  void closeStatementCache() {
+    if (statementCache != null) {
+      statementCache.close();
+      statementCache = null;
+    }
+  }
+
+  PooledStatementCache getStatementCache() {
+    return statementCache;
+  }
+
   /**
    * Method to see if the connection is usable.
    *
@@ -251,6 +284,9 @@ class PooledConnection implements InvocationHandler {
         // issue #579 toString() should never fail
         // throw an SQLException instead of a Runtime
         checkConnection();
+        if (statementCache != null && isCacheablePrepare(method, args)) {
+          return statementCache.prepare(this, method, args);
+        }
       }
       return method.invoke(realConnection, args);
     } catch (Throwable t) {
@@ -259,6 +295,20 @@ class PooledConnection implements InvocationHandler {
 
   }
 
+  private static boolean isCacheablePrepare(Method method, Object[] args) {
+    if (!PREPARE_STATEMENT.equals(method.getName())) {
+      return false;
+    }
+    // prepareStatement(sql)、prepareStatement(sql, autoGeneratedKeys)、prepareStatement(sql, resultSetType, resultSetConcurrency)
+    Class<?>[] types = method.getParameterTypes();
+    for (int i = 1; i < types.length; i++) {
+      if (types[i] != int.class) {
+        return false;
+      }
+    }
+    return types.length <= 3 && args[0] != null;
+  }
+
   private void checkConnection() throws SQLException {
     if (!valid) {
       throw new SQLException("Error accessing PooledConnection. Connection is invalid.");
@@ -30,6 +30,7 @@ import javax.sql.DataSource;
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.trace.TraceListener;
 
 /**
  * This is a simple, synchronous, thread-safe database connection pool.
@@ -53,6 +54,11 @@ public class PooledDataSource implements DataSource {
   protected String poolPingQuery = "NO PING QUERY SET";
   protected boolean poolPingEnabled;
   protected int poolPingConnectionsNotUsedFor;
+  protected int poolPreparedStatementCacheSize;
+  /**
+   * 获取连接发生等待时通知的监听器，为null时不产生事件
+   */
+  protected volatile TraceListener traceListener;
 
   private int expectedConnectionTypeCode;
 
@@ -254,6 +260,17 @@ public class PooledDataSource implements DataSource {
     forceCloseAll();
   }
 
+  /**
+   * 每个物理连接缓存的 PreparedStatement 数量上限，缓存按 LRU 淘汰并跨会话复用，0 表示不缓存。
+   *
+   * @param poolPreparedStatementCacheSize
+   *          the maximum number of cached prepared statements per connection
+   */
+  public void setPoolPreparedStatementCacheSize(int poolPreparedStatementCacheSize) {
+    this.poolPreparedStatementCacheSize = poolPreparedStatementCacheSize;
+    forceCloseAll();
+  }
+
   public String getDriver() {
     return dataSource.getDriver();
   }
@@ -324,6 +341,18 @@ public class PooledDataSource implements DataSource {
     return poolPingConnectionsNotUsedFor;
   }
 
+  public int getPoolPreparedStatementCacheSize() {
+    return poolPreparedStatementCacheSize;
+  }
+
+  public TraceListener getTraceListener() {
+    return traceListener;
+  }
+
+  public void setTraceListener(TraceListener traceListener) {
+    this.traceListener = traceListener;
+  }
+
   /**
    * Closes all active and idle connections in the pool.
    */
@@ -334,6 +363,7 @@ public class PooledDataSource implements DataSource {
         try {
           PooledConnection conn = state.activeConnections.remove(i - 1);
           conn.invalidate();
+          conn.closeStatementCache();
 
           Connection realConn = conn.getRealConnection();
           if (!realConn.getAutoCommit()) {
@@ -348,6 +378,7 @@ public class PooledDataSource implements DataSource {
         try {
           PooledConnection conn = state.idleConnections.remove(i - 1);
           conn.invalidate();
+          conn.closeStatementCache();
 
           Connection realConn = conn.getRealConnection();
           if (!realConn.getAutoCommit()) {
@@ -383,6 +414,7 @@ public class PooledDataSource implements DataSource {
             conn.getRealConnection().rollback();
           }
           PooledConnection newConn = new PooledConnection(conn.getRealConnection(), this);
+          newConn.inheritStatementCache(conn);
           state.idleConnections.add(newConn);
           newConn.setCreatedTimestamp(conn.getCreatedTimestamp());
           newConn.setLastUsedTimestamp(conn.getLastUsedTimestamp());
@@ -396,6 +428,7 @@ public class PooledDataSource implements DataSource {
           if (!conn.getRealConnection().getAutoCommit()) {
             conn.getRealConnection().rollback();
           }
+          conn.closeStatementCache();
           conn.getRealConnection().close();
           if (log.isDebugEnabled()) {
             log.debug("Closed connection " + conn.getRealHashCode() + ".");
@@ -406,6 +439,7 @@ public class PooledDataSource implements DataSource {
         if (log.isDebugEnabled()) {
           log.debug("A bad connection (" + conn.getRealHashCode() + ") attempted to return to the pool, discarding connection.");
         }
+        conn.closeStatementCache();
         state.badConnectionCount++;
       }
     }
@@ -413,6 +447,7 @@ public class PooledDataSource implements DataSource {
 
   private PooledConnection popConnection(String username, String password) throws SQLException {
     boolean countedWait = false;
+    long waitNanos = 0;
     PooledConnection conn = null;
     long t = System.currentTimeMillis();
     int localBadConnectionCount = 0;
@@ -460,6 +495,7 @@ public class PooledDataSource implements DataSource {
                 }
               }
               conn = new PooledConnection(oldestActiveConnection.getRealConnection(), this);
+              conn.inheritStatementCache(oldestActiveConnection);
               conn.setCreatedTimestamp(oldestActiveConnection.getCreatedTimestamp());
               conn.setLastUsedTimestamp(oldestActiveConnection.getLastUsedTimestamp());
               oldestActiveConnection.invalidate();
@@ -477,7 +513,9 @@ public class PooledDataSource implements DataSource {
                   log.debug("Waiting as long as " + poolTimeToWait + " milliseconds for connection.");
                 }
                 long wt = System.currentTimeMillis();
+                long waitStart = System.nanoTime();
                 state.wait(poolTimeToWait);
+                waitNanos += System.nanoTime() - waitStart;
                 state.accumulatedWaitTime += System.currentTimeMillis() - wt;
               } catch (InterruptedException e) {
                 break;
@@ -517,6 +555,13 @@ public class PooledDataSource implements DataSource {
 
     }
 
+    if (countedWait) {
+      TraceListener tracer = traceListener;
+      if (tracer != null) {
+        tracer.connectionWaited(dataSource.getUrl(), waitNanos, conn != null);
+      }
+    }
+
     if (conn == null) {
       if (log.isDebugEnabled()) {
         log.debug("PooledDataSource: Unknown severe error condition.  The connection pool returned a null connection.");
@@ -566,6 +611,7 @@ public class PooledDataSource implements DataSource {
       } catch (Exception e) {
         log.warn("Execution of ping query '" + poolPingQuery + "' failed: " + e.getMessage());
         try {
+          conn.closeStatementCache();
           conn.getRealConnection().close();
         } catch (Exception e2) {
           // ignore
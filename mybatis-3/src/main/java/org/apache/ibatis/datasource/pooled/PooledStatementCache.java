@@ -0,0 +1,253 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.ibatis.reflection.ExceptionUtil;
+
+/**
+ * 物理连接级别的 PreparedStatement 缓存（LRU）。
+ * <p>
+ * 缓存随物理连接存活，{@link PooledConnection} 被连接池重新包装时会继承同一个缓存，
+ * 因此语句可以跨会话复用。语句在使用期间从缓存中取出，关闭代理时重置状态并放回缓存；
+ * 被淘汰或放回失败的语句会被真正关闭。
+ */
+class PooledStatementCache {
+
+  private static final Class<?>[] IFACES = new Class<?>[] { PreparedStatement.class };
+
+  private final int maxSize;
+  private final LinkedHashMap<StatementKey, CachedStatement> statements;
+  private boolean closed;
+
+  PooledStatementCache(int maxSize) {
+    this.maxSize = maxSize;
+    this.statements = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  /**
+   * 从缓存中取出语句，没有命中时通过真实连接创建。
+   *
+   * @param owner
+   *          当前持有物理连接的池化连接
+   * @param method
+   *          被调用的 prepareStatement 方法
+   * @param args
+   *          调用参数
+   * @return 语句代理
+   * @throws Throwable
+   *           创建语句失败
+   */
+  PreparedStatement prepare(PooledConnection owner, Method method, Object[] args) throws Throwable {
+    StatementKey key = new StatementKey(args);
+    CachedStatement cached;
+    synchronized (this) {
+      cached = statements.remove(key);
+    }
+    if (cached == null) {
+      PreparedStatement statement;
+      try {
+        statement = (PreparedStatement) method.invoke(owner.getRealConnection(), args);
+      } catch (Throwable t) {
+        throw ExceptionUtil.unwrapThrowable(t);
+      }
+      cached = new CachedStatement(this, key, statement);
+    }
+    return cached.checkout(owner);
+  }
+
+  /**
+   * 关闭缓存以及其中所有的语句。
+   */
+  synchronized void close() {
+    closed = true;
+    for (CachedStatement cached : statements.values()) {
+      cached.closeQuietly();
+    }
+    statements.clear();
+  }
+
+  synchronized int size() {
+    return statements.size();
+  }
+
+  private void release(CachedStatement cached) {
+    CachedStatement evicted = null;
+    synchronized (this) {
+      if (!closed && !statements.containsKey(cached.key)) {
+        statements.put(cached.key, cached);
+        cached = null;
+        if (statements.size() > maxSize) {
+          Iterator<CachedStatement> iterator = statements.values().iterator();
+          evicted = iterator.next();
+          iterator.remove();
+        }
+      }
+    }
+    if (cached != null) {
+      cached.closeQuietly();
+    }
+    if (evicted != null) {
+      evicted.closeQuietly();
+    }
+  }
+
+  /**
+   * 缓存键：SQL 与创建语句时指定的结果集类型、并发模式和主键返回方式。
+   */
+  private static final class StatementKey {
+
+    private final String sql;
+    private final int resultSetType;
+    private final int resultSetConcurrency;
+    private final int autoGeneratedKeys;
+
+    StatementKey(Object[] args) {
+      this.sql = (String) args[0];
+      this.resultSetType = args.length == 3 ? (Integer) args[1] : ResultSet.TYPE_FORWARD_ONLY;
+      this.resultSetConcurrency = args.length == 3 ? (Integer) args[2] : ResultSet.CONCUR_READ_ONLY;
+      this.autoGeneratedKeys = args.length == 2 ? (Integer) args[1] : -1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof StatementKey)) {
+        return false;
+      }
+      StatementKey that = (StatementKey) o;
+      return resultSetType == that.resultSetType
+          && resultSetConcurrency == that.resultSetConcurrency
+          && autoGeneratedKeys == that.autoGeneratedKeys
+          && sql.equals(that.sql);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(sql, resultSetType, resultSetConcurrency, autoGeneratedKeys);
+    }
+  }
+
+  /**
+   * 缓存中的语句。关闭代理时不会关闭真实语句，而是重置后放回缓存。
+   */
+  private static final class CachedStatement implements InvocationHandler {
+
+    private final PooledStatementCache cache;
+    private final StatementKey key;
+    private final PreparedStatement statement;
+    private final PreparedStatement proxyStatement;
+    private final int fetchSize;
+    private final int maxRows;
+    private final int queryTimeout;
+    private PooledConnection owner;
+    private boolean closed;
+
+    CachedStatement(PooledStatementCache cache, StatementKey key, PreparedStatement statement) throws SQLException {
+      this.cache = cache;
+      this.key = key;
+      this.statement = statement;
+      this.fetchSize = statement.getFetchSize();
+      this.maxRows = statement.getMaxRows();
+      this.queryTimeout = statement.getQueryTimeout();
+      this.proxyStatement = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), IFACES, this);
+    }
+
+    PreparedStatement checkout(PooledConnection owner) {
+      this.owner = owner;
+      this.closed = false;
+      return proxyStatement;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String methodName = method.getName();
+      if (Object.class.equals(method.getDeclaringClass())) {
+        return method.invoke(this, args);
+      }
+      if ("close".equals(methodName)) {
+        if (!closed) {
+          closed = true;
+          release();
+        }
+        return null;
+      }
+      if ("isClosed".equals(methodName)) {
+        return closed || statement.isClosed();
+      }
+      if (closed) {
+        throw new SQLException("Error accessing PreparedStatement. Statement is closed.");
+      }
+      if ("getConnection".equals(methodName)) {
+        return owner.getProxyConnection();
+      }
+      try {
+        return method.invoke(statement, args);
+      } catch (Throwable t) {
+        throw ExceptionUtil.unwrapThrowable(t);
+      }
+    }
+
+    private void release() {
+      owner = null;
+      try {
+        ResultSet rs = statement.getResultSet();
+        if (rs != null) {
+          rs.close();
+        }
+        statement.clearParameters();
+        statement.clearBatch();
+        statement.clearWarnings();
+        if (statement.getFetchSize() != fetchSize) {
+          statement.setFetchSize(fetchSize);
+        }
+        if (statement.getMaxRows() != maxRows) {
+          statement.setMaxRows(maxRows);
+        }
+        if (statement.getQueryTimeout() != queryTimeout) {
+          statement.setQueryTimeout(queryTimeout);
+        }
+      } catch (SQLException | RuntimeException e) {
+        // 无法重置的语句不再复用
+        closeQuietly();
+        return;
+      }
+      cache.release(this);
+    }
+
+    private void closeQuietly() {
+      try {
+        statement.close();
+      } catch (SQLException e) {
+        // ignore
+      }
+    }
+  }
+
+}
@@ -0,0 +1,65 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.routing;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+/**
+ * 一个只读副本。outstanding 为当前持有该副本连接的会话数
+ */
+public class Replica {
+
+  private final DataSource dataSource;
+  private final int weight;
+  private final AtomicInteger outstanding = new AtomicInteger();
+
+  public Replica(DataSource dataSource, int weight) {
+    if (dataSource == null) {
+      throw new IllegalArgumentException("Parameter 'dataSource' must not be null");
+    }
+    if (weight <= 0) {
+      throw new IllegalArgumentException("Replica weight must be positive but was " + weight);
+    }
+    this.dataSource = dataSource;
+    this.weight = weight;
+  }
+
+  public DataSource getDataSource() {
+    return dataSource;
+  }
+
+  public int getWeight() {
+    return weight;
+  }
+
+  public int getOutstanding() {
+    return outstanding.get();
+  }
+
+  /**
+   * 会话不再使用该副本时调用，与 {@link ReplicaSet#acquire()} 成对出现
+   */
+  public void release() {
+    outstanding.decrementAndGet();
+  }
+
+  void acquired() {
+    outstanding.incrementAndGet();
+  }
+
+}
@@ -0,0 +1,93 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.routing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 主库之外的一组只读副本。执行器在没有写操作的事务中把查询发往这里选出的副本
+ */
+public class ReplicaSet {
+
+  private final LoadBalancing loadBalancing;
+  private final List<Replica> replicas;
+  private final int totalWeight;
+
+  public ReplicaSet(LoadBalancing loadBalancing, List<Replica> replicas) {
+    if (replicas == null || replicas.isEmpty()) {
+      throw new IllegalArgumentException("A replica set requires at least one replica");
+    }
+    this.loadBalancing = loadBalancing == null ? LoadBalancing.WEIGHTED : loadBalancing;
+    this.replicas = Collections.unmodifiableList(new ArrayList<>(replicas));
+    int weight = 0;
+    for (Replica replica : replicas) {
+      weight += replica.getWeight();
+    }
+    this.totalWeight = weight;
+  }
+
+  public LoadBalancing getLoadBalancing() {
+    return loadBalancing;
+  }
+
+  public List<Replica> getReplicas() {
+    return replicas;
+  }
+
+  /**
+   * 选出一个副本并增加其占用数，用完后需调用 {@link Replica#release()}
+   */
+  public Replica acquire() {
+    Replica replica = loadBalancing == LoadBalancing.LEAST_OUTSTANDING ? leastOutstanding() : weighted();
+    replica.acquired();
+    return replica;
+  }
+
+  private Replica weighted() {
+    int n = ThreadLocalRandom.current().nextInt(totalWeight);
+    for (Replica replica : replicas) {
+      n -= replica.getWeight();
+      if (n < 0) {
+        return replica;
+      }
+    }
+    return replicas.get(replicas.size() - 1);
+  }
+
+  private Replica leastOutstanding() {
+    int size = replicas.size();
+    // 从随机位置开始比较，占用数相同时不会总是选中第一个
+    int offset = ThreadLocalRandom.current().nextInt(size);
+    Replica best = null;
+    long bestLoad = 0;
+    int bestWeight = 1;
+    for (int i = 0; i < size; i++) {
+      Replica replica = replicas.get((offset + i) % size);
+      long load = replica.getOutstanding();
+      // load / weight < bestLoad / bestWeight
+      if (best == null || load * bestWeight < bestLoad * replica.getWeight()) {
+        best = replica;
+        bestLoad = load;
+        bestWeight = replica.getWeight();
+      }
+    }
+    return best;
+  }
+
+}
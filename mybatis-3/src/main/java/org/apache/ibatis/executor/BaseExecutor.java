@@ -20,20 +20,27 @@ import static org.apache.ibatis.executor.ExecutionPlaceholder.EXECUTION_PLACEHOL
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.ibatis.cache.CacheKey;
 import org.apache.ibatis.cache.impl.PerpetualCache;
 import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.datasource.routing.Replica;
+import org.apache.ibatis.datasource.routing.ReplicaSet;
+import org.apache.ibatis.executor.metrics.StatementMetrics;
+import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.executor.statement.StatementUtil;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 import org.apache.ibatis.logging.jdbc.ConnectionLogger;
 import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.ParameterMapping;
 import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.mapping.SqlCommandType;
 import org.apache.ibatis.mapping.StatementType;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.factory.ObjectFactory;
@@ -41,6 +48,7 @@ import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.LocalCacheScope;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.trace.TraceListener;
 import org.apache.ibatis.transaction.Transaction;
 import org.apache.ibatis.type.TypeHandlerRegistry;
 
@@ -65,11 +73,35 @@ public abstract class BaseExecutor implements Executor {
    * 存储过程输出参数缓存
    */
   protected PerpetualCache localOutputParameterCache;
+  /**
+   * 按id记录已映射对象的identity map，未启用时为null
+   */
+  protected IdentityMap identityMap;
+  /**
+   * 加载对象的原始值，未启用dirtyChecking时为null
+   */
+  protected EntitySnapshots entitySnapshots;
   protected Configuration configuration;
 
   protected int queryStack;
   private boolean closed;
 
+  /**
+   * 只读副本，未配置时为null
+   */
+  private final ReplicaSet replicas;
+  private Replica replica;
+  private Connection replicaConnection;
+  private boolean replicaUnavailable;
+  /**
+   * 当前事务中是否已有写操作，之后的查询也使用主库，保证能读到刚写入的数据
+   */
+  private boolean wrote;
+  /**
+   * 正在执行的更新语句的BoundSql，发出执行事件时使用
+   */
+  private BoundSql updateBoundSql;
+
   protected BaseExecutor(Configuration configuration, Transaction transaction) {
     this.transaction = transaction;
     this.deferredLoads = new ConcurrentLinkedQueue<>();
@@ -78,6 +110,11 @@ public abstract class BaseExecutor implements Executor {
     this.closed = false;
     this.configuration = configuration;
     this.wrapper = this;
+    this.identityMap = configuration != null && configuration.isUseIdentityMap() ? new IdentityMap() : null;
+    this.entitySnapshots = configuration != null && configuration.isDirtyChecking() ? new EntitySnapshots(configuration) : null;
+    // ResultLoaderMap.ClosedExecutor 没有 Configuration，分片会话的副本不属于当前分片
+    Environment environment = configuration == null ? null : configuration.getEnvironment();
+    this.replicas = environment == null || transaction.getShard() != null ? null : environment.getReplicas();
   }
 
   @Override
@@ -94,6 +131,7 @@ public abstract class BaseExecutor implements Executor {
       try {
         rollback(forceRollback);
       } finally {
+        closeReplicaConnection();
         if (transaction != null) {
           transaction.close();
         }
@@ -105,6 +143,8 @@ public abstract class BaseExecutor implements Executor {
       transaction = null;
       deferredLoads = null;
       localCache = null;
+      identityMap = null;
+      entitySnapshots = null;
       localOutputParameterCache = null;
       closed = true;
     }
@@ -122,7 +162,26 @@ public abstract class BaseExecutor implements Executor {
       throw new ExecutorException("Executor was closed.");
     }
     clearLocalCache();
-    return doUpdate(ms, parameter);
+    wrote = true;
+    StatementMetrics metrics = metricsOf(ms);
+    TraceListener tracer = configuration.getTraceListener();
+    if (metrics == null && tracer == null) {
+      return doUpdate(ms, parameter);
+    }
+    long start = System.nanoTime();
+    int rows = 0;
+    Throwable error = null;
+    updateBoundSql = null;
+    try {
+      rows = doUpdate(ms, parameter);
+      return rows;
+    } catch (SQLException | RuntimeException e) {
+      error = e;
+      throw e;
+    } finally {
+      executed(ms, updateBoundSql != null ? updateBoundSql.getSql() : null, metrics, tracer, start, rows, error, false);
+      updateBoundSql = null;
+    }
   }
 
   @Override
@@ -134,7 +193,17 @@ public abstract class BaseExecutor implements Executor {
     if (closed) {
       throw new ExecutorException("Executor was closed.");
     }
-    return doFlushStatements(isRollBack);
+    try {
+      List<BatchResult> results = doFlushStatements(isRollBack);
+      if (entitySnapshots != null && !isRollBack) {
+        entitySnapshots.applyPendingRefreshes();
+      }
+      return results;
+    } finally {
+      if (entitySnapshots != null) {
+        entitySnapshots.discardPendingRefreshes();
+      }
+    }
   }
 
   @Override
@@ -165,7 +234,10 @@ public abstract class BaseExecutor implements Executor {
         // 处理存储过程相关
         handleLocallyCachedOutputParameters(ms, key, parameter, boundSql);
       } else {
-        list = queryFromDatabase(ms, parameter, rowBounds, resultHandler, key, boundSql);
+        list = lookupIdentity(ms, parameter, rowBounds, resultHandler);
+        if (list == null) {
+          list = queryFromDatabase(ms, parameter, rowBounds, resultHandler, key, boundSql);
+        }
       }
     } finally {
       queryStack--;
@@ -187,10 +259,41 @@ public abstract class BaseExecutor implements Executor {
     return list;
   }
 
+  /**
+   * 按id查询的语句在identity map中已有实体时直接返回它
+   */
+  @SuppressWarnings("unchecked")
+  private <E> List<E> lookupIdentity(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler) {
+    if (identityMap == null || resultHandler != null || rowBounds != RowBounds.DEFAULT) {
+      return null;
+    }
+    Object entity = identityMap.lookup(ms, parameter);
+    if (entity == null) {
+      return null;
+    }
+    List<E> list = new ArrayList<>(1);
+    list.add((E) entity);
+    return list;
+  }
+
   @Override
   public <E> Cursor<E> queryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds) throws SQLException {
     BoundSql boundSql = ms.getBoundSql(parameter);
-    return doQueryCursor(ms, parameter, rowBounds, boundSql);
+    StatementMetrics metrics = metricsOf(ms);
+    TraceListener tracer = configuration.getTraceListener();
+    if (metrics == null && tracer == null) {
+      return doQueryCursor(ms, parameter, rowBounds, boundSql);
+    }
+    long start = System.nanoTime();
+    Throwable error = null;
+    try {
+      return doQueryCursor(ms, parameter, rowBounds, boundSql);
+    } catch (SQLException | RuntimeException e) {
+      error = e;
+      throw e;
+    } finally {
+      executed(ms, boundSql.getSql(), metrics, tracer, start, 0, error, true);
+    }
   }
 
   @Override
@@ -249,6 +352,10 @@ public abstract class BaseExecutor implements Executor {
       // issue #176
       cacheKey.update(configuration.getEnvironment().getId());
     }
+    if (transaction.getShard() != null) {
+      // 各分片共享二级缓存，需要区分分片
+      cacheKey.update(transaction.getShard());
+    }
     return cacheKey;
   }
 
@@ -267,6 +374,10 @@ public abstract class BaseExecutor implements Executor {
     if (required) {
       transaction.commit();
     }
+    if (entitySnapshots != null) {
+      entitySnapshots.clear();
+    }
+    wrote = false;
   }
 
   @Override
@@ -279,20 +390,46 @@ public abstract class BaseExecutor implements Executor {
         if (required) {
           transaction.rollback();
         }
+        if (entitySnapshots != null) {
+          entitySnapshots.clear();
+        }
+        wrote = false;
       }
     }
   }
 
+  @Override
+  public IdentityMap getIdentityMap() {
+    return identityMap;
+  }
+
+  @Override
+  public EntitySnapshots getEntitySnapshots() {
+    return entitySnapshots;
+  }
+
   @Override
   public void clearLocalCache() {
     if (!closed) {
       localCache.clear();
       localOutputParameterCache.clear();
+      if (identityMap != null) {
+        identityMap.clear();
+      }
     }
   }
 
   protected abstract int doUpdate(MappedStatement ms, Object parameter) throws SQLException;
 
+  /**
+   * 创建执行更新语句的StatementHandler，执行事件使用它生成的BoundSql，不再为事件重新生成SQL
+   */
+  protected StatementHandler newUpdateStatementHandler(MappedStatement ms, Object parameter) {
+    StatementHandler handler = configuration.newStatementHandler(this, ms, parameter, RowBounds.DEFAULT, null, null);
+    updateBoundSql = handler.getBoundSql();
+    return handler;
+  }
+
   protected abstract List<BatchResult> doFlushStatements(boolean isRollback) throws SQLException;
 
   protected abstract <E> List<E> doQuery(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler, BoundSql boundSql)
@@ -301,6 +438,35 @@ public abstract class BaseExecutor implements Executor {
   protected abstract <E> Cursor<E> doQueryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds, BoundSql boundSql)
       throws SQLException;
 
+  /**
+   * 未开启 metricsEnabled 时返回null
+   */
+  protected StatementMetrics metricsOf(MappedStatement ms) {
+    return configuration.isMetricsEnabled() ? configuration.getMetricsRegistry().getStatementMetrics(ms.getId()) : null;
+  }
+
+  /**
+   * 语句执行结束后记录统计并发出事件
+   */
+  private void executed(MappedStatement ms, String sql, StatementMetrics metrics, TraceListener tracer,
+      long start, int rows, Throwable error, boolean query) {
+    long duration = System.nanoTime() - start;
+    if (metrics != null) {
+      if (error != null) {
+        metrics.recordError(error);
+      }
+      metrics.recordCall(duration);
+    }
+    if (tracer != null) {
+      int sqlHash = sql == null ? 0 : sql.hashCode();
+      if (query) {
+        tracer.queryExecuted(ms.getId(), sqlHash, rows, duration, error);
+      } else {
+        tracer.updateExecuted(ms.getId(), sqlHash, Math.max(rows, 0), duration, error);
+      }
+    }
+  }
+
   protected void closeStatement(Statement statement) {
     if (statement != null) {
       try {
@@ -351,10 +517,22 @@ public abstract class BaseExecutor implements Executor {
   private <E> List<E> queryFromDatabase(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler, CacheKey key, BoundSql boundSql) throws SQLException {
     List<E> list;
     localCache.putObject(key, EXECUTION_PLACEHOLDER);
+    StatementMetrics metrics = metricsOf(ms);
+    TraceListener tracer = configuration.getTraceListener();
+    long start = metrics != null || tracer != null ? System.nanoTime() : 0L;
+    int rows = 0;
+    Throwable error = null;
     try {
       list = doQuery(ms, parameter, rowBounds, resultHandler, boundSql);
+      rows = list == null ? 0 : list.size();
+    } catch (SQLException | RuntimeException e) {
+      error = e;
+      throw e;
     } finally {
       localCache.removeObject(key);
+      if (metrics != null || tracer != null) {
+        executed(ms, boundSql.getSql(), metrics, tracer, start, rows, error, true);
+      }
     }
     localCache.putObject(key, list);
 
@@ -381,6 +559,79 @@ public abstract class BaseExecutor implements Executor {
     }
   }
 
+  /**
+   * 获取执行语句的连接。配置了只读副本时，查询按照语句的路由方式和当前事务中是否已有写操作，
+   * 使用副本或主库的连接
+   */
+  protected Connection getConnection(MappedStatement ms) throws SQLException {
+    if (routesToReplica(ms)) {
+      Connection connection = getReplicaConnection();
+      if (connection != null) {
+        return ms.getStatementLog().isDebugEnabled()
+            ? ConnectionLogger.newInstance(connection, ms.getStatementLog(), queryStack) : connection;
+      }
+    }
+    return getConnection(ms.getStatementLog());
+  }
+
+  @Override
+  public boolean hasWritten() {
+    return wrote;
+  }
+
+  @Override
+  public void markWritten() {
+    wrote = true;
+  }
+
+  protected boolean routesToReplica(MappedStatement ms) {
+    if (replicas == null || replicaUnavailable || ms.getSqlCommandType() != SqlCommandType.SELECT) {
+      return false;
+    }
+    switch (ms.getRoute()) {
+      case PRIMARY:
+        return false;
+      case REPLICA:
+        return true;
+      default:
+        return !wrote;
+    }
+  }
+
+  /**
+   * 会话第一次读副本时选出副本并获取连接，直到会话关闭都使用该连接。
+   * 副本不可用时返回null，本会话之后的查询都使用主库
+   */
+  private Connection getReplicaConnection() {
+    if (replicaConnection == null) {
+      replica = replicas.acquire();
+      try {
+        replicaConnection = replica.getDataSource().getConnection();
+      } catch (SQLException e) {
+        log.warn("Could not get a connection from the read replica, using the primary instead.  Cause: " + e);
+        replica.release();
+        replica = null;
+        replicaUnavailable = true;
+      }
+    }
+    return replicaConnection;
+  }
+
+  private void closeReplicaConnection() {
+    if (replicaConnection == null) {
+      return;
+    }
+    try {
+      replicaConnection.close();
+    } catch (SQLException e) {
+      log.warn("Unexpected exception on closing read replica connection.  Cause: " + e);
+    } finally {
+      replicaConnection = null;
+      replica.release();
+      replica = null;
+    }
+  }
+
   @Override
   public void setExecutorWrapper(Executor wrapper) {
     this.wrapper = wrapper;
@@ -17,19 +17,33 @@ package org.apache.ibatis.executor;
 
 import java.sql.BatchUpdateException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.apache.ibatis.cache.CacheKey;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.keygen.NoKeyGenerator;
+import org.apache.ibatis.executor.metrics.StatementMetrics;
+import org.apache.ibatis.executor.metrics.StatementPhase;
 import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.scripting.defaults.DefaultParameterHandler;
+import org.apache.ibatis.session.BatchGrouping;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
@@ -45,8 +59,22 @@ public class BatchExecutor extends BaseExecutor {
 
   private final List<Statement> statementList = new ArrayList<>();
   private final List<BatchResult> batchResultList = new ArrayList<>();
+  /**
+   * 与 statementList 一一对应，改写为多行 INSERT 的批次不创建 Statement，参数值在加入批次时取出，执行时才绑定
+   */
+  private final List<MultiRowInsert> multiRowInsertList = new ArrayList<>();
   private String currentSql;
   private MappedStatement currentStatement;
+  /**
+   * 分组模式下，每个语句（MappedStatement + SQL）当前可以追加的批次在 statementList 中的下标
+   */
+  private final Map<CacheKey, Integer> statementIndexes = new HashMap<>();
+  /**
+   * 自动刷新后保留的汇总结果，每个语句一条，在下一次显式刷新时返回
+   */
+  private final Map<CacheKey, BatchResult> flushedSummaries = new LinkedHashMap<>();
+  private int pendingRows;
+  private long pendingBytes;
 
   public BatchExecutor(Configuration configuration, Transaction transaction) {
     super(configuration, transaction);
@@ -55,30 +83,241 @@ public class BatchExecutor extends BaseExecutor {
   @Override
   public int doUpdate(MappedStatement ms, Object parameterObject) throws SQLException {
     final Configuration configuration = ms.getConfiguration();
-    final StatementHandler handler = configuration.newStatementHandler(this, ms, parameterObject, RowBounds.DEFAULT, null, null);
+    final StatementHandler handler = newUpdateStatementHandler(ms, parameterObject);
     final BoundSql boundSql = handler.getBoundSql();
     final String sql = boundSql.getSql();
     final Statement stmt;
-    if (sql.equals(currentSql) && ms.equals(currentStatement)) {
-      int last = statementList.size() - 1;
-      stmt = statementList.get(last);
-      applyTransactionTimeout(stmt);
-      handler.parameterize(stmt);// fix Issues 322
-      BatchResult batchResult = batchResultList.get(last);
+    final BatchResult batchResult;
+    final MultiRowInsert multiRowInsert;
+    final int index = batchIndexOf(ms, sql);
+    if (index >= 0) {
+      stmt = statementList.get(index);
+      multiRowInsert = multiRowInsertList.get(index);
+      if (multiRowInsert == null) {
+        applyTransactionTimeout(stmt);
+        handler.parameterize(stmt);// fix Issues 322
+      }
+      batchResult = batchResultList.get(index);
       batchResult.addParameterObject(parameterObject);
     } else {
-      Connection connection = getConnection(ms.getStatementLog());
-      stmt = handler.prepare(connection, transaction.getTimeout());
-      handler.parameterize(stmt);    // fix Issues 322
+      multiRowInsert = multiRowInsertOf(ms, handler, boundSql);
+      if (multiRowInsert == null) {
+        Connection connection = getConnection(ms.getStatementLog());
+        stmt = handler.prepare(connection, transaction.getTimeout());
+        handler.parameterize(stmt);    // fix Issues 322
+      } else {
+        stmt = null;
+      }
       currentSql = sql;
       currentStatement = ms;
+      if (configuration.getBatchGrouping() != BatchGrouping.NONE) {
+        statementIndexes.put(new CacheKey(new Object[] { ms, sql }), statementList.size());
+      }
       statementList.add(stmt);
-      batchResultList.add(new BatchResult(ms, sql, parameterObject));
+      multiRowInsertList.add(multiRowInsert);
+      batchResult = new BatchResult(ms, sql, parameterObject);
+      batchResultList.add(batchResult);
+      if (configuration.getBatchMaxPendingBytes() > 0) {
+        pendingBytes += sql.length() * 2L;
+      }
+    }
+    if (multiRowInsert == null) {
+      handler.batch(stmt);
+    } else {
+      multiRowInsert.addRow((DefaultParameterHandler) handler.getParameterHandler());
+    }
+    pendingRows++;
+    if (configuration.getBatchMaxPendingBytes() > 0) {
+      pendingBytes += estimateBytes(boundSql, parameterObject);
+    }
+    if (shouldAutoFlush(batchResult)) {
+      autoFlush();
     }
-    handler.batch(stmt);
     return BATCH_UPDATE_RETURN_VALUE;
   }
 
+  /**
+   * 开启 batchInsertRewrite 时，简单的 INSERT ... VALUES (...) 语句在执行时合并为多行 VALUES 语句
+   *
+   * @return 不能改写时返回 null
+   */
+  private MultiRowInsert multiRowInsertOf(MappedStatement ms, StatementHandler handler, BoundSql boundSql) {
+    if (!configuration.isBatchInsertRewrite()
+        || ms.getSqlCommandType() != SqlCommandType.INSERT
+        || ms.getStatementType() != StatementType.PREPARED
+        || !(handler.getParameterHandler() instanceof DefaultParameterHandler)) {
+      return null;
+    }
+    Class<?> keyGeneratorType = ms.getKeyGenerator().getClass();
+    if (!NoKeyGenerator.class.equals(keyGeneratorType) && !Jdbc3KeyGenerator.class.equals(keyGeneratorType)) {
+      return null;
+    }
+    // 只能拿到最后一行的主键时，按原样批量执行才能给每个参数对象回填主键
+    if (Jdbc3KeyGenerator.class.equals(keyGeneratorType) && ms.getKeyProperties() != null
+        && !MultiRowInsert.returnsAllGeneratedKeys(configuration)) {
+      return null;
+    }
+    int parametersPerRow = boundSql.getParameterMappings().size();
+    int maxRows = MultiRowInsert.maxRows(configuration, parametersPerRow);
+    return maxRows < 2 ? null : MultiRowInsert.parse(boundSql.getSql(), parametersPerRow, maxRows);
+  }
+
+  /**
+   * 按行数上限分段执行改写后的多行 INSERT，并把生成的主键依次设置回参数对象
+   */
+  private int[] executeMultiRowInsert(BatchResult batchResult, MultiRowInsert multiRowInsert) throws BatchUpdateException {
+    MappedStatement ms = batchResult.getMappedStatement();
+    List<Object> parameterObjects = batchResult.getParameterObjects();
+    List<MultiRowInsert.Row> rows = multiRowInsert.getRows();
+    int[] updateCounts = new int[rows.size()];
+    int executed = 0;
+    int statementRows = 0;
+    StatementMetrics metrics = metricsOf(ms);
+    PreparedStatement ps = null;
+    try {
+      while (executed < rows.size()) {
+        int chunkRows = Math.min(multiRowInsert.getMaxRows(), rows.size() - executed);
+        if (chunkRows != statementRows) {
+          closeStatement(ps);
+          ps = null;
+          String sql = multiRowInsert.rewrite(chunkRows);
+          BoundSql boundSql = new BoundSql(configuration, sql, Collections.emptyList(), parameterObjects.get(executed));
+          StatementHandler handler = configuration.newStatementHandler(this, ms, parameterObjects.get(executed), RowBounds.DEFAULT, null, boundSql);
+          ps = (PreparedStatement) handler.prepare(getConnection(ms.getStatementLog()), transaction.getTimeout());
+          statementRows = chunkRows;
+        }
+        for (int i = 0; i < chunkRows; i++) {
+          rows.get(executed + i).bind(ps, i * multiRowInsert.getParametersPerRow());
+        }
+        long start = metrics != null ? System.nanoTime() : 0L;
+        int count = ps.executeUpdate();
+        if (metrics != null) {
+          metrics.recordLatency(StatementPhase.EXECUTE, System.nanoTime() - start);
+          metrics.recordBatch(chunkRows);
+        }
+        // 无法得知每行的更新数，总数与行数一致时认为每行插入一条
+        Arrays.fill(updateCounts, executed, executed + chunkRows, count == chunkRows ? 1 : Statement.SUCCESS_NO_INFO);
+        if (ms.getKeyGenerator() instanceof Jdbc3KeyGenerator) {
+          ((Jdbc3KeyGenerator) ms.getKeyGenerator()).processBatch(ms, ps,
+              new ArrayList<>(parameterObjects.subList(executed, executed + chunkRows)));
+        }
+        executed += chunkRows;
+      }
+      return updateCounts;
+    } catch (SQLException e) {
+      throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(), Arrays.copyOf(updateCounts, executed), e);
+    } finally {
+      closeStatement(ps);
+    }
+  }
+
+  private boolean shouldAutoFlush(BatchResult batchResult) {
+    int maxStatementRows = configuration.getBatchMaxStatementRows();
+    int maxPendingRows = configuration.getBatchMaxPendingRows();
+    int maxPendingBytes = configuration.getBatchMaxPendingBytes();
+    return (maxStatementRows > 0 && batchResult.getParameterObjects().size() >= maxStatementRows)
+        || (maxPendingRows > 0 && pendingRows >= maxPendingRows)
+        || (maxPendingBytes > 0 && pendingBytes >= maxPendingBytes);
+  }
+
+  /**
+   * 执行所有待处理的批次。结果交给 {@link BatchFlushListener}，没有配置监听器时只保留汇总结果，
+   * 参数对象不再被引用，从而让大批量写入只占用有限的内存。
+   */
+  private void autoFlush() throws SQLException {
+    List<BatchResult> results = executeBatches(false);
+    BatchFlushListener listener = configuration.getBatchFlushListener();
+    if (listener != null) {
+      listener.onFlush(results);
+      return;
+    }
+    for (BatchResult result : results) {
+      CacheKey key = new CacheKey(new Object[] { result.getMappedStatement(), result.getSql() });
+      BatchResult summary = flushedSummaries.get(key);
+      if (summary == null) {
+        summary = new BatchResult(result.getMappedStatement(), result.getSql());
+        summary.setUpdateCounts(new int[] { 0 });
+        flushedSummaries.put(key, summary);
+      }
+      summary.getUpdateCounts()[0] = sumUpdateCounts(summary.getUpdateCounts()[0], result.getUpdateCounts());
+    }
+  }
+
+  /**
+   * 累加更新数，只要有一行的更新数未知（SUCCESS_NO_INFO），总数就是未知的
+   */
+  private static int sumUpdateCounts(int total, int[] updateCounts) {
+    for (int count : updateCounts) {
+      if (total == Statement.SUCCESS_NO_INFO || count == Statement.SUCCESS_NO_INFO) {
+        total = Statement.SUCCESS_NO_INFO;
+      } else {
+        total += count;
+      }
+    }
+    return total;
+  }
+
+  /**
+   * 粗略估算一行参数占用的字节数：字符串按每个字符两字节，字节数组按长度，其它值按16字节
+   */
+  private long estimateBytes(BoundSql boundSql, Object parameterObject) {
+    long bytes = 0;
+    MetaObject metaObject = null;
+    for (ParameterMapping parameterMapping : boundSql.getParameterMappings()) {
+      String propertyName = parameterMapping.getProperty();
+      Object value;
+      if (boundSql.hasAdditionalParameter(propertyName)) {
+        value = boundSql.getAdditionalParameter(propertyName);
+      } else if (parameterObject == null) {
+        value = null;
+      } else if (configuration.getTypeHandlerRegistry().hasTypeHandler(parameterObject.getClass())) {
+        value = parameterObject;
+      } else {
+        if (metaObject == null) {
+          metaObject = configuration.newMetaObject(parameterObject);
+        }
+        value = metaObject.getValue(propertyName);
+      }
+      if (value instanceof CharSequence) {
+        bytes += ((CharSequence) value).length() * 2L;
+      } else if (value instanceof byte[]) {
+        bytes += ((byte[]) value).length;
+      } else {
+        bytes += 16;
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * 查找可以追加当前语句的批次
+   *
+   * @return 批次在 statementList 中的下标，没有可追加的批次时返回-1
+   */
+  private int batchIndexOf(MappedStatement ms, String sql) {
+    if (sql.equals(currentSql) && ms.equals(currentStatement)) {
+      return statementList.size() - 1;
+    }
+    BatchGrouping grouping = ms.getConfiguration().getBatchGrouping();
+    if (grouping == BatchGrouping.NONE) {
+      return -1;
+    }
+    Integer index = statementIndexes.get(new CacheKey(new Object[] { ms, sql }));
+    if (index == null) {
+      return -1;
+    }
+    if (grouping == BatchGrouping.ORDERED) {
+      // 追加到之前的批次相当于把这条语句提前到之后开启的批次之前执行，
+      // 只有都是 INSERT 时才认为提前是安全的（先出现的表视为被依赖的一方）
+      for (int i = index; i < batchResultList.size(); i++) {
+        if (batchResultList.get(i).getMappedStatement().getSqlCommandType() != SqlCommandType.INSERT) {
+          return -1;
+        }
+      }
+    }
+    return index;
+  }
+
   @Override
   public <E> List<E> doQuery(MappedStatement ms, Object parameterObject, RowBounds rowBounds, ResultHandler resultHandler, BoundSql boundSql)
       throws SQLException {
@@ -87,7 +326,7 @@ public class BatchExecutor extends BaseExecutor {
       flushStatements();
       Configuration configuration = ms.getConfiguration();
       StatementHandler handler = configuration.newStatementHandler(wrapper, ms, parameterObject, rowBounds, resultHandler, boundSql);
-      Connection connection = getConnection(ms.getStatementLog());
+      Connection connection = getConnection(ms);
       stmt = handler.prepare(connection, transaction.getTimeout());
       handler.parameterize(stmt);
       return handler.query(stmt, resultHandler);
@@ -101,7 +340,7 @@ public class BatchExecutor extends BaseExecutor {
     flushStatements();
     Configuration configuration = ms.getConfiguration();
     StatementHandler handler = configuration.newStatementHandler(wrapper, ms, parameter, rowBounds, null, boundSql);
-    Connection connection = getConnection(ms.getStatementLog());
+    Connection connection = getConnection(ms);
     Statement stmt = handler.prepare(connection, transaction.getTimeout());
     handler.parameterize(stmt);
     Cursor<E> cursor = handler.queryCursor(stmt);
@@ -111,6 +350,21 @@ public class BatchExecutor extends BaseExecutor {
 
   @Override
   public List<BatchResult> doFlushStatements(boolean isRollback) throws SQLException {
+    if (flushedSummaries.isEmpty()) {
+      return executeBatches(isRollback);
+    }
+    // 自动刷新的汇总结果排在本次执行的批次之前
+    List<BatchResult> results = new ArrayList<>(flushedSummaries.values());
+    flushedSummaries.clear();
+    if (isRollback) {
+      executeBatches(true);
+      return Collections.emptyList();
+    }
+    results.addAll(executeBatches(false));
+    return results;
+  }
+
+  private List<BatchResult> executeBatches(boolean isRollback) throws SQLException {
     try {
       List<BatchResult> results = new ArrayList<>();
       if (isRollback) {
@@ -118,12 +372,24 @@ public class BatchExecutor extends BaseExecutor {
       }
       for (int i = 0, n = statementList.size(); i < n; i++) {
         Statement stmt = statementList.get(i);
-        applyTransactionTimeout(stmt);
         BatchResult batchResult = batchResultList.get(i);
         try {
-          batchResult.setUpdateCounts(stmt.executeBatch());
+          MultiRowInsert multiRowInsert = multiRowInsertList.get(i);
+          if (multiRowInsert != null) {
+            batchResult.setUpdateCounts(executeMultiRowInsert(batchResult, multiRowInsert));
+            results.add(batchResult);
+            continue;
+          }
+          applyTransactionTimeout(stmt);
           MappedStatement ms = batchResult.getMappedStatement();
           List<Object> parameterObjects = batchResult.getParameterObjects();
+          StatementMetrics metrics = metricsOf(ms);
+          long start = metrics != null ? System.nanoTime() : 0L;
+          batchResult.setUpdateCounts(stmt.executeBatch());
+          if (metrics != null) {
+            metrics.recordLatency(StatementPhase.EXECUTE, System.nanoTime() - start);
+            metrics.recordBatch(parameterObjects.size());
+          }
           KeyGenerator keyGenerator = ms.getKeyGenerator();
           if (Jdbc3KeyGenerator.class.equals(keyGenerator.getClass())) {
             Jdbc3KeyGenerator jdbc3KeyGenerator = (Jdbc3KeyGenerator) keyGenerator;
@@ -136,6 +402,10 @@ public class BatchExecutor extends BaseExecutor {
           // Close statement to close cursor #1109
           closeStatement(stmt);
         } catch (BatchUpdateException e) {
+          StatementMetrics metrics = metricsOf(batchResult.getMappedStatement());
+          if (metrics != null) {
+            metrics.recordError(e);
+          }
           StringBuilder message = new StringBuilder();
           message.append(batchResult.getMappedStatement().getId())
               .append(" (batch index #")
@@ -157,7 +427,11 @@ public class BatchExecutor extends BaseExecutor {
         closeStatement(stmt);
       }
       currentSql = null;
+      statementIndexes.clear();
       statementList.clear();
+      multiRowInsertList.clear();
+      pendingRows = 0;
+      pendingBytes = 0;
       batchResultList.clear();
     }
   }
@@ -0,0 +1,36 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.util.List;
+
+/**
+ * 接收 BATCH 执行器自动刷新的批处理结果。
+ * <p>
+ * 配置后，达到 {@code batchMaxStatementRows}、{@code batchMaxPendingRows} 或 {@code batchMaxPendingBytes}
+ * 阈值时自动执行的批次结果会交给监听器，执行器不再保留这些结果。
+ */
+public interface BatchFlushListener {
+
+  /**
+   * 自动刷新完成后调用
+   *
+   * @param results
+   *          本次刷新执行的批次结果，包含参数对象和每行的更新数
+   */
+  void onFlush(List<BatchResult> results);
+
+}
@@ -30,6 +30,7 @@ import org.apache.ibatis.mapping.StatementType;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.trace.TraceListener;
 import org.apache.ibatis.transaction.Transaction;
 
 /**
@@ -105,6 +106,10 @@ public class CachingExecutor implements Executor {
         // 获取二级缓存
         @SuppressWarnings("unchecked")
         List<E> list = (List<E>) tcm.getObject(cache, key);
+        TraceListener tracer = ms.getConfiguration().getTraceListener();
+        if (tracer != null) {
+          tracer.cacheLookup(cache.getId(), ms.getId(), list != null);
+        }
         if (list == null) {
           list = delegate.query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
           // issue #578 and #116
@@ -159,11 +164,59 @@ public class CachingExecutor implements Executor {
     return delegate.isCached(ms, key);
   }
 
+  @Override
+  public Object getCachedResult(MappedStatement ms, CacheKey key, BoundSql boundSql) {
+    Cache cache = ms.getCache();
+    if (cache == null) {
+      return null;
+    }
+    // 与query一致，否则flushCache的语句会读到selectOne不会返回的结果
+    flushCacheIfRequired(ms);
+    if (!ms.isUseCache()) {
+      return null;
+    }
+    ensureNoOutParams(ms, boundSql);
+    Object result = tcm.getObject(cache, key);
+    TraceListener tracer = ms.getConfiguration().getTraceListener();
+    if (tracer != null) {
+      tracer.cacheLookup(cache.getId(), ms.getId(), result != null);
+    }
+    return result;
+  }
+
+  @Override
+  public void putCachedResult(MappedStatement ms, CacheKey key, Object result) {
+    Cache cache = ms.getCache();
+    if (cache != null && ms.isUseCache()) {
+      tcm.putObject(cache, key, result);
+    }
+  }
+
   @Override
   public void deferLoad(MappedStatement ms, MetaObject resultObject, String property, CacheKey key, Class<?> targetType) {
     delegate.deferLoad(ms, resultObject, property, key, targetType);
   }
 
+  @Override
+  public boolean hasWritten() {
+    return delegate.hasWritten();
+  }
+
+  @Override
+  public void markWritten() {
+    delegate.markWritten();
+  }
+
+  @Override
+  public IdentityMap getIdentityMap() {
+    return delegate.getIdentityMap();
+  }
+
+  @Override
+  public EntitySnapshots getEntitySnapshots() {
+    return delegate.getEntitySnapshots();
+  }
+
   @Override
   public void clearLocalCache() {
     delegate.clearLocalCache();
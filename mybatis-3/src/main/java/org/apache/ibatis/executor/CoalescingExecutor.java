@@ -0,0 +1,159 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.transaction.Transaction;
+
+/**
+ * 包装具体的Executor，把查询交给 {@link QueryCoalescer}，与其它会话中同时执行的相同查询合并。
+ * <p>
+ * 只合并 useCache 为true、不刷新缓存、没有嵌套查询的普通 select；当前事务执行过写操作后直到提交或回滚都不合并，
+ * 以保证读到自己写入的数据。
+ */
+public class CoalescingExecutor implements Executor {
+
+  private final Executor delegate;
+  private final QueryCoalescer coalescer;
+
+  public CoalescingExecutor(Executor delegate, QueryCoalescer coalescer) {
+    this.delegate = delegate;
+    this.coalescer = coalescer;
+    delegate.setExecutorWrapper(this);
+  }
+
+  @Override
+  public Transaction getTransaction() {
+    return delegate.getTransaction();
+  }
+
+  @Override
+  public void close(boolean forceRollback) {
+    delegate.close(forceRollback);
+  }
+
+  @Override
+  public boolean isClosed() {
+    return delegate.isClosed();
+  }
+
+  @Override
+  public int update(MappedStatement ms, Object parameter) throws SQLException {
+    return delegate.update(ms, parameter);
+  }
+
+  @Override
+  public <E> Cursor<E> queryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds) throws SQLException {
+    return delegate.queryCursor(ms, parameter, rowBounds);
+  }
+
+  @Override
+  public <E> List<E> query(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler) throws SQLException {
+    BoundSql boundSql = ms.getBoundSql(parameter);
+    CacheKey key = createCacheKey(ms, parameter, rowBounds, boundSql);
+    return query(ms, parameter, rowBounds, resultHandler, key, boundSql);
+  }
+
+  @Override
+  public <E> List<E> query(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler,
+      CacheKey key, BoundSql boundSql) throws SQLException {
+    if (delegate.hasWritten() || resultHandler != null || !isCoalescable(ms)) {
+      return delegate.query(ms, parameter, rowBounds, resultHandler, key, boundSql);
+    }
+    return coalescer.execute(key, () -> delegate.query(ms, parameter, rowBounds, null, key, boundSql));
+  }
+
+  private boolean isCoalescable(MappedStatement ms) {
+    if (ms.getSqlCommandType() != SqlCommandType.SELECT || !ms.isUseCache() || ms.isFlushCacheRequired()
+        || ms.getStatementType() == StatementType.CALLABLE) {
+      return false;
+    }
+    // 延迟加载的代理依赖执行查询的会话，嵌套结果映射中的延迟加载也一样
+    return !ms.hasNestedQueries();
+  }
+
+  @Override
+  public List<BatchResult> flushStatements() throws SQLException {
+    return delegate.flushStatements();
+  }
+
+  @Override
+  public void commit(boolean required) throws SQLException {
+    delegate.commit(required);
+  }
+
+  @Override
+  public void rollback(boolean required) throws SQLException {
+    delegate.rollback(required);
+  }
+
+  @Override
+  public CacheKey createCacheKey(MappedStatement ms, Object parameterObject, RowBounds rowBounds, BoundSql boundSql) {
+    return delegate.createCacheKey(ms, parameterObject, rowBounds, boundSql);
+  }
+
+  @Override
+  public boolean isCached(MappedStatement ms, CacheKey key) {
+    return delegate.isCached(ms, key);
+  }
+
+  @Override
+  public void deferLoad(MappedStatement ms, MetaObject resultObject, String property, CacheKey key, Class<?> targetType) {
+    delegate.deferLoad(ms, resultObject, property, key, targetType);
+  }
+
+  @Override
+  public boolean hasWritten() {
+    return delegate.hasWritten();
+  }
+
+  @Override
+  public void markWritten() {
+    delegate.markWritten();
+  }
+
+  @Override
+  public IdentityMap getIdentityMap() {
+    return delegate.getIdentityMap();
+  }
+
+  @Override
+  public EntitySnapshots getEntitySnapshots() {
+    return delegate.getEntitySnapshots();
+  }
+
+  @Override
+  public void clearLocalCache() {
+    delegate.clearLocalCache();
+  }
+
+  @Override
+  public void setExecutorWrapper(Executor executor) {
+    delegate.setExecutorWrapper(executor);
+  }
+
+}
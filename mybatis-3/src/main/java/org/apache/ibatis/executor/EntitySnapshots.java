@@ -0,0 +1,336 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ResultFlag;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.reflection.ReflectionException;
+import org.apache.ibatis.reflection.Reflector;
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * 会话内记录通过ResultMap加载的对象的原始列值，用于只更新发生变化的列。
+ * <p>
+ * 只记录显式声明了id的ResultMap中直接映射到列的简单属性（不含嵌套查询、嵌套映射和带点号的属性）。
+ * 生成的 update 语句使用ResultMap中的列名，所以这些列名需要与表中的列名一致。
+ * <p>
+ * 对象按引用弱引用记录，不再使用的对象可以被回收；事务提交或回滚后全部清空。
+ */
+public class EntitySnapshots {
+
+  private final Configuration configuration;
+  private final Map<EntityReference, Snapshot> snapshots = new HashMap<>();
+  private final ReferenceQueue<Object> collectedEntities = new ReferenceQueue<>();
+  // 批量执行的更新在flush成功后才刷新原始值
+  private final List<Snapshot> pendingRefreshes = new ArrayList<>();
+  private final Map<ResultMap, List<ResultMapping>> trackedMappings = new HashMap<>();
+  private final Map<Class<?>, Map<String, Field>> fields = new HashMap<>();
+
+  public EntitySnapshots(Configuration configuration) {
+    this.configuration = configuration;
+  }
+
+  /**
+   * 记录刚映射出的对象，已经记录过的对象保留原来的快照
+   */
+  public void take(ResultMap resultMap, Object entity) {
+    expungeCollectedEntities();
+    if (!resultMap.hasExplicitId() || isTracked(entity)) {
+      return;
+    }
+    List<ResultMapping> mappings = trackedMappings.computeIfAbsent(resultMap, this::resolveTrackedMappings);
+    if (!mappings.isEmpty()) {
+      snapshots.put(new EntityReference(entity, collectedEntities), new Snapshot(resultMap, mappings, read(entity, mappings)));
+    }
+  }
+
+  public boolean isTracked(Object entity) {
+    return snapshots.containsKey(new EntityReference(entity, null));
+  }
+
+  /**
+   * 生成只更新变化列的语句
+   *
+   * @return 没有变化时返回null
+   * @throws ExecutorException
+   *           对象不是在当前会话中通过声明了id的ResultMap加载的
+   */
+  public MappedStatement prepareUpdate(String table, Object entity) {
+    Snapshot snapshot = snapshots.get(new EntityReference(entity, null));
+    if (snapshot == null) {
+      throw new ExecutorException("Cannot find the original values of " + entity.getClass().getName()
+          + ". Only objects loaded in this session through a result map declaring an id can be updated by their changes.");
+    }
+    Object[] current = read(entity, snapshot.mappings);
+    StringBuilder changed = new StringBuilder();
+    List<ResultMapping> setMappings = new ArrayList<>();
+    for (int i = 0; i < current.length; i++) {
+      ResultMapping mapping = snapshot.mappings.get(i);
+      if (!isId(mapping) && !Objects.deepEquals(snapshot.values[i], current[i])) {
+        setMappings.add(mapping);
+        changed.append(i).append(',');
+      }
+    }
+    if (setMappings.isEmpty()) {
+      return null;
+    }
+    String id = snapshot.resultMap.getId() + "!update-changed!" + table + "!" + changed;
+    return configuration.getDirtyCheckingStatements().computeIfAbsent(id,
+        k -> buildUpdate(k, table, snapshot.resultMap, setMappings, snapshot.mappings));
+  }
+
+  /**
+   * 更新成功后以当前值作为新的原始值
+   */
+  public void refresh(Object entity) {
+    Snapshot snapshot = snapshots.get(new EntityReference(entity, null));
+    if (snapshot != null) {
+      snapshot.values = read(entity, snapshot.mappings);
+    }
+  }
+
+  /**
+   * 记录加入批量的更新写入的值，在 {@link #applyPendingRefreshes()} 时才作为新的原始值
+   */
+  public void refreshOnFlush(Object entity) {
+    Snapshot snapshot = snapshots.get(new EntityReference(entity, null));
+    if (snapshot != null) {
+      snapshot.pendingValues = read(entity, snapshot.mappings);
+      pendingRefreshes.add(snapshot);
+    }
+  }
+
+  /**
+   * 批量语句执行成功后调用
+   */
+  public void applyPendingRefreshes() {
+    for (Snapshot snapshot : pendingRefreshes) {
+      if (snapshot.pendingValues != null) {
+        snapshot.values = snapshot.pendingValues;
+        snapshot.pendingValues = null;
+      }
+    }
+    pendingRefreshes.clear();
+  }
+
+  /**
+   * 批量语句没有执行或执行失败时调用，保留原来的原始值
+   */
+  public void discardPendingRefreshes() {
+    for (Snapshot snapshot : pendingRefreshes) {
+      snapshot.pendingValues = null;
+    }
+    pendingRefreshes.clear();
+  }
+
+  /**
+   * 事务结束后数据库中的值可能被其它事务修改，清空所有记录
+   */
+  public void clear() {
+    snapshots.clear();
+    pendingRefreshes.clear();
+    while (collectedEntities.poll() != null) {
+      // 已回收对象的记录随上面的clear一起删除
+    }
+  }
+
+  public int size() {
+    expungeCollectedEntities();
+    return snapshots.size();
+  }
+
+  private void expungeCollectedEntities() {
+    Object reference;
+    while ((reference = collectedEntities.poll()) != null) {
+      snapshots.remove(reference);
+    }
+  }
+
+  private List<ResultMapping> resolveTrackedMappings(ResultMap resultMap) {
+    Reflector reflector = configuration.getReflectorFactory().findForClass(resultMap.getType());
+    List<ResultMapping> mappings = new ArrayList<>();
+    for (ResultMapping mapping : resultMap.getResultMappings()) {
+      String property = mapping.getProperty();
+      if (property == null || property.indexOf('.') >= 0 || mapping.getColumn() == null
+          || mapping.getNestedQueryId() != null || mapping.getNestedResultMapId() != null || mapping.getResultSet() != null
+          || !reflector.hasGetter(property)) {
+        if (isId(mapping)) {
+          // 无法读取id时不能生成where条件
+          return Collections.emptyList();
+        }
+        continue;
+      }
+      mappings.add(mapping);
+    }
+    return mappings;
+  }
+
+  /**
+   * 优先直接读取字段，避免延迟加载的代理对象在 aggressiveLazyLoading 下因调用getter而加载所有属性
+   */
+  private Object[] read(Object entity, List<ResultMapping> mappings) {
+    Reflector reflector = configuration.getReflectorFactory().findForClass(entity.getClass());
+    Object[] values = new Object[mappings.size()];
+    for (int i = 0; i < values.length; i++) {
+      String property = mappings.get(i).getProperty();
+      try {
+        Field field = findField(entity.getClass(), property);
+        Object value = field != null ? field.get(entity) : reflector.getGetInvoker(property).invoke(entity, null);
+        values[i] = copy(value);
+      } catch (IllegalAccessException | InvocationTargetException e) {
+        throw new ReflectionException("Could not read property '" + property + "' of " + entity.getClass().getName()
+            + ".  Cause: " + e, e);
+      }
+    }
+    return values;
+  }
+
+  private Field findField(Class<?> type, String property) {
+    Map<String, Field> typeFields = fields.computeIfAbsent(type, k -> new HashMap<>());
+    if (!typeFields.containsKey(property)) {
+      Field field = null;
+      for (Class<?> current = type; current != null && field == null; current = current.getSuperclass()) {
+        try {
+          field = current.getDeclaredField(property);
+          field.setAccessible(true);
+        } catch (NoSuchFieldException e) {
+          // 代理类的字段在父类中声明
+        } catch (SecurityException e) {
+          // 无法访问字段时使用getter
+          field = null;
+          break;
+        }
+      }
+      typeFields.put(property, field);
+    }
+    return typeFields.get(property);
+  }
+
+  /**
+   * 可变的值复制一份，避免原地修改后与快照相等
+   */
+  private static Object copy(Object value) {
+    if (value instanceof Date) {
+      return ((Date) value).clone();
+    }
+    if (value instanceof byte[]) {
+      return ((byte[]) value).clone();
+    }
+    return value;
+  }
+
+  private static boolean isId(ResultMapping mapping) {
+    return mapping.getFlags().contains(ResultFlag.ID);
+  }
+
+  private MappedStatement buildUpdate(String id, String table, ResultMap resultMap, List<ResultMapping> setMappings,
+      List<ResultMapping> mappings) {
+    StringBuilder sql = new StringBuilder("update ").append(table).append(" set ");
+    List<ParameterMapping> parameterMappings = new ArrayList<>();
+    for (ResultMapping mapping : setMappings) {
+      if (!parameterMappings.isEmpty()) {
+        sql.append(", ");
+      }
+      sql.append(mapping.getColumn()).append(" = ?");
+      parameterMappings.add(toParameterMapping(mapping));
+    }
+    String separator = " where ";
+    for (ResultMapping mapping : mappings) {
+      if (isId(mapping)) {
+        sql.append(separator).append(mapping.getColumn()).append(" = ?");
+        parameterMappings.add(toParameterMapping(mapping));
+        separator = " and ";
+      }
+    }
+    String namespace = resultMap.getId().substring(0, Math.max(resultMap.getId().lastIndexOf('.'), 0));
+    return new MappedStatement.Builder(configuration, id,
+        new StaticSqlSource(configuration, sql.toString(), parameterMappings), SqlCommandType.UPDATE)
+        .resource(resultMap.getId())
+        .flushCacheRequired(true)
+        .cache(configuration.hasCache(namespace) ? configuration.getCache(namespace) : null)
+        .build();
+  }
+
+  private ParameterMapping toParameterMapping(ResultMapping mapping) {
+    ParameterMapping.Builder builder = new ParameterMapping.Builder(configuration, mapping.getProperty(), mapping.getTypeHandler())
+        .jdbcType(mapping.getJdbcType());
+    if (mapping.getJavaType() != null) {
+      builder.javaType(mapping.getJavaType());
+    }
+    return builder.build();
+  }
+
+  private static class Snapshot {
+    private final ResultMap resultMap;
+    private final List<ResultMapping> mappings;
+    private Object[] values;
+    // 已加入批量、尚未执行的更新写入的值
+    private Object[] pendingValues;
+
+    Snapshot(ResultMap resultMap, List<ResultMapping> mappings, Object[] values) {
+      this.resultMap = resultMap;
+      this.mappings = mappings;
+      this.values = values;
+    }
+  }
+
+  /**
+   * 按对象引用比较的弱引用，作为快照的键
+   */
+  private static class EntityReference extends WeakReference<Object> {
+    private final int hash;
+
+    EntityReference(Object entity, ReferenceQueue<Object> queue) {
+      super(entity, queue);
+      this.hash = System.identityHashCode(entity);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof EntityReference)) {
+        return false;
+      }
+      Object entity = get();
+      return entity != null && entity == ((EntityReference) obj).get();
+    }
+  }
+
+}
@@ -53,8 +53,50 @@ public interface Executor {
 
   boolean isCached(MappedStatement ms, CacheKey key);
 
+  /**
+   * 读取语句在二级缓存中的结果，不执行查询。与查询一样，flushCache 的语句会先清空缓存
+   *
+   * @return 缓存的结果列表，未命中或语句没有使用二级缓存时返回null
+   */
+  default Object getCachedResult(MappedStatement ms, CacheKey key, BoundSql boundSql) {
+    return null;
+  }
+
+  /**
+   * 把不是由该语句查询得到的结果放入它的二级缓存，与查询结果一样在事务提交后生效
+   */
+  default void putCachedResult(MappedStatement ms, CacheKey key, Object result) {
+  }
+
   void clearLocalCache();
 
+  /**
+   * @return 当前事务中是否已执行过写操作，提交或回滚后重置
+   */
+  default boolean hasWritten() {
+    return false;
+  }
+
+  /**
+   * 标记当前事务已有写操作，之后的查询不再读只读副本
+   */
+  default void markWritten() {
+  }
+
+  /**
+   * @return 会话内的identity map，未启用时返回null
+   */
+  default IdentityMap getIdentityMap() {
+    return null;
+  }
+
+  /**
+   * @return 会话内加载对象的原始值，未启用dirtyChecking时返回null
+   */
+  default EntitySnapshots getEntitySnapshots() {
+    return null;
+  }
+
   void deferLoad(MappedStatement ms, MetaObject resultObject, String property, CacheKey key, Class<?> targetType);
 
   Transaction getTransaction();
@@ -0,0 +1,112 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.reflection.KeyValueUtil;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * 会话内按 (ResultMap的id, id列的值) 记录已经映射出的对象。
+ * <p>
+ * 使用同一个ResultMap的不同语句查出的同一行映射为同一个对象，标记了 identityLookup 的按id查询在对象已存在时不访问数据库。
+ * 按ResultMap而不是结果类型区分，避免只映射了部分列的对象被映射更多列的ResultMap复用。
+ * 只有显式声明了id的ResultMap参与，与一级缓存一起在增删改、提交、回滚时清空。
+ * <p>
+ * 不是线程安全的，只能在会话的线程中使用。
+ */
+public class IdentityMap {
+
+  private final Map<CacheKey, Object> objects = new HashMap<>();
+
+  /**
+   * @param ids
+   *          按ResultMap中id映射的顺序排列的属性值
+   */
+  public Object get(ResultMap resultMap, List<Object> ids) {
+    return objects.get(createKey(resultMap, ids));
+  }
+
+  /**
+   * 同一个实体已经存在时保留先映射出的对象
+   */
+  public void put(ResultMap resultMap, List<Object> ids, Object object) {
+    objects.putIfAbsent(createKey(resultMap, ids), object);
+  }
+
+  /**
+   * 从按id查询的参数中取出id的值并查找实体
+   *
+   * @return 找到的实体，语句不是按id查询或参数中没有完整的id时返回null
+   */
+  public Object lookup(MappedStatement ms, Object parameter) {
+    if (!ms.isIdentityLookup() || parameter == null || ms.getResultMaps().size() != 1) {
+      return null;
+    }
+    ResultMap resultMap = ms.getResultMaps().get(0);
+    if (!resultMap.hasExplicitId()) {
+      return null;
+    }
+    List<ResultMapping> idMappings = resultMap.getIdResultMappings();
+    Configuration configuration = ms.getConfiguration();
+    CacheKey key = new CacheKey();
+    key.update(resultMap.getId());
+    if (idMappings.size() == 1 && configuration.getTypeHandlerRegistry().hasTypeHandler(parameter.getClass())) {
+      // 参数的类型可能与id属性不同，例如long参数与Integer的id
+      key.update(KeyValueUtil.normalize(parameter));
+    } else {
+      MetaObject metaParameter = configuration.newMetaObject(parameter);
+      for (ResultMapping idMapping : idMappings) {
+        String property = idMapping.getProperty();
+        if (property == null || !metaParameter.hasGetter(property)) {
+          return null;
+        }
+        Object value = metaParameter.getValue(property);
+        if (value == null) {
+          return null;
+        }
+        key.update(KeyValueUtil.normalize(value));
+      }
+    }
+    return objects.get(key);
+  }
+
+  public int size() {
+    return objects.size();
+  }
+
+  public void clear() {
+    objects.clear();
+  }
+
+  private static CacheKey createKey(ResultMap resultMap, List<Object> ids) {
+    CacheKey key = new CacheKey();
+    key.update(resultMap.getId());
+    for (Object id : ids) {
+      key.update(KeyValueUtil.normalize(id));
+    }
+    return key;
+  }
+
+}
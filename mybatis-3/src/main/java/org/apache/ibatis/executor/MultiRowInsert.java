@@ -0,0 +1,198 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.ibatis.scripting.defaults.DefaultParameterHandler;
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * 把批量执行的单行 INSERT ... VALUES (...) 改写为多行 VALUES 语句。
+ */
+final class MultiRowInsert {
+
+  private static final Pattern SIMPLE_INSERT = Pattern.compile(
+      "^\\s*insert\\s+into\\s+[\\w.\"`\\[\\]]+\\s*(\\([^()]*\\))?\\s*values\\s*\\(", Pattern.CASE_INSENSITIVE);
+
+  /**
+   * 一条语句最多包含的行数（SQL Server 对 VALUES 列表的限制）
+   */
+  static final int MAX_ROWS = 1000;
+
+  /**
+   * 各数据库一条语句允许的参数个数上限，按 databaseId 查找，0 表示不支持多行 VALUES
+   */
+  private static final Map<String, Integer> MAX_PARAMETERS = new HashMap<>();
+
+  static {
+    MAX_PARAMETERS.put("sqlserver", 2100);
+    MAX_PARAMETERS.put("microsoft sql server", 2100);
+    MAX_PARAMETERS.put("postgres", 32767);
+    MAX_PARAMETERS.put("postgresql", 32767);
+    MAX_PARAMETERS.put("mysql", 65535);
+    MAX_PARAMETERS.put("mariadb", 65535);
+    MAX_PARAMETERS.put("h2", 65535);
+    MAX_PARAMETERS.put("hsql", 65535);
+    MAX_PARAMETERS.put("sqlite", 999);
+    MAX_PARAMETERS.put("oracle", 0);
+  }
+
+  private static final int DEFAULT_MAX_PARAMETERS = 1000;
+
+  /**
+   * 多行 INSERT 后 getGeneratedKeys 只返回最后一行主键的数据库（SQL Server 基于 SCOPE_IDENTITY）
+   */
+  private static final Set<String> SINGLE_GENERATED_KEY = new HashSet<>(Arrays.asList("sqlserver", "microsoft sql server"));
+
+  private final String head;
+  private final String values;
+  private final String tail;
+  private final int parametersPerRow;
+  private final int maxRows;
+  /**
+   * 加入批次时取出的每行参数，执行时依次绑定到改写后的语句
+   */
+  private final List<Row> rows = new ArrayList<>();
+
+  private MultiRowInsert(String head, String values, String tail, int parametersPerRow, int maxRows) {
+    this.head = head;
+    this.values = values;
+    this.tail = tail;
+    this.parametersPerRow = parametersPerRow;
+    this.maxRows = maxRows;
+  }
+
+  /**
+   * 解析 INSERT 语句，只有 VALUES 后面只有一组括号（可以以分号结尾）时才能改写
+   *
+   * @return 无法改写时返回 null
+   */
+  static MultiRowInsert parse(String sql, int parametersPerRow, int maxRows) {
+    Matcher matcher = SIMPLE_INSERT.matcher(sql);
+    if (!matcher.find()) {
+      return null;
+    }
+    int start = matcher.end() - 1;
+    int depth = 0;
+    boolean quoted = false;
+    for (int i = start; i < sql.length(); i++) {
+      char c = sql.charAt(i);
+      if (c == '\'') {
+        quoted = !quoted;
+      } else if (!quoted && c == '(') {
+        depth++;
+      } else if (!quoted && c == ')' && --depth == 0) {
+        String tail = sql.substring(i + 1);
+        if (!tail.trim().isEmpty() && !";".equals(tail.trim())) {
+          return null;
+        }
+        return new MultiRowInsert(sql.substring(0, start), sql.substring(start, i + 1), tail, parametersPerRow, maxRows);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * 立即取出这一行的参数值，与 addBatch 一样不受参数对象之后的修改影响
+   */
+  void addRow(DefaultParameterHandler parameterHandler) {
+    rows.add(new Row(parameterHandler, parameterHandler.getParameterValues()));
+  }
+
+  List<Row> getRows() {
+    return rows;
+  }
+
+  int getParametersPerRow() {
+    return parametersPerRow;
+  }
+
+  int getMaxRows() {
+    return maxRows;
+  }
+
+  /**
+   * 生成包含指定行数的 INSERT 语句
+   */
+  String rewrite(int rows) {
+    StringBuilder sql = new StringBuilder(head.length() + (values.length() + 1) * rows + tail.length());
+    sql.append(head);
+    for (int i = 0; i < rows; i++) {
+      if (i > 0) {
+        sql.append(',');
+      }
+      sql.append(values);
+    }
+    return sql.append(tail).toString();
+  }
+
+  /**
+   * @return 多行 INSERT 后驱动能否返回每一行生成的主键
+   */
+  static boolean returnsAllGeneratedKeys(Configuration configuration) {
+    String databaseId = configuration.getDatabaseId();
+    return databaseId == null || !SINGLE_GENERATED_KEY.contains(databaseId.toLowerCase(Locale.ENGLISH));
+  }
+
+  /**
+   * 一条改写后的语句最多包含的行数
+   *
+   * @param parametersPerRow
+   *          每行的参数个数
+   * @return 小于2时表示不应改写
+   */
+  static int maxRows(Configuration configuration, int parametersPerRow) {
+    int maxParameters = configuration.getBatchInsertRewriteMaxParameters();
+    if (maxParameters <= 0) {
+      String databaseId = configuration.getDatabaseId();
+      Integer limit = databaseId == null ? null : MAX_PARAMETERS.get(databaseId.toLowerCase(Locale.ENGLISH));
+      maxParameters = limit == null ? DEFAULT_MAX_PARAMETERS : limit;
+    }
+    if (parametersPerRow == 0) {
+      return maxParameters == 0 ? 0 : MAX_ROWS;
+    }
+    return Math.min(maxParameters / parametersPerRow, MAX_ROWS);
+  }
+
+  /**
+   * 一行的参数值，以及绑定它们使用的参数处理器（提供参数映射和TypeHandler）
+   */
+  static final class Row {
+    private final DefaultParameterHandler parameterHandler;
+    private final Object[] values;
+
+    Row(DefaultParameterHandler parameterHandler, Object[] values) {
+      this.parameterHandler = parameterHandler;
+      this.values = values;
+    }
+
+    void bind(PreparedStatement ps, int offset) {
+      parameterHandler.setParameters(ps, offset, values);
+    }
+  }
+
+}
@@ -0,0 +1,148 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.decorators.SerializedCache.CustomObjectInputStream;
+
+/**
+ * 合并不同会话中同时执行的相同查询。
+ * <p>
+ * 第一个到达的查询访问数据库，执行期间到达的、CacheKey 相同的查询等待它的结果，各自拿到一份反序列化出来的副本，
+ * 互不影响。结果无法序列化或第一个查询失败时，等待的查询各自访问数据库。
+ */
+public class QueryCoalescer {
+
+  private final Map<CacheKey, InFlight> inFlight = new ConcurrentHashMap<>();
+  private final LongAdder coalesced = new LongAdder();
+
+  @FunctionalInterface
+  public interface Query<E> {
+    List<E> execute() throws SQLException;
+  }
+
+  public <E> List<E> execute(CacheKey key, Query<E> query) throws SQLException {
+    InFlight mine = new InFlight();
+    InFlight running = inFlight.putIfAbsent(key, mine);
+    if (running == null) {
+      List<E> result = null;
+      try {
+        result = query.execute();
+        return result;
+      } finally {
+        inFlight.remove(key, mine);
+        // 只在有查询等待时复制结果
+        mine.complete(mine.close() && result != null ? serialize(result) : null);
+      }
+    }
+    if (running.owner == Thread.currentThread() || !running.join()) {
+      // 同一线程内嵌套的相同查询，等待自己会死锁；第一个查询已经结束时不再等待
+      return query.execute();
+    }
+    byte[] copy = running.await();
+    if (copy == null) {
+      return query.execute();
+    }
+    coalesced.increment();
+    return deserialize(copy);
+  }
+
+  /**
+   * @return 没有访问数据库、直接使用了其它会话结果的查询次数
+   */
+  public long getCoalescedCount() {
+    return coalesced.sum();
+  }
+
+  private static byte[] serialize(Object value) {
+    try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+      oos.writeObject(value);
+      oos.flush();
+      return bos.toByteArray();
+    } catch (Exception e) {
+      // 结果不能序列化时不共享
+      return null;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <E> List<E> deserialize(byte[] value) {
+    try (ByteArrayInputStream bis = new ByteArrayInputStream(value);
+        ObjectInputStream ois = new CustomObjectInputStream(bis)) {
+      return (List<E>) ois.readObject();
+    } catch (Exception e) {
+      throw new ExecutorException("Error copying coalesced query results.  Cause: " + e, e);
+    }
+  }
+
+  private static final class InFlight {
+    private final Thread owner = Thread.currentThread();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile byte[] copy;
+    private int followers;
+    private boolean closed;
+
+    /**
+     * 登记一个等待结果的查询
+     *
+     * @return 第一个查询已经结束、不再接受等待时返回false
+     */
+    synchronized boolean join() {
+      if (closed) {
+        return false;
+      }
+      followers++;
+      return true;
+    }
+
+    /**
+     * 第一个查询结束后调用，之后不再接受等待
+     *
+     * @return 是否有查询在等待结果
+     */
+    synchronized boolean close() {
+      closed = true;
+      return followers > 0;
+    }
+
+    void complete(byte[] copy) {
+      this.copy = copy;
+      done.countDown();
+    }
+
+    byte[] await() {
+      try {
+        done.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      }
+      return copy;
+    }
+  }
+}
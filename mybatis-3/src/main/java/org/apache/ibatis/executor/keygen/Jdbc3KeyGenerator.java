@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -37,11 +38,12 @@ import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.reflection.ArrayUtil;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.ParamNameResolver;
+import org.apache.ibatis.reflection.ReflectionException;
+import org.apache.ibatis.reflection.invoker.Invoker;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.defaults.DefaultSqlSession.StrictMap;
 import org.apache.ibatis.type.JdbcType;
 import org.apache.ibatis.type.TypeHandler;
-import org.apache.ibatis.type.TypeHandlerRegistry;
 
 /**
  * @author Clinton Begin
@@ -82,38 +84,55 @@ public class Jdbc3KeyGenerator implements KeyGenerator {
       if (rsmd.getColumnCount() < keyProperties.length) {
         // Error?
       } else {
-        assignKeys(configuration, rs, rsmd, keyProperties, parameter);
+        assignKeys(configuration, rs, rsmd, planFor(ms), parameter);
       }
     } catch (Exception e) {
       throw new ExecutorException("Error getting generated key or setting result to parameter object. Cause: " + e, e);
     }
   }
 
+  /**
+   * 主键回填计划保存在语句上，共享的 {@link #INSTANCE} 不持有任何 Configuration 中的类
+   */
+  private KeyAssignmentPlan planFor(MappedStatement ms) {
+    Object state = ms.getKeyGeneratorState();
+    if (state instanceof KeyAssignmentPlan) {
+      return (KeyAssignmentPlan) state;
+    }
+    KeyAssignmentPlan plan = new KeyAssignmentPlan(ms.getKeyProperties());
+    ms.setKeyGeneratorState(plan);
+    return plan;
+  }
+
   @SuppressWarnings("unchecked")
-  private void assignKeys(Configuration configuration, ResultSet rs, ResultSetMetaData rsmd, String[] keyProperties,
+  private void assignKeys(Configuration configuration, ResultSet rs, ResultSetMetaData rsmd, KeyAssignmentPlan plan,
       Object parameter) throws SQLException {
     if (parameter instanceof ParamMap || parameter instanceof StrictMap) {
       // Multi-param or single param with @Param
-      assignKeysToParamMap(configuration, rs, rsmd, keyProperties, (Map<String, ?>) parameter);
+      assignKeysToParamMap(configuration, rs, rsmd, plan, (Map<String, ?>) parameter);
     } else if (parameter instanceof ArrayList && !((ArrayList<?>) parameter).isEmpty()
         && ((ArrayList<?>) parameter).get(0) instanceof ParamMap) {
       // Multi-param or single param with @Param in batch operation
-      assignKeysToParamMapList(configuration, rs, rsmd, keyProperties, (ArrayList<ParamMap<?>>) parameter);
+      assignKeysToParamMapList(configuration, rs, rsmd, plan, (ArrayList<ParamMap<?>>) parameter);
     } else {
       // Single param without @Param
-      assignKeysToParam(configuration, rs, rsmd, keyProperties, parameter);
+      assignKeysToParam(configuration, rs, rsmd, plan, parameter);
     }
   }
 
   private void assignKeysToParam(Configuration configuration, ResultSet rs, ResultSetMetaData rsmd,
-      String[] keyProperties, Object parameter) throws SQLException {
+      KeyAssignmentPlan plan, Object parameter) throws SQLException {
     Collection<?> params = collectionize(parameter);
     if (params.isEmpty()) {
       return;
     }
-    List<KeyAssigner> assignerList = new ArrayList<>();
-    for (int i = 0; i < keyProperties.length; i++) {
-      assignerList.add(new KeyAssigner(configuration, rsmd, i + 1, null, keyProperties[i]));
+    List<KeyAssigner> assignerList = plan.paramAssigners;
+    if (assignerList == null) {
+      assignerList = new ArrayList<>();
+      for (int i = 0; i < plan.keyProperties.length; i++) {
+        assignerList.add(new KeyAssigner(i + 1, null, plan.keyProperties[i]));
+      }
+      plan.paramAssigners = assignerList;
     }
     Iterator<?> iterator = params.iterator();
     while (rs.next()) {
@@ -121,59 +140,80 @@ public class Jdbc3KeyGenerator implements KeyGenerator {
         throw new ExecutorException(String.format(MSG_TOO_MANY_KEYS, params.size()));
       }
       Object param = iterator.next();
-      assignerList.forEach(x -> x.assign(rs, param));
+      for (KeyAssigner assigner : assignerList) {
+        assigner.assign(configuration, rs, rsmd, param);
+      }
     }
   }
 
   private void assignKeysToParamMapList(Configuration configuration, ResultSet rs, ResultSetMetaData rsmd,
-      String[] keyProperties, ArrayList<ParamMap<?>> paramMapList) throws SQLException {
+      KeyAssignmentPlan plan, ArrayList<ParamMap<?>> paramMapList) throws SQLException {
     Iterator<ParamMap<?>> iterator = paramMapList.iterator();
-    List<KeyAssigner> assignerList = new ArrayList<>();
+    List<KeyAssigner> assignerList = null;
     long counter = 0;
     while (rs.next()) {
       if (!iterator.hasNext()) {
         throw new ExecutorException(String.format(MSG_TOO_MANY_KEYS, counter));
       }
       ParamMap<?> paramMap = iterator.next();
-      if (assignerList.isEmpty()) {
-        for (int i = 0; i < keyProperties.length; i++) {
-          assignerList
-              .add(getAssignerForParamMap(configuration, rsmd, i + 1, paramMap, keyProperties[i], keyProperties, false)
-                  .getValue());
+      if (assignerList == null) {
+        ParamMapAssigners<List<KeyAssigner>> cached = plan.paramMapListAssigners;
+        if (cached == null || !cached.paramNames.equals(paramMap.keySet())) {
+          List<KeyAssigner> assigners = new ArrayList<>();
+          for (int i = 0; i < plan.keyProperties.length; i++) {
+            assigners.add(getAssignerForParamMap(rsmd, i + 1, paramMap, plan.keyProperties[i], plan.keyProperties, false)
+                .getValue());
+          }
+          cached = new ParamMapAssigners<>(paramMap.keySet(), assigners);
+          plan.paramMapListAssigners = cached;
         }
+        assignerList = cached.assigners;
+      }
+      for (KeyAssigner assigner : assignerList) {
+        assigner.assign(configuration, rs, rsmd, paramMap);
       }
-      assignerList.forEach(x -> x.assign(rs, paramMap));
       counter++;
     }
   }
 
   private void assignKeysToParamMap(Configuration configuration, ResultSet rs, ResultSetMetaData rsmd,
-      String[] keyProperties, Map<String, ?> paramMap) throws SQLException {
+      KeyAssignmentPlan plan, Map<String, ?> paramMap) throws SQLException {
     if (paramMap.isEmpty()) {
       return;
     }
-    Map<String, Entry<Iterator<?>, List<KeyAssigner>>> assignerMap = new HashMap<>();
-    for (int i = 0; i < keyProperties.length; i++) {
-      Entry<String, KeyAssigner> entry = getAssignerForParamMap(configuration, rsmd, i + 1, paramMap, keyProperties[i],
-          keyProperties, true);
-      Entry<Iterator<?>, List<KeyAssigner>> iteratorPair = assignerMap.computeIfAbsent(entry.getKey(),
-          k -> entry(collectionize(paramMap.get(k)).iterator(), new ArrayList<>()));
-      iteratorPair.getValue().add(entry.getValue());
+    ParamMapAssigners<List<Entry<String, List<KeyAssigner>>>> cached = plan.paramMapAssigners;
+    if (cached == null || !cached.paramNames.equals(paramMap.keySet())) {
+      Map<String, List<KeyAssigner>> assignerMap = new HashMap<>();
+      for (int i = 0; i < plan.keyProperties.length; i++) {
+        Entry<String, KeyAssigner> entry = getAssignerForParamMap(rsmd, i + 1, paramMap, plan.keyProperties[i],
+            plan.keyProperties, true);
+        assignerMap.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(entry.getValue());
+      }
+      List<Entry<String, List<KeyAssigner>>> assigners = new ArrayList<>();
+      assignerMap.forEach((paramName, list) -> assigners.add(entry(paramName, list)));
+      cached = new ParamMapAssigners<>(paramMap.keySet(), assigners);
+      plan.paramMapAssigners = cached;
+    }
+    List<Entry<Iterator<?>, List<KeyAssigner>>> iteratorPairs = new ArrayList<>(cached.assigners.size());
+    for (Entry<String, List<KeyAssigner>> entry : cached.assigners) {
+      iteratorPairs.add(entry(collectionize(paramMap.get(entry.getKey())).iterator(), entry.getValue()));
     }
     long counter = 0;
     while (rs.next()) {
-      for (Entry<Iterator<?>, List<KeyAssigner>> pair : assignerMap.values()) {
+      for (Entry<Iterator<?>, List<KeyAssigner>> pair : iteratorPairs) {
         if (!pair.getKey().hasNext()) {
           throw new ExecutorException(String.format(MSG_TOO_MANY_KEYS, counter));
         }
         Object param = pair.getKey().next();
-        pair.getValue().forEach(x -> x.assign(rs, param));
+        for (KeyAssigner assigner : pair.getValue()) {
+          assigner.assign(configuration, rs, rsmd, param);
+        }
       }
       counter++;
     }
   }
 
-  private Entry<String, KeyAssigner> getAssignerForParamMap(Configuration config, ResultSetMetaData rsmd,
+  private Entry<String, KeyAssigner> getAssignerForParamMap(ResultSetMetaData rsmd,
       int columnPosition, Map<String, ?> paramMap, String keyProperty, String[] keyProperties, boolean omitParamName) {
     Set<String> keySet = paramMap.keySet();
     // A caveat : if the only parameter has {@code @Param("param2")} on it,
@@ -182,7 +222,7 @@ public class Jdbc3KeyGenerator implements KeyGenerator {
     int firstDot = keyProperty.indexOf('.');
     if (firstDot == -1) {
       if (singleParam) {
-        return getAssignerForSingleParam(config, rsmd, columnPosition, paramMap, keyProperty, omitParamName);
+        return getAssignerForSingleParam(columnPosition, paramMap, keyProperty, omitParamName);
       }
       throw new ExecutorException("Could not determine which parameter to assign generated keys to. "
           + "Note that when there are multiple parameters, 'keyProperty' must include the parameter name (e.g. 'param.id'). "
@@ -193,9 +233,9 @@ public class Jdbc3KeyGenerator implements KeyGenerator {
     if (keySet.contains(paramName)) {
       String argParamName = omitParamName ? null : paramName;
       String argKeyProperty = keyProperty.substring(firstDot + 1);
-      return entry(paramName, new KeyAssigner(config, rsmd, columnPosition, argParamName, argKeyProperty));
+      return entry(paramName, new KeyAssigner(columnPosition, argParamName, argKeyProperty));
     } else if (singleParam) {
-      return getAssignerForSingleParam(config, rsmd, columnPosition, paramMap, keyProperty, omitParamName);
+      return getAssignerForSingleParam(columnPosition, paramMap, keyProperty, omitParamName);
     } else {
       throw new ExecutorException("Could not find parameter '" + paramName + "'. "
           + "Note that when there are multiple parameters, 'keyProperty' must include the parameter name (e.g. 'param.id'). "
@@ -204,12 +244,12 @@ public class Jdbc3KeyGenerator implements KeyGenerator {
     }
   }
 
-  private Entry<String, KeyAssigner> getAssignerForSingleParam(Configuration config, ResultSetMetaData rsmd,
-      int columnPosition, Map<String, ?> paramMap, String keyProperty, boolean omitParamName) {
+  private Entry<String, KeyAssigner> getAssignerForSingleParam(int columnPosition, Map<String, ?> paramMap,
+      String keyProperty, boolean omitParamName) {
     // Assume 'keyProperty' to be a property of the single param.
     String singleParamName = nameOfSingleParam(paramMap);
     String argParamName = omitParamName ? null : singleParamName;
-    return entry(singleParamName, new KeyAssigner(config, rsmd, columnPosition, argParamName, keyProperty));
+    return entry(singleParamName, new KeyAssigner(columnPosition, argParamName, keyProperty));
   }
 
   private static String nameOfSingleParam(Map<String, ?> paramMap) {
@@ -232,53 +272,108 @@ public class Jdbc3KeyGenerator implements KeyGenerator {
     return new AbstractMap.SimpleImmutableEntry<>(key, value);
   }
 
-  private class KeyAssigner {
-    private final Configuration configuration;
-    private final ResultSetMetaData rsmd;
-    private final TypeHandlerRegistry typeHandlerRegistry;
+  /**
+   * 一条语句的主键回填计划。各种参数形式下的 KeyAssigner 在第一次回填时生成，之后的调用（包括批量的每一行）直接复用。
+   * 并发回填时可能重复生成，结果相同，后写入的覆盖先写入的。
+   */
+  private static class KeyAssignmentPlan {
+    private final String[] keyProperties;
+    private volatile List<KeyAssigner> paramAssigners;
+    private volatile ParamMapAssigners<List<KeyAssigner>> paramMapListAssigners;
+    private volatile ParamMapAssigners<List<Entry<String, List<KeyAssigner>>>> paramMapAssigners;
+
+    KeyAssignmentPlan(String[] keyProperties) {
+      this.keyProperties = keyProperties;
+    }
+  }
+
+  /**
+   * 根据 ParamMap 生成的 KeyAssigner，只适用于参数名集合相同的 ParamMap
+   */
+  private static class ParamMapAssigners<T> {
+    private final Set<String> paramNames;
+    private final T assigners;
+
+    ParamMapAssigners(Set<String> paramNames, T assigners) {
+      this.paramNames = new HashSet<>(paramNames);
+      this.assigners = assigners;
+    }
+  }
+
+  /**
+   * 把一列生成的主键写到参数的一个属性上。
+   * 第一次写入某个参数类型时解析出TypeHandler和setter，同类型的后续参数不再创建MetaObject。
+   */
+  private static class KeyAssigner {
     private final int columnPosition;
     private final String paramName;
     private final String propertyName;
-    private TypeHandler<?> typeHandler;
+    private final boolean simpleProperty;
+    private volatile Target target;
 
-    protected KeyAssigner(Configuration configuration, ResultSetMetaData rsmd, int columnPosition, String paramName,
-        String propertyName) {
-      super();
-      this.configuration = configuration;
-      this.rsmd = rsmd;
-      this.typeHandlerRegistry = configuration.getTypeHandlerRegistry();
+    protected KeyAssigner(int columnPosition, String paramName, String propertyName) {
       this.columnPosition = columnPosition;
       this.paramName = paramName;
       this.propertyName = propertyName;
+      this.simpleProperty = propertyName.indexOf('.') == -1 && propertyName.indexOf('[') == -1;
     }
 
-    protected void assign(ResultSet rs, Object param) {
+    protected void assign(Configuration configuration, ResultSet rs, ResultSetMetaData rsmd, Object param)
+        throws SQLException {
       if (paramName != null) {
         // If paramName is set, param is ParamMap
         param = ((ParamMap<?>) param).get(paramName);
       }
-      MetaObject metaParam = configuration.newMetaObject(param);
+      Target target = this.target;
+      if (target == null || param == null || target.type != param.getClass()) {
+        target = resolve(configuration, rsmd, param);
+        this.target = target;
+      }
+      if (target.typeHandler == null) {
+        // Error?
+        return;
+      }
+      Object value = target.typeHandler.getResult(rs, columnPosition);
+      if (target.setter == null) {
+        configuration.newMetaObject(param).setValue(propertyName, value);
+        return;
+      }
       try {
-        if (typeHandler == null) {
-          if (metaParam.hasSetter(propertyName)) {
-            Class<?> propertyType = metaParam.getSetterType(propertyName);
-            typeHandler = typeHandlerRegistry.getTypeHandler(propertyType,
-                JdbcType.forCode(rsmd.getColumnType(columnPosition)));
-          } else {
-            throw new ExecutorException("No setter found for the keyProperty '" + propertyName + "' in '"
-                + metaParam.getOriginalObject().getClass().getName() + "'.");
-          }
-        }
-        if (typeHandler == null) {
-          // Error?
-        } else {
-          Object value = typeHandler.getResult(rs, columnPosition);
-          metaParam.setValue(propertyName, value);
-        }
-      } catch (SQLException e) {
-        throw new ExecutorException("Error getting generated key or setting result to parameter object. Cause: " + e,
-            e);
+        target.setter.invoke(param, new Object[] { value });
+      } catch (Throwable t) {
+        throw new ReflectionException("Could not set property '" + propertyName + "' of '" + param.getClass()
+            + "' with value '" + value + "' Cause: " + t.toString(), t);
+      }
+    }
+
+    private Target resolve(Configuration configuration, ResultSetMetaData rsmd, Object param) throws SQLException {
+      MetaObject metaParam = configuration.newMetaObject(param);
+      if (!metaParam.hasSetter(propertyName)) {
+        throw new ExecutorException("No setter found for the keyProperty '" + propertyName + "' in '"
+            + metaParam.getOriginalObject().getClass().getName() + "'.");
       }
+      Class<?> propertyType = metaParam.getSetterType(propertyName);
+      TypeHandler<?> typeHandler = configuration.getTypeHandlerRegistry().getTypeHandler(propertyType,
+          JdbcType.forCode(rsmd.getColumnType(columnPosition)));
+      Invoker setter = null;
+      // 普通JavaBean的一级属性直接调用setter，Map、集合和自定义ObjectWrapper仍然走MetaObject
+      if (simpleProperty && !(param instanceof Map) && !(param instanceof Collection)
+          && !configuration.getObjectWrapperFactory().hasWrapperFor(param)) {
+        setter = configuration.getReflectorFactory().findForClass(param.getClass()).getSetInvoker(propertyName);
+      }
+      return new Target(param.getClass(), typeHandler, setter);
+    }
+  }
+
+  private static class Target {
+    private final Class<?> type;
+    private final TypeHandler<?> typeHandler;
+    private final Invoker setter;
+
+    Target(Class<?> type, TypeHandler<?> typeHandler, Invoker setter) {
+      this.type = type;
+      this.typeHandler = typeHandler;
+      this.setter = setter;
     }
   }
 }
@@ -15,16 +15,28 @@
  */
 package org.apache.ibatis.executor.keygen;
 
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.ExecutorException;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.transaction.Transaction;
 
 /**
  * @author Clinton Begin
@@ -32,13 +44,36 @@ import org.apache.ibatis.session.RowBounds;
  */
 public class SelectKeyGenerator implements KeyGenerator {
 
+  private static final Log log = LogFactory.getLog(SelectKeyGenerator.class);
+
   public static final String SELECT_KEY_SUFFIX = "!selectKey";
   private final boolean executeBefore;
   private final MappedStatement keyStatement;
 
+  /**
+   * 预取的块大小，大于1时开启预取：selectKey 一次返回最多 prefetch 行，每行是一个主键，依次分给后续的插入
+   */
+  private final int prefetch;
+  /**
+   * 按分片名存放预取的主键，各分片的序列互相独立；不属于分片的会话使用空字符串
+   */
+  private final ConcurrentMap<String, KeyBlock> blocks = new ConcurrentHashMap<>();
+
   public SelectKeyGenerator(MappedStatement keyStatement, boolean executeBefore) {
+    this(keyStatement, executeBefore, 0);
+  }
+
+  public SelectKeyGenerator(MappedStatement keyStatement, boolean executeBefore, int prefetch) {
+    if (prefetch > 1 && !executeBefore) {
+      throw new IllegalArgumentException("Prefetching keys requires a selectKey that is executed before the statement.");
+    }
     this.executeBefore = executeBefore;
     this.keyStatement = keyStatement;
+    this.prefetch = prefetch;
+  }
+
+  public int getPrefetch() {
+    return prefetch;
   }
 
   @Override
@@ -61,27 +96,32 @@ public class SelectKeyGenerator implements KeyGenerator {
         String[] keyProperties = keyStatement.getKeyProperties();
         final Configuration configuration = ms.getConfiguration();
         final MetaObject metaParam = configuration.newMetaObject(parameter);
-        // Do not close keyExecutor.
-        // The transaction will be closed by parent executor.
-        Executor keyExecutor = configuration.newExecutor(executor.getTransaction(), ExecutorType.SIMPLE);
-        List<Object> values = keyExecutor.query(keyStatement, parameter, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
-        if (values.size() == 0) {
-          throw new ExecutorException("SelectKey returned no data.");
-        } else if (values.size() > 1) {
-          throw new ExecutorException("SelectKey returned more than one value.");
+        Object value;
+        if (prefetch > 1) {
+          value = nextPrefetched(configuration, executor);
         } else {
-          MetaObject metaResult = configuration.newMetaObject(values.get(0));
-          if (keyProperties.length == 1) {
-            if (metaResult.hasGetter(keyProperties[0])) {
-              setValue(metaParam, keyProperties[0], metaResult.getValue(keyProperties[0]));
-            } else {
-              // no getter for the property - maybe just a single value object
-              // so try that
-              setValue(metaParam, keyProperties[0], values.get(0));
-            }
+          // Do not close keyExecutor.
+          // The transaction will be closed by parent executor.
+          Executor keyExecutor = configuration.newExecutor(executor.getTransaction(), ExecutorType.SIMPLE);
+          List<Object> values = keyExecutor.query(keyStatement, parameter, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+          if (values.size() == 0) {
+            throw new ExecutorException("SelectKey returned no data.");
+          } else if (values.size() > 1) {
+            throw new ExecutorException("SelectKey returned more than one value.");
+          }
+          value = values.get(0);
+        }
+        MetaObject metaResult = configuration.newMetaObject(value);
+        if (keyProperties.length == 1) {
+          if (metaResult.hasGetter(keyProperties[0])) {
+            setValue(metaParam, keyProperties[0], metaResult.getValue(keyProperties[0]));
           } else {
-            handleMultipleProperties(keyProperties, metaParam, metaResult);
+            // no getter for the property - maybe just a single value object
+            // so try that
+            setValue(metaParam, keyProperties[0], value);
           }
+        } else {
+          handleMultipleProperties(keyProperties, metaParam, metaResult);
         }
       }
     } catch (ExecutorException e) {
@@ -91,6 +131,74 @@ public class SelectKeyGenerator implements KeyGenerator {
     }
   }
 
+  /**
+   * 从预取的主键中取一个。取空时在当前事务上同步取一块；剩余不足四分之一块时在后台预先补充下一块
+   */
+  private Object nextPrefetched(Configuration configuration, Executor executor) throws SQLException {
+    final Transaction transaction = executor.getTransaction();
+    final String shard = transaction.getShard();
+    final KeyBlock block = blocks.computeIfAbsent(shard == null ? "" : shard, name -> new KeyBlock());
+    Object value = block.poll();
+    if (value == null) {
+      synchronized (block) {
+        value = block.poll();
+        if (value == null) {
+          // Do not close keyExecutor.
+          // The transaction will be closed by parent executor.
+          Executor keyExecutor = configuration.newExecutor(executor.getTransaction(), ExecutorType.SIMPLE);
+          List<Object> values = keyExecutor.query(keyStatement, null, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+          if (values.isEmpty()) {
+            throw new ExecutorException("SelectKey returned no data.");
+          }
+          value = values.get(0);
+          block.offer(values.subList(1, values.size()));
+        }
+      }
+    }
+    if (block.available.get() <= prefetch / 4) {
+      refillAsync(configuration, transaction, block);
+    }
+    return value;
+  }
+
+  /**
+   * 后台补充使用独立的自动提交事务，不占用也不依赖调用方的事务。
+   * 新事务由调用方的事务打开，分片会话因此补充的是自己分片上的主键
+   */
+  private void refillAsync(Configuration configuration, Transaction transaction, KeyBlock block) {
+    if (!block.refilling.compareAndSet(false, true)) {
+      return;
+    }
+    Transaction tx = transaction.newTransaction(true);
+    if (tx == null) {
+      final Environment environment = configuration.getEnvironment();
+      if (environment == null) {
+        block.refilling.set(false);
+        return;
+      }
+      tx = environment.getTransactionFactory().newTransaction(environment.getDataSource(), null, true);
+    }
+    final Executor keyExecutor = configuration.newExecutor(tx, ExecutorType.SIMPLE);
+    Runnable refill = () -> {
+      try {
+        block.offer(keyExecutor.query(keyStatement, null, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER));
+      } catch (Exception e) {
+        // 下一次取空时会在调用方的事务上同步重试
+        log.warn("Error prefetching keys with '" + keyStatement.getId() + "'. Cause: " + e);
+      } finally {
+        keyExecutor.close(false);
+        block.refilling.set(false);
+      }
+    };
+    try {
+      configuration.getAsyncExecutor().execute(refill);
+    } catch (RejectedExecutionException e) {
+      keyExecutor.close(false);
+      block.refilling.set(false);
+      log.warn("Error prefetching keys with '" + keyStatement.getId() + "'. Cause: " + e);
+    }
+  }
+
   private void handleMultipleProperties(String[] keyProperties,
       MetaObject metaParam, MetaObject metaResult) {
     String[] keyColumns = keyStatement.getKeyColumns();
@@ -117,4 +225,23 @@ public class SelectKeyGenerator implements KeyGenerator {
       throw new ExecutorException("No setter found for the keyProperty '" + property + "' in " + metaParam.getOriginalObject().getClass().getName() + ".");
     }
   }
+
+  private static class KeyBlock {
+    private final Queue<Object> keys = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger available = new AtomicInteger();
+    private final AtomicBoolean refilling = new AtomicBoolean();
+
+    Object poll() {
+      Object value = keys.poll();
+      if (value != null) {
+        available.decrementAndGet();
+      }
+      return value;
+    }
+
+    void offer(List<Object> values) {
+      keys.addAll(values);
+      available.addAndGet(values.size());
+    }
+  }
 }
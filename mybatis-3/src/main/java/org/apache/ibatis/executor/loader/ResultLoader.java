@@ -49,6 +49,14 @@ public class ResultLoader {
   protected final BoundSql boundSql;
   protected final ResultExtractor resultExtractor;
   protected final long creatorThreadId;
+  /**
+   * 创建时会话的事务是否已有写操作
+   */
+  protected final boolean afterWrite;
+  /**
+   * 创建时会话的事务，会话关闭后或在其它线程中加载时在同一个分片上打开新的事务
+   */
+  protected final Transaction transaction;
 
   protected boolean loaded;
   protected Object resultObject;
@@ -64,6 +72,9 @@ public class ResultLoader {
     this.boundSql = boundSql;
     this.resultExtractor = new ResultExtractor(configuration, objectFactory);
     this.creatorThreadId = Thread.currentThread().getId();
+    this.afterWrite = executor.hasWritten();
+    // ResultLoaderMap.ClosedExecutor 没有事务
+    this.transaction = executor.isClosed() ? null : executor.getTransaction();
   }
 
   public Object loadResult() throws SQLException {
@@ -76,6 +87,10 @@ public class ResultLoader {
     Executor localExecutor = executor;
     if (Thread.currentThread().getId() != this.creatorThreadId || localExecutor.isClosed()) {
       localExecutor = newExecutor();
+      // 新的执行器不知道会话已经写过，写入之后的加载要读主库才能看到写入的数据
+      if (afterWrite || !executor.isClosed() && executor.hasWritten()) {
+        localExecutor.markWritten();
+      }
     }
     try {
       return localExecutor.query(mappedStatement, parameterObject, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER, cacheKey, boundSql);
@@ -87,6 +102,10 @@ public class ResultLoader {
   }
 
   private Executor newExecutor() {
+    final Transaction reopened = transaction == null ? null : transaction.newTransaction(false);
+    if (reopened != null) {
+      return configuration.newExecutor(reopened, ExecutorType.SIMPLE);
+    }
     final Environment environment = configuration.getEnvironment();
     if (environment == null) {
       throw new ExecutorException("ResultLoader could not load lazily.  Environment was not configured.");
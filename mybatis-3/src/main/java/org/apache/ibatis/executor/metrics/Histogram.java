@@ -0,0 +1,139 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按2的幂分桶的直方图，第i个桶统计[2^i, 2^(i+1))范围内的值（第0个桶包含0和1）。
+ * 所有计数都使用LongAdder，并发记录时各线程写入不同的槽位，不会互相竞争
+ */
+public class Histogram {
+
+  private static final int BUCKETS = 64;
+
+  private final LongAdder[] buckets = new LongAdder[BUCKETS];
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+  public Histogram() {
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    buckets[bucketOf(value)].increment();
+    count.increment();
+    sum.add(value);
+    max.accumulate(value);
+  }
+
+  public void reset() {
+    for (LongAdder bucket : buckets) {
+      bucket.reset();
+    }
+    count.reset();
+    sum.reset();
+    max.reset();
+  }
+
+  public Snapshot snapshot() {
+    long[] values = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      values[i] = buckets[i].sum();
+    }
+    return new Snapshot(count.sum(), sum.sum(), max.get(), values);
+  }
+
+  static int bucketOf(long value) {
+    return value <= 1 ? 0 : 63 - Long.numberOfLeadingZeros(value);
+  }
+
+  static long upperBoundOf(int bucket) {
+    return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : (1L << (bucket + 1)) - 1;
+  }
+
+  /**
+   * 直方图某一时刻的只读副本。由于记录时不加锁，各字段之间可能存在极小的偏差
+   */
+  public static class Snapshot {
+
+    private final long count;
+    private final long sum;
+    private final long max;
+    private final long[] buckets;
+
+    Snapshot(long count, long sum, long max, long[] buckets) {
+      this.count = count;
+      this.sum = sum;
+      this.max = max;
+      this.buckets = buckets;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getSum() {
+      return sum;
+    }
+
+    public long getMax() {
+      return max;
+    }
+
+    public double getMean() {
+      return count == 0 ? 0 : (double) sum / count;
+    }
+
+    public long[] getBuckets() {
+      return buckets.clone();
+    }
+
+    /**
+     * 估算百分位值，返回目标值所在桶的上界（不超过记录到的最大值）
+     * @param percentile 0到100之间的百分位
+     */
+    public long getPercentile(double percentile) {
+      if (percentile < 0 || percentile > 100) {
+        throw new IllegalArgumentException("Percentile must be between 0 and 100 but was " + percentile);
+      }
+      long total = 0;
+      for (long bucket : buckets) {
+        total += bucket;
+      }
+      if (total == 0) {
+        return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+      long seen = 0;
+      for (int i = 0; i < buckets.length; i++) {
+        seen += buckets[i];
+        if (seen >= rank) {
+          return Math.min(upperBoundOf(i), max);
+        }
+      }
+      return max;
+    }
+  }
+
+}
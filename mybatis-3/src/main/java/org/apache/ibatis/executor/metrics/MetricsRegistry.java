@@ -0,0 +1,157 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.ibatis.executor.ExecutorException;
+
+/**
+ * 按MappedStatement id汇总的运行统计。每个Configuration持有一个实例，
+ * 只有开启 metricsEnabled 时执行器才会记录数据
+ */
+public class MetricsRegistry implements MetricsRegistryMBean {
+
+  private static final double NANOS_PER_MILLI = 1_000_000d;
+
+  private final ConcurrentMap<String, StatementMetrics> statements = new ConcurrentHashMap<>();
+  private ObjectName objectName;
+
+  /**
+   * 获取语句的统计对象，不存在时创建
+   */
+  public StatementMetrics getStatementMetrics(String statementId) {
+    StatementMetrics metrics = statements.get(statementId);
+    if (metrics == null) {
+      metrics = statements.computeIfAbsent(statementId, StatementMetrics::new);
+    }
+    return metrics;
+  }
+
+  /**
+   * 所有语句的统计副本，按语句id排序
+   */
+  public Map<String, StatementMetricsSnapshot> snapshot() {
+    Map<String, StatementMetricsSnapshot> snapshots = new TreeMap<>();
+    statements.forEach((id, metrics) -> snapshots.put(id, metrics.snapshot()));
+    return snapshots;
+  }
+
+  /**
+   * 单个语句的统计副本，没有记录过时返回null
+   */
+  public StatementMetricsSnapshot snapshot(String statementId) {
+    StatementMetrics metrics = statements.get(statementId);
+    return metrics == null ? null : metrics.snapshot();
+  }
+
+  @Override
+  public void reset() {
+    statements.values().forEach(StatementMetrics::reset);
+  }
+
+  /**
+   * 注册到平台MBeanServer，如 org.apache.ibatis:type=StatementMetrics,name=development
+   */
+  public synchronized void registerMBean(String name) {
+    try {
+      ObjectName newName = new ObjectName(name);
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      if (objectName != null) {
+        server.unregisterMBean(objectName);
+        objectName = null;
+      }
+      server.registerMBean(this, newName);
+      objectName = newName;
+    } catch (JMException e) {
+      throw new ExecutorException("Error registering statement metrics MBean '" + name + "'.  Cause: " + e, e);
+    }
+  }
+
+  public synchronized void unregisterMBean() {
+    if (objectName == null) {
+      return;
+    }
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    } catch (JMException e) {
+      throw new ExecutorException("Error unregistering statement metrics MBean '" + objectName + "'.  Cause: " + e, e);
+    } finally {
+      objectName = null;
+    }
+  }
+
+  @Override
+  public String[] getStatementIds() {
+    return snapshot().keySet().toArray(new String[0]);
+  }
+
+  @Override
+  public long getCalls(String statementId) {
+    StatementMetricsSnapshot snapshot = snapshot(statementId);
+    return snapshot == null ? 0 : snapshot.getCalls();
+  }
+
+  @Override
+  public long getErrors(String statementId) {
+    StatementMetricsSnapshot snapshot = snapshot(statementId);
+    return snapshot == null ? 0 : snapshot.getErrors();
+  }
+
+  @Override
+  public long getRows(String statementId) {
+    StatementMetricsSnapshot snapshot = snapshot(statementId);
+    return snapshot == null ? 0 : snapshot.getRows();
+  }
+
+  @Override
+  public double getMeanMillis(String statementId, String phase) {
+    Histogram.Snapshot latency = latencyOf(statementId, phase);
+    return latency == null ? 0 : latency.getMean() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getMaxMillis(String statementId, String phase) {
+    Histogram.Snapshot latency = latencyOf(statementId, phase);
+    return latency == null ? 0 : latency.getMax() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getPercentileMillis(String statementId, String phase, double percentile) {
+    Histogram.Snapshot latency = latencyOf(statementId, phase);
+    return latency == null ? 0 : latency.getPercentile(percentile) / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getMeanBatchSize(String statementId) {
+    StatementMetricsSnapshot snapshot = snapshot(statementId);
+    return snapshot == null ? 0 : snapshot.getBatchSizes().getMean();
+  }
+
+  private Histogram.Snapshot latencyOf(String statementId, String phase) {
+    StatementMetricsSnapshot snapshot = snapshot(statementId);
+    return snapshot == null ? null : snapshot.getLatency(StatementPhase.valueOf(phase));
+  }
+
+}
@@ -0,0 +1,47 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.metrics;
+
+/**
+ * 通过JMX暴露的语句统计接口，耗时单位均为毫秒
+ */
+public interface MetricsRegistryMBean {
+
+  String[] getStatementIds();
+
+  long getCalls(String statementId);
+
+  long getErrors(String statementId);
+
+  long getRows(String statementId);
+
+  /**
+   * @param phase StatementPhase的名称，如 EXECUTE
+   */
+  double getMeanMillis(String statementId, String phase);
+
+  double getMaxMillis(String statementId, String phase);
+
+  /**
+   * @param percentile 0到100之间的百分位，如 99
+   */
+  double getPercentileMillis(String statementId, String phase, double percentile);
+
+  double getMeanBatchSize(String statementId);
+
+  void reset();
+
+}
@@ -0,0 +1,100 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个MappedStatement的运行统计
+ */
+public class StatementMetrics {
+
+  private static final StatementPhase[] PHASES = StatementPhase.values();
+
+  private final String id;
+  private final LongAdder calls = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+  /**
+   * 查询语句为从结果集读取的行数（包括游标和 ResultHandler 查询），更新语句为影响的行数
+   */
+  private final LongAdder rows = new LongAdder();
+  private final Histogram[] latencies = new Histogram[PHASES.length];
+  private final Histogram batchSizes = new Histogram();
+  private final ConcurrentMap<String, LongAdder> exceptions = new ConcurrentHashMap<>();
+
+  public StatementMetrics(String id) {
+    this.id = id;
+    for (int i = 0; i < latencies.length; i++) {
+      latencies[i] = new Histogram();
+    }
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * 记录一次调用及其整体耗时
+   */
+  public void recordCall(long nanos) {
+    calls.increment();
+    latencies[StatementPhase.TOTAL.ordinal()].record(nanos);
+  }
+
+  public void recordLatency(StatementPhase phase, long nanos) {
+    latencies[phase.ordinal()].record(nanos);
+  }
+
+  public void recordRows(long count) {
+    rows.add(count);
+  }
+
+  public void recordBatch(int size) {
+    batchSizes.record(size);
+  }
+
+  public void recordError(Throwable error) {
+    errors.increment();
+    exceptions.computeIfAbsent(error.getClass().getName(), k -> new LongAdder()).increment();
+  }
+
+  public void reset() {
+    calls.reset();
+    errors.reset();
+    rows.reset();
+    for (Histogram latency : latencies) {
+      latency.reset();
+    }
+    batchSizes.reset();
+    exceptions.clear();
+  }
+
+  public StatementMetricsSnapshot snapshot() {
+    Map<StatementPhase, Histogram.Snapshot> latencySnapshots = new HashMap<>();
+    for (StatementPhase phase : PHASES) {
+      latencySnapshots.put(phase, latencies[phase.ordinal()].snapshot());
+    }
+    Map<String, Long> exceptionCounts = new HashMap<>();
+    exceptions.forEach((type, count) -> exceptionCounts.put(type, count.sum()));
+    return new StatementMetricsSnapshot(id, calls.sum(), errors.sum(), rows.sum(), latencySnapshots,
+        batchSizes.snapshot(), exceptionCounts);
+  }
+
+}
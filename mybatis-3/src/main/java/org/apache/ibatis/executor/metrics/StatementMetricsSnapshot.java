@@ -0,0 +1,87 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 单个MappedStatement统计数据的只读副本
+ */
+public class StatementMetricsSnapshot {
+
+  private final String id;
+  private final long calls;
+  private final long errors;
+  private final long rows;
+  private final Map<StatementPhase, Histogram.Snapshot> latencies;
+  private final Histogram.Snapshot batchSizes;
+  private final Map<String, Long> exceptions;
+
+  public StatementMetricsSnapshot(String id, long calls, long errors, long rows,
+      Map<StatementPhase, Histogram.Snapshot> latencies, Histogram.Snapshot batchSizes, Map<String, Long> exceptions) {
+    this.id = id;
+    this.calls = calls;
+    this.errors = errors;
+    this.rows = rows;
+    this.latencies = Collections.unmodifiableMap(latencies);
+    this.batchSizes = batchSizes;
+    this.exceptions = Collections.unmodifiableMap(exceptions);
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public long getCalls() {
+    return calls;
+  }
+
+  public long getErrors() {
+    return errors;
+  }
+
+  public long getRows() {
+    return rows;
+  }
+
+  /**
+   * 某个阶段的耗时分布，单位为纳秒
+   */
+  public Histogram.Snapshot getLatency(StatementPhase phase) {
+    return latencies.get(phase);
+  }
+
+  /**
+   * BATCH执行器每次executeBatch提交的语句条数分布
+   */
+  public Histogram.Snapshot getBatchSizes() {
+    return batchSizes;
+  }
+
+  /**
+   * 异常类名 -> 出现次数
+   */
+  public Map<String, Long> getExceptions() {
+    return exceptions;
+  }
+
+  @Override
+  public String toString() {
+    return "StatementMetricsSnapshot{id=" + id + ", calls=" + calls + ", errors=" + errors + ", rows=" + rows + "}";
+  }
+
+}
@@ -0,0 +1,38 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.metrics;
+
+/**
+ * 语句执行的各个阶段，每个阶段单独统计耗时
+ */
+public enum StatementPhase {
+  /**
+   * 执行器从接到调用到返回的整体耗时
+   */
+  TOTAL,
+  /**
+   * 创建Statement对象（Connection.prepareStatement等）
+   */
+  PREPARE,
+  /**
+   * 执行SQL（Statement.execute、executeBatch）
+   */
+  EXECUTE,
+  /**
+   * 把ResultSet映射为结果对象
+   */
+  MAPPING
+}
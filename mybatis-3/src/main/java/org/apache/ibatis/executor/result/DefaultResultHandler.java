@@ -18,6 +18,7 @@ package org.apache.ibatis.executor.result;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.ibatis.reflection.factory.DefaultObjectFactory;
 import org.apache.ibatis.reflection.factory.ObjectFactory;
 import org.apache.ibatis.session.ResultContext;
 import org.apache.ibatis.session.ResultHandler;
@@ -38,6 +39,19 @@ public class DefaultResultHandler implements ResultHandler<Object> {
     list = objectFactory.create(List.class);
   }
 
+  /**
+   * @param expectedSize
+   *          预计的结果数，大于0且使用默认的 ObjectFactory 时按此预分配列表容量
+   */
+  @SuppressWarnings("unchecked")
+  public DefaultResultHandler(ObjectFactory objectFactory, int expectedSize) {
+    if (expectedSize > 0 && objectFactory.getClass() == DefaultObjectFactory.class) {
+      list = new ArrayList<>(expectedSize);
+    } else {
+      list = objectFactory.create(List.class);
+    }
+  }
+
   @Override
   public void handleResult(ResultContext<?> context) {
     list.add(context.getResultObject());
@@ -33,15 +33,20 @@ import org.apache.ibatis.binding.MapperMethod.ParamMap;
 import org.apache.ibatis.cache.CacheKey;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.cursor.defaults.DefaultCursor;
+import org.apache.ibatis.cursor.defaults.PrefetchingCursor;
+import org.apache.ibatis.executor.EntitySnapshots;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.ExecutorException;
+import org.apache.ibatis.executor.IdentityMap;
 import org.apache.ibatis.executor.loader.ResultLoader;
 import org.apache.ibatis.executor.loader.ResultLoaderMap;
+import org.apache.ibatis.executor.metrics.StatementMetrics;
 import org.apache.ibatis.executor.parameter.ParameterHandler;
 import org.apache.ibatis.executor.result.DefaultResultContext;
 import org.apache.ibatis.executor.result.DefaultResultHandler;
 import org.apache.ibatis.executor.result.ResultMapException;
+import org.apache.ibatis.executor.statement.RowCountStatistics;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.Discriminator;
 import org.apache.ibatis.mapping.MappedStatement;
@@ -58,6 +63,7 @@ import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultContext;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.trace.TraceListener;
 import org.apache.ibatis.type.JdbcType;
 import org.apache.ibatis.type.TypeHandler;
 import org.apache.ibatis.type.TypeHandlerRegistry;
@@ -82,6 +88,15 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   private final TypeHandlerRegistry typeHandlerRegistry;
   private final ObjectFactory objectFactory;
   private final ReflectorFactory reflectorFactory;
+  // 未启用identity map时为null
+  private IdentityMap identityMap;
+  // 未启用dirtyChecking时为null
+  private EntitySnapshots entitySnapshots;
+  // 未开启 metricsEnabled 时为null
+  private final StatementMetrics metrics;
+  // 从ResultSet读取的行数，嵌套结果映射会把多行合并成一个对象，与映射出的对象数不同
+  private int rowsRead;
+  private boolean rowCountRecorded;
 
   // nested resultmaps
   private final Map<CacheKey, Object> nestedResultObjects = new HashMap<>();
@@ -129,6 +144,10 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     this.objectFactory = configuration.getObjectFactory();
     this.reflectorFactory = configuration.getReflectorFactory();
     this.resultHandler = resultHandler;
+    this.identityMap = executor == null ? null : executor.getIdentityMap();
+    // 交给ResultHandler的结果不会全部保留在会话中，不记录原始值
+    this.entitySnapshots = executor == null || resultHandler != null ? null : executor.getEntitySnapshots();
+    this.metrics = configuration.isMetricsEnabled() ? configuration.getMetricsRegistry().getStatementMetrics(mappedStatement.getId()) : null;
   }
 
   //
@@ -180,6 +199,8 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   @Override
   public List<Object> handleResultSets(Statement stmt) throws SQLException {
     ErrorContext.instance().activity("handling results").object(mappedStatement.getId());
+    TraceListener tracer = configuration.getTraceListener();
+    long start = tracer != null ? System.nanoTime() : 0L;
 
     // 存放要返回的数据
     final List<Object> multipleResults = new ArrayList<>();
@@ -214,7 +235,11 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       }
     }
 
-    return collapseSingleResultList(multipleResults);
+    List<Object> results = collapseSingleResultList(multipleResults);
+    if (tracer != null) {
+      tracer.resultsMapped(mappedStatement.getId(), results.size(), System.nanoTime() - start);
+    }
+    return results;
   }
 
   @Override
@@ -232,7 +257,21 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     }
 
     ResultMap resultMap = resultMaps.get(0);
-    return new DefaultCursor<>(this, resultMap, rsw, rowBounds);
+    // 游标用于逐行处理大量结果，不记录原始值
+    entitySnapshots = null;
+    // 延迟加载和嵌套查询使用会话的执行器，不能在后台线程中执行
+    boolean prefetching = mappedStatement.getCursorPrefetchSize() > 0 && !configuration.isLazyLoadingEnabled()
+        && !mappedStatement.hasNestedQueries();
+    if (prefetching) {
+      // 预取时在生产线程中映射结果，会话内的identity map不是线程安全的
+      identityMap = null;
+    }
+    Cursor<E> cursor = new DefaultCursor<>(this, resultMap, rsw, rowBounds);
+    if (prefetching) {
+      // 后台线程在游标打开期间一直占用，不使用有界的 asyncExecutor
+      cursor = new PrefetchingCursor<>(cursor, mappedStatement.getCursorPrefetchSize(), null, stmt);
+    }
+    return cursor;
   }
 
   private ResultSetWrapper getFirstResultSet(Statement stmt) throws SQLException {
@@ -299,13 +338,23 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       if (parentMapping != null) {
         handleRowValues(rsw, resultMap, null, RowBounds.DEFAULT, parentMapping);
       } else {
+        // 只统计第一个结果集，与 fetchSize 作用的对象一致
+        boolean adaptive = configuration.isAdaptiveFetchSize() && !rowCountRecorded;
+        RowCountStatistics rowCounts = configuration.getRowCountStatistics();
+        int rowsBefore = rowsRead;
         if (resultHandler == null) {
-          DefaultResultHandler defaultResultHandler = new DefaultResultHandler(objectFactory);
+          DefaultResultHandler defaultResultHandler = adaptive
+              ? new DefaultResultHandler(objectFactory, rowCounts.expectedRows(mappedStatement.getId()))
+              : new DefaultResultHandler(objectFactory);
           handleRowValues(rsw, resultMap, defaultResultHandler, rowBounds, null);
           multipleResults.add(defaultResultHandler.getResultList());
         } else {
           handleRowValues(rsw, resultMap, resultHandler, rowBounds, null);
         }
+        if (adaptive) {
+          rowCounts.record(mappedStatement.getId(), rowsRead - rowsBefore);
+          rowCountRecorded = true;
+        }
       }
     } finally {
       // issue #228 (close resultsets)
@@ -323,12 +372,20 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   //
 
   public void handleRowValues(ResultSetWrapper rsw, ResultMap resultMap, ResultHandler<?> resultHandler, RowBounds rowBounds, ResultMapping parentMapping) throws SQLException {
-    if (resultMap.hasNestedResultMaps()) {
-      ensureNoRowBounds();
-      checkResultHandler();
-      handleRowValuesForNestedResultMap(rsw, resultMap, resultHandler, rowBounds, parentMapping);
-    } else {
-      handleRowValuesForSimpleResultMap(rsw, resultMap, resultHandler, rowBounds, parentMapping);
+    // 游标每取一个对象调用一次，在这里统计才能覆盖游标和 ResultHandler
+    int rowsBefore = rowsRead;
+    try {
+      if (resultMap.hasNestedResultMaps()) {
+        ensureNoRowBounds();
+        checkResultHandler();
+        handleRowValuesForNestedResultMap(rsw, resultMap, resultHandler, rowBounds, parentMapping);
+      } else {
+        handleRowValuesForSimpleResultMap(rsw, resultMap, resultHandler, rowBounds, parentMapping);
+      }
+    } finally {
+      if (metrics != null && rowsRead > rowsBefore) {
+        metrics.recordRows(rowsRead - rowsBefore);
+      }
     }
   }
 
@@ -368,6 +425,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
      * 3、resultSet下一条数据有效
      */
     while (shouldProcessMoreRows(resultContext, rowBounds) && !resultSet.isClosed() && resultSet.next()) {
+      rowsRead++;
       ResultMap discriminatedResultMap = resolveDiscriminatedResultMap(resultSet, resultMap, null);
       Object rowValue = getRowValue(rsw, discriminatedResultMap, null);
       storeObject(resultHandler, resultContext, rowValue, parentMapping, resultSet);
@@ -416,6 +474,14 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   //
 
   private Object getRowValue(ResultSetWrapper rsw, ResultMap resultMap, String columnPrefix) throws SQLException {
+    final List<Object> ids = getIdentityValues(rsw, resultMap, columnPrefix);
+    if (ids != null) {
+      // 同一会话中已经映射过这一行，直接复用
+      final Object knownValue = identityMap.get(resultMap, ids);
+      if (knownValue != null) {
+        return knownValue;
+      }
+    }
     final ResultLoaderMap lazyLoader = new ResultLoaderMap();
     Object rowValue = createResultObject(rsw, resultMap, lazyLoader, columnPrefix);
     if (rowValue != null && !hasTypeHandlerForResultObject(rsw, resultMap.getType())) {
@@ -427,10 +493,43 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       foundValues = applyPropertyMappings(rsw, resultMap, metaObject, lazyLoader, columnPrefix) || foundValues;
       foundValues = lazyLoader.size() > 0 || foundValues;
       rowValue = foundValues || configuration.isReturnInstanceForEmptyRow() ? rowValue : null;
+      if (entitySnapshots != null && rowValue != null) {
+        entitySnapshots.take(resultMap, rowValue);
+      }
+    }
+    if (ids != null && rowValue != null) {
+      identityMap.put(resultMap, ids, rowValue);
     }
     return rowValue;
   }
 
+  /**
+   * 读取显式声明的id列的值，用作identity map的键
+   *
+   * @return 未启用identity map、ResultMap没有声明id或id列没有值时返回null
+   */
+  private List<Object> getIdentityValues(ResultSetWrapper rsw, ResultMap resultMap, String columnPrefix) throws SQLException {
+    if (identityMap == null || !resultMap.hasExplicitId()) {
+      return null;
+    }
+    final List<String> mappedColumnNames = rsw.getMappedColumnNames(resultMap, columnPrefix);
+    final List<ResultMapping> idMappings = resultMap.getIdResultMappings();
+    final List<Object> ids = new ArrayList<>(idMappings.size());
+    for (ResultMapping idMapping : idMappings) {
+      final String column = prependPrefix(idMapping.getColumn(), columnPrefix);
+      if (column == null || idMapping.getNestedQueryId() != null || idMapping.getNestedResultMapId() != null
+          || !mappedColumnNames.contains(column.toUpperCase(Locale.ENGLISH))) {
+        return null;
+      }
+      final Object value = idMapping.getTypeHandler().getResult(rsw.getResultSet(), column);
+      if (value == null) {
+        return null;
+      }
+      ids.add(value);
+    }
+    return ids;
+  }
+
   //
   // GET VALUE FROM ROW FOR NESTED RESULT MAP
   //
@@ -444,20 +543,32 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       applyNestedResultMappings(rsw, resultMap, metaObject, columnPrefix, combinedKey, false);
       ancestorObjects.remove(resultMapId);
     } else {
-      final ResultLoaderMap lazyLoader = new ResultLoaderMap();
-      rowValue = createResultObject(rsw, resultMap, lazyLoader, columnPrefix);
-      if (rowValue != null && !hasTypeHandlerForResultObject(rsw, resultMap.getType())) {
-        final MetaObject metaObject = configuration.newMetaObject(rowValue);
-        boolean foundValues = this.useConstructorMappings;
-        if (shouldApplyAutomaticMappings(resultMap, true)) {
-          foundValues = applyAutomaticMappings(rsw, resultMap, metaObject, columnPrefix) || foundValues;
+      final List<Object> ids = getIdentityValues(rsw, resultMap, columnPrefix);
+      // 含有嵌套映射的对象会在后续行中继续填充集合，复用已有对象会重复添加，所以只复用不含嵌套映射的对象
+      rowValue = ids != null && !resultMap.hasNestedResultMaps() ? identityMap.get(resultMap, ids) : null;
+      if (rowValue == null) {
+        final ResultLoaderMap lazyLoader = new ResultLoaderMap();
+        rowValue = createResultObject(rsw, resultMap, lazyLoader, columnPrefix);
+        if (rowValue != null && !hasTypeHandlerForResultObject(rsw, resultMap.getType())) {
+          final MetaObject metaObject = configuration.newMetaObject(rowValue);
+          boolean foundValues = this.useConstructorMappings;
+          if (shouldApplyAutomaticMappings(resultMap, true)) {
+            foundValues = applyAutomaticMappings(rsw, resultMap, metaObject, columnPrefix) || foundValues;
+          }
+          foundValues = applyPropertyMappings(rsw, resultMap, metaObject, lazyLoader, columnPrefix) || foundValues;
+          putAncestor(rowValue, resultMapId);
+          foundValues = applyNestedResultMappings(rsw, resultMap, metaObject, columnPrefix, combinedKey, true) || foundValues;
+          ancestorObjects.remove(resultMapId);
+          foundValues = lazyLoader.size() > 0 || foundValues;
+          rowValue = foundValues || configuration.isReturnInstanceForEmptyRow() ? rowValue : null;
+          if (entitySnapshots != null && rowValue != null) {
+            // 简单属性在第一行就已确定，嵌套的集合不参与比较
+            entitySnapshots.take(resultMap, rowValue);
+          }
+        }
+        if (ids != null && rowValue != null) {
+          identityMap.put(resultMap, ids, rowValue);
         }
-        foundValues = applyPropertyMappings(rsw, resultMap, metaObject, lazyLoader, columnPrefix) || foundValues;
-        putAncestor(rowValue, resultMapId);
-        foundValues = applyNestedResultMappings(rsw, resultMap, metaObject, columnPrefix, combinedKey, true) || foundValues;
-        ancestorObjects.remove(resultMapId);
-        foundValues = lazyLoader.size() > 0 || foundValues;
-        rowValue = foundValues || configuration.isReturnInstanceForEmptyRow() ? rowValue : null;
       }
       if (combinedKey != CacheKey.NULL_CACHE_KEY) {
         nestedResultObjects.put(combinedKey, rowValue);
@@ -918,6 +1029,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     skipRows(resultSet, rowBounds);
     Object rowValue = previousRowValue;
     while (shouldProcessMoreRows(resultContext, rowBounds) && !resultSet.isClosed() && resultSet.next()) {
+      rowsRead++;
       final ResultMap discriminatedResultMap = resolveDiscriminatedResultMap(resultSet, resultMap, null);
       final CacheKey rowKey = createRowKey(discriminatedResultMap, rsw, null);
       Object partialObject = nestedResultObjects.get(rowKey);
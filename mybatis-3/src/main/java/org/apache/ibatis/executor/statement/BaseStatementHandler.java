@@ -16,6 +16,7 @@
 package org.apache.ibatis.executor.statement;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
@@ -23,10 +24,15 @@ import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.ExecutorException;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
+import org.apache.ibatis.executor.metrics.StatementMetrics;
+import org.apache.ibatis.executor.metrics.StatementPhase;
 import org.apache.ibatis.executor.parameter.ParameterHandler;
 import org.apache.ibatis.executor.resultset.ResultSetHandler;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
 import org.apache.ibatis.reflection.factory.ObjectFactory;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultHandler;
@@ -38,6 +44,8 @@ import org.apache.ibatis.type.TypeHandlerRegistry;
  */
 public abstract class BaseStatementHandler implements StatementHandler {
 
+  private static final Log log = LogFactory.getLog(BaseStatementHandler.class);
+
   protected final Configuration configuration;
   protected final ObjectFactory objectFactory;
   protected final TypeHandlerRegistry typeHandlerRegistry;
@@ -50,6 +58,11 @@ public abstract class BaseStatementHandler implements StatementHandler {
 
   protected BoundSql boundSql;
 
+  /**
+   * 未开启 metricsEnabled 时为null
+   */
+  protected final StatementMetrics metrics;
+
   protected BaseStatementHandler(Executor executor, MappedStatement mappedStatement, Object parameterObject, RowBounds rowBounds, ResultHandler resultHandler, BoundSql boundSql) {
     this.configuration = mappedStatement.getConfiguration();
     this.executor = executor;
@@ -69,6 +82,7 @@ public abstract class BaseStatementHandler implements StatementHandler {
 
     this.parameterHandler = configuration.newParameterHandler(mappedStatement, parameterObject, boundSql);
     this.resultSetHandler = configuration.newResultSetHandler(executor, mappedStatement, rowBounds, parameterHandler, resultHandler, boundSql);
+    this.metrics = configuration.isMetricsEnabled() ? configuration.getMetricsRegistry().getStatementMetrics(mappedStatement.getId()) : null;
   }
 
   @Override
@@ -85,12 +99,16 @@ public abstract class BaseStatementHandler implements StatementHandler {
   public Statement prepare(Connection connection, Integer transactionTimeout) throws SQLException {
     ErrorContext.instance().sql(boundSql.getSql());
     Statement statement = null;
+    long start = startTime();
     try {
       // 实例化Statement对象
       statement = instantiateStatement(connection);
       // 设置超时
       setStatementTimeout(statement, transactionTimeout);
       setFetchSize(statement);
+      if (metrics != null) {
+        metrics.recordLatency(StatementPhase.PREPARE, System.nanoTime() - start);
+      }
       return statement;
     } catch (SQLException e) {
       closeStatement(statement);
@@ -101,6 +119,43 @@ public abstract class BaseStatementHandler implements StatementHandler {
     }
   }
 
+  /**
+   * 阶段计时的起点，未开启统计时不读取时钟
+   */
+  protected long startTime() {
+    return metrics != null ? System.nanoTime() : 0L;
+  }
+
+  /**
+   * 记录SQL执行阶段的耗时，返回当前时间作为下一阶段的起点
+   */
+  protected long recordExecute(long start) {
+    if (metrics == null) {
+      return 0L;
+    }
+    long now = System.nanoTime();
+    metrics.recordLatency(StatementPhase.EXECUTE, now - start);
+    return now;
+  }
+
+  /**
+   * 记录结果映射阶段的耗时，读取的行数由 ResultSetHandler 在读取时记录
+   */
+  protected void recordMapping(long start) {
+    if (metrics != null) {
+      metrics.recordLatency(StatementPhase.MAPPING, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * 记录更新语句影响的行数
+   */
+  protected void recordUpdateCount(int rows) {
+    if (metrics != null && rows > 0) {
+      metrics.recordRows(rows);
+    }
+  }
+
   /**
    * 创建Statement对象
    */
@@ -132,12 +187,61 @@ public abstract class BaseStatementHandler implements StatementHandler {
       stmt.setFetchSize(fetchSize);
       return;
     }
+    if (configuration.isAdaptiveFetchSize() && mappedStatement.getSqlCommandType() == SqlCommandType.SELECT) {
+      int adaptiveFetchSize = configuration.getRowCountStatistics().fetchSize(mappedStatement.getId(),
+          configuration.getAdaptiveFetchSizeMin(), configuration.getAdaptiveFetchSizeMax());
+      if (adaptiveFetchSize > 0) {
+        stmt.setFetchSize(adaptiveFetchSize);
+        return;
+      }
+    }
     Integer defaultFetchSize = configuration.getDefaultFetchSize();
     if (defaultFetchSize != null) {
       stmt.setFetchSize(defaultFetchSize);
     }
   }
 
+  /**
+   * 开启 streamingResults 时，按当前 databaseId 的 {@link StreamingProfile} 调整游标和 ResultHandler 查询的 Statement
+   *
+   * @param streaming
+   *          是否为游标或 ResultHandler 查询
+   */
+  protected void applyStreamingProfile(Statement stmt, boolean streaming) throws SQLException {
+    if (!configuration.isStreamingResults() || configuration.getDatabaseId() == null) {
+      return;
+    }
+    StreamingProfile profile = configuration.getStreamingProfile(configuration.getDatabaseId());
+    if (profile == null) {
+      return;
+    }
+    // 嵌套查询在结果集读完之前使用同一个连接，流式读取时驱动不允许
+    if (!streaming || mappedStatement.hasNestedQueries()) {
+      // ReuseExecutor 复用的 Statement 可能还带着上一次流式查询的 fetchSize
+      if (mappedStatement.getFetchSize() == null && stmt.getFetchSize() == profile.getFetchSize()) {
+        stmt.setFetchSize(0);
+        setFetchSize(stmt);
+      }
+      return;
+    }
+    if (mappedStatement.getFetchSize() == null) {
+      stmt.setFetchSize(profile.getFetchSize());
+    }
+    if (profile.isRequiresManualCommit() && stmt.getConnection().getAutoCommit()) {
+      warnNotStreaming(profile, "the connection is in auto-commit mode");
+    }
+    if (profile.isRequiresForwardOnly() && stmt.getResultSetType() != ResultSet.TYPE_FORWARD_ONLY) {
+      warnNotStreaming(profile, "the result set is scrollable");
+    }
+  }
+
+  private void warnNotStreaming(StreamingProfile profile, String reason) {
+    if (profile.shouldWarn(mappedStatement.getId())) {
+      log.warn("Results of '" + mappedStatement.getId() + "' will not be streamed on '" + configuration.getDatabaseId()
+          + "' because " + reason + ". The driver may read the whole result set into memory.");
+    }
+  }
+
   protected void closeStatement(Statement statement) {
     try {
       if (statement != null) {
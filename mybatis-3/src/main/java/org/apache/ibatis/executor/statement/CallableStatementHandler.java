@@ -48,8 +48,11 @@ public class CallableStatementHandler extends BaseStatementHandler {
   @Override
   public int update(Statement statement) throws SQLException {
     CallableStatement cs = (CallableStatement) statement;
+    long start = startTime();
     cs.execute();
+    recordExecute(start);
     int rows = cs.getUpdateCount();
+    recordUpdateCount(rows);
     Object parameterObject = boundSql.getParameterObject();
     KeyGenerator keyGenerator = mappedStatement.getKeyGenerator();
     keyGenerator.processAfter(executor, mappedStatement, cs, parameterObject);
@@ -66,8 +69,12 @@ public class CallableStatementHandler extends BaseStatementHandler {
   @Override
   public <E> List<E> query(Statement statement, ResultHandler resultHandler) throws SQLException {
     CallableStatement cs = (CallableStatement) statement;
+    applyStreamingProfile(statement, resultHandler != null);
+    long start = startTime();
     cs.execute();
+    long executed = recordExecute(start);
     List<E> resultList = resultSetHandler.handleResultSets(cs);
+    recordMapping(executed);
     resultSetHandler.handleOutputParameters(cs);
     return resultList;
   }
@@ -75,7 +82,10 @@ public class CallableStatementHandler extends BaseStatementHandler {
   @Override
   public <E> Cursor<E> queryCursor(Statement statement) throws SQLException {
     CallableStatement cs = (CallableStatement) statement;
+    applyStreamingProfile(statement, true);
+    long start = startTime();
     cs.execute();
+    recordExecute(start);
     Cursor<E> resultList = resultSetHandler.handleCursorResultSets(cs);
     resultSetHandler.handleOutputParameters(cs);
     return resultList;
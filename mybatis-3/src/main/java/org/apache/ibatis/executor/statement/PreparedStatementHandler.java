@@ -45,8 +45,11 @@ public class PreparedStatementHandler extends BaseStatementHandler {
   @Override
   public int update(Statement statement) throws SQLException {
     PreparedStatement ps = (PreparedStatement) statement;
+    long start = startTime();
     ps.execute();
+    recordExecute(start);
     int rows = ps.getUpdateCount();
+    recordUpdateCount(rows);
     Object parameterObject = boundSql.getParameterObject();
     KeyGenerator keyGenerator = mappedStatement.getKeyGenerator();
     keyGenerator.processAfter(executor, mappedStatement, ps, parameterObject);
@@ -62,16 +65,24 @@ public class PreparedStatementHandler extends BaseStatementHandler {
   @Override
   public <E> List<E> query(Statement statement, ResultHandler resultHandler) throws SQLException {
     PreparedStatement ps = (PreparedStatement) statement;
+    applyStreamingProfile(statement, resultHandler != null);
+    long start = startTime();
     // 执行查询
     ps.execute();
+    long executed = recordExecute(start);
     // 处理结果并返回
-    return resultSetHandler.handleResultSets(ps);
+    List<E> resultList = resultSetHandler.handleResultSets(ps);
+    recordMapping(executed);
+    return resultList;
   }
 
   @Override
   public <E> Cursor<E> queryCursor(Statement statement) throws SQLException {
     PreparedStatement ps = (PreparedStatement) statement;
+    applyStreamingProfile(statement, true);
+    long start = startTime();
     ps.execute();
+    recordExecute(start);
     return resultSetHandler.handleCursorResultSets(ps);
   }
 
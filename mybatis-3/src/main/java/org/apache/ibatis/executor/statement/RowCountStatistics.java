@@ -0,0 +1,93 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.statement;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按语句记录每次查询返回的行数，用指数滑动平均估计下一次的行数。
+ * <p>
+ * 开启 adaptiveFetchSize 后，据此为下一次执行设置 fetchSize，并预先分配结果列表的容量。
+ */
+public class RowCountStatistics {
+
+  /**
+   * 新样本的权重
+   */
+  private static final double ALPHA = 0.2;
+
+  /**
+   * 预分配结果列表时的上限，避免个别大查询让之后的小查询分配过大的数组
+   */
+  private static final int MAX_EXPECTED_ROWS = 1 << 16;
+
+  private final Map<String, Estimate> estimates = new ConcurrentHashMap<>();
+
+  public void record(String statementId, int rows) {
+    estimates.computeIfAbsent(statementId, id -> new Estimate()).record(rows);
+  }
+
+  /**
+   * @return 预计的行数（平均值），没有记录时返回0
+   */
+  public int expectedRows(String statementId) {
+    Estimate estimate = estimates.get(statementId);
+    return estimate == null ? 0 : (int) Math.min(MAX_EXPECTED_ROWS, Math.ceil(estimate.mean()));
+  }
+
+  /**
+   * 能在一次往返中取完大多数结果的 fetchSize：平均值加两倍平均偏差，再加1行让驱动在同一次往返中发现结果已经结束
+   *
+   * @return 限制在 [min, max] 之间的 fetchSize，没有记录时返回0
+   */
+  public int fetchSize(String statementId, int min, int max) {
+    Estimate estimate = estimates.get(statementId);
+    if (estimate == null) {
+      return 0;
+    }
+    double upper = estimate.mean() + 2 * estimate.deviation() + 1;
+    return (int) Math.max(min, Math.min(max, Math.ceil(upper)));
+  }
+
+  public void reset() {
+    estimates.clear();
+  }
+
+  private static final class Estimate {
+    private double mean;
+    private double deviation;
+    private boolean initialized;
+
+    synchronized void record(int rows) {
+      if (!initialized) {
+        mean = rows;
+        initialized = true;
+        return;
+      }
+      deviation += ALPHA * (Math.abs(rows - mean) - deviation);
+      mean += ALPHA * (rows - mean);
+    }
+
+    synchronized double mean() {
+      return mean;
+    }
+
+    synchronized double deviation() {
+      return deviation;
+    }
+  }
+}
@@ -48,18 +48,23 @@ public class SimpleStatementHandler extends BaseStatementHandler {
     Object parameterObject = boundSql.getParameterObject();
     KeyGenerator keyGenerator = mappedStatement.getKeyGenerator();
     int rows;
+    long start = startTime();
     if (keyGenerator instanceof Jdbc3KeyGenerator) {
       statement.execute(sql, Statement.RETURN_GENERATED_KEYS);
+      recordExecute(start);
       rows = statement.getUpdateCount();
       keyGenerator.processAfter(executor, mappedStatement, statement, parameterObject);
     } else if (keyGenerator instanceof SelectKeyGenerator) {
       statement.execute(sql);
+      recordExecute(start);
       rows = statement.getUpdateCount();
       keyGenerator.processAfter(executor, mappedStatement, statement, parameterObject);
     } else {
       statement.execute(sql);
+      recordExecute(start);
       rows = statement.getUpdateCount();
     }
+    recordUpdateCount(rows);
     return rows;
   }
 
@@ -72,14 +77,22 @@ public class SimpleStatementHandler extends BaseStatementHandler {
   @Override
   public <E> List<E> query(Statement statement, ResultHandler resultHandler) throws SQLException {
     String sql = boundSql.getSql();
+    applyStreamingProfile(statement, resultHandler != null);
+    long start = startTime();
     statement.execute(sql);
-    return resultSetHandler.handleResultSets(statement);
+    long executed = recordExecute(start);
+    List<E> resultList = resultSetHandler.handleResultSets(statement);
+    recordMapping(executed);
+    return resultList;
   }
 
   @Override
   public <E> Cursor<E> queryCursor(Statement statement) throws SQLException {
     String sql = boundSql.getSql();
+    applyStreamingProfile(statement, true);
+    long start = startTime();
     statement.execute(sql);
+    recordExecute(start);
     return resultSetHandler.handleCursorResultSets(statement);
   }
 
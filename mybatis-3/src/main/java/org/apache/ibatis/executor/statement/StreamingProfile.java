@@ -0,0 +1,89 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.statement;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 某种数据库上让驱动真正流式读取结果集所需的设置。
+ * <p>
+ * 开启 streamingResults 后，游标查询和带 ResultHandler 的查询会按当前 databaseId 找到对应的配置，
+ * 在执行前设置 fetchSize（语句自己配置了 fetchSize 时不覆盖）。事务或结果集类型不满足要求时驱动会退化为一次性读入全部结果，
+ * 此时每条语句只警告一次。
+ */
+public class StreamingProfile {
+
+  private final int fetchSize;
+  private final boolean requiresManualCommit;
+  private final boolean requiresForwardOnly;
+  private final Set<String> warnedStatements = ConcurrentHashMap.newKeySet();
+
+  /**
+   * @param fetchSize
+   *          流式读取时使用的 fetchSize
+   * @param requiresManualCommit
+   *          驱动是否只在关闭自动提交时才分批读取
+   * @param requiresForwardOnly
+   *          驱动是否只对 TYPE_FORWARD_ONLY 的结果集分批读取
+   */
+  public StreamingProfile(int fetchSize, boolean requiresManualCommit, boolean requiresForwardOnly) {
+    this.fetchSize = fetchSize;
+    this.requiresManualCommit = requiresManualCommit;
+    this.requiresForwardOnly = requiresForwardOnly;
+  }
+
+  /**
+   * MySQL Connector/J 只在 fetchSize 为 Integer.MIN_VALUE 时逐行读取（或在URL上开启 useCursorFetch）
+   */
+  public static StreamingProfile mysql() {
+    return new StreamingProfile(Integer.MIN_VALUE, false, true);
+  }
+
+  /**
+   * PostgreSQL 只在关闭自动提交、设置了 fetchSize 的只进结果集上使用服务端游标
+   */
+  public static StreamingProfile postgresql() {
+    return new StreamingProfile(1000, true, true);
+  }
+
+  /**
+   * Oracle 默认每次只预取10行，调大 fetchSize 减少往返
+   */
+  public static StreamingProfile oracle() {
+    return new StreamingProfile(1000, false, false);
+  }
+
+  public int getFetchSize() {
+    return fetchSize;
+  }
+
+  public boolean isRequiresManualCommit() {
+    return requiresManualCommit;
+  }
+
+  public boolean isRequiresForwardOnly() {
+    return requiresForwardOnly;
+  }
+
+  /**
+   * @return 该语句第一次需要警告时返回true
+   */
+  boolean shouldWarn(String statementId) {
+    return warnedStatements.add(statementId);
+  }
+
+}
@@ -17,6 +17,7 @@ package org.apache.ibatis.mapping;
 
 import javax.sql.DataSource;
 
+import org.apache.ibatis.datasource.routing.ReplicaSet;
 import org.apache.ibatis.transaction.TransactionFactory;
 
 /**
@@ -26,8 +27,16 @@ public final class Environment {
   private final String id;
   private final TransactionFactory transactionFactory;
   private final DataSource dataSource;
+  /**
+   * 只读副本，未配置时为null，所有语句都使用dataSource
+   */
+  private final ReplicaSet replicas;
 
   public Environment(String id, TransactionFactory transactionFactory, DataSource dataSource) {
+    this(id, transactionFactory, dataSource, null);
+  }
+
+  public Environment(String id, TransactionFactory transactionFactory, DataSource dataSource, ReplicaSet replicas) {
     if (id == null) {
       throw new IllegalArgumentException("Parameter 'id' must not be null");
     }
@@ -40,12 +49,14 @@ public final class Environment {
     }
     this.transactionFactory = transactionFactory;
     this.dataSource = dataSource;
+    this.replicas = replicas;
   }
 
   public static class Builder {
     private final String id;
     private TransactionFactory transactionFactory;
     private DataSource dataSource;
+    private ReplicaSet replicas;
 
     public Builder(String id) {
       this.id = id;
@@ -61,12 +72,17 @@ public final class Environment {
       return this;
     }
 
+    public Builder replicas(ReplicaSet replicas) {
+      this.replicas = replicas;
+      return this;
+    }
+
     public String id() {
       return this.id;
     }
 
     public Environment build() {
-      return new Environment(this.id, this.transactionFactory, this.dataSource);
+      return new Environment(this.id, this.transactionFactory, this.dataSource, this.replicas);
     }
 
   }
@@ -83,4 +99,8 @@ public final class Environment {
     return this.dataSource;
   }
 
+  public ReplicaSet getReplicas() {
+    return this.replicas;
+  }
+
 }
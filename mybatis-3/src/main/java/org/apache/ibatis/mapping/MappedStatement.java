@@ -17,7 +17,9 @@ package org.apache.ibatis.mapping;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
@@ -142,6 +144,22 @@ public final class MappedStatement {
    */
   private LanguageDriver lang;
   private String[] resultSets;
+  /**
+   * 配置了只读副本时查询语句的路由方式
+   */
+  private StatementRoute route;
+  /**
+   * 按id查询单个实体的语句，启用了identity map时先从中查找
+   */
+  private boolean identityLookup;
+  /**
+   * 游标由后台线程提前读取的行数，0表示不预取
+   */
+  private int cursorPrefetchSize;
+  /**
+   * 主键生成器为这条语句缓存的状态，与语句同属一个Configuration，不在共享的主键生成器实例中保留
+   */
+  private volatile Object keyGeneratorState;
 
   MappedStatement() {
     // constructor disabled
@@ -156,6 +174,7 @@ public final class MappedStatement {
       mappedStatement.sqlSource = sqlSource;
       mappedStatement.statementType = StatementType.PREPARED;
       mappedStatement.resultSetType = ResultSetType.DEFAULT;
+      mappedStatement.route = StatementRoute.DEFAULT;
       mappedStatement.parameterMap = new ParameterMap.Builder(configuration, "defaultParameterMap", null, new ArrayList<>()).build();
       mappedStatement.resultMaps = new ArrayList<>();
       mappedStatement.sqlCommandType = sqlCommandType;
@@ -266,6 +285,21 @@ public final class MappedStatement {
       return this;
     }
 
+    public Builder identityLookup(boolean identityLookup) {
+      mappedStatement.identityLookup = identityLookup;
+      return this;
+    }
+
+    public Builder cursorPrefetchSize(int cursorPrefetchSize) {
+      mappedStatement.cursorPrefetchSize = cursorPrefetchSize;
+      return this;
+    }
+
+    public Builder route(StatementRoute route) {
+      mappedStatement.route = route == null ? StatementRoute.DEFAULT : route;
+      return this;
+    }
+
     /**
      * Resul sets.
      *
@@ -314,6 +348,20 @@ public final class MappedStatement {
     return hasNestedResultMaps;
   }
 
+  /**
+   * 结果映射及其嵌套的结果映射、鉴别器分支中是否有嵌套查询。嵌套查询通过会话的执行器执行，
+   * 不能与仍在读取的结果集同时进行
+   */
+  public boolean hasNestedQueries() {
+    Set<String> visited = new HashSet<>();
+    for (ResultMap resultMap : resultMaps) {
+      if (hasNestedQueries(resultMap, visited)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   public Integer getFetchSize() {
     return fetchSize;
   }
@@ -378,6 +426,26 @@ public final class MappedStatement {
     return lang;
   }
 
+  public StatementRoute getRoute() {
+    return route;
+  }
+
+  public boolean isIdentityLookup() {
+    return identityLookup;
+  }
+
+  public int getCursorPrefetchSize() {
+    return cursorPrefetchSize;
+  }
+
+  public Object getKeyGeneratorState() {
+    return keyGeneratorState;
+  }
+
+  public void setKeyGeneratorState(Object keyGeneratorState) {
+    this.keyGeneratorState = keyGeneratorState;
+  }
+
   public String[] getResultSets() {
     return resultSets;
   }
@@ -414,6 +482,31 @@ public final class MappedStatement {
     return boundSql;
   }
 
+  private boolean hasNestedQueries(ResultMap resultMap, Set<String> visited) {
+    if (!visited.add(resultMap.getId())) {
+      return false;
+    }
+    if (resultMap.hasNestedQueries()) {
+      return true;
+    }
+    for (ResultMapping resultMapping : resultMap.getResultMappings()) {
+      String nestedResultMapId = resultMapping.getNestedResultMapId();
+      if (nestedResultMapId != null && configuration.hasResultMap(nestedResultMapId)
+          && hasNestedQueries(configuration.getResultMap(nestedResultMapId), visited)) {
+        return true;
+      }
+    }
+    Discriminator discriminator = resultMap.getDiscriminator();
+    if (discriminator != null) {
+      for (String caseResultMapId : discriminator.getDiscriminatorMap().values()) {
+        if (configuration.hasResultMap(caseResultMapId) && hasNestedQueries(configuration.getResultMap(caseResultMapId), visited)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   private static String[] delimitedStringToArray(String in) {
     if (in == null || in.trim().length() == 0) {
       return null;
@@ -49,6 +49,9 @@ public class ResultMap {
   // 通过<id>标签配置的数据库主键与Java实体属性的映射信息。需要注意的是，<id>标签与<result>标签没有本质的区别。
   private List<ResultMapping> idResultMappings;
 
+  // 是否显式声明了id，没有声明时idResultMappings是全部映射
+  private boolean hasExplicitId;
+
   // 通过<constructor>标签配置的构造器映射信息。
   private List<ResultMapping> constructorResultMappings;
 
@@ -144,6 +147,7 @@ public class ResultMap {
           resultMap.idResultMappings.add(resultMapping);
         }
       }
+      resultMap.hasExplicitId = !resultMap.idResultMappings.isEmpty();
       if (resultMap.idResultMappings.isEmpty()) {
         resultMap.idResultMappings.addAll(resultMap.resultMappings);
       }
@@ -263,6 +267,28 @@ public class ResultMap {
     return idResultMappings;
   }
 
+  public boolean hasExplicitId() {
+    return hasExplicitId;
+  }
+
+  /**
+   * 没有声明id时 idResultMappings 包含全部映射，这里只看显式声明的id
+   *
+   * @return 唯一的id映射对应的属性，没有或者有多个id时返回null
+   */
+  public String getIdProperty() {
+    String idProperty = null;
+    for (ResultMapping resultMapping : resultMappings) {
+      if (resultMapping.getFlags().contains(ResultFlag.ID)) {
+        if (idProperty != null || resultMapping.getProperty() == null) {
+          return null;
+        }
+        idProperty = resultMapping.getProperty();
+      }
+    }
+    return idProperty;
+  }
+
   public Set<String> getMappedColumns() {
     return mappedColumns;
   }
@@ -0,0 +1,34 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.mapping;
+
+/**
+ * 配置了只读副本时，查询语句使用哪个数据源
+ */
+public enum StatementRoute {
+  /**
+   * 事务中还没有写操作时使用副本，之后使用主库
+   */
+  DEFAULT,
+  /**
+   * 总是使用主库，用于必须读到最新数据的查询
+   */
+  PRIMARY,
+  /**
+   * 总是使用副本，即使事务中已经有写操作，调用方可以接受读到旧数据
+   */
+  REPLICA
+}
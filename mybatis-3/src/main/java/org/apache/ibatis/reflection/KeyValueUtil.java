@@ -0,0 +1,56 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.reflection;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * 把主键的值转换成可以直接用equals比较的形式。
+ * <p>
+ * 同一个主键在参数和结果对象中可能是不同的数字类型，例如方法参数是Integer而id属性是Long，
+ * 或者驱动返回BigDecimal。
+ */
+public class KeyValueUtil {
+
+  private KeyValueUtil() {
+    // Prevent Instantiation of Static Class
+  }
+
+  /**
+   * 整数统一转换为Long，超出范围的BigInteger保持不变；没有小数部分的BigDecimal也转换为Long，
+   * 其它BigDecimal去掉末尾的0。其它类型原样返回
+   */
+  public static Object normalize(Object value) {
+    if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+      return ((Number) value).longValue();
+    }
+    if (value instanceof BigInteger) {
+      BigInteger integer = (BigInteger) value;
+      return integer.bitLength() < Long.SIZE ? (Object) integer.longValue() : integer;
+    }
+    if (value instanceof BigDecimal) {
+      BigDecimal decimal = (BigDecimal) value;
+      try {
+        return decimal.longValueExact();
+      } catch (ArithmeticException e) {
+        return decimal.stripTrailingZeros();
+      }
+    }
+    return value;
+  }
+
+}
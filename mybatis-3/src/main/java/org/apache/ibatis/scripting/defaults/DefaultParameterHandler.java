@@ -72,36 +72,78 @@ public class DefaultParameterHandler implements ParameterHandler {
       for (int i = 0; i < parameterMappings.size(); i++) {
         ParameterMapping parameterMapping = parameterMappings.get(i);
         if (parameterMapping.getMode() != ParameterMode.OUT) {
-          Object value;
-          String propertyName = parameterMapping.getProperty();
-
-          // 优先使用additionalParameter，如果bind绑定了参数，则优先使用
-          if (boundSql.hasAdditionalParameter(propertyName)) { // issue #448 ask first for additional params
-            value = boundSql.getAdditionalParameter(propertyName);
-          } else if (parameterObject == null) {
-            value = null;
-          } else if (typeHandlerRegistry.hasTypeHandler(parameterObject.getClass())) {
-            value = parameterObject;
-          } else {
-            MetaObject metaObject = configuration.newMetaObject(parameterObject);
-            value = metaObject.getValue(propertyName);
-          }
+          setParameter(ps, i + 1, parameterMapping, getParameterValue(parameterMapping));
+        }
+      }
+    }
+  }
 
-          TypeHandler typeHandler = parameterMapping.getTypeHandler();
-          JdbcType jdbcType = parameterMapping.getJdbcType();
-          if (value == null && jdbcType == null) {
-            jdbcType = configuration.getJdbcTypeForNull();
-          }
+  /**
+   * 按参数映射的顺序取出参数值，OUT参数的位置为null。
+   * 先取出值、稍后再绑定时（如多行 INSERT），参数对象之后的修改不影响已取出的值
+   */
+  public Object[] getParameterValues() {
+    ErrorContext.instance().activity("getting parameter values").object(mappedStatement.getParameterMap().getId());
+    List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+    Object[] values = new Object[parameterMappings == null ? 0 : parameterMappings.size()];
+    for (int i = 0; i < values.length; i++) {
+      ParameterMapping parameterMapping = parameterMappings.get(i);
+      if (parameterMapping.getMode() != ParameterMode.OUT) {
+        values[i] = getParameterValue(parameterMapping);
+      }
+    }
+    return values;
+  }
 
-          try {
-            // 调用BaseTypeHandler的typeHandler绑定参数，BaseTypeHandler会把交给具体的TypeHandler子类去实现
-            typeHandler.setParameter(ps, i + 1, value, jdbcType);
-          } catch (TypeException | SQLException e) {
-            throw new TypeException("Could not set parameters for mapping: " + parameterMapping + ". Cause: " + e, e);
-          }
-        }
+  /**
+   * 绑定 {@link #getParameterValues()} 取出的值，从指定位置之后开始，用于把多行参数绑定到同一条语句（如多行 INSERT）
+   *
+   * @param ps
+   *          the statement
+   * @param offset
+   *          已被占用的参数个数
+   * @param values
+   *          {@link #getParameterValues()} 取出的值
+   */
+  public void setParameters(PreparedStatement ps, int offset, Object[] values) {
+    ErrorContext.instance().activity("setting parameters").object(mappedStatement.getParameterMap().getId());
+    List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+    for (int i = 0; i < values.length; i++) {
+      ParameterMapping parameterMapping = parameterMappings.get(i);
+      if (parameterMapping.getMode() != ParameterMode.OUT) {
+        setParameter(ps, offset + i + 1, parameterMapping, values[i]);
       }
     }
   }
 
+  private Object getParameterValue(ParameterMapping parameterMapping) {
+    String propertyName = parameterMapping.getProperty();
+    // 优先使用additionalParameter，如果bind绑定了参数，则优先使用
+    if (boundSql.hasAdditionalParameter(propertyName)) { // issue #448 ask first for additional params
+      return boundSql.getAdditionalParameter(propertyName);
+    } else if (parameterObject == null) {
+      return null;
+    } else if (typeHandlerRegistry.hasTypeHandler(parameterObject.getClass())) {
+      return parameterObject;
+    } else {
+      MetaObject metaObject = configuration.newMetaObject(parameterObject);
+      return metaObject.getValue(propertyName);
+    }
+  }
+
+  private void setParameter(PreparedStatement ps, int index, ParameterMapping parameterMapping, Object value) {
+    TypeHandler typeHandler = parameterMapping.getTypeHandler();
+    JdbcType jdbcType = parameterMapping.getJdbcType();
+    if (value == null && jdbcType == null) {
+      jdbcType = configuration.getJdbcTypeForNull();
+    }
+
+    try {
+      // 调用BaseTypeHandler的typeHandler绑定参数，BaseTypeHandler会把交给具体的TypeHandler子类去实现
+      typeHandler.setParameter(ps, index, value, jdbcType);
+    } catch (TypeException | SQLException e) {
+      throw new TypeException("Could not set parameters for mapping: " + parameterMapping + ". Cause: " + e, e);
+    }
+  }
+
 }
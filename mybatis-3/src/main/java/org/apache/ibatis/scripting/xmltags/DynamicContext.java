@@ -15,7 +15,9 @@
  */
 package org.apache.ibatis.scripting.xmltags;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.StringJoiner;
 
@@ -57,7 +59,20 @@ public class DynamicContext {
 
   private int uniqueNumber = 0;
 
+  /**
+   * 记录SQL形态签名：参数类型、if/when判断结果、foreach集合长度、${}替换结果以及绑定参数的类型，
+   * 为null时表示不记录，此时会正常拼接SQL
+   */
+  private final List<Object> shape;
+
   public DynamicContext(Configuration configuration, Object parameterObject) {
+    this(configuration, parameterObject, false);
+  }
+
+  /**
+   * @param shapeOnly 为true时只记录SQL形态签名和绑定参数，不拼接SQL
+   */
+  public DynamicContext(Configuration configuration, Object parameterObject, boolean shapeOnly) {
     if (parameterObject != null && !(parameterObject instanceof Map)) {
       MetaObject metaObject = configuration.newMetaObject(parameterObject);
       // 是否有对应类型的TypeHandler
@@ -68,6 +83,12 @@ public class DynamicContext {
     }
     bindings.put(PARAMETER_OBJECT_KEY, parameterObject);
     bindings.put(DATABASE_ID_KEY, configuration.getDatabaseId());
+    if (shapeOnly) {
+      shape = new ArrayList<>();
+      shape.add(parameterObject == null ? null : parameterObject.getClass());
+    } else {
+      shape = null;
+    }
   }
 
   public Map<String, Object> getBindings() {
@@ -76,10 +97,14 @@ public class DynamicContext {
 
   public void bind(String name, Object value) {
     bindings.put(name, value);
+    // 绑定参数的类型会影响#{}参数的TypeHandler解析，所以也属于SQL形态的一部分
+    recordShape(value == null ? null : value.getClass());
   }
 
   public void appendSql(String sql) {
-    sqlBuilder.add(sql);
+    if (shape == null) {
+      sqlBuilder.add(sql);
+    }
   }
 
   public String getSql() {
@@ -90,6 +115,28 @@ public class DynamicContext {
     return uniqueNumber++;
   }
 
+  /**
+   * 记录一个会影响最终SQL的运行时结果，比如if标签的判断结果
+   * @param outcome 运行时结果
+   */
+  public void recordShape(Object outcome) {
+    if (shape != null) {
+      shape.add(outcome);
+    }
+  }
+
+  public boolean isShapeOnly() {
+    return shape != null;
+  }
+
+  /**
+   * 获取SQL形态签名，相同签名的参数生成的SQL和ParameterMapping是相同的
+   * @return 形态签名，没有记录时返回null
+   */
+  public List<Object> getShape() {
+    return shape;
+  }
+
   static class ContextMap extends HashMap<String, Object> {
     private static final long serialVersionUID = 2977601501966151582L;
     private final MetaObject parameterMetaObject;
@@ -15,13 +15,21 @@
  */
 package org.apache.ibatis.scripting.xmltags;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.apache.ibatis.builder.SqlSourceBuilder;
 import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.ParameterMapping;
 import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.session.Configuration;
 
 /**
  * 用于描述Mapper XML文件中配置的SQL资源信息，这些这些SQL通常含有SQL动态标签和${}占位符参数，需要Mapper调用时才能确定具体的语句
+ * 开启dynamicSqlShapeCacheSize后，会按SQL形态签名缓存解析好的StaticSqlSource，相同形态的调用只需要绑定参数
  * @author Clinton Begin
  */
 public class DynamicSqlSource implements SqlSource {
@@ -33,9 +41,36 @@ public class DynamicSqlSource implements SqlSource {
    */
   private final SqlNode rootSqlNode;
 
+  /**
+   * SQL形态缓存，key为DynamicContext记录的形态签名，value为解析好的StaticSqlSource，为null时表示未开启
+   */
+  private final Map<List<Object>, ShapeEntry> shapeCache;
+
+  /**
+   * 形态缓存的最大数量
+   */
+  private final int shapeCacheSize;
+
+  /**
+   * 形态数量超出缓存大小时不再使用形态缓存，避免每次调用都要多遍历一次SQL树
+   */
+  private volatile boolean shapeCacheOverflowed;
+
+  /**
+   * 指定了chunkSize的foreach标签，没有时为null
+   */
+  private final ForEachSqlNode chunkedForEach;
+
   public DynamicSqlSource(Configuration configuration, SqlNode rootSqlNode) {
+    this(configuration, rootSqlNode, null);
+  }
+
+  public DynamicSqlSource(Configuration configuration, SqlNode rootSqlNode, ForEachSqlNode chunkedForEach) {
     this.configuration = configuration;
     this.rootSqlNode = rootSqlNode;
+    this.chunkedForEach = chunkedForEach;
+    this.shapeCacheSize = configuration.getDynamicSqlShapeCacheSize();
+    this.shapeCache = shapeCacheSize > 0 ? new ConcurrentHashMap<>() : null;
   }
 
   /**
@@ -45,22 +80,98 @@ public class DynamicSqlSource implements SqlSource {
    */
   @Override
   public BoundSql getBoundSql(Object parameterObject) {
-    // 新建DynamicContext对象（会创建bindings参数），存储解析后的SQL内容
-    DynamicContext context = new DynamicContext(configuration, parameterObject);
-    // 解析SQL树
+    if (shapeCache == null || shapeCacheOverflowed) {
+      // 新建DynamicContext对象（会创建bindings参数），存储解析后的SQL内容
+      DynamicContext context = new DynamicContext(configuration, parameterObject);
+      // 解析SQL树
+      rootSqlNode.apply(context);
+      return createBoundSql(context, parse(context, parameterObject), parameterObject);
+    }
+    // 先只计算SQL形态签名和绑定参数，不拼接SQL
+    DynamicContext context = new DynamicContext(configuration, parameterObject, true);
     rootSqlNode.apply(context);
+    List<Object> shape = context.getShape();
+    ShapeEntry entry = shapeCache.get(shape);
+    if (entry != null && entry.matches(configuration, context.getBindings())) {
+      return createBoundSql(context, entry.sqlSource, parameterObject);
+    }
+    // 未命中或嵌套属性的类型不同，完整解析一次
+    context = new DynamicContext(configuration, parameterObject);
+    rootSqlNode.apply(context);
+    SqlSource sqlSource = parse(context, parameterObject);
+    if (entry == null) {
+      if (shapeCache.size() < shapeCacheSize) {
+        shapeCache.putIfAbsent(shape, new ShapeEntry(configuration, sqlSource, context.getBindings(), parameterObject));
+      } else {
+        shapeCacheOverflowed = true;
+      }
+    }
+    return createBoundSql(context, sqlSource, parameterObject);
+  }
 
+  /**
+   * 按foreach标签的chunkSize拆分参数，拆分后的每一份参数都需要单独执行一次
+   * @param parameterObject 参数对象
+   * @return 拆分后的参数，不需要拆分时返回null
+   */
+  public List<Object> chunkParameter(Object parameterObject) {
+    return chunkedForEach == null ? null : chunkedForEach.chunkParameter(parameterObject);
+  }
+
+  private SqlSource parse(DynamicContext context, Object parameterObject) {
     SqlSourceBuilder sqlSourceParser = new SqlSourceBuilder(configuration);
     // 获取参数类型，如果参数为null，设备Object类型，否则取用参数的真实类型
     Class<?> parameterType = parameterObject == null ? Object.class : parameterObject.getClass();
-
     // 把带#{}的SQL解析成带占位符？的Sql，生成StaticSqlSource对象
-    SqlSource sqlSource = sqlSourceParser.parse(context.getSql(), parameterType, context.getBindings());
+    return sqlSourceParser.parse(context.getSql(), parameterType, context.getBindings());
+  }
 
+  private BoundSql createBoundSql(DynamicContext context, SqlSource sqlSource, Object parameterObject) {
     BoundSql boundSql = sqlSource.getBoundSql(parameterObject);
     // 取context绑定的额外参数设置到boundSql
     context.getBindings().forEach(boundSql::setAdditionalParameter);
     return boundSql;
   }
 
+  /**
+   * 形态缓存中的一项。形态签名只记录了绑定参数本身的类型，
+   * 而 #{item.value} 这样经过绑定参数的嵌套属性，解析时按运行时的值取类型（如Map中的值、声明为Object的属性），
+   * 所以同时记录这些属性解析时的类型，类型不同时不能复用
+   */
+  private static class ShapeEntry {
+    private final SqlSource sqlSource;
+    private final String[] nestedProperties;
+    private final Class<?>[] nestedTypes;
+
+    ShapeEntry(Configuration configuration, SqlSource sqlSource, Map<String, Object> bindings, Object parameterObject) {
+      this.sqlSource = sqlSource;
+      MetaObject metaBindings = configuration.newMetaObject(bindings);
+      List<String> properties = new ArrayList<>();
+      List<Class<?>> types = new ArrayList<>();
+      for (ParameterMapping parameterMapping : sqlSource.getBoundSql(parameterObject).getParameterMappings()) {
+        String property = parameterMapping.getProperty();
+        if (property != null && (property.indexOf('.') != -1 || property.indexOf('[') != -1)
+            && metaBindings.hasGetter(property)) {
+          properties.add(property);
+          types.add(metaBindings.getGetterType(property));
+        }
+      }
+      this.nestedProperties = properties.toArray(new String[0]);
+      this.nestedTypes = types.toArray(new Class<?>[0]);
+    }
+
+    boolean matches(Configuration configuration, Map<String, Object> bindings) {
+      if (nestedProperties.length == 0) {
+        return true;
+      }
+      MetaObject metaBindings = configuration.newMetaObject(bindings);
+      for (int i = 0; i < nestedProperties.length; i++) {
+        if (!metaBindings.hasGetter(nestedProperties[i]) || metaBindings.getGetterType(nestedProperties[i]) != nestedTypes[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
 }
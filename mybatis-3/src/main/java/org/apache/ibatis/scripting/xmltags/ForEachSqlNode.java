@@ -15,10 +15,22 @@
  */
 package org.apache.ibatis.scripting.xmltags;
 
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
+import org.apache.ibatis.builder.BuilderException;
 import org.apache.ibatis.parsing.GenericTokenParser;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.ReflectionException;
 import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.type.ArrayTypeHandler;
 
 /**
  * @author Clinton Begin
@@ -26,6 +38,13 @@ import org.apache.ibatis.session.Configuration;
 public class ForEachSqlNode implements SqlNode {
   public static final String ITEM_PREFIX = "__frch_";
 
+  /**
+   * 数组绑定模式下，整个集合绑定成的参数名称
+   */
+  private static final String ARRAY_ITEM = "array";
+
+  private static final String PAD_TO_POWER_OF_TWO = "powerOfTwo";
+
   private final ExpressionEvaluator evaluator;
   private final String collectionExpression;
   private final SqlNode contents;
@@ -36,7 +55,33 @@ public class ForEachSqlNode implements SqlNode {
   private final String index;
   private final Configuration configuration;
 
+  /**
+   * 是否把整个集合绑定为一个JDBC数组参数，只对支持的数据库生效（根据databaseId判断），其他数据库仍然逐个展开
+   */
+  private final boolean arrayBinding;
+
+  /**
+   * 集合超过该大小时，语句会按该大小拆分成多次执行，并合并结果，为null时表示不拆分
+   */
+  private final Integer chunkSize;
+
+  /**
+   * 展开时补齐到的分桶大小，让不同大小的集合生成的SQL尽量相同，提高预编译语句的复用率。
+   * 空数组表示按2的幂分桶，为null时表示不补齐
+   */
+  private final int[] padBuckets;
+
+  /**
+   * 补齐时是否使用null，否则重复最后一个元素。注意NOT IN中出现null时不会匹配任何行
+   */
+  private final boolean padWithNull;
+
   public ForEachSqlNode(Configuration configuration, SqlNode contents, String collectionExpression, String index, String item, String open, String close, String separator) {
+    this(configuration, contents, collectionExpression, index, item, open, close, separator, false, null, null, false);
+  }
+
+  public ForEachSqlNode(Configuration configuration, SqlNode contents, String collectionExpression, String index, String item, String open, String close, String separator,
+      boolean arrayBinding, Integer chunkSize, String padTo, boolean padWithNull) {
     this.evaluator = new ExpressionEvaluator();
     this.collectionExpression = collectionExpression;
     this.contents = contents;
@@ -46,49 +91,111 @@ public class ForEachSqlNode implements SqlNode {
     this.index = index;
     this.item = item;
     this.configuration = configuration;
+    this.arrayBinding = arrayBinding;
+    this.chunkSize = chunkSize;
+    this.padBuckets = parsePadBuckets(padTo);
+    this.padWithNull = padWithNull;
   }
 
   @Override
   public boolean apply(DynamicContext context) {
     Map<String, Object> bindings = context.getBindings();
     final Iterable<?> iterable = evaluator.evaluateIterable(collectionExpression, bindings);
-    if (!iterable.iterator().hasNext()) {
+    if (arrayBinding && iterable.iterator().hasNext()) {
+      String template = arrayBindingTemplate(configuration.getDatabaseId());
+      if (template != null) {
+        // SQL与集合大小无关，所以不需要记录SQL形态。空集合无法确定数组元素类型，仍按原来的方式处理
+        applyArray(context, iterable, template);
+        return true;
+      }
+    }
+    int size = sizeOf(iterable);
+    int paddedSize = paddedSize(size);
+    context.recordShape(paddedSize);
+    if (size == 0) {
       return true;
     }
     boolean first = true;
     applyOpen(context);
     int i = 0;
+    Object last = null;
     for (Object o : iterable) {
-      DynamicContext oldContext = context;
-      if (first || separator == null) {
-        context = new PrefixedContext(context, "");
-      } else {
-        context = new PrefixedContext(context, separator);
-      }
-      int uniqueNumber = context.getUniqueNumber();
-      // Issue #709
-      if (o instanceof Map.Entry) {
-        @SuppressWarnings("unchecked")
-        Map.Entry<Object, Object> mapEntry = (Map.Entry<Object, Object>) o;
-        applyIndex(context, mapEntry.getKey(), uniqueNumber);
-        applyItem(context, mapEntry.getValue(), uniqueNumber);
-      } else {
-        applyIndex(context, i, uniqueNumber);
-        applyItem(context, o, uniqueNumber);
-      }
-      contents.apply(new FilteredDynamicContext(configuration, context, index, item, uniqueNumber));
-      if (first) {
-        first = !((PrefixedContext) context).isPrefixApplied();
-      }
-      context = oldContext;
+      first = applyIteration(context, o, i, first);
+      last = o;
       i++;
     }
+    // 补齐到分桶大小，重复最后一个元素或者使用null
+    for (; i < paddedSize; i++) {
+      first = applyIteration(context, padWithNull ? null : last, i, first);
+    }
     applyClose(context);
     context.getBindings().remove(item);
     context.getBindings().remove(index);
     return true;
   }
 
+  private boolean applyIteration(DynamicContext context, Object o, int i, boolean first) {
+    PrefixedContext prefixedContext = new PrefixedContext(context, first || separator == null ? "" : separator);
+    int uniqueNumber = prefixedContext.getUniqueNumber();
+    // Issue #709
+    if (o instanceof Map.Entry) {
+      @SuppressWarnings("unchecked")
+      Map.Entry<Object, Object> mapEntry = (Map.Entry<Object, Object>) o;
+      applyIndex(prefixedContext, mapEntry.getKey(), uniqueNumber);
+      applyItem(prefixedContext, mapEntry.getValue(), uniqueNumber);
+    } else {
+      applyIndex(prefixedContext, i, uniqueNumber);
+      applyItem(prefixedContext, o, uniqueNumber);
+    }
+    contents.apply(new FilteredDynamicContext(configuration, prefixedContext, index, item, uniqueNumber));
+    return first && !prefixedContext.isPrefixApplied();
+  }
+
+  /**
+   * 计算补齐后的集合大小，超过最大分桶时补齐到最大分桶的整数倍
+   * @param size 集合大小
+   * @return 补齐后的大小
+   */
+  private int paddedSize(int size) {
+    if (padBuckets == null || size == 0) {
+      return size;
+    }
+    if (padBuckets.length == 0) {
+      int paddedSize = Integer.highestOneBit(size);
+      return paddedSize == size ? size : paddedSize << 1;
+    }
+    for (int bucket : padBuckets) {
+      if (size <= bucket) {
+        return bucket;
+      }
+    }
+    int largest = padBuckets[padBuckets.length - 1];
+    return (size + largest - 1) / largest * largest;
+  }
+
+  /**
+   * 解析padTo属性，powerOfTwo表示按2的幂分桶，否则为逗号分隔的分桶大小
+   * @return 升序排列的分桶大小，按2的幂分桶时返回空数组，不补齐时返回null
+   */
+  private static int[] parsePadBuckets(String padTo) {
+    if (padTo == null) {
+      return null;
+    }
+    if (PAD_TO_POWER_OF_TWO.equals(padTo)) {
+      return new int[0];
+    }
+    int[] buckets;
+    try {
+      buckets = Arrays.stream(padTo.split(",")).map(String::trim).mapToInt(Integer::parseInt).sorted().toArray();
+    } catch (NumberFormatException e) {
+      buckets = null;
+    }
+    if (buckets == null || buckets.length == 0 || buckets[0] <= 0) {
+      throw new BuilderException("The padTo of foreach must be '" + PAD_TO_POWER_OF_TWO + "' or positive bucket sizes but was '" + padTo + "'.");
+    }
+    return buckets;
+  }
+
   private void applyIndex(DynamicContext context, Object o, int i) {
     if (index != null) {
       context.bind(index, o);
@@ -115,6 +222,146 @@ public class ForEachSqlNode implements SqlNode {
     }
   }
 
+  /**
+   * 把集合元素绑定成一个数组参数，替换open、close以及其中展开的内容
+   */
+  private void applyArray(DynamicContext context, Iterable<?> iterable, String template) {
+    List<Object> values = new ArrayList<>();
+    Class<?> componentType = null;
+    for (Object o : iterable) {
+      Object value = o instanceof Map.Entry ? ((Map.Entry<?, ?>) o).getValue() : o;
+      if (value != null) {
+        if (componentType == null) {
+          componentType = value.getClass();
+        } else if (!componentType.equals(value.getClass())) {
+          componentType = Object.class;
+        }
+      }
+      values.add(value);
+    }
+    // 数组的元素类型决定了ArrayTypeHandler创建SQL数组时使用的类型名称
+    Object[] array = (Object[]) Array.newInstance(componentType == null ? Object.class : componentType, values.size());
+    String name = itemizeItem(ARRAY_ITEM, context.getUniqueNumber());
+    context.bind(name, values.toArray(array));
+    context.appendSql(String.format(template, "#{" + name + ",typeHandler=" + ArrayTypeHandler.class.getName() + "}"));
+  }
+
+  /**
+   * 获取数组绑定的SQL模板
+   * @param databaseId 数据库厂商标识
+   * @return SQL模板，不支持时返回null
+   */
+  private static String arrayBindingTemplate(String databaseId) {
+    if (databaseId == null) {
+      return null;
+    }
+    String id = databaseId.toLowerCase(Locale.ENGLISH);
+    if (id.contains("postgres") || id.equals("h2")) {
+      return "= ANY (%s)";
+    } else if (id.contains("hsql")) {
+      return "IN (UNNEST(%s))";
+    }
+    return null;
+  }
+
+  public Integer getChunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * 按chunkSize把参数拆分成多份，每一份中的集合不超过chunkSize个元素
+   * @param parameterObject 参数对象，集合需要是参数Map中的一个顶层参数，或者参数对象的一个属性
+   * @return 拆分后的参数，不需要拆分时返回null
+   */
+  public List<Object> chunkParameter(Object parameterObject) {
+    if (chunkSize == null) {
+      return null;
+    }
+    Object collection;
+    MetaObject metaParameter = null;
+    if (parameterObject instanceof Map && ((Map<?, ?>) parameterObject).containsKey(collectionExpression)) {
+      collection = ((Map<?, ?>) parameterObject).get(collectionExpression);
+    } else if (parameterObject != null && !(parameterObject instanceof Map) && collectionExpression.indexOf('.') == -1
+        && (metaParameter = configuration.newMetaObject(parameterObject)).hasGetter(collectionExpression)) {
+      collection = metaParameter.getValue(collectionExpression);
+    } else {
+      throw new BuilderException("The foreach collection '" + collectionExpression
+          + "' can only be split into chunks when it is a top level parameter (e.g. @Param) or a property of the parameter object of the statement.");
+    }
+    List<Object> values = new ArrayList<>();
+    evaluator.evaluateIterable(collectionExpression, parameterObject).forEach(values::add);
+    if (values.size() <= chunkSize) {
+      return null;
+    }
+    List<Object> chunks = new ArrayList<>();
+    for (int from = 0; from < values.size(); from += chunkSize) {
+      int to = Math.min(from + chunkSize, values.size());
+      Object subCollection = subCollection(collection, values, from, to);
+      chunks.add(metaParameter == null ? copyMap(parameterObject, subCollection) : copyBean(metaParameter, subCollection));
+    }
+    return chunks;
+  }
+
+  private Object copyMap(Object parameterObject, Object subCollection) {
+    @SuppressWarnings("unchecked")
+    Map<String, Object> parameterMap = (Map<String, Object>) parameterObject;
+    // 使用相同类型的Map，保留ParamMap等对不存在参数的检查
+    @SuppressWarnings("unchecked")
+    Map<String, Object> chunk = configuration.getObjectFactory().create(parameterMap.getClass());
+    chunk.putAll(parameterMap);
+    chunk.put(collectionExpression, subCollection);
+    return chunk;
+  }
+
+  /**
+   * 创建同类型的参数对象并复制可写的属性，集合属性替换为这一份的元素
+   */
+  private Object copyBean(MetaObject metaParameter, Object subCollection) {
+    Class<?> type = metaParameter.getOriginalObject().getClass();
+    Object chunk;
+    try {
+      chunk = configuration.getObjectFactory().create(type);
+    } catch (ReflectionException e) {
+      throw new BuilderException("The foreach collection '" + collectionExpression + "' cannot be split into chunks because the parameter type "
+          + type.getName() + " cannot be instantiated. Cause: " + e, e);
+    }
+    MetaObject metaChunk = configuration.newMetaObject(chunk);
+    for (String property : metaParameter.getGetterNames()) {
+      if (metaChunk.hasSetter(property)) {
+        metaChunk.setValue(property, metaParameter.getValue(property));
+      }
+    }
+    metaChunk.setValue(collectionExpression, subCollection);
+    return chunk;
+  }
+
+  private static Object subCollection(Object collection, List<Object> values, int from, int to) {
+    if (collection.getClass().isArray()) {
+      Object array = Array.newInstance(collection.getClass().getComponentType(), to - from);
+      System.arraycopy(collection, from, array, 0, to - from);
+      return array;
+    } else if (collection instanceof Map) {
+      Map<Object, Object> map = new LinkedHashMap<>();
+      for (Object o : values.subList(from, to)) {
+        Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+        map.put(entry.getKey(), entry.getValue());
+      }
+      return map;
+    }
+    return new ArrayList<>(values.subList(from, to));
+  }
+
+  private static int sizeOf(Iterable<?> iterable) {
+    if (iterable instanceof Collection) {
+      return ((Collection<?>) iterable).size();
+    }
+    int size = 0;
+    for (Iterator<?> it = iterable.iterator(); it.hasNext(); it.next()) {
+      size++;
+    }
+    return size;
+  }
+
   private static String itemizeItem(String item, int i) {
     return ITEM_PREFIX + item + "_" + i;
   }
@@ -158,7 +405,8 @@ public class ForEachSqlNode implements SqlNode {
         return "#{" + newContent + "}";
       });
 
-      delegate.appendSql(parser.parse(sql));
+      // 只记录SQL形态时不需要改写#{}占位符
+      delegate.appendSql(delegate.isShapeOnly() ? sql : parser.parse(sql));
     }
 
     @Override
@@ -166,6 +414,16 @@ public class ForEachSqlNode implements SqlNode {
       return delegate.getUniqueNumber();
     }
 
+    @Override
+    public void recordShape(Object outcome) {
+      delegate.recordShape(outcome);
+    }
+
+    @Override
+    public boolean isShapeOnly() {
+      return delegate.isShapeOnly();
+    }
+
   }
 
 
@@ -213,6 +471,16 @@ public class ForEachSqlNode implements SqlNode {
     public int getUniqueNumber() {
       return delegate.getUniqueNumber();
     }
+
+    @Override
+    public void recordShape(Object outcome) {
+      delegate.recordShape(outcome);
+    }
+
+    @Override
+    public boolean isShapeOnly() {
+      return delegate.isShapeOnly();
+    }
   }
 
 }
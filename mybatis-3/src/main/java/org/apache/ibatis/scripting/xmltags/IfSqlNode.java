@@ -38,7 +38,9 @@ public class IfSqlNode implements SqlNode {
 
   @Override
   public boolean apply(DynamicContext context) {
-    if (evaluator.evaluateBoolean(test, context.getBindings())) {
+    boolean matched = evaluator.evaluateBoolean(test, context.getBindings());
+    context.recordShape(matched);
+    if (matched) {
       contents.apply(context);
       return true;
     }
@@ -132,6 +132,16 @@ public class TrimSqlNode implements SqlNode {
       return delegate.getUniqueNumber();
     }
 
+    @Override
+    public void recordShape(Object outcome) {
+      delegate.recordShape(outcome);
+    }
+
+    @Override
+    public boolean isShapeOnly() {
+      return delegate.isShapeOnly();
+    }
+
     @Override
     public void appendSql(String sql) {
       sqlBuffer.append(sql);
@@ -38,6 +38,16 @@ public class XMLScriptBuilder extends BaseBuilder {
   private boolean isDynamic;
   private final Class<?> parameterType;
 
+  /**
+   * 指定了chunkSize的foreach标签，一条语句最多只能有一个
+   */
+  private ForEachSqlNode chunkedForEach;
+
+  /**
+   * 当前解析到的foreach标签嵌套深度
+   */
+  private int forEachDepth;
+
   /**
    * 存放各种节点对应的Handler，比如
    * if -> IfHandler
@@ -79,7 +89,7 @@ public class XMLScriptBuilder extends BaseBuilder {
     SqlSource sqlSource;
     // 如果是动态SQL，返回DynamicSqlSource，否则返回RawSqlSource
     if (isDynamic) {
-      sqlSource = new DynamicSqlSource(configuration, rootSqlNode);
+      sqlSource = new DynamicSqlSource(configuration, rootSqlNode, chunkedForEach);
     } else {
       sqlSource = new RawSqlSource(configuration, rootSqlNode, parameterType);
     }
@@ -206,14 +216,34 @@ public class XMLScriptBuilder extends BaseBuilder {
 
     @Override
     public void handleNode(XNode nodeToHandle, List<SqlNode> targetContents) {
+      forEachDepth++;
       MixedSqlNode mixedSqlNode = parseDynamicTags(nodeToHandle);
+      forEachDepth--;
       String collection = nodeToHandle.getStringAttribute("collection");
       String item = nodeToHandle.getStringAttribute("item");
       String index = nodeToHandle.getStringAttribute("index");
       String open = nodeToHandle.getStringAttribute("open");
       String close = nodeToHandle.getStringAttribute("close");
       String separator = nodeToHandle.getStringAttribute("separator");
-      ForEachSqlNode forEachSqlNode = new ForEachSqlNode(configuration, mixedSqlNode, collection, index, item, open, close, separator);
+      boolean arrayBinding = nodeToHandle.getBooleanAttribute("arrayBinding", false);
+      Integer chunkSize = nodeToHandle.getIntAttribute("chunkSize");
+      String padTo = nodeToHandle.getStringAttribute("padTo");
+      boolean padWithNull = "null".equals(nodeToHandle.getStringAttribute("padWith", "last"));
+      if (chunkSize != null) {
+        // 拆分执行是针对整条语句的，所以只能作用于语句参数中的一个集合
+        if (chunkSize <= 0) {
+          throw new BuilderException("The chunkSize of foreach must be greater than zero.");
+        } else if (forEachDepth > 0) {
+          throw new BuilderException("The chunkSize can not be specified on a nested foreach.");
+        } else if (chunkedForEach != null) {
+          throw new BuilderException("Only one foreach with chunkSize is allowed in a statement.");
+        }
+      }
+      ForEachSqlNode forEachSqlNode = new ForEachSqlNode(configuration, mixedSqlNode, collection, index, item, open, close, separator, arrayBinding, chunkSize,
+          padTo, padWithNull);
+      if (chunkSize != null) {
+        chunkedForEach = forEachSqlNode;
+      }
       targetContents.add(forEachSqlNode);
     }
   }
@@ -0,0 +1,35 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+/**
+ * BATCH 执行器如何把语句归并到同一个 JDBC 批次中
+ */
+public enum BatchGrouping {
+  /**
+   * 只有与上一条语句相同时才追加到当前批次，语句交错时会开启新的批次
+   */
+  NONE,
+  /**
+   * 每个不同的 SQL 保持一个批次。只有当前语句和之后开启的批次都是 INSERT 时，
+   * 才会追加到之前的批次，否则开启新的批次，以保证依赖关系不被打乱
+   */
+  ORDERED,
+  /**
+   * 每个不同的 SQL 只保持一个批次，按首次出现的顺序执行，调用方需保证这些语句互不依赖
+   */
+  INDEPENDENT
+}
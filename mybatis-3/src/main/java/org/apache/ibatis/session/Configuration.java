@@ -22,9 +22,15 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 
 import org.apache.ibatis.binding.MapperRegistry;
@@ -43,19 +49,26 @@ import org.apache.ibatis.datasource.jndi.JndiDataSourceFactory;
 import org.apache.ibatis.datasource.pooled.PooledDataSourceFactory;
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSourceFactory;
 import org.apache.ibatis.executor.BatchExecutor;
+import org.apache.ibatis.executor.BatchFlushListener;
 import org.apache.ibatis.executor.CachingExecutor;
+import org.apache.ibatis.executor.CoalescingExecutor;
 import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.QueryCoalescer;
 import org.apache.ibatis.executor.ReuseExecutor;
 import org.apache.ibatis.executor.SimpleExecutor;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.loader.ProxyFactory;
 import org.apache.ibatis.executor.loader.cglib.CglibProxyFactory;
 import org.apache.ibatis.executor.loader.javassist.JavassistProxyFactory;
+import org.apache.ibatis.executor.metrics.MetricsRegistry;
+import org.apache.ibatis.executor.metrics.StatementMetricsSnapshot;
 import org.apache.ibatis.executor.parameter.ParameterHandler;
 import org.apache.ibatis.executor.resultset.DefaultResultSetHandler;
 import org.apache.ibatis.executor.resultset.ResultSetHandler;
 import org.apache.ibatis.executor.statement.RoutingStatementHandler;
+import org.apache.ibatis.executor.statement.RowCountStatistics;
 import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.executor.statement.StreamingProfile;
 import org.apache.ibatis.io.VFS;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
@@ -87,6 +100,7 @@ import org.apache.ibatis.scripting.LanguageDriver;
 import org.apache.ibatis.scripting.LanguageDriverRegistry;
 import org.apache.ibatis.scripting.defaults.RawLanguageDriver;
 import org.apache.ibatis.scripting.xmltags.XMLLanguageDriver;
+import org.apache.ibatis.trace.TraceListener;
 import org.apache.ibatis.transaction.Transaction;
 import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
 import org.apache.ibatis.transaction.managed.ManagedTransactionFactory;
@@ -181,6 +195,121 @@ public class Configuration {
   protected boolean returnInstanceForEmptyRow;
   protected boolean shrinkWhitespacesInSql;
 
+  /**
+   * 每个动态SQL最多缓存多少种SQL形态（if/when判断结果、foreach集合长度等的组合），
+   * 相同形态的调用不再重新拼接和解析SQL，只绑定参数。为0时表示不开启。
+   */
+  protected int dynamicSqlShapeCacheSize;
+
+  /**
+   * BATCH 执行器对交错执行的语句如何分组，默认为 NONE，语句交错时开启新的批次。
+   */
+  protected BatchGrouping batchGrouping = BatchGrouping.NONE;
+
+  /**
+   * BATCH 执行器中单个批次累积到多少行时自动执行所有批次，为0时表示不限制。
+   */
+  protected int batchMaxStatementRows;
+
+  /**
+   * BATCH 执行器中所有批次累积到多少行时自动执行，为0时表示不限制。
+   */
+  protected int batchMaxPendingRows;
+
+  /**
+   * BATCH 执行器中待执行的 SQL 和参数估算达到多少字节时自动执行，为0时表示不限制。
+   */
+  protected int batchMaxPendingBytes;
+
+  /**
+   * BATCH 执行器是否把简单的 INSERT ... VALUES (...) 批量语句改写为一条多行 VALUES 语句执行
+   */
+  protected boolean batchInsertRewrite;
+
+  /**
+   * 改写后的多行 INSERT 最多包含多少个参数，为0时按 databaseId 使用内置的数据库限制
+   */
+  protected int batchInsertRewriteMaxParameters;
+
+  /**
+   * 执行返回 CompletableFuture 的 Mapper 方法、并行查询和后台补充主键等任务的线程池，
+   * 未配置时第一次使用时创建 asyncExecutorPoolSize 个守护线程的线程池
+   */
+  protected volatile java.util.concurrent.Executor asyncExecutor;
+
+  /**
+   * 默认的 asyncExecutor 的线程数。每个任务占用一个数据库连接，默认与 PooledDataSource 的最大活动连接数相同
+   */
+  protected int asyncExecutorPoolSize = 10;
+
+  /**
+   * 接收自动刷新的批处理结果，未配置时执行器只保留每个语句的汇总结果
+   */
+  protected BatchFlushListener batchFlushListener;
+
+  /**
+   * 是否按 MappedStatement 记录调用次数、各阶段耗时、行数、批次大小和异常
+   */
+  protected boolean metricsEnabled;
+
+  /**
+   * 语句统计注册到 JMX 时使用的 ObjectName，为空时不注册
+   */
+  protected String metricsJmxName;
+
+  protected final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+  /**
+   * 执行事件的监听器，为null时不产生事件，可以在运行期间设置或移除
+   */
+  protected volatile TraceListener traceListener;
+
+  /**
+   * 是否对游标和 ResultHandler 查询应用当前 databaseId 的流式读取配置
+   */
+  protected boolean streamingResults;
+
+  /**
+   * 按 databaseId 注册的流式读取配置，默认包含 mysql、mariadb、postgresql 和 oracle
+   */
+  protected final Map<String, StreamingProfile> streamingProfiles = new ConcurrentHashMap<>();
+
+  /**
+   * 是否按语句最近返回的行数自动设置 fetchSize（语句自己配置了 fetchSize 时不覆盖）
+   */
+  protected boolean adaptiveFetchSize;
+
+  /**
+   * 自动设置的 fetchSize 的下限
+   */
+  protected int adaptiveFetchSizeMin = 10;
+
+  /**
+   * 自动设置的 fetchSize 的上限
+   */
+  protected int adaptiveFetchSizeMax = 1000;
+
+  protected final RowCountStatistics rowCountStatistics = new RowCountStatistics();
+
+  /**
+   * 是否合并不同会话中同时执行的相同查询
+   */
+  protected boolean coalesceQueries;
+
+  protected final QueryCoalescer queryCoalescer = new QueryCoalescer();
+
+  /**
+   * 是否在会话内按ResultMap的id复用已映射的对象
+   */
+  protected boolean useIdentityMap;
+
+  /**
+   * 是否记录加载对象的原始值，用于 {@link SqlSession#updateChanged(String, Object)} 只更新变化的列
+   */
+  protected boolean dirtyChecking;
+
+  protected final Map<String, MappedStatement> dirtyCheckingStatements = new ConcurrentHashMap<>();
+
   /**
    * 	指定 MyBatis 增加到日志名称的前缀。
    */
@@ -414,6 +543,11 @@ public class Configuration {
   }
 
   public Configuration() {
+    streamingProfiles.put("mysql", StreamingProfile.mysql());
+    streamingProfiles.put("mariadb", StreamingProfile.mysql());
+    streamingProfiles.put("postgresql", StreamingProfile.postgresql());
+    streamingProfiles.put("oracle", StreamingProfile.oracle());
+
     typeAliasRegistry.registerAlias("JDBC", JdbcTransactionFactory.class);
     typeAliasRegistry.registerAlias("MANAGED", ManagedTransactionFactory.class);
 
@@ -513,6 +647,235 @@ public class Configuration {
     this.shrinkWhitespacesInSql = shrinkWhitespacesInSql;
   }
 
+  public int getDynamicSqlShapeCacheSize() {
+    return dynamicSqlShapeCacheSize;
+  }
+
+  public void setDynamicSqlShapeCacheSize(int dynamicSqlShapeCacheSize) {
+    this.dynamicSqlShapeCacheSize = dynamicSqlShapeCacheSize;
+  }
+
+  public BatchGrouping getBatchGrouping() {
+    return batchGrouping;
+  }
+
+  public void setBatchGrouping(BatchGrouping batchGrouping) {
+    this.batchGrouping = batchGrouping;
+  }
+
+  public int getBatchMaxStatementRows() {
+    return batchMaxStatementRows;
+  }
+
+  public void setBatchMaxStatementRows(int batchMaxStatementRows) {
+    this.batchMaxStatementRows = batchMaxStatementRows;
+  }
+
+  public int getBatchMaxPendingRows() {
+    return batchMaxPendingRows;
+  }
+
+  public void setBatchMaxPendingRows(int batchMaxPendingRows) {
+    this.batchMaxPendingRows = batchMaxPendingRows;
+  }
+
+  public int getBatchMaxPendingBytes() {
+    return batchMaxPendingBytes;
+  }
+
+  public void setBatchMaxPendingBytes(int batchMaxPendingBytes) {
+    this.batchMaxPendingBytes = batchMaxPendingBytes;
+  }
+
+  public boolean isBatchInsertRewrite() {
+    return batchInsertRewrite;
+  }
+
+  public void setBatchInsertRewrite(boolean batchInsertRewrite) {
+    this.batchInsertRewrite = batchInsertRewrite;
+  }
+
+  public int getBatchInsertRewriteMaxParameters() {
+    return batchInsertRewriteMaxParameters;
+  }
+
+  public void setBatchInsertRewriteMaxParameters(int batchInsertRewriteMaxParameters) {
+    this.batchInsertRewriteMaxParameters = batchInsertRewriteMaxParameters;
+  }
+
+  public java.util.concurrent.Executor getAsyncExecutor() {
+    java.util.concurrent.Executor executor = asyncExecutor;
+    if (executor == null) {
+      synchronized (this) {
+        if (asyncExecutor == null) {
+          asyncExecutor = newDefaultAsyncExecutor();
+        }
+        executor = asyncExecutor;
+      }
+    }
+    return executor;
+  }
+
+  public void setAsyncExecutor(java.util.concurrent.Executor asyncExecutor) {
+    this.asyncExecutor = asyncExecutor;
+  }
+
+  public int getAsyncExecutorPoolSize() {
+    return asyncExecutorPoolSize;
+  }
+
+  public void setAsyncExecutorPoolSize(int asyncExecutorPoolSize) {
+    this.asyncExecutorPoolSize = asyncExecutorPoolSize;
+  }
+
+  /**
+   * 固定大小的线程池，空闲的线程会退出；使用守护线程，不会阻止JVM退出
+   */
+  private java.util.concurrent.Executor newDefaultAsyncExecutor() {
+    AtomicInteger threadNumber = new AtomicInteger();
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(asyncExecutorPoolSize, asyncExecutorPoolSize,
+        60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+          Thread thread = new Thread(runnable, "mybatis-async-" + threadNumber.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  public BatchFlushListener getBatchFlushListener() {
+    return batchFlushListener;
+  }
+
+  public void setBatchFlushListener(BatchFlushListener batchFlushListener) {
+    this.batchFlushListener = batchFlushListener;
+  }
+
+  public boolean isDirtyChecking() {
+    return dirtyChecking;
+  }
+
+  public void setDirtyChecking(boolean dirtyChecking) {
+    this.dirtyChecking = dirtyChecking;
+  }
+
+  /**
+   * @return 按变化的列生成的 update 语句，键由ResultMap、表名和变化的列组成
+   */
+  public Map<String, MappedStatement> getDirtyCheckingStatements() {
+    return dirtyCheckingStatements;
+  }
+
+  public boolean isUseIdentityMap() {
+    return useIdentityMap;
+  }
+
+  public void setUseIdentityMap(boolean useIdentityMap) {
+    this.useIdentityMap = useIdentityMap;
+  }
+
+  public boolean isCoalesceQueries() {
+    return coalesceQueries;
+  }
+
+  public void setCoalesceQueries(boolean coalesceQueries) {
+    this.coalesceQueries = coalesceQueries;
+  }
+
+  public QueryCoalescer getQueryCoalescer() {
+    return queryCoalescer;
+  }
+
+  public boolean isAdaptiveFetchSize() {
+    return adaptiveFetchSize;
+  }
+
+  public void setAdaptiveFetchSize(boolean adaptiveFetchSize) {
+    this.adaptiveFetchSize = adaptiveFetchSize;
+  }
+
+  public int getAdaptiveFetchSizeMin() {
+    return adaptiveFetchSizeMin;
+  }
+
+  public void setAdaptiveFetchSizeMin(int adaptiveFetchSizeMin) {
+    this.adaptiveFetchSizeMin = adaptiveFetchSizeMin;
+  }
+
+  public int getAdaptiveFetchSizeMax() {
+    return adaptiveFetchSizeMax;
+  }
+
+  public void setAdaptiveFetchSizeMax(int adaptiveFetchSizeMax) {
+    this.adaptiveFetchSizeMax = adaptiveFetchSizeMax;
+  }
+
+  public RowCountStatistics getRowCountStatistics() {
+    return rowCountStatistics;
+  }
+
+  public boolean isStreamingResults() {
+    return streamingResults;
+  }
+
+  public void setStreamingResults(boolean streamingResults) {
+    this.streamingResults = streamingResults;
+  }
+
+  /**
+   * databaseId 不区分大小写，与 {@link org.apache.ibatis.mapping.VendorDatabaseIdProvider} 返回的产品名（如 "MySQL"）匹配
+   */
+  public void addStreamingProfile(String databaseId, StreamingProfile profile) {
+    streamingProfiles.put(databaseId.toLowerCase(Locale.ENGLISH), profile);
+  }
+
+  public StreamingProfile getStreamingProfile(String databaseId) {
+    return streamingProfiles.get(databaseId.toLowerCase(Locale.ENGLISH));
+  }
+
+  public boolean isMetricsEnabled() {
+    return metricsEnabled;
+  }
+
+  public void setMetricsEnabled(boolean metricsEnabled) {
+    this.metricsEnabled = metricsEnabled;
+  }
+
+  public String getMetricsJmxName() {
+    return metricsJmxName;
+  }
+
+  /**
+   * 设置后立即把语句统计注册到平台 MBeanServer，设置为null时注销
+   */
+  public void setMetricsJmxName(String metricsJmxName) {
+    if (metricsJmxName == null) {
+      metricsRegistry.unregisterMBean();
+    } else {
+      metricsRegistry.registerMBean(metricsJmxName);
+    }
+    this.metricsJmxName = metricsJmxName;
+  }
+
+  public MetricsRegistry getMetricsRegistry() {
+    return metricsRegistry;
+  }
+
+  public TraceListener getTraceListener() {
+    return traceListener;
+  }
+
+  public void setTraceListener(TraceListener traceListener) {
+    this.traceListener = traceListener;
+  }
+
+  /**
+   * 所有语句当前的统计副本，按语句id排序
+   */
+  public Map<String, StatementMetricsSnapshot> getMetricsSnapshot() {
+    return metricsRegistry.snapshot();
+  }
+
   public String getDatabaseId() {
     return databaseId;
   }
@@ -911,6 +1274,11 @@ public class Configuration {
       executor = new SimpleExecutor(this, transaction);
     }
 
+    // 合并在二级缓存之后，命中二级缓存的查询不需要合并
+    if (coalesceQueries) {
+      executor = new CoalescingExecutor(executor, queryCoalescer);
+    }
+
     // 用CachingExecutor装饰具体的executor
     if (cacheEnabled) {
       executor = new CachingExecutor(executor);
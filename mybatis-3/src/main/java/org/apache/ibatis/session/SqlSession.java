@@ -17,10 +17,14 @@ package org.apache.ibatis.session;
 
 import java.io.Closeable;
 import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.cursor.Publisher;
+import org.apache.ibatis.cursor.defaults.CursorPublisher;
 import org.apache.ibatis.executor.BatchResult;
 
 /**
@@ -121,6 +125,26 @@ public interface SqlSession extends Closeable {
    */
   <K, V> Map<K, V> selectMap(String statement, Object parameter, String mapKey, RowBounds rowBounds);
 
+  /**
+   * Retrieve one mapped object per key. Each key is first looked up in the second-level cache of the
+   * statement that selects a single key, and the batch statement runs once with the list of the keys that were missed.
+   * The rows of the batch statement are matched to their keys by the id property of its result map
+   * and stored per key in the cache of the single key statement.
+   * The default implementation selects every key with the single key statement.
+   * @param <E> the returned list element type
+   * @param statement Unique identifier of the statement that selects a single key.
+   * @param batchStatement Unique identifier of the statement that selects a list of keys.
+   * @param keys The keys to retrieve.
+   * @return Mapped objects in the order of the keys, null for keys without a row
+   */
+  default <E> List<E> selectByKeys(String statement, String batchStatement, Collection<?> keys) {
+    List<E> results = new ArrayList<>(keys.size());
+    for (Object key : keys) {
+      results.add(selectOne(statement, key));
+    }
+    return results;
+  }
+
   /**
    * A Cursor offers the same results as a List, except it fetches data lazily using an Iterator.
    * @param <T> the returned cursor element type.
@@ -148,6 +172,31 @@ public interface SqlSession extends Closeable {
    */
   <T> Cursor<T> selectCursor(String statement, Object parameter, RowBounds rowBounds);
 
+  /**
+   * A Publisher pushes the results of a Cursor according to the demand of its subscriber.
+   * The query runs when the subscriber first requests items, and the cursor is closed on completion, error or cancel.
+   * @param <T> the published element type.
+   * @param statement Unique identifier matching the statement to use.
+   * @param parameter A parameter object to pass to the statement.
+   * @return Publisher of mapped objects
+   */
+  default <T> Publisher<T> selectPublisher(String statement, Object parameter) {
+    return selectPublisher(statement, parameter, RowBounds.DEFAULT);
+  }
+
+  /**
+   * A Publisher pushes the results of a Cursor according to the demand of its subscriber.
+   * The query runs when the subscriber first requests items, and the cursor is closed on completion, error or cancel.
+   * @param <T> the published element type.
+   * @param statement Unique identifier matching the statement to use.
+   * @param parameter A parameter object to pass to the statement.
+   * @param rowBounds  Bounds to limit object retrieval
+   * @return Publisher of mapped objects
+   */
+  default <T> Publisher<T> selectPublisher(String statement, Object parameter, RowBounds rowBounds) {
+    return new CursorPublisher<>(this, statement, parameter, rowBounds);
+  }
+
   /**
    * Retrieve a single row mapped from the statement key and parameter
    * using a {@code ResultHandler}.
@@ -212,6 +261,20 @@ public interface SqlSession extends Closeable {
    */
   int update(String statement, Object parameter);
 
+  /**
+   * Update only the columns whose values differ from those loaded in this session.
+   * Requires the dirtyChecking setting, and the object must have been loaded in this session through a result map declaring an id.
+   * The statement is generated from the result map: it sets the changed columns and matches the id columns.
+   * No statement is executed when nothing changed.
+   * @param table The table to update.
+   * @param entity The object loaded in this session.
+   * @return int The number of rows affected by the update, 0 if nothing changed.
+   * @throws UnsupportedOperationException if the session does not keep snapshots of loaded objects
+   */
+  default int updateChanged(String table, Object entity) {
+    throw new UnsupportedOperationException(getClass().getName() + " does not support updateChanged.");
+  }
+
   /**
    * Execute a delete statement. The number of rows affected will be returned.
    * @param statement Unique identifier matching the statement to execute.
@@ -272,6 +335,15 @@ public interface SqlSession extends Closeable {
    */
   void clearCache();
 
+  /**
+   * Retrieves the factory that opened this session. Mapper methods returning a CompletableFuture or a Publisher
+   * open their own sessions from it, so they use the same data sources and transaction management as this session.
+   * @return the factory, or null when this session cannot tell
+   */
+  default SqlSessionFactory getSqlSessionFactory() {
+    return null;
+  }
+
   /**
    * Retrieves current configuration.
    * @return Configuration
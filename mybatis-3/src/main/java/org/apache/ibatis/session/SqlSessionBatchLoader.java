@@ -0,0 +1,237 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.binding.BindingException;
+import org.apache.ibatis.exceptions.TooManyResultsException;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.reflection.KeyValueUtil;
+
+/**
+ * 把并发的按主键查询合并成一次 IN 查询。
+ * <p>
+ * {@link #load(Object)} 不立即访问数据库，而是把主键放进当前批次；批次在第一个主键到达后等待 windowMillis，
+ * 或者攒够 maxBatchSize 个不同的主键时执行。批量语句的参数是主键列表（在 foreach 中用 list 或 collection 引用），
+ * 结果按主键属性分发给各个调用方，没有查到的主键得到 null。主键和结果的主键属性都按 {@link KeyValueUtil#normalize(Object)}
+ * 比较，整数类型不同也能匹配，无法比较的类型会让对应的 future 以 {@link BindingException} 失败。
+ *
+ * <pre>
+ * SqlSessionBatchLoader&lt;Integer, Author&gt; loader = new SqlSessionBatchLoader&lt;&gt;(sqlSessionFactory,
+ *     "selectAuthorsByIds", 100, 5);
+ * CompletableFuture&lt;Author&gt; author = loader.load(5);
+ * </pre>
+ */
+public class SqlSessionBatchLoader<K, V> {
+
+  private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "mybatis-batch-loader");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final SqlSessionFactory sqlSessionFactory;
+  private final String statement;
+  private final String keyProperty;
+  private final int maxBatchSize;
+  private final long windowMillis;
+  private final Executor executor;
+  private final Object lock = new Object();
+  private Map<K, List<CompletableFuture<V>>> pending = new LinkedHashMap<>();
+
+  /**
+   * 主键属性取自批量语句结果映射中的 id，使用 {@link Configuration#getAsyncExecutor()} 执行
+   */
+  public SqlSessionBatchLoader(SqlSessionFactory sqlSessionFactory, String statement, int maxBatchSize, long windowMillis) {
+    this(sqlSessionFactory, statement, null, maxBatchSize, windowMillis, sqlSessionFactory.getConfiguration().getAsyncExecutor());
+  }
+
+  /**
+   * @param keyProperty
+   *          结果对象中的主键属性，为null时取自结果映射中唯一的 id
+   * @param windowMillis
+   *          批次等待的毫秒数，不大于0时只在攒够 maxBatchSize 或调用 {@link #dispatch()} 时执行
+   * @param executor
+   *          执行批次的线程池，查询会阻塞线程，不要使用 ForkJoinPool.commonPool() 这样的共享线程池
+   */
+  public SqlSessionBatchLoader(SqlSessionFactory sqlSessionFactory, String statement, String keyProperty,
+      int maxBatchSize, long windowMillis, Executor executor) {
+    if (executor == null) {
+      throw new IllegalArgumentException("executor must not be null");
+    }
+    if (maxBatchSize <= 0) {
+      throw new IllegalArgumentException("maxBatchSize must be positive but was " + maxBatchSize);
+    }
+    this.sqlSessionFactory = sqlSessionFactory;
+    this.statement = statement;
+    this.keyProperty = keyProperty != null ? keyProperty : idProperty(sqlSessionFactory.getConfiguration(), statement);
+    this.maxBatchSize = maxBatchSize;
+    this.windowMillis = windowMillis;
+    this.executor = executor;
+  }
+
+  public CompletableFuture<V> load(K key) {
+    if (key == null) {
+      throw new IllegalArgumentException("Cannot load a null key with '" + statement + "'.");
+    }
+    CompletableFuture<V> future = new CompletableFuture<>();
+    Map<K, List<CompletableFuture<V>>> full = null;
+    Map<K, List<CompletableFuture<V>>> opened = null;
+    synchronized (lock) {
+      if (pending.isEmpty()) {
+        opened = pending;
+      }
+      pending.computeIfAbsent(key, k -> new ArrayList<>(1)).add(future);
+      if (pending.size() >= maxBatchSize) {
+        full = pending;
+        pending = new LinkedHashMap<>();
+      }
+    }
+    if (full != null) {
+      submit(full);
+    } else if (opened != null && windowMillis > 0) {
+      Map<K, List<CompletableFuture<V>>> batch = opened;
+      scheduler.schedule(() -> dispatch(batch), windowMillis, TimeUnit.MILLISECONDS);
+    }
+    return future;
+  }
+
+  public CompletableFuture<List<V>> loadMany(Collection<K> keys) {
+    List<CompletableFuture<V>> futures = new ArrayList<>(keys.size());
+    for (K key : keys) {
+      futures.add(load(key));
+    }
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+      List<V> values = new ArrayList<>(futures.size());
+      for (CompletableFuture<V> future : futures) {
+        values.add(future.join());
+      }
+      return values;
+    });
+  }
+
+  /**
+   * 不等待窗口结束，立即执行当前批次
+   */
+  public void dispatch() {
+    Map<K, List<CompletableFuture<V>>> batch;
+    synchronized (lock) {
+      if (pending.isEmpty()) {
+        return;
+      }
+      batch = pending;
+      pending = new LinkedHashMap<>();
+    }
+    submit(batch);
+  }
+
+  public String getKeyProperty() {
+    return keyProperty;
+  }
+
+  /**
+   * 窗口结束时执行，批次已经因为攒满或 {@link #dispatch()} 执行过的话什么也不做
+   */
+  private void dispatch(Map<K, List<CompletableFuture<V>>> batch) {
+    synchronized (lock) {
+      if (pending != batch) {
+        return;
+      }
+      pending = new LinkedHashMap<>();
+    }
+    submit(batch);
+  }
+
+  private void submit(Map<K, List<CompletableFuture<V>>> batch) {
+    try {
+      executor.execute(() -> execute(batch));
+    } catch (RejectedExecutionException e) {
+      // 批次已经离开 pending，在调度线程上抛出的异常没人处理，future 会一直等下去
+      completeExceptionally(batch, e);
+    }
+  }
+
+  private void execute(Map<K, List<CompletableFuture<V>>> batch) {
+    Map<Object, V> values = new HashMap<>();
+    Set<Object> duplicates = new HashSet<>();
+    Class<?> keyType = null;
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      List<V> rows = sqlSession.selectList(statement, new ArrayList<>(batch.keySet()));
+      Configuration configuration = sqlSession.getConfiguration();
+      for (V row : rows) {
+        Object key = KeyValueUtil.normalize(configuration.newMetaObject(row).getValue(keyProperty));
+        if (values.putIfAbsent(key, row) != null) {
+          duplicates.add(key);
+        }
+        if (key != null) {
+          keyType = key.getClass();
+        }
+      }
+    } catch (RuntimeException e) {
+      completeExceptionally(batch, e);
+      return;
+    }
+    for (Map.Entry<K, List<CompletableFuture<V>>> entry : batch.entrySet()) {
+      Object key = KeyValueUtil.normalize(entry.getKey());
+      if (keyType != null && key.getClass() != keyType) {
+        BindingException e = new BindingException("Key '" + entry.getKey() + "' of type "
+            + entry.getKey().getClass().getName() + " cannot be matched to the key property '" + keyProperty
+            + "' of type " + keyType.getName() + " in '" + statement + "'.");
+        entry.getValue().forEach(future -> future.completeExceptionally(e));
+      } else if (duplicates.contains(key)) {
+        TooManyResultsException e = new TooManyResultsException(
+            "Expected one result for key '" + entry.getKey() + "' of '" + statement + "', but found more than one.");
+        entry.getValue().forEach(future -> future.completeExceptionally(e));
+      } else {
+        V value = values.get(key);
+        entry.getValue().forEach(future -> future.complete(value));
+      }
+    }
+  }
+
+  private void completeExceptionally(Map<K, List<CompletableFuture<V>>> batch, Throwable cause) {
+    for (List<CompletableFuture<V>> futures : batch.values()) {
+      futures.forEach(future -> future.completeExceptionally(cause));
+    }
+  }
+
+  private static String idProperty(Configuration configuration, String statement) {
+    MappedStatement ms = configuration.getMappedStatement(statement);
+    for (ResultMap resultMap : ms.getResultMaps()) {
+      if (resultMap.getIdProperty() != null) {
+        return resultMap.getIdProperty();
+      }
+    }
+    throw new SqlSessionException("Cannot determine the key property of '" + statement
+        + "'. Declare a single id mapping in its result map or specify the key property.");
+  }
+
+}
@@ -0,0 +1,315 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 并发执行一组互不依赖的语句。
+ * <p>
+ * 每个工作线程打开自己的会话（即使用连接池中各自的连接），并发数不超过指定的上限。
+ * 所有语句结束后统一返回结果；有语句失败时，尚未开始的语句会被取消。
+ * {@link #execute()} 的调用线程自己也作为一个工作线程执行语句，所以即使在同一个线程池的任务中调用、线程池没有空闲线程，
+ * 也能执行完所有语句。{@link #execute(long, TimeUnit)} 只等待线程池中的工作线程，超时或被中断时取消尚未开始的语句。
+ *
+ * <pre>
+ * SqlSessionFanOut fanOut = new SqlSessionFanOut(sqlSessionFactory, 4);
+ * SqlSessionFanOut.Query&lt;Author&gt; author = fanOut.selectOne("selectAuthor", 5);
+ * SqlSessionFanOut.Query&lt;List&lt;Blog&gt;&gt; blogs = fanOut.selectList("selectBlogsByAuthor", 5);
+ * fanOut.execute();
+ * </pre>
+ */
+public class SqlSessionFanOut {
+
+  private final SqlSessionFactory sqlSessionFactory;
+  private final Executor executor;
+  private final int maxConcurrency;
+  private final List<Query<?>> queries = new ArrayList<>();
+  private boolean executed;
+
+  /**
+   * 使用 {@link Configuration#getAsyncExecutor()} 执行
+   */
+  public SqlSessionFanOut(SqlSessionFactory sqlSessionFactory, int maxConcurrency) {
+    this(sqlSessionFactory, sqlSessionFactory.getConfiguration().getAsyncExecutor(), maxConcurrency);
+  }
+
+  /**
+   * @param executor
+   *          执行语句的线程池，语句会阻塞线程，不要使用 ForkJoinPool.commonPool() 这样的共享线程池
+   */
+  public SqlSessionFanOut(SqlSessionFactory sqlSessionFactory, Executor executor, int maxConcurrency) {
+    if (executor == null) {
+      throw new IllegalArgumentException("executor must not be null");
+    }
+    if (maxConcurrency <= 0) {
+      throw new IllegalArgumentException("maxConcurrency must be positive but was " + maxConcurrency);
+    }
+    this.sqlSessionFactory = sqlSessionFactory;
+    this.executor = executor;
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  public <T> Query<T> selectOne(String statement, Object parameter) {
+    return submit(statement, sqlSession -> sqlSession.selectOne(statement, parameter));
+  }
+
+  public <E> Query<List<E>> selectList(String statement, Object parameter) {
+    return submit(statement, sqlSession -> sqlSession.selectList(statement, parameter));
+  }
+
+  /**
+   * 添加任意的会话操作，例如 selectMap 或调用 Mapper 方法
+   *
+   * @param name
+   *          用于错误信息的名称
+   * @param operation
+   *          在工作线程的会话上执行的操作
+   */
+  public <T> Query<T> submit(String name, Function<SqlSession, T> operation) {
+    if (executed) {
+      throw new SqlSessionException("Cannot add '" + name + "' to a fan-out that has already been executed.");
+    }
+    Query<T> query = new Query<>(name, operation);
+    queries.add(query);
+    return query;
+  }
+
+  /**
+   * 并发执行所有语句并等待结束，调用线程占用一个并发名额
+   *
+   * @throws SqlSessionException
+   *           有语句失败时抛出，cause 是第一个失败的异常，其它异常作为 suppressed 附加
+   */
+  public void execute() {
+    Execution execution = start(true);
+    // 线程池中的工作线程没有开始时，调用线程会取走所有语句，等待的只是已经开始执行的语句
+    work(execution);
+    boolean interrupted = false;
+    while (true) {
+      try {
+        execution.done.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    reportFailures();
+  }
+
+  /**
+   * 并发执行所有语句，最多等待指定的时间。超时或被中断时尚未开始的语句被取消，正在执行的语句会继续执行到结束，
+   * 需要限制单条语句的执行时间时配合 statement 的 timeout 使用。
+   *
+   * @throws TimeoutException
+   *           超时时抛出
+   * @throws InterruptedException
+   *           等待时被中断
+   * @throws SqlSessionException
+   *           有语句失败时抛出，cause 是第一个失败的异常，其它异常作为 suppressed 附加
+   */
+  public void execute(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+    Execution execution = start(false);
+    boolean finished = false;
+    try {
+      finished = execution.done.await(timeout, unit);
+    } finally {
+      if (!finished) {
+        cancelRemaining(execution);
+      }
+    }
+    if (!finished) {
+      throw new TimeoutException("Fan-out did not finish within " + unit.toMillis(timeout) + " ms.");
+    }
+    reportFailures();
+  }
+
+  public List<Query<?>> getQueries() {
+    return queries;
+  }
+
+  /**
+   * 在线程池中启动工作线程，线程池拒绝的工作线程不再启动
+   *
+   * @param callerRuns
+   *          调用线程是否作为一个工作线程
+   */
+  private Execution start(boolean callerRuns) {
+    if (executed) {
+      throw new SqlSessionException("A fan-out can be executed only once.");
+    }
+    executed = true;
+    Execution execution = new Execution(queries.size());
+    int workers = Math.min(maxConcurrency, queries.size()) - (callerRuns ? 1 : 0);
+    for (int i = 0; i < workers; i++) {
+      try {
+        executor.execute(() -> work(execution));
+      } catch (RejectedExecutionException e) {
+        if (i == 0 && !callerRuns) {
+          // 没有调用线程参与执行，一个工作线程也没有启动的话语句永远不会执行
+          cancelRemaining(execution);
+          throw new SqlSessionException("Error executing fan-out. Cause: " + e, e);
+        }
+        break;
+      }
+    }
+    return execution;
+  }
+
+  /**
+   * 工作线程依次取出下一条语句，在同一个会话上执行。会话在取到第一条语句时才打开，
+   * 已经没有语句可取的工作线程不会占用连接。
+   */
+  private void work(Execution execution) {
+    SqlSession sqlSession = null;
+    try {
+      int index;
+      while ((index = execution.next.getAndIncrement()) < queries.size()) {
+        Query<?> query = queries.get(index);
+        try {
+          if (execution.failed.get()) {
+            query.cancelled = true;
+            continue;
+          }
+          if (sqlSession == null) {
+            sqlSession = openSession(query);
+          }
+          if (sqlSession == null || !query.run(sqlSession)) {
+            execution.failed.set(true);
+          }
+        } finally {
+          execution.done.countDown();
+        }
+      }
+    } finally {
+      if (sqlSession != null) {
+        sqlSession.close();
+      }
+    }
+  }
+
+  /**
+   * 打开会话失败时记为取到的语句失败
+   */
+  private SqlSession openSession(Query<?> query) {
+    try {
+      return sqlSessionFactory.openSession();
+    } catch (RuntimeException e) {
+      query.error = e;
+      return null;
+    }
+  }
+
+  /**
+   * 取走所有尚未开始的语句并标记为取消，之后开始的工作线程取不到语句
+   */
+  private void cancelRemaining(Execution execution) {
+    int index;
+    while ((index = execution.next.getAndIncrement()) < queries.size()) {
+      queries.get(index).cancelled = true;
+      execution.done.countDown();
+    }
+  }
+
+  private void reportFailures() {
+    long failures = queries.stream().filter(query -> query.error != null).count();
+    SqlSessionException exception = null;
+    for (Query<?> query : queries) {
+      if (query.error == null) {
+        continue;
+      }
+      if (exception == null) {
+        exception = new SqlSessionException(failures + " of " + queries.size()
+            + " fan-out statements failed. First failure: '" + query.name + "'.", query.error);
+      } else {
+        exception.addSuppressed(query.error);
+      }
+    }
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  /**
+   * 一次执行的状态，工作线程共享
+   */
+  private static class Execution {
+
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicBoolean failed = new AtomicBoolean();
+    private final CountDownLatch done;
+
+    Execution(int count) {
+      this.done = new CountDownLatch(count);
+    }
+  }
+
+  /**
+   * 一条并发执行的语句，执行结束后可以获取结果、异常或是否被取消
+   */
+  public static class Query<T> {
+
+    private final String name;
+    private final Function<SqlSession, T> operation;
+    private volatile T result;
+    private volatile Throwable error;
+    private volatile boolean cancelled;
+
+    Query(String name, Function<SqlSession, T> operation) {
+      this.name = name;
+      this.operation = operation;
+    }
+
+    private boolean run(SqlSession sqlSession) {
+      try {
+        result = operation.apply(sqlSession);
+        return true;
+      } catch (RuntimeException e) {
+        error = e;
+        return false;
+      }
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public T getResult() {
+      return result;
+    }
+
+    public Throwable getError() {
+      return error;
+    }
+
+    public boolean isCancelled() {
+      return cancelled;
+    }
+  }
+
+}
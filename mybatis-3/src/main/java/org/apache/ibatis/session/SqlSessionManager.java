@@ -21,11 +21,14 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.sql.Connection;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
 import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.cursor.Publisher;
+import org.apache.ibatis.cursor.defaults.CursorPublisher;
 import org.apache.ibatis.executor.BatchResult;
 import org.apache.ibatis.reflection.ExceptionUtil;
 
@@ -156,6 +159,11 @@ public class SqlSessionManager implements SqlSessionFactory, SqlSession {
     return sqlSessionFactory.getConfiguration();
   }
 
+  @Override
+  public SqlSessionFactory getSqlSessionFactory() {
+    return this;
+  }
+
   @Override
   public <T> T selectOne(String statement) {
     return sqlSessionProxy.selectOne(statement);
@@ -196,6 +204,21 @@ public class SqlSessionManager implements SqlSessionFactory, SqlSession {
     return sqlSessionProxy.selectCursor(statement, parameter, rowBounds);
   }
 
+  @Override
+  public <T> Publisher<T> selectPublisher(String statement, Object parameter) {
+    return selectPublisher(statement, parameter, RowBounds.DEFAULT);
+  }
+
+  @Override
+  public <T> Publisher<T> selectPublisher(String statement, Object parameter, RowBounds rowBounds) {
+    final SqlSession sqlSession = localSqlSession.get();
+    if (sqlSession != null) {
+      return sqlSession.selectPublisher(statement, parameter, rowBounds);
+    }
+    // 没有受管理的会话时由发布者自己打开和关闭会话
+    return new CursorPublisher<>(sqlSessionFactory, statement, parameter, rowBounds);
+  }
+
   @Override
   public <E> List<E> selectList(String statement) {
     return sqlSessionProxy.selectList(statement);
@@ -211,6 +234,11 @@ public class SqlSessionManager implements SqlSessionFactory, SqlSession {
     return sqlSessionProxy.selectList(statement, parameter, rowBounds);
   }
 
+  @Override
+  public <E> List<E> selectByKeys(String statement, String batchStatement, Collection<?> keys) {
+    return sqlSessionProxy.selectByKeys(statement, batchStatement, keys);
+  }
+
   @Override
   public void select(String statement, ResultHandler handler) {
     sqlSessionProxy.select(statement, handler);
@@ -246,6 +274,11 @@ public class SqlSessionManager implements SqlSessionFactory, SqlSession {
     return sqlSessionProxy.update(statement, parameter);
   }
 
+  @Override
+  public int updateChanged(String table, Object entity) {
+    return sqlSessionProxy.updateChanged(table, entity);
+  }
+
   @Override
   public int delete(String statement) {
     return sqlSessionProxy.delete(statement);
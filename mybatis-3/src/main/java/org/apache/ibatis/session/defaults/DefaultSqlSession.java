@@ -19,25 +19,37 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.ibatis.binding.BindingException;
+import org.apache.ibatis.cache.CacheKey;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.exceptions.ExceptionFactory;
 import org.apache.ibatis.exceptions.TooManyResultsException;
+import org.apache.ibatis.executor.BatchExecutor;
 import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.executor.EntitySnapshots;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.ExecutorException;
 import org.apache.ibatis.executor.result.DefaultMapResultHandler;
 import org.apache.ibatis.executor.result.DefaultResultContext;
+import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.reflection.KeyValueUtil;
 import org.apache.ibatis.reflection.ParamNameResolver;
+import org.apache.ibatis.scripting.xmltags.DynamicSqlSource;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
 
 /**
  * The default implementation for {@link SqlSession}.
@@ -62,11 +74,21 @@ public class DefaultSqlSession implements SqlSession {
 
   private List<Cursor<?>> cursorList;
 
-  public DefaultSqlSession(Configuration configuration, Executor executor, boolean autoCommit) {
+  /**
+   * 打开当前会话的工厂，未知时为null
+   */
+  private final SqlSessionFactory sqlSessionFactory;
+
+  public DefaultSqlSession(Configuration configuration, Executor executor, boolean autoCommit, SqlSessionFactory sqlSessionFactory) {
     this.configuration = configuration;
     this.executor = executor;
     this.dirty = false;
     this.autoCommit = autoCommit;
+    this.sqlSessionFactory = sqlSessionFactory;
+  }
+
+  public DefaultSqlSession(Configuration configuration, Executor executor, boolean autoCommit) {
+    this(configuration, executor, autoCommit, null);
   }
 
   public DefaultSqlSession(Configuration configuration, Executor executor) {
@@ -154,8 +176,95 @@ public class DefaultSqlSession implements SqlSession {
     try {
       // 从Configuration获取mappedStatement
       MappedStatement ms = configuration.getMappedStatement(statement);
+      return queryList(ms, wrapCollection(parameter), rowBounds);
+    } catch (Exception e) {
+      throw ExceptionFactory.wrapException("Error querying database.  Cause: " + e, e);
+    } finally {
+      ErrorContext.instance().reset();
+    }
+  }
 
-      return executor.query(ms, wrapCollection(parameter), rowBounds, Executor.NO_RESULT_HANDLER);
+  private <E> List<E> queryList(MappedStatement ms, Object parameterObject, RowBounds rowBounds) throws SQLException {
+    List<Object> chunks = chunkParameter(ms, parameterObject, rowBounds);
+    if (chunks == null) {
+      return executor.query(ms, parameterObject, rowBounds, Executor.NO_RESULT_HANDLER);
+    }
+    // foreach集合超过chunkSize，分多次查询后合并结果
+    List<E> results = new ArrayList<>();
+    for (Object chunk : chunks) {
+      results.addAll(executor.query(ms, chunk, rowBounds, Executor.NO_RESULT_HANDLER));
+    }
+    return results;
+  }
+
+  @Override
+  public <E> List<E> selectByKeys(String statement, String batchStatement, Collection<?> keys) {
+    try {
+      MappedStatement ms = configuration.getMappedStatement(statement);
+      MappedStatement batchMs = configuration.getMappedStatement(batchStatement);
+      String keyProperty = idProperty(batchMs);
+      Map<Object, List<E>> found = new HashMap<>();
+      // 二级缓存中没有的主键及其缓存键
+      Map<Object, CacheKey> missed = new LinkedHashMap<>();
+      for (Object key : keys) {
+        if (found.containsKey(key) || missed.containsKey(key)) {
+          continue;
+        }
+        Object parameterObject = wrapCollection(key);
+        BoundSql boundSql = ms.getBoundSql(parameterObject);
+        CacheKey cacheKey = executor.createCacheKey(ms, parameterObject, RowBounds.DEFAULT, boundSql);
+        @SuppressWarnings("unchecked")
+        List<E> cached = (List<E>) executor.getCachedResult(ms, cacheKey, boundSql);
+        if (cached != null) {
+          found.put(key, cached);
+        } else {
+          missed.put(key, cacheKey);
+        }
+      }
+      if (!missed.isEmpty()) {
+        List<E> rows = queryList(batchMs, wrapCollection(new ArrayList<>(missed.keySet())), RowBounds.DEFAULT);
+        // 主键和id属性可能是不同的数字类型，统一后再匹配
+        Map<Object, List<E>> rowsById = new HashMap<>();
+        Class<?> idType = null;
+        for (E row : rows) {
+          Object id = KeyValueUtil.normalize(configuration.newMetaObject(row).getValue(keyProperty));
+          rowsById.computeIfAbsent(id, k -> new ArrayList<>()).add(row);
+          if (id != null) {
+            idType = id.getClass();
+          }
+        }
+        // 两个语句的ResultMap相同时，批量查询的结果才能作为单个查询的结果缓存
+        boolean cacheable = ms.getResultMaps().equals(batchMs.getResultMaps());
+        for (Map.Entry<Object, CacheKey> entry : missed.entrySet()) {
+          Object key = KeyValueUtil.normalize(entry.getKey());
+          if (key != null && idType != null && key.getClass() != idType) {
+            throw new BindingException("Key '" + entry.getKey() + "' of type " + entry.getKey().getClass().getName()
+                + " cannot be matched to the id property '" + keyProperty + "' of type " + idType.getName()
+                + " returned by '" + batchStatement + "'.");
+          }
+          List<E> list = rowsById.get(key);
+          // 没有查到行的主键不缓存，以免之后插入的行一直被当作不存在
+          if (list != null) {
+            found.put(entry.getKey(), list);
+            if (cacheable) {
+              executor.putCachedResult(ms, entry.getValue(), list);
+            }
+          }
+        }
+      }
+      List<E> results = new ArrayList<>(keys.size());
+      for (Object key : keys) {
+        List<E> list = found.get(key);
+        if (list == null || list.isEmpty()) {
+          results.add(null);
+        } else if (list.size() > 1) {
+          throw new TooManyResultsException("Expected one result (or null) for key '" + key + "' of '" + statement
+              + "', but found: " + list.size());
+        } else {
+          results.add(list.get(0));
+        }
+      }
+      return results;
     } catch (Exception e) {
       throw ExceptionFactory.wrapException("Error querying database.  Cause: " + e, e);
     } finally {
@@ -163,6 +272,16 @@ public class DefaultSqlSession implements SqlSession {
     }
   }
 
+  private static String idProperty(MappedStatement ms) {
+    for (ResultMap resultMap : ms.getResultMaps()) {
+      if (resultMap.getIdProperty() != null) {
+        return resultMap.getIdProperty();
+      }
+    }
+    throw new BindingException("Cannot match the results of '" + ms.getId()
+        + "' to their keys. Declare a single id mapping in its result map.");
+  }
+
   @Override
   public void select(String statement, Object parameter, ResultHandler handler) {
     select(statement, parameter, RowBounds.DEFAULT, handler);
@@ -177,7 +296,15 @@ public class DefaultSqlSession implements SqlSession {
   public void select(String statement, Object parameter, RowBounds rowBounds, ResultHandler handler) {
     try {
       MappedStatement ms = configuration.getMappedStatement(statement);
-      executor.query(ms, wrapCollection(parameter), rowBounds, handler);
+      Object parameterObject = wrapCollection(parameter);
+      List<Object> chunks = chunkParameter(ms, parameterObject, rowBounds);
+      if (chunks == null) {
+        executor.query(ms, parameterObject, rowBounds, handler);
+      } else {
+        for (Object chunk : chunks) {
+          executor.query(ms, chunk, rowBounds, handler);
+        }
+      }
     } catch (Exception e) {
       throw ExceptionFactory.wrapException("Error querying database.  Cause: " + e, e);
     } finally {
@@ -200,12 +327,52 @@ public class DefaultSqlSession implements SqlSession {
     return update(statement, null);
   }
 
+  @Override
+  public int updateChanged(String table, Object entity) {
+    try {
+      EntitySnapshots snapshots = executor.getEntitySnapshots();
+      if (snapshots == null) {
+        throw new ExecutorException("Cannot update the changed columns of " + entity.getClass().getName()
+            + " because dirty checking is disabled. Set the 'dirtyChecking' setting to true.");
+      }
+      MappedStatement ms = snapshots.prepareUpdate(table, entity);
+      if (ms == null) {
+        // 没有变化的列，不执行语句
+        return 0;
+      }
+      dirty = true;
+      int count = executor.update(ms, entity);
+      if (count == BatchExecutor.BATCH_UPDATE_RETURN_VALUE) {
+        // 批量执行的语句在flush之后才真正执行
+        snapshots.refreshOnFlush(entity);
+      } else {
+        snapshots.refresh(entity);
+      }
+      return count;
+    } catch (Exception e) {
+      throw ExceptionFactory.wrapException("Error updating database.  Cause: " + e, e);
+    } finally {
+      ErrorContext.instance().reset();
+    }
+  }
+
   @Override
   public int update(String statement, Object parameter) {
     try {
       dirty = true;
       MappedStatement ms = configuration.getMappedStatement(statement);
-      return executor.update(ms, wrapCollection(parameter));
+      Object parameterObject = wrapCollection(parameter);
+      List<Object> chunks = chunkParameter(ms, parameterObject, RowBounds.DEFAULT);
+      if (chunks == null) {
+        return executor.update(ms, parameterObject);
+      }
+      int updateCount = 0;
+      for (Object chunk : chunks) {
+        int count = executor.update(ms, chunk);
+        // BATCH执行器返回的不是实际更新行数
+        updateCount = count == BatchExecutor.BATCH_UPDATE_RETURN_VALUE ? count : updateCount + count;
+      }
+      return updateCount;
     } catch (Exception e) {
       throw ExceptionFactory.wrapException("Error updating database.  Cause: " + e, e);
     } finally {
@@ -292,6 +459,11 @@ public class DefaultSqlSession implements SqlSession {
     }
   }
 
+  @Override
+  public SqlSessionFactory getSqlSessionFactory() {
+    return sqlSessionFactory;
+  }
+
   @Override
   public Configuration getConfiguration() {
     return configuration;
@@ -335,6 +507,19 @@ public class DefaultSqlSession implements SqlSession {
     return (!autoCommit && dirty) || force;
   }
 
+  /**
+   * 如果语句中的foreach标签指定了chunkSize，并且集合超过了chunkSize，把参数拆分成多份
+   * 分页查询拆分后无法保证分页语义，所以不拆分
+   */
+  private List<Object> chunkParameter(MappedStatement ms, Object parameterObject, RowBounds rowBounds) {
+    SqlSource sqlSource = ms.getSqlSource();
+    if (!(sqlSource instanceof DynamicSqlSource)
+        || rowBounds.getOffset() != RowBounds.NO_ROW_OFFSET || rowBounds.getLimit() != RowBounds.NO_ROW_LIMIT) {
+      return null;
+    }
+    return ((DynamicSqlSource) sqlSource).chunkParameter(parameterObject);
+  }
+
   /**
    * 在MepperMethod里面已经解析过了，这里重复操作，没理解
    * 也可以直接通过sqlSession操作库
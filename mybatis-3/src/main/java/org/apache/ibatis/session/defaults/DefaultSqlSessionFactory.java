@@ -99,7 +99,7 @@ public class DefaultSqlSessionFactory implements SqlSessionFactory {
       // 新建executor，这里添加executor的拦截器
       final Executor executor = configuration.newExecutor(tx, execType);
       // 返回sqlSession
-      return new DefaultSqlSession(configuration, executor, autoCommit);
+      return new DefaultSqlSession(configuration, executor, autoCommit, this);
 
     } catch (Exception e) {
       // may have fetched a connection so lets call close()
@@ -125,7 +125,7 @@ public class DefaultSqlSessionFactory implements SqlSessionFactory {
       final TransactionFactory transactionFactory = getTransactionFactoryFromEnvironment(environment);
       final Transaction tx = transactionFactory.newTransaction(connection);
       final Executor executor = configuration.newExecutor(tx, execType);
-      return new DefaultSqlSession(configuration, executor, autoCommit);
+      return new DefaultSqlSession(configuration, executor, autoCommit, this);
     } catch (Exception e) {
       throw ExceptionFactory.wrapException("Error opening session.  Cause: " + e, e);
     } finally {
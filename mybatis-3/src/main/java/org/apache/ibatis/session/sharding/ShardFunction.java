@@ -0,0 +1,44 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session.sharding;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 根据分片键的值决定语句发往哪个分片
+ */
+@FunctionalInterface
+public interface ShardFunction {
+
+  /**
+   * @param shardKey 参数中分片键属性的值，不为null
+   * @return 分片名，必须是 {@link ShardedSqlSessionFactory} 中配置的分片之一
+   */
+  String shardOf(Object shardKey);
+
+  /**
+   * 按分片键的hashCode取模，均匀地分布到给定的分片上
+   */
+  static ShardFunction hash(List<String> shards) {
+    List<String> names = new ArrayList<>(shards);
+    if (names.isEmpty()) {
+      throw new IllegalArgumentException("At least one shard is required");
+    }
+    return shardKey -> names.get(Math.floorMod(shardKey.hashCode(), names.size()));
+  }
+
+}
@@ -0,0 +1,409 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session.sharding;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.cursor.Publisher;
+import org.apache.ibatis.exceptions.TooManyResultsException;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.executor.result.DefaultMapResultHandler;
+import org.apache.ibatis.executor.result.DefaultResultContext;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionException;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.TransactionIsolationLevel;
+
+/**
+ * 由 {@link ShardedSqlSessionFactory} 打开的会话。
+ * <p>
+ * 每个分片上的会话在第一次用到时才打开。参数中带分片键的语句只在目标分片上执行；没有分片键的查询并行地在所有分片上执行，
+ * 结果按分片顺序拼接（不做全局排序）。没有分片键的写操作和游标查询会被拒绝。
+ * <p>
+ * commit/rollback 依次作用在每个已打开的分片会话上，分片之间没有分布式事务：某个分片提交失败时，之前的分片已经提交。
+ */
+public class ShardedSqlSession implements SqlSession {
+
+  private final ShardedSqlSessionFactory factory;
+  private final ExecutorType execType;
+  private final TransactionIsolationLevel level;
+  private final boolean autoCommit;
+  private final Map<String, SqlSession> sessions = new LinkedHashMap<>();
+
+  ShardedSqlSession(ShardedSqlSessionFactory factory, ExecutorType execType, TransactionIsolationLevel level, boolean autoCommit) {
+    this.factory = factory;
+    this.execType = execType;
+    this.level = level;
+    this.autoCommit = autoCommit;
+  }
+
+  @Override
+  public <T> T selectOne(String statement) {
+    return this.selectOne(statement, null);
+  }
+
+  @Override
+  public <T> T selectOne(String statement, Object parameter) {
+    String shard = factory.shardOf(parameter);
+    if (shard != null) {
+      return session(shard).selectOne(statement, parameter);
+    }
+    List<T> list = this.selectList(statement, parameter);
+    if (list.size() == 1) {
+      return list.get(0);
+    } else if (list.size() > 1) {
+      throw new TooManyResultsException("Expected one result (or null) to be returned by selectOne(), but found: " + list.size());
+    } else {
+      return null;
+    }
+  }
+
+  @Override
+  public <E> List<E> selectList(String statement) {
+    return this.selectList(statement, null);
+  }
+
+  @Override
+  public <E> List<E> selectList(String statement, Object parameter) {
+    return this.selectList(statement, parameter, RowBounds.DEFAULT);
+  }
+
+  @Override
+  public <E> List<E> selectList(String statement, Object parameter, RowBounds rowBounds) {
+    String shard = factory.shardOf(parameter);
+    if (shard != null) {
+      return session(shard).selectList(statement, parameter, rowBounds);
+    }
+    if (rowBounds == RowBounds.DEFAULT) {
+      List<List<E>> results = scatter(statement, session -> session.selectList(statement, parameter));
+      return merge(results);
+    }
+    // 每个分片都可能贡献结果，所以各分片取前 offset+limit 行，合并后再统一跳过 offset
+    int offset = rowBounds.getOffset();
+    int limit = rowBounds.getLimit();
+    RowBounds shardBounds = new RowBounds(0, (int) Math.min((long) offset + limit, RowBounds.NO_ROW_LIMIT));
+    List<List<E>> results = scatter(statement, session -> session.selectList(statement, parameter, shardBounds));
+    List<E> merged = merge(results);
+    if (offset >= merged.size()) {
+      return new ArrayList<>();
+    }
+    return new ArrayList<>(merged.subList(offset, (int) Math.min(merged.size(), (long) offset + limit)));
+  }
+
+  @Override
+  public <K, V> Map<K, V> selectMap(String statement, String mapKey) {
+    return this.selectMap(statement, null, mapKey, RowBounds.DEFAULT);
+  }
+
+  @Override
+  public <K, V> Map<K, V> selectMap(String statement, Object parameter, String mapKey) {
+    return this.selectMap(statement, parameter, mapKey, RowBounds.DEFAULT);
+  }
+
+  @Override
+  public <K, V> Map<K, V> selectMap(String statement, Object parameter, String mapKey, RowBounds rowBounds) {
+    String shard = factory.shardOf(parameter);
+    if (shard != null) {
+      return session(shard).selectMap(statement, parameter, mapKey, rowBounds);
+    }
+    final List<? extends V> list = selectList(statement, parameter, rowBounds);
+    final Configuration configuration = factory.getConfiguration();
+    final DefaultMapResultHandler<K, V> mapResultHandler = new DefaultMapResultHandler<>(mapKey,
+        configuration.getObjectFactory(), configuration.getObjectWrapperFactory(), configuration.getReflectorFactory());
+    final DefaultResultContext<V> context = new DefaultResultContext<>();
+    for (V o : list) {
+      context.nextResultObject(o);
+      mapResultHandler.handleResult(context);
+    }
+    return mapResultHandler.getMappedResults();
+  }
+
+  /**
+   * 主键本身不带分片键，在每个分片上查询，取各分片在同一位置上的第一个非null结果
+   */
+  @Override
+  public <E> List<E> selectByKeys(String statement, String batchStatement, Collection<?> keys) {
+    List<List<E>> results = scatter(statement, session -> session.selectByKeys(statement, batchStatement, keys));
+    List<E> merged = new ArrayList<>(results.get(0));
+    for (List<E> result : results.subList(1, results.size())) {
+      for (int i = 0; i < merged.size(); i++) {
+        if (merged.get(i) == null) {
+          merged.set(i, result.get(i));
+        }
+      }
+    }
+    return merged;
+  }
+
+  @Override
+  public <T> Cursor<T> selectCursor(String statement) {
+    return selectCursor(statement, null);
+  }
+
+  @Override
+  public <T> Cursor<T> selectCursor(String statement, Object parameter) {
+    return selectCursor(statement, parameter, RowBounds.DEFAULT);
+  }
+
+  @Override
+  public <T> Cursor<T> selectCursor(String statement, Object parameter, RowBounds rowBounds) {
+    return routed(statement, parameter).selectCursor(statement, parameter, rowBounds);
+  }
+
+  @Override
+  public <T> Publisher<T> selectPublisher(String statement, Object parameter) {
+    return selectPublisher(statement, parameter, RowBounds.DEFAULT);
+  }
+
+  @Override
+  public <T> Publisher<T> selectPublisher(String statement, Object parameter, RowBounds rowBounds) {
+    return routed(statement, parameter).selectPublisher(statement, parameter, rowBounds);
+  }
+
+  @Override
+  public void select(String statement, Object parameter, ResultHandler handler) {
+    select(statement, parameter, RowBounds.DEFAULT, handler);
+  }
+
+  @Override
+  public void select(String statement, ResultHandler handler) {
+    select(statement, null, RowBounds.DEFAULT, handler);
+  }
+
+  @Override
+  public void select(String statement, Object parameter, RowBounds rowBounds, ResultHandler handler) {
+    String shard = factory.shardOf(parameter);
+    if (shard != null) {
+      session(shard).select(statement, parameter, rowBounds, handler);
+      return;
+    }
+    if (rowBounds != RowBounds.DEFAULT) {
+      throw new SqlSessionException("RowBounds are not supported by a cross-shard select with a ResultHandler. "
+          + "Statement '" + statement + "' has no shard key property '" + factory.getShardKeyProperty() + "'.");
+    }
+    // ResultHandler不是线程安全的，依次在每个分片上执行
+    for (String name : factory.getShardNames()) {
+      session(name).select(statement, parameter, handler);
+    }
+  }
+
+  @Override
+  public int insert(String statement) {
+    return insert(statement, null);
+  }
+
+  @Override
+  public int insert(String statement, Object parameter) {
+    return routed(statement, parameter).insert(statement, parameter);
+  }
+
+  @Override
+  public int update(String statement) {
+    return update(statement, null);
+  }
+
+  @Override
+  public int update(String statement, Object parameter) {
+    return routed(statement, parameter).update(statement, parameter);
+  }
+
+  /**
+   * 对象的原始值记录在加载它的分片会话中，按对象的分片键路由
+   */
+  @Override
+  public int updateChanged(String table, Object entity) {
+    return routed("update " + table, entity).updateChanged(table, entity);
+  }
+
+  @Override
+  public int delete(String statement) {
+    return delete(statement, null);
+  }
+
+  @Override
+  public int delete(String statement, Object parameter) {
+    return routed(statement, parameter).delete(statement, parameter);
+  }
+
+  @Override
+  public void commit() {
+    commit(false);
+  }
+
+  @Override
+  public void commit(boolean force) {
+    forEachSession(session -> session.commit(force));
+  }
+
+  @Override
+  public void rollback() {
+    rollback(false);
+  }
+
+  @Override
+  public void rollback(boolean force) {
+    forEachSession(session -> session.rollback(force));
+  }
+
+  @Override
+  public List<BatchResult> flushStatements() {
+    List<BatchResult> results = new ArrayList<>();
+    for (SqlSession session : sessions.values()) {
+      results.addAll(session.flushStatements());
+    }
+    return results;
+  }
+
+  @Override
+  public void close() {
+    try {
+      forEachSession(SqlSession::close);
+    } finally {
+      sessions.clear();
+    }
+  }
+
+  @Override
+  public void clearCache() {
+    for (SqlSession session : sessions.values()) {
+      session.clearCache();
+    }
+  }
+
+  @Override
+  public SqlSessionFactory getSqlSessionFactory() {
+    return factory;
+  }
+
+  @Override
+  public Configuration getConfiguration() {
+    return factory.getConfiguration();
+  }
+
+  @Override
+  public <T> T getMapper(Class<T> type) {
+    return getConfiguration().getMapper(type, this);
+  }
+
+  /**
+   * 只有恰好打开了一个分片会话时才能确定返回哪个连接
+   */
+  @Override
+  public Connection getConnection() {
+    if (sessions.size() != 1) {
+      throw new SqlSessionException("Cannot determine the connection of a sharded session with "
+          + sessions.size() + " open shards. Use ShardedSqlSessionFactory.openShardSession() instead.");
+    }
+    return sessions.values().iterator().next().getConnection();
+  }
+
+  private SqlSession session(String shard) {
+    return sessions.computeIfAbsent(shard, name -> factory.openShardSession(name, execType, level, autoCommit));
+  }
+
+  private SqlSession routed(String statement, Object parameter) {
+    String shard = factory.shardOf(parameter);
+    if (shard == null) {
+      throw new SqlSessionException("Statement '" + statement + "' must be routed to a single shard but the parameter has no value for the shard key property '"
+          + factory.getShardKeyProperty() + "'.");
+    }
+    return session(shard);
+  }
+
+  private <T> List<T> scatter(String statement, Function<SqlSession, T> operation) {
+    // 会话在调用线程上打开，sessions不需要同步；每个分片会话只会被一个工作线程使用
+    List<String> shards = new ArrayList<>(factory.getShardNames());
+    List<SqlSession> targets = new ArrayList<>(shards.size());
+    for (String shard : shards) {
+      targets.add(session(shard));
+    }
+    if (targets.size() == 1) {
+      return Collections.singletonList(operation.apply(targets.get(0)));
+    }
+    List<CompletableFuture<T>> futures = new ArrayList<>(targets.size());
+    for (SqlSession target : targets) {
+      futures.add(CompletableFuture.supplyAsync(() -> operation.apply(target), factory.getScatterExecutor()));
+    }
+    List<T> results = new ArrayList<>(futures.size());
+    Map<String, Throwable> errors = new LinkedHashMap<>();
+    for (int i = 0; i < futures.size(); i++) {
+      try {
+        results.add(futures.get(i).join());
+      } catch (CompletionException e) {
+        errors.put(shards.get(i), e.getCause());
+      }
+    }
+    if (!errors.isEmpty()) {
+      SqlSessionException exception = null;
+      for (Map.Entry<String, Throwable> error : errors.entrySet()) {
+        if (exception == null) {
+          exception = new SqlSessionException(errors.size() + " of " + shards.size() + " shards failed executing '"
+              + statement + "'. First failure: '" + error.getKey() + "'.", error.getValue());
+        } else {
+          exception.addSuppressed(error.getValue());
+        }
+      }
+      throw exception;
+    }
+    return results;
+  }
+
+  private static <E> List<E> merge(List<List<E>> results) {
+    int size = 0;
+    for (List<E> result : results) {
+      size += result.size();
+    }
+    List<E> merged = new ArrayList<>(size);
+    for (List<E> result : results) {
+      merged.addAll(result);
+    }
+    return merged;
+  }
+
+  private void forEachSession(Consumer<SqlSession> action) {
+    RuntimeException exception = null;
+    for (SqlSession session : sessions.values()) {
+      try {
+        action.accept(session);
+      } catch (RuntimeException e) {
+        if (exception == null) {
+          exception = e;
+        } else {
+          exception.addSuppressed(e);
+        }
+      }
+    }
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+}
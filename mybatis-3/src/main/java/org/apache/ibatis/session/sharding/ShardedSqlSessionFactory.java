@@ -0,0 +1,242 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session.sharding;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.exceptions.ExceptionFactory;
+import org.apache.ibatis.executor.ErrorContext;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionException;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.TransactionIsolationLevel;
+import org.apache.ibatis.session.defaults.DefaultSqlSession;
+import org.apache.ibatis.transaction.ShardTransaction;
+import org.apache.ibatis.transaction.Transaction;
+import org.apache.ibatis.transaction.TransactionFactory;
+import org.apache.ibatis.transaction.managed.ManagedTransactionFactory;
+
+/**
+ * 按参数分片的 SqlSessionFactory。
+ * <p>
+ * 所有分片共用同一个 {@link Configuration}（映射语句、缓存、插件等只解析一次），只是各自使用不同的 DataSource。
+ * 语句执行时从参数中读取分片键属性，交给 {@link ShardFunction} 算出目标分片；参数中没有分片键的查询会并行地在所有分片上执行，
+ * 结果按分片的配置顺序合并。
+ *
+ * <pre>
+ * Map&lt;String, DataSource&gt; shards = new LinkedHashMap&lt;&gt;();
+ * shards.put("shard0", dataSource0);
+ * shards.put("shard1", dataSource1);
+ * SqlSessionFactory factory = new ShardedSqlSessionFactory(configuration, shards, "tenantId",
+ *     ShardFunction.hash(new ArrayList&lt;&gt;(shards.keySet())));
+ * </pre>
+ */
+public class ShardedSqlSessionFactory implements SqlSessionFactory {
+
+  private final Configuration configuration;
+  private final Map<String, DataSource> shards;
+  private final String shardKeyProperty;
+  private final ShardFunction shardFunction;
+  private final java.util.concurrent.Executor scatterExecutor;
+
+  /**
+   * 并行查询使用工厂自己的线程池，每个分片一个线程，空闲的线程会退出
+   */
+  public ShardedSqlSessionFactory(Configuration configuration, Map<String, DataSource> shards,
+      String shardKeyProperty, ShardFunction shardFunction) {
+    this(configuration, shards, shardKeyProperty, shardFunction, newScatterExecutor(shards.size()));
+  }
+
+  /**
+   * @param scatterExecutor
+   *          并行查询使用的线程池，需要有界并且专用于此：调用方可能正运行在 {@link Configuration#getAsyncExecutor()} 上，
+   *          与它共用会在线程耗尽时互相等待
+   */
+  public ShardedSqlSessionFactory(Configuration configuration, Map<String, DataSource> shards,
+      String shardKeyProperty, ShardFunction shardFunction, java.util.concurrent.Executor scatterExecutor) {
+    if (shards.isEmpty()) {
+      throw new IllegalArgumentException("At least one shard is required");
+    }
+    if (scatterExecutor == null) {
+      throw new IllegalArgumentException("scatterExecutor must not be null");
+    }
+    this.configuration = configuration;
+    this.shards = Collections.unmodifiableMap(new LinkedHashMap<>(shards));
+    this.shardKeyProperty = shardKeyProperty;
+    this.shardFunction = shardFunction;
+    this.scatterExecutor = scatterExecutor;
+  }
+
+  @Override
+  public SqlSession openSession() {
+    return openSession(configuration.getDefaultExecutorType(), null, false);
+  }
+
+  @Override
+  public SqlSession openSession(boolean autoCommit) {
+    return openSession(configuration.getDefaultExecutorType(), null, autoCommit);
+  }
+
+  @Override
+  public SqlSession openSession(ExecutorType execType) {
+    return openSession(execType, null, false);
+  }
+
+  @Override
+  public SqlSession openSession(TransactionIsolationLevel level) {
+    return openSession(configuration.getDefaultExecutorType(), level, false);
+  }
+
+  @Override
+  public SqlSession openSession(ExecutorType execType, TransactionIsolationLevel level) {
+    return openSession(execType, level, false);
+  }
+
+  @Override
+  public SqlSession openSession(ExecutorType execType, boolean autoCommit) {
+    return openSession(execType, null, autoCommit);
+  }
+
+  @Override
+  public SqlSession openSession(Connection connection) {
+    throw new SqlSessionException("A sharded session cannot be opened on a single connection.");
+  }
+
+  @Override
+  public SqlSession openSession(ExecutorType execType, Connection connection) {
+    throw new SqlSessionException("A sharded session cannot be opened on a single connection.");
+  }
+
+  /**
+   * 直接打开指定分片上的会话，不经过分片键路由
+   */
+  public SqlSession openShardSession(String shard) {
+    return openShardSession(shard, configuration.getDefaultExecutorType(), null, false);
+  }
+
+  @Override
+  public Configuration getConfiguration() {
+    return configuration;
+  }
+
+  public Set<String> getShardNames() {
+    return shards.keySet();
+  }
+
+  public String getShardKeyProperty() {
+    return shardKeyProperty;
+  }
+
+  java.util.concurrent.Executor getScatterExecutor() {
+    return scatterExecutor;
+  }
+
+  /**
+   * 从参数中解析目标分片
+   *
+   * @return 分片名，参数中没有分片键（或值为null）时返回null
+   */
+  String shardOf(Object parameter) {
+    if (parameter == null || parameter instanceof Collection || parameter.getClass().isArray()) {
+      return null;
+    }
+    MetaObject metaObject = configuration.newMetaObject(parameter);
+    if (!metaObject.hasGetter(shardKeyProperty)) {
+      return null;
+    }
+    Object shardKey = metaObject.getValue(shardKeyProperty);
+    if (shardKey == null) {
+      return null;
+    }
+    String shard = shardFunction.shardOf(shardKey);
+    if (!shards.containsKey(shard)) {
+      throw new SqlSessionException("Shard function returned unknown shard '" + shard + "' for "
+          + shardKeyProperty + "=" + shardKey + ". Available shards: " + shards.keySet());
+    }
+    return shard;
+  }
+
+  private SqlSession openSession(ExecutorType execType, TransactionIsolationLevel level, boolean autoCommit) {
+    return new ShardedSqlSession(this, execType, level, autoCommit);
+  }
+
+  SqlSession openShardSession(String shard, ExecutorType execType, TransactionIsolationLevel level, boolean autoCommit) {
+    DataSource dataSource = shards.get(shard);
+    if (dataSource == null) {
+      throw new SqlSessionException("Unknown shard '" + shard + "'. Available shards: " + shards.keySet());
+    }
+    Transaction tx = null;
+    try {
+      final TransactionFactory transactionFactory = getTransactionFactoryFromEnvironment(configuration.getEnvironment());
+      // 包装成ShardTransaction，executor据此在缓存key中区分分片
+      tx = new ShardTransaction(transactionFactory, dataSource, shard, transactionFactory.newTransaction(dataSource, level, autoCommit));
+      final Executor executor = configuration.newExecutor(tx, execType);
+      return new DefaultSqlSession(configuration, executor, autoCommit, this);
+    } catch (Exception e) {
+      closeTransaction(tx);
+      throw ExceptionFactory.wrapException("Error opening session on shard '" + shard + "'.  Cause: " + e, e);
+    } finally {
+      ErrorContext.instance().reset();
+    }
+  }
+
+  private static java.util.concurrent.Executor newScatterExecutor(int shardCount) {
+    AtomicInteger threadNumber = new AtomicInteger();
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(shardCount, shardCount,
+        60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+          Thread thread = new Thread(runnable, "mybatis-scatter-" + threadNumber.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  private TransactionFactory getTransactionFactoryFromEnvironment(Environment environment) {
+    if (environment == null || environment.getTransactionFactory() == null) {
+      return new ManagedTransactionFactory();
+    }
+    return environment.getTransactionFactory();
+  }
+
+  private void closeTransaction(Transaction tx) {
+    if (tx != null) {
+      try {
+        tx.close();
+      } catch (SQLException ignore) {
+        // Intentionally ignore. Prefer previous error.
+      }
+    }
+  }
+
+}
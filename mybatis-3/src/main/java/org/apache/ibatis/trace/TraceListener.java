@@ -0,0 +1,66 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.trace;
+
+/**
+ * 接收 MyBatis 执行过程中的事件，用于把语句执行、缓存查找、连接池等待等信息接入
+ * JDK Flight Recorder 之类的剖析工具。回调发生在业务线程上，实现需要尽量轻量且不能抛出异常。
+ * 耗时单位均为纳秒
+ * <p>
+ * 通过 {@link org.apache.ibatis.session.Configuration#setTraceListener(TraceListener)} 注册，只接收该 Configuration 的事件；
+ * 连接池等待事件由 {@link org.apache.ibatis.datasource.pooled.PooledDataSource#setTraceListener(TraceListener)} 单独注册
+ */
+public interface TraceListener {
+
+  /**
+   * 查询语句到数据库执行完成（不含一级缓存命中）
+   * @param sqlHash 实际执行的SQL的hashCode，可用于关联同一SQL的多次执行
+   * @param error 执行失败时的异常，成功时为null
+   */
+  default void queryExecuted(String statementId, int sqlHash, int rows, long durationNanos, Throwable error) {
+    // NOP
+  }
+
+  /**
+   * 更新语句执行完成。BATCH执行器下只是加入批次，rows为0
+   */
+  default void updateExecuted(String statementId, int sqlHash, int rows, long durationNanos, Throwable error) {
+    // NOP
+  }
+
+  /**
+   * 二级缓存查找
+   */
+  default void cacheLookup(String cacheId, String statementId, boolean hit) {
+    // NOP
+  }
+
+  /**
+   * 连接池没有可用连接，获取连接的线程发生了等待
+   * @param obtained 最终是否拿到了连接
+   */
+  default void connectionWaited(String url, long durationNanos, boolean obtained) {
+    // NOP
+  }
+
+  /**
+   * ResultSet映射为结果对象完成
+   */
+  default void resultsMapped(String statementId, int rows, long durationNanos) {
+    // NOP
+  }
+
+}
@@ -0,0 +1,83 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.transaction;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+/**
+ * 分片会话使用的事务，包装实际的事务并记录所属的分片和它的数据源。
+ * 执行器据此把分片名加入缓存键，各分片共享二级缓存时不会互相命中，并且不再路由到只读副本
+ */
+public class ShardTransaction implements Transaction {
+
+  private final Transaction delegate;
+  private final String shard;
+  private final TransactionFactory transactionFactory;
+  private final DataSource dataSource;
+
+  public ShardTransaction(TransactionFactory transactionFactory, DataSource dataSource, String shard, boolean autoCommit) {
+    this(transactionFactory, dataSource, shard, transactionFactory.newTransaction(dataSource, null, autoCommit));
+  }
+
+  public ShardTransaction(TransactionFactory transactionFactory, DataSource dataSource, String shard, Transaction delegate) {
+    this.delegate = delegate;
+    this.shard = shard;
+    this.transactionFactory = transactionFactory;
+    this.dataSource = dataSource;
+  }
+
+  @Override
+  public String getShard() {
+    return shard;
+  }
+
+  /**
+   * 新事务同样属于当前分片
+   */
+  @Override
+  public Transaction newTransaction(boolean autoCommit) {
+    return new ShardTransaction(transactionFactory, dataSource, shard, autoCommit);
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    return delegate.getConnection();
+  }
+
+  @Override
+  public void commit() throws SQLException {
+    delegate.commit();
+  }
+
+  @Override
+  public void rollback() throws SQLException {
+    delegate.rollback();
+  }
+
+  @Override
+  public void close() throws SQLException {
+    delegate.close();
+  }
+
+  @Override
+  public Integer getTimeout() throws SQLException {
+    return delegate.getTimeout();
+  }
+
+}
@@ -64,4 +64,24 @@ public interface Transaction {
    */
   Integer getTimeout() throws SQLException;
 
+  /**
+   * 事务所属的分片，执行器据此把分片名加入缓存键，并且不把查询路由到只读副本
+   *
+   * @return 分片名，不属于任何分片时返回null
+   */
+  default String getShard() {
+    return null;
+  }
+
+  /**
+   * 在同一个数据源上打开新的事务。原会话关闭后的延迟加载、后台任务等需要独立连接时使用
+   *
+   * @param autoCommit
+   *          新事务是否自动提交
+   * @return 新的事务，返回null时调用方使用 Environment 中的数据源
+   */
+  default Transaction newTransaction(boolean autoCommit) {
+    return null;
+  }
+
 }
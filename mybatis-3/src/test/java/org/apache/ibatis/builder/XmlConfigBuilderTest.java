@@ -33,6 +33,7 @@ import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Properties;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import org.apache.ibatis.builder.mapper.CustomMapper;
 import org.apache.ibatis.builder.typehandler.CustomIntegerTypeHandler;
@@ -54,6 +55,7 @@ import org.apache.ibatis.scripting.defaults.RawLanguageDriver;
 import org.apache.ibatis.scripting.xmltags.XMLLanguageDriver;
 import org.apache.ibatis.session.AutoMappingBehavior;
 import org.apache.ibatis.session.AutoMappingUnknownColumnBehavior;
+import org.apache.ibatis.session.BatchGrouping;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.LocalCacheScope;
@@ -101,6 +103,23 @@ class XmlConfigBuilderTest {
       assertNull(config.getConfigurationFactory());
       assertThat(config.getTypeHandlerRegistry().getTypeHandler(RoundingMode.class)).isInstanceOf(EnumTypeHandler.class);
       assertThat(config.isShrinkWhitespacesInSql()).isFalse();
+      assertThat(config.getDynamicSqlShapeCacheSize()).isZero();
+      assertThat(config.getBatchGrouping()).isEqualTo(BatchGrouping.NONE);
+      assertThat(config.getBatchMaxStatementRows()).isEqualTo(0);
+      assertThat(config.getBatchMaxPendingRows()).isEqualTo(0);
+      assertThat(config.getBatchMaxPendingBytes()).isEqualTo(0);
+      assertThat(config.isBatchInsertRewrite()).isFalse();
+      assertThat(config.getBatchInsertRewriteMaxParameters()).isEqualTo(0);
+      assertThat(config.isMetricsEnabled()).isFalse();
+      assertThat(config.isStreamingResults()).isFalse();
+      assertThat(config.isAdaptiveFetchSize()).isFalse();
+      assertThat(config.getAdaptiveFetchSizeMin()).isEqualTo(10);
+      assertThat(config.getAdaptiveFetchSizeMax()).isEqualTo(1000);
+      assertThat(config.isCoalesceQueries()).isFalse();
+      assertThat(config.isUseIdentityMap()).isFalse();
+      assertThat(config.isDirtyChecking()).isFalse();
+      assertThat(config.getAsyncExecutor()).isInstanceOf(ThreadPoolExecutor.class);
+      assertThat(config.getAsyncExecutorPoolSize()).isEqualTo(10);
     }
   }
 
@@ -196,6 +215,23 @@ class XmlConfigBuilderTest {
       assertThat(config.getVfsImpl().getName()).isEqualTo(JBoss6VFS.class.getName());
       assertThat(config.getConfigurationFactory().getName()).isEqualTo(String.class.getName());
       assertThat(config.isShrinkWhitespacesInSql()).isTrue();
+      assertThat(config.getDynamicSqlShapeCacheSize()).isEqualTo(20);
+      assertThat(config.getBatchGrouping()).isEqualTo(BatchGrouping.ORDERED);
+      assertThat(config.getBatchMaxStatementRows()).isEqualTo(1000);
+      assertThat(config.getBatchMaxPendingRows()).isEqualTo(5000);
+      assertThat(config.getBatchMaxPendingBytes()).isEqualTo(1048576);
+      assertThat(config.isBatchInsertRewrite()).isTrue();
+      assertThat(config.getBatchInsertRewriteMaxParameters()).isEqualTo(2000);
+      assertThat(config.isMetricsEnabled()).isTrue();
+      assertThat(config.isStreamingResults()).isTrue();
+      assertThat(config.isAdaptiveFetchSize()).isTrue();
+      assertThat(config.getAdaptiveFetchSizeMin()).isEqualTo(5);
+      assertThat(config.getAdaptiveFetchSizeMax()).isEqualTo(500);
+      assertThat(config.isCoalesceQueries()).isTrue();
+      assertThat(config.isUseIdentityMap()).isTrue();
+      assertThat(config.isDirtyChecking()).isTrue();
+      assertThat(config.getAsyncExecutor()).isInstanceOf(CustomAsyncExecutor.class);
+      assertThat(config.getAsyncExecutorPoolSize()).isEqualTo(4);
 
       assertThat(config.getTypeAliasRegistry().getTypeAliases().get("blogauthor")).isEqualTo(Author.class);
       assertThat(config.getTypeAliasRegistry().getTypeAliases().get("blog")).isEqualTo(Blog.class);
@@ -376,6 +376,104 @@ class DynamicSqlSourceTest extends BaseDataTest {
     assertEquals("__frch_u_0", boundSql.getParameterMappings().get(3).getProperty());
   }
 
+  @Test
+  void shouldReuseParsedSqlForSameShape() {
+    Configuration configuration = new Configuration();
+    configuration.setDynamicSqlShapeCacheSize(20);
+    DynamicSqlSource source = new DynamicSqlSource(configuration, mixedContents(
+        new TextSqlNode("SELECT * FROM BLOG"),
+        new WhereSqlNode(configuration, mixedContents(
+            new IfSqlNode(mixedContents(new TextSqlNode("AND title = #{title}")), "title != null"),
+            new ForEachSqlNode(configuration, mixedContents(new TextSqlNode("#{id}")), "ids", null, "id", "AND id IN (", ")", ",")))));
+
+    BoundSql first = source.getBoundSql(shapeParameter("first", 1, 2));
+    BoundSql second = source.getBoundSql(shapeParameter("second", 3, 4));
+    BoundSql third = source.getBoundSql(shapeParameter(null, 5, 6, 7));
+
+    assertEquals("SELECT * FROM BLOG WHERE  title = ?AND id IN (?,?)", second.getSql());
+    Assertions.assertSame(first.getParameterMappings(), second.getParameterMappings());
+    assertEquals(4, second.getAdditionalParameter("__frch_id_1"));
+    assertEquals("SELECT * FROM BLOG WHERE  id IN (?,?,?)", third.getSql());
+    Assertions.assertNotSame(first.getParameterMappings(), third.getParameterMappings());
+    assertEquals(7, third.getAdditionalParameter("__frch_id_2"));
+  }
+
+  @Test
+  void shouldNotReuseParsedSqlWhenNestedPropertyTypesDiffer() {
+    Configuration configuration = new Configuration();
+    configuration.setDynamicSqlShapeCacheSize(20);
+    DynamicSqlSource source = new DynamicSqlSource(configuration, mixedContents(
+        new TextSqlNode("SELECT * FROM BLOG WHERE id IN"),
+        new ForEachSqlNode(configuration, mixedContents(new TextSqlNode("#{item.value}")), "items", null, "item", "(", ")", ",")));
+
+    BoundSql first = source.getBoundSql(itemsParameter(1));
+    BoundSql second = source.getBoundSql(itemsParameter("a"));
+    BoundSql third = source.getBoundSql(itemsParameter(2));
+
+    assertEquals(Integer.class, first.getParameterMappings().get(0).getJavaType());
+    assertEquals(String.class, second.getParameterMappings().get(0).getJavaType());
+    Assertions.assertSame(first.getParameterMappings(), third.getParameterMappings());
+  }
+
+  @Test
+  void shouldRenderEveryShapeWhenShapeCacheIsFull() {
+    Configuration configuration = new Configuration();
+    configuration.setDynamicSqlShapeCacheSize(1);
+    DynamicSqlSource source = new DynamicSqlSource(configuration, mixedContents(
+        new TextSqlNode("SELECT * FROM BLOG WHERE id IN"),
+        new ForEachSqlNode(configuration, mixedContents(new TextSqlNode("#{id}")), "ids", null, "id", "(", ")", ",")));
+
+    assertEquals("SELECT * FROM BLOG WHERE id IN (  ? )", source.getBoundSql(shapeParameter(null, 1)).getSql());
+    assertEquals("SELECT * FROM BLOG WHERE id IN (  ? , ? )", source.getBoundSql(shapeParameter(null, 1, 2)).getSql());
+    assertEquals("SELECT * FROM BLOG WHERE id IN (  ? , ? , ? )", source.getBoundSql(shapeParameter(null, 1, 2, 3)).getSql());
+    assertEquals("SELECT * FROM BLOG WHERE id IN (  ? )", source.getBoundSql(shapeParameter(null, 4)).getSql());
+  }
+
+  @Test
+  void shouldPadForEachToPowerOfTwo() {
+    Configuration configuration = new Configuration();
+    DynamicSqlSource source = new DynamicSqlSource(configuration, mixedContents(
+        new TextSqlNode("SELECT * FROM BLOG WHERE id IN"),
+        new ForEachSqlNode(configuration, mixedContents(new TextSqlNode("#{id}")), "ids", null, "id", "(", ")", ",",
+            false, null, "powerOfTwo", false)));
+
+    BoundSql boundSql = source.getBoundSql(shapeParameter(null, 1, 2, 3));
+    assertEquals("SELECT * FROM BLOG WHERE id IN (  ? , ? , ? , ? )", boundSql.getSql());
+    assertEquals(3, boundSql.getAdditionalParameter("__frch_id_3"));
+    assertEquals(4, source.getBoundSql(shapeParameter(null, 1, 2, 3, 4)).getParameterMappings().size());
+    assertEquals(8, source.getBoundSql(shapeParameter(null, 1, 2, 3, 4, 5)).getParameterMappings().size());
+  }
+
+  @Test
+  void shouldPadForEachToBucketsWithNull() {
+    Configuration configuration = new Configuration();
+    DynamicSqlSource source = new DynamicSqlSource(configuration, mixedContents(
+        new TextSqlNode("SELECT * FROM BLOG WHERE id IN"),
+        new ForEachSqlNode(configuration, mixedContents(new TextSqlNode("#{id}")), "ids", null, "id", "(", ")", ",",
+            false, null, "5, 2", true)));
+
+    BoundSql boundSql = source.getBoundSql(shapeParameter(null, 1, 2, 3));
+    assertEquals(5, boundSql.getParameterMappings().size());
+    Assertions.assertNull(boundSql.getAdditionalParameter("__frch_id_4"));
+    assertEquals(2, source.getBoundSql(shapeParameter(null, 1)).getParameterMappings().size());
+    assertEquals(10, source.getBoundSql(shapeParameter(null, 1, 2, 3, 4, 5, 6)).getParameterMappings().size());
+  }
+
+  private Map<String, Object> shapeParameter(String title, Integer... ids) {
+    Map<String, Object> parameter = new HashMap<>();
+    parameter.put("title", title);
+    parameter.put("ids", Arrays.asList(ids));
+    return parameter;
+  }
+
+  private Map<String, Object> itemsParameter(Object value) {
+    Map<String, Object> item = new HashMap<>();
+    item.put("value", value);
+    Map<String, Object> parameter = new HashMap<>();
+    parameter.put("items", Arrays.asList(item));
+    return parameter;
+  }
+
   private DynamicSqlSource createDynamicSqlSource(SqlNode... contents) throws IOException, SQLException {
     createBlogDataSource();
     final String resource = "org/apache/ibatis/builder/MapperConfig.xml";
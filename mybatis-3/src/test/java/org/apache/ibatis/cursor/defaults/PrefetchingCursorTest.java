@@ -0,0 +1,200 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cursor.defaults;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.junit.jupiter.api.Test;
+
+class PrefetchingCursorTest {
+
+  @Test
+  void shouldReturnAllItemsInOrder() {
+    ListCursor source = new ListCursor(Arrays.asList("a", null, "c"), -1);
+    PrefetchingCursor<String> cursor = new PrefetchingCursor<>(source, 2, null);
+    assertEquals(-1, cursor.getCurrentIndex());
+    Iterator<String> iterator = cursor.iterator();
+    assertEquals("a", iterator.next());
+    assertTrue(iterator.hasNext());
+    assertNull(iterator.next());
+    assertEquals("c", iterator.next());
+    assertEquals(2, cursor.getCurrentIndex());
+    assertFalse(iterator.hasNext());
+    assertTrue(cursor.isConsumed());
+    assertFalse(cursor.isOpen());
+    assertThrows(IllegalStateException.class, cursor::iterator);
+  }
+
+  @Test
+  void shouldReadAheadNoMoreThanTheBuffer() throws Exception {
+    ListCursor source = new ListCursor(Arrays.asList("a", "b", "c", "d", "e", "f", "g", "h"), -1);
+    try (PrefetchingCursor<String> cursor = new PrefetchingCursor<>(source, 2, null)) {
+      Iterator<String> iterator = cursor.iterator();
+      assertEquals("a", iterator.next());
+      Thread.sleep(300);
+      // 已取走1个，缓冲区2个，后台线程手里最多再有1个
+      assertTrue(source.read.get() <= 4);
+    }
+  }
+
+  @Test
+  void shouldStopReadingAndCloseSourceOnClose() {
+    ListCursor source = new ListCursor(Arrays.asList("a", "b", "c", "d", "e", "f", "g", "h"), -1);
+    PrefetchingCursor<String> cursor = new PrefetchingCursor<>(source, 1, null);
+    Iterator<String> iterator = cursor.iterator();
+    assertEquals("a", iterator.next());
+    cursor.close();
+    int read = source.read.get();
+    assertTrue(source.closed);
+    assertFalse(iterator.hasNext());
+    assertFalse(cursor.isConsumed());
+    assertEquals(read, source.read.get());
+  }
+
+  @Test
+  void shouldHandOverSourceFailureToConsumer() {
+    ListCursor source = new ListCursor(Arrays.asList("a", "b", "c"), 1);
+    PrefetchingCursor<String> cursor = new PrefetchingCursor<>(source, 4, null);
+    Iterator<String> iterator = cursor.iterator();
+    assertEquals("a", iterator.next());
+    IllegalStateException e = assertThrows(IllegalStateException.class, iterator::hasNext);
+    assertSame(ListCursor.FAILURE, e);
+    assertTrue(source.closed);
+  }
+
+  @Test
+  void shouldCancelStatementBeforeWaitingForProducer() throws Exception {
+    ListCursor source = new ListCursor(Arrays.asList("a", "b", "c"), -1);
+    source.blockAt = 1;
+    Statement statement = mock(Statement.class);
+    doAnswer(invocation -> {
+      source.release.countDown();
+      return null;
+    }).when(statement).cancel();
+    PrefetchingCursor<String> cursor = new PrefetchingCursor<>(source, 4, null, statement);
+    Iterator<String> iterator = cursor.iterator();
+    assertEquals("a", iterator.next());
+    assertTrue(source.blocked.await(5, TimeUnit.SECONDS));
+    // 后台线程阻塞在读取中，只有取消语句才能让 close() 返回
+    cursor.close();
+    verify(statement).cancel();
+    assertTrue(source.closed);
+  }
+
+  @Test
+  void shouldApplyFetchSizeOnProducerThread() {
+    ListCursor source = new ListCursor(Arrays.asList("a", "b"), -1);
+    PrefetchingCursor<String> cursor = new PrefetchingCursor<>(source, 1, null);
+    cursor.setFetchSize(5);
+    Iterator<String> iterator = cursor.iterator();
+    assertEquals("a", iterator.next());
+    assertEquals("b", iterator.next());
+    assertEquals(5, source.fetchSize);
+    assertEquals("mybatis-cursor-prefetch", source.fetchSizeThread);
+  }
+
+  private static class ListCursor implements Cursor<String> {
+    static final IllegalStateException FAILURE = new IllegalStateException("fetch failed");
+
+    private final List<String> items;
+    private final int failAt;
+    private final AtomicInteger read = new AtomicInteger();
+    private volatile boolean closed;
+    private final CountDownLatch blocked = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private int blockAt = -1;
+    private volatile int fetchSize;
+    private volatile String fetchSizeThread;
+
+    ListCursor(List<String> items, int failAt) {
+      this.items = items;
+      this.failAt = failAt;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return !closed;
+    }
+
+    @Override
+    public boolean isConsumed() {
+      return read.get() == items.size();
+    }
+
+    @Override
+    public int getCurrentIndex() {
+      return read.get() - 1;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+      return new Iterator<String>() {
+        @Override
+        public boolean hasNext() {
+          return !closed && read.get() < items.size();
+        }
+
+        @Override
+        public String next() {
+          int index = read.getAndIncrement();
+          if (index == blockAt) {
+            blocked.countDown();
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            // 语句被取消后驱动抛出异常
+            throw FAILURE;
+          }
+          if (index == failAt) {
+            throw FAILURE;
+          }
+          return items.get(index);
+        }
+      };
+    }
+
+    @Override
+    public void setFetchSize(int fetchSize) {
+      this.fetchSize = fetchSize;
+      this.fetchSizeThread = Thread.currentThread().getName();
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+}
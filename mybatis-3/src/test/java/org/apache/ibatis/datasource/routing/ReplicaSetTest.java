@@ -0,0 +1,73 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.routing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.junit.jupiter.api.Test;
+
+class ReplicaSetTest {
+
+  private final UnpooledDataSource dataSource = new UnpooledDataSource();
+
+  @Test
+  void shouldPickReplicaWithLowestOutstandingPerWeight() {
+    Replica light = new Replica(dataSource, 1);
+    Replica heavy = new Replica(dataSource, 4);
+    ReplicaSet replicas = new ReplicaSet(LoadBalancing.LEAST_OUTSTANDING, Arrays.asList(light, heavy));
+    light.acquired();
+    heavy.acquired();
+    heavy.acquired();
+    // light 1/1, heavy 2/4
+    assertSame(heavy, replicas.acquire());
+    assertEquals(3, heavy.getOutstanding());
+    heavy.release();
+    heavy.release();
+    heavy.release();
+    assertSame(heavy, replicas.acquire());
+  }
+
+  @Test
+  void shouldDistributeByWeight() {
+    Replica small = new Replica(dataSource, 1);
+    Replica large = new Replica(dataSource, 3);
+    ReplicaSet replicas = new ReplicaSet(LoadBalancing.WEIGHTED, Arrays.asList(small, large));
+    int largeCount = 0;
+    for (int i = 0; i < 4000; i++) {
+      Replica replica = replicas.acquire();
+      if (replica == large) {
+        largeCount++;
+      }
+      replica.release();
+    }
+    assertEquals(3000, largeCount, 200);
+    assertEquals(0, small.getOutstanding());
+  }
+
+  @Test
+  void shouldRejectInvalidReplicas() {
+    assertThrows(IllegalArgumentException.class, () -> new ReplicaSet(LoadBalancing.WEIGHTED, Collections.emptyList()));
+    assertThrows(IllegalArgumentException.class, () -> new Replica(dataSource, 0));
+    assertThrows(IllegalArgumentException.class, () -> new Replica(null, 1));
+  }
+
+}
@@ -0,0 +1,65 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class HistogramTest {
+
+  @Test
+  void shouldPlaceValuesInPowerOfTwoBuckets() {
+    assertEquals(0, Histogram.bucketOf(0));
+    assertEquals(0, Histogram.bucketOf(1));
+    assertEquals(1, Histogram.bucketOf(2));
+    assertEquals(1, Histogram.bucketOf(3));
+    assertEquals(2, Histogram.bucketOf(4));
+    assertEquals(62, Histogram.bucketOf(Long.MAX_VALUE));
+  }
+
+  @Test
+  void shouldEstimatePercentiles() {
+    Histogram histogram = new Histogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i);
+    }
+    Histogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(100, snapshot.getCount());
+    assertEquals(5050, snapshot.getSum());
+    assertEquals(100, snapshot.getMax());
+    assertEquals(50.5, snapshot.getMean());
+    // 50落在[32, 64)桶内
+    assertEquals(63, snapshot.getPercentile(50));
+    assertEquals(100, snapshot.getPercentile(99));
+    assertEquals(1, snapshot.getPercentile(0));
+    assertThrows(IllegalArgumentException.class, () -> snapshot.getPercentile(101));
+  }
+
+  @Test
+  void shouldReset() {
+    Histogram histogram = new Histogram();
+    histogram.record(10);
+    histogram.record(-5);
+    histogram.reset();
+    Histogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(0, snapshot.getCount());
+    assertEquals(0, snapshot.getMax());
+    assertEquals(0, snapshot.getPercentile(99));
+  }
+
+}
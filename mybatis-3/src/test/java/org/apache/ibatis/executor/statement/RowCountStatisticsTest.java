@@ -0,0 +1,72 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class RowCountStatisticsTest {
+
+  @Test
+  void shouldReturnZeroForUnknownStatements() {
+    RowCountStatistics statistics = new RowCountStatistics();
+    assertEquals(0, statistics.expectedRows("unknown"));
+    assertEquals(0, statistics.fetchSize("unknown", 10, 1000));
+  }
+
+  @Test
+  void shouldUseFirstSampleAndOneExtraRow() {
+    RowCountStatistics statistics = new RowCountStatistics();
+    statistics.record("s", 50);
+    assertEquals(50, statistics.expectedRows("s"));
+    assertEquals(51, statistics.fetchSize("s", 10, 1000));
+  }
+
+  @Test
+  void shouldClampFetchSize() {
+    RowCountStatistics statistics = new RowCountStatistics();
+    statistics.record("small", 1);
+    statistics.record("large", 100000);
+    assertEquals(10, statistics.fetchSize("small", 10, 1000));
+    assertEquals(1000, statistics.fetchSize("large", 10, 1000));
+  }
+
+  @Test
+  void shouldCoverVaryingResultSizes() {
+    RowCountStatistics statistics = new RowCountStatistics();
+    for (int i = 0; i < 50; i++) {
+      statistics.record("s", i % 2 == 0 ? 100 : 200);
+    }
+    int expected = statistics.expectedRows("s");
+    assertTrue(expected > 100 && expected < 200);
+    assertTrue(statistics.fetchSize("s", 1, 1000) > 200);
+  }
+
+  @Test
+  void shouldForgetOldSamples() {
+    RowCountStatistics statistics = new RowCountStatistics();
+    statistics.record("s", 1000);
+    for (int i = 0; i < 50; i++) {
+      statistics.record("s", 10);
+    }
+    assertTrue(statistics.expectedRows("s") < 15);
+    statistics.reset();
+    assertEquals(0, statistics.expectedRows("s"));
+  }
+
+}
@@ -91,6 +91,56 @@ class PooledDataSourceTest extends BaseDataTest {
     c.close();
   }
 
+  @Test
+  void shouldReusePreparedStatementsAcrossCheckouts() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      runScript(ds, JPETSTORE_DDL);
+      ds.setPoolMaximumActiveConnections(1);
+      ds.setPoolPreparedStatementCacheSize(2);
+      String sql = "SELECT * FROM PRODUCT WHERE PRODUCTID = ?";
+
+      Connection c = ds.getConnection();
+      PreparedStatement st = c.prepareStatement(sql);
+      PreparedStatement real = st.unwrap(PreparedStatement.class);
+      st.setString(1, "FI-SW-01");
+      st.setMaxRows(1);
+      st.executeQuery().close();
+      st.close();
+      assertTrue(st.isClosed());
+      assertFalse(real.isClosed());
+      assertThrows(SQLException.class, st::executeQuery);
+      c.close();
+
+      c = ds.getConnection();
+      st = c.prepareStatement(sql);
+      assertSame(real, st.unwrap(PreparedStatement.class));
+      assertSame(c, st.getConnection());
+      assertEquals(0, st.getMaxRows());
+      PreparedStatement other = c.prepareStatement(sql);
+      PreparedStatement otherReal = other.unwrap(PreparedStatement.class);
+      assertNotSame(real, otherReal);
+      st.close();
+      other.close();
+      assertFalse(real.isClosed());
+      assertTrue(otherReal.isClosed());
+
+      // 超出缓存大小时淘汰最久未使用的语句
+      c.prepareStatement("SELECT * FROM CATEGORY").close();
+      c.prepareStatement("SELECT * FROM ITEM").close();
+      assertTrue(real.isClosed());
+
+      PreparedStatement cached = c.prepareStatement("SELECT * FROM ITEM");
+      PreparedStatement realCached = cached.unwrap(PreparedStatement.class);
+      cached.close();
+      c.close();
+      ds.forceCloseAll();
+      assertTrue(realCached.isClosed());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
   @Disabled("See the comments")
   @Test
   void shouldReconnectWhenServerKilledLeakedConnection() throws Exception {
@@ -0,0 +1,138 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.Reader;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.io.Resources;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class SqlSessionFanOutTest extends BaseDataTest {
+
+  private static SqlSessionFactory sqlMapper;
+  private static ExecutorService executor;
+
+  @BeforeAll
+  static void setup() throws Exception {
+    createBlogDataSource();
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/builder/MapperConfig.xml")) {
+      sqlMapper = new SqlSessionFactoryBuilder().build(reader);
+    }
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @AfterAll
+  static void tearDown() {
+    executor.shutdown();
+  }
+
+  @Test
+  void shouldRunStatementsConcurrentlyAndCollectResults() {
+    Set<String> threads = ConcurrentHashMap.newKeySet();
+    SqlSessionFanOut fanOut = new SqlSessionFanOut(sqlMapper, executor, 2);
+    SqlSessionFanOut.Query<List<Author>> authors = fanOut.selectList("org.apache.ibatis.domain.blog.mappers.AuthorMapper.selectAllAuthors", null);
+    SqlSessionFanOut.Query<Author> author = fanOut.selectOne("org.apache.ibatis.domain.blog.mappers.AuthorMapper.selectAuthor", new Author(101));
+    SqlSessionFanOut.Query<Map<Integer, Author>> authorMap = fanOut.submit("authorMap", session -> {
+      threads.add(Thread.currentThread().getName());
+      return session.selectMap("org.apache.ibatis.domain.blog.mappers.AuthorMapper.selectAllAuthors", "id");
+    });
+    fanOut.execute();
+    assertEquals(2, authors.getResult().size());
+    assertEquals("jim", author.getResult().getUsername());
+    assertEquals(2, authorMap.getResult().size());
+    assertEquals(3, fanOut.getQueries().size());
+    assertEquals(1, threads.size());
+  }
+
+  @Test
+  void shouldNotDeadlockWhenExecutedFromItsOwnPool() throws Exception {
+    ExecutorService single = Executors.newSingleThreadExecutor();
+    try {
+      Future<List<Author>> future = single.submit(() -> {
+        SqlSessionFanOut fanOut = new SqlSessionFanOut(sqlMapper, single, 2);
+        SqlSessionFanOut.Query<List<Author>> authors = fanOut.selectList("org.apache.ibatis.domain.blog.mappers.AuthorMapper.selectAllAuthors", null);
+        fanOut.selectOne("org.apache.ibatis.domain.blog.mappers.AuthorMapper.selectAuthor", new Author(101));
+        fanOut.execute();
+        return authors.getResult();
+      });
+      assertEquals(2, future.get(10, TimeUnit.SECONDS).size());
+    } finally {
+      single.shutdownNow();
+    }
+  }
+
+  @Test
+  void shouldCancelPendingStatementsOnTimeout() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    SqlSessionFanOut fanOut = new SqlSessionFanOut(sqlMapper, executor, 1);
+    SqlSessionFanOut.Query<Boolean> slow = fanOut.submit("slow", session -> {
+      try {
+        return release.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    SqlSessionFanOut.Query<List<Author>> pending = fanOut.selectList("org.apache.ibatis.domain.blog.mappers.AuthorMapper.selectAllAuthors", null);
+    assertThrows(TimeoutException.class, () -> fanOut.execute(100, TimeUnit.MILLISECONDS));
+    assertTrue(pending.isCancelled());
+    assertFalse(slow.isCancelled());
+    release.countDown();
+    assertNull(pending.getResult());
+  }
+
+  @Test
+  void shouldCollectErrorsAndCancelPendingStatements() {
+    SqlSessionFanOut fanOut = new SqlSessionFanOut(sqlMapper, executor, 1);
+    SqlSessionFanOut.Query<Object> failing = fanOut.selectOne("unknown.statement", null);
+    SqlSessionFanOut.Query<List<Author>> pending = fanOut.selectList("org.apache.ibatis.domain.blog.mappers.AuthorMapper.selectAllAuthors", null);
+    SqlSessionException e = assertThrows(SqlSessionException.class, fanOut::execute);
+    assertTrue(e.getMessage().startsWith("1 of 2 fan-out statements failed."));
+    assertEquals(failing.getError(), e.getCause());
+    assertTrue(pending.isCancelled());
+    assertNull(pending.getResult());
+  }
+
+  @Test
+  void shouldExecuteOnlyOnce() {
+    SqlSessionFanOut fanOut = new SqlSessionFanOut(sqlMapper, executor, 1);
+    fanOut.execute();
+    assertThrows(SqlSessionException.class, fanOut::execute);
+    assertThrows(SqlSessionException.class, () -> fanOut.selectOne("org.apache.ibatis.domain.blog.mappers.AuthorMapper.selectAuthor", 101));
+    assertThrows(IllegalArgumentException.class, () -> new SqlSessionFanOut(sqlMapper, executor, 0));
+    assertThrows(IllegalArgumentException.class, () -> new SqlSessionFanOut(sqlMapper, null, 1));
+  }
+
+}
@@ -0,0 +1,107 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.adaptive_fetch_size;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.Reader;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveFetchSizeTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+  private final List<Integer> fetchSizes = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/adaptive_fetch_size/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/adaptive_fetch_size/CreateDB.sql");
+    sqlSessionFactory.getConfiguration().addInterceptor(new FetchSizeRecorder());
+  }
+
+  @Test
+  void shouldSizeFetchFromPreviousExecutions() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      assertEquals(3, mapper.list().size());
+      sqlSession.clearCache();
+      assertEquals(3, mapper.list().size());
+    }
+    assertEquals(0, fetchSizes.get(0).intValue());
+    // 3行加1行判断结果结束
+    assertEquals(4, fetchSizes.get(1).intValue());
+    assertEquals(3, sqlSessionFactory.getConfiguration().getRowCountStatistics().expectedRows(Mapper.class.getName() + ".list"));
+  }
+
+  @Test
+  void shouldKeepStatementFetchSize() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.listWithFetchSize();
+      sqlSession.clearCache();
+      mapper.listWithFetchSize();
+    }
+    assertEquals(2, fetchSizes.get(1).intValue());
+  }
+
+  @Test
+  void shouldCountRowsReadInsteadOfMappedObjects() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      List<Group> groups = sqlSession.getMapper(Mapper.class).listGroups();
+      assertEquals(1, groups.size());
+      assertEquals(3, groups.get(0).getNames().size());
+    }
+    assertEquals(3, sqlSessionFactory.getConfiguration().getRowCountStatistics().expectedRows(Mapper.class.getName() + ".listGroups"));
+  }
+
+  @Test
+  void shouldCountRowsPassedToResultHandler() {
+    String statement = Mapper.class.getName() + ".list";
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      sqlSession.select(statement, context -> { });
+    }
+    assertEquals(3, sqlSessionFactory.getConfiguration().getRowCountStatistics().expectedRows(statement));
+  }
+
+  @Intercepts(@Signature(type = StatementHandler.class, method = "query", args = { Statement.class, ResultHandler.class }))
+  class FetchSizeRecorder implements Interceptor {
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      fetchSizes.add(((Statement) invocation.getArgs()[0]).getFetchSize());
+      return invocation.proceed();
+    }
+  }
+
+}
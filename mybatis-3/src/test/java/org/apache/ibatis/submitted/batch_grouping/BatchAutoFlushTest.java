@@ -0,0 +1,114 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.batch_grouping;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BatchAutoFlushTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/batch_grouping/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/batch_grouping/CreateDB.sql");
+  }
+
+  @Test
+  void shouldSummarizeAutoFlushedBatches() {
+    sqlSessionFactory.getConfiguration().setBatchMaxStatementRows(2);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 1; i <= 5; i++) {
+        mapper.insertParent(i, "parent" + i);
+      }
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(2, results.size());
+      assertTrue(results.get(0).getParameterObjects().isEmpty());
+      assertArrayEquals(new int[] { 4 }, results.get(0).getUpdateCounts());
+      assertEquals(1, results.get(1).getParameterObjects().size());
+      assertEquals("parent5", mapper.getParentName(5));
+    }
+  }
+
+  @Test
+  void shouldPassAutoFlushedBatchesToListener() {
+    Configuration configuration = sqlSessionFactory.getConfiguration();
+    configuration.setBatchMaxPendingRows(3);
+    List<List<BatchResult>> flushed = new ArrayList<>();
+    configuration.setBatchFlushListener(flushed::add);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 1; i <= 3; i++) {
+        mapper.insertParent(i, "parent" + i);
+        mapper.insertChild(i, i);
+      }
+      assertEquals(2, flushed.size());
+      assertEquals(3, flushed.get(0).size());
+      assertEquals(3, flushed.get(1).size());
+      assertTrue(sqlSession.flushStatements().isEmpty());
+      assertEquals(3, mapper.countChildren());
+    }
+  }
+
+  @Test
+  void shouldAutoFlushWhenEstimatedBytesExceedLimit() {
+    sqlSessionFactory.getConfiguration().setBatchMaxPendingBytes(150);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertParent(1, "01234567890123456789");
+      mapper.insertParent(2, "a");
+      mapper.insertParent(3, "01234567890123456789");
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(2, results.size());
+      assertArrayEquals(new int[] { 2 }, results.get(0).getUpdateCounts());
+      assertEquals(1, results.get(1).getParameterObjects().size());
+    }
+  }
+
+  @Test
+  void shouldDiscardSummariesOnRollback() {
+    sqlSessionFactory.getConfiguration().setBatchMaxStatementRows(1);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertParent(1, "parent1");
+      sqlSession.rollback();
+      assertTrue(sqlSession.flushStatements().isEmpty());
+      assertEquals(null, mapper.getParentName(1));
+    }
+  }
+
+}
@@ -0,0 +1,114 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.batch_grouping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.Reader;
+import java.util.List;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.BatchGrouping;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BatchGroupingTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/batch_grouping/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/batch_grouping/CreateDB.sql");
+  }
+
+  @AfterEach
+  void resetGrouping() {
+    sqlSessionFactory.getConfiguration().setBatchGrouping(BatchGrouping.NONE);
+  }
+
+  @Test
+  void shouldBreakBatchesOnInterleavedStatementsByDefault() {
+    List<BatchResult> results = insertParentsAndChildren();
+    assertEquals(6, results.size());
+  }
+
+  @Test
+  void shouldGroupInterleavedInsertsInOrderedMode() {
+    sqlSessionFactory.getConfiguration().setBatchGrouping(BatchGrouping.ORDERED);
+    List<BatchResult> results = insertParentsAndChildren();
+    assertEquals(2, results.size());
+    assertEquals("org.apache.ibatis.submitted.batch_grouping.Mapper.insertParent", results.get(0).getMappedStatement().getId());
+    assertEquals(3, results.get(0).getUpdateCounts().length);
+    assertEquals(3, results.get(1).getParameterObjects().size());
+  }
+
+  @Test
+  void shouldNotMoveInsertsAcrossUpdatesInOrderedMode() {
+    sqlSessionFactory.getConfiguration().setBatchGrouping(BatchGrouping.ORDERED);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertParent(1, "a");
+      mapper.renameParent(1, "b");
+      mapper.insertParent(2, "a");
+      mapper.renameParent(2, "b");
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(4, results.size());
+      assertEquals("b", mapper.getParentName(2));
+    }
+  }
+
+  @Test
+  void shouldKeepOneBatchPerStatementInIndependentMode() {
+    sqlSessionFactory.getConfiguration().setBatchGrouping(BatchGrouping.INDEPENDENT);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertParent(1, "a");
+      mapper.renameParent(1, "b");
+      mapper.insertParent(2, "a");
+      mapper.renameParent(2, "b");
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(2, results.size());
+      assertEquals("org.apache.ibatis.submitted.batch_grouping.Mapper.insertParent", results.get(0).getMappedStatement().getId());
+      assertEquals("org.apache.ibatis.submitted.batch_grouping.Mapper.renameParent", results.get(1).getMappedStatement().getId());
+      assertEquals("b", mapper.getParentName(2));
+    }
+  }
+
+  private List<BatchResult> insertParentsAndChildren() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 1; i <= 3; i++) {
+        mapper.insertParent(i, "parent" + i);
+        mapper.insertChild(i, i);
+      }
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(3, mapper.countChildren());
+      return results;
+    }
+  }
+
+}
@@ -0,0 +1,166 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.batch_insert_rewrite;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.executor.BatchExecutorException;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BatchInsertRewriteTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+  private final List<String> preparedSqls = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/batch_insert_rewrite/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/batch_insert_rewrite/CreateDB.sql");
+    sqlSessionFactory.getConfiguration().setBatchInsertRewrite(true);
+    // 每条语句最多两行
+    sqlSessionFactory.getConfiguration().setBatchInsertRewriteMaxParameters(2);
+    sqlSessionFactory.getConfiguration().addInterceptor(new PreparedSqlRecorder());
+  }
+
+  @Test
+  void shouldRewriteBatchedInsertsAndAssignGeneratedKeys() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<Item> items = new ArrayList<>();
+      for (int i = 1; i <= 5; i++) {
+        Item item = new Item("item" + i);
+        items.add(item);
+        mapper.insertItem(item);
+      }
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(1, results.size());
+      assertArrayEquals(new int[] { 1, 1, 1, 1, 1 }, results.get(0).getUpdateCounts());
+      assertEquals(2, preparedSqls.size());
+      assertEquals("insert into item (name) values (?),(?)", preparedSqls.get(0));
+      assertEquals("insert into item (name) values (?)", preparedSqls.get(1));
+      List<Item> stored = mapper.selectItems();
+      assertEquals(5, stored.size());
+      for (int i = 0; i < 5; i++) {
+        assertEquals(stored.get(i).getId(), items.get(i).getId());
+        assertEquals("item" + (i + 1), stored.get(i).getName());
+      }
+    }
+  }
+
+  @Test
+  void shouldNotRewriteInsertsWithGeneratedKeysOnSqlServer() {
+    sqlSessionFactory.getConfiguration().setDatabaseId("sqlserver");
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<Item> items = new ArrayList<>();
+      for (int i = 1; i <= 3; i++) {
+        Item item = new Item("item" + i);
+        items.add(item);
+        mapper.insertItem(item);
+      }
+      for (int i = 1; i <= 3; i++) {
+        mapper.insertItemWithoutKey(new Item("other" + i));
+      }
+      sqlSession.flushStatements();
+      assertEquals("insert into item (name) values (?)", preparedSqls.get(0));
+      assertEquals("insert into item (name) values (?),(?) ;", preparedSqls.get(1));
+      for (Item item : items) {
+        assertNotNull(item.getId());
+      }
+    }
+  }
+
+  @Test
+  void shouldBindRowValuesCapturedWhenAdded() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      // 批量导入时常见的写法：复用同一个参数对象，每次插入前修改
+      Item item = new Item();
+      for (int i = 1; i <= 3; i++) {
+        item.setName("item" + i);
+        mapper.insertItemWithoutKey(item);
+      }
+      sqlSession.flushStatements();
+      assertEquals("insert into item (name) values (?),(?) ;", preparedSqls.get(0));
+      List<Item> stored = mapper.selectItems();
+      assertEquals(3, stored.size());
+      for (int i = 0; i < 3; i++) {
+        assertEquals("item" + (i + 1), stored.get(i).getName());
+      }
+    }
+  }
+
+  @Test
+  void shouldRewriteInsertEndingWithSemicolon() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 1; i <= 3; i++) {
+        mapper.insertItemWithoutKey(new Item("item" + i));
+      }
+      sqlSession.flushStatements();
+      assertEquals("insert into item (name) values (?),(?) ;", preparedSqls.get(0));
+      assertEquals(3, mapper.selectItems().size());
+    }
+  }
+
+  @Test
+  void shouldReportFailedMultiRowInsertAsBatchFailure() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertItem(new Item("item1"));
+      mapper.insertItem(new Item("item2"));
+      mapper.insertItem(new Item(null));
+      PersistenceException e = assertThrows(PersistenceException.class, sqlSession::flushStatements);
+      BatchExecutorException cause = (BatchExecutorException) e.getCause();
+      assertArrayEquals(new int[] { 1, 1 }, cause.getBatchUpdateException().getUpdateCounts());
+    }
+  }
+
+  @Intercepts(@Signature(type = StatementHandler.class, method = "prepare", args = { Connection.class, Integer.class }))
+  class PreparedSqlRecorder implements Interceptor {
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      preparedSqls.add(((StatementHandler) invocation.getTarget()).getBoundSql().getSql());
+      return invocation.proceed();
+    }
+  }
+
+}
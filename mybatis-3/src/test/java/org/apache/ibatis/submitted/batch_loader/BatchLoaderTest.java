@@ -0,0 +1,153 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.batch_loader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.Reader;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.binding.BindingException;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.SqlSessionBatchLoader;
+import org.apache.ibatis.session.SqlSessionException;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BatchLoaderTest {
+
+  private static final String FIND_BY_IDS = Mapper.class.getName() + ".findByIds";
+
+  private SqlSessionFactory sqlSessionFactory;
+  private final AtomicInteger executions = new AtomicInteger();
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/batch_loader/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/batch_loader/CreateDB.sql");
+    sqlSessionFactory.getConfiguration().addInterceptor(new QueryCounter());
+  }
+
+  @Test
+  void shouldMergeLoadsWithinWindow() throws Exception {
+    SqlSessionBatchLoader<Integer, Item> loader = new SqlSessionBatchLoader<>(sqlSessionFactory, FIND_BY_IDS, 100, 200);
+    assertEquals("id", loader.getKeyProperty());
+    CompletableFuture<Item> first = loader.load(1);
+    CompletableFuture<Item> second = loader.load(3);
+    CompletableFuture<Item> again = loader.load(1);
+    CompletableFuture<Item> missing = loader.load(9);
+
+    assertEquals("a", first.get(5, TimeUnit.SECONDS).getName());
+    assertEquals("c", second.get(5, TimeUnit.SECONDS).getName());
+    assertSame(first.get(), again.get());
+    assertNull(missing.get(5, TimeUnit.SECONDS));
+    assertEquals(1, executions.get());
+  }
+
+  @Test
+  void shouldDispatchWhenBatchIsFull() throws Exception {
+    SqlSessionBatchLoader<Integer, Item> loader = new SqlSessionBatchLoader<>(sqlSessionFactory, FIND_BY_IDS, "id", 2, 0,
+        sqlSessionFactory.getConfiguration().getAsyncExecutor());
+    List<Item> items = loader.loadMany(Arrays.asList(1, 2)).get(5, TimeUnit.SECONDS);
+    assertEquals("b", items.get(1).getName());
+
+    CompletableFuture<Item> third = loader.load(3);
+    assertFalse(third.isDone());
+    loader.dispatch();
+    assertEquals("c", third.get(5, TimeUnit.SECONDS).getName());
+    assertEquals(2, executions.get());
+  }
+
+  @Test
+  void shouldMatchKeysOfDifferentIntegerTypes() throws Exception {
+    SqlSessionBatchLoader<Long, Item> loader = new SqlSessionBatchLoader<>(sqlSessionFactory, FIND_BY_IDS, 100, 200);
+    CompletableFuture<Item> first = loader.load(1L);
+    CompletableFuture<Item> missing = loader.load(9L);
+    assertEquals("a", first.get(5, TimeUnit.SECONDS).getName());
+    assertNull(missing.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void shouldFailOnKeyTypeMismatch() {
+    SqlSessionBatchLoader<String, Item> loader = new SqlSessionBatchLoader<>(sqlSessionFactory, FIND_BY_IDS, 100, 200);
+    CompletableFuture<Item> item = loader.load("1");
+    ExecutionException e = assertThrows(ExecutionException.class, () -> item.get(5, TimeUnit.SECONDS));
+    assertTrue(e.getCause() instanceof BindingException);
+  }
+
+  @Test
+  void shouldFailBatchRejectedByExecutor() {
+    SqlSessionBatchLoader<Integer, Item> loader = new SqlSessionBatchLoader<>(sqlSessionFactory, FIND_BY_IDS, "id", 100,
+        10, command -> {
+          throw new RejectedExecutionException("saturated");
+        });
+    CompletableFuture<Item> item = loader.load(1);
+    ExecutionException e = assertThrows(ExecutionException.class, () -> item.get(5, TimeUnit.SECONDS));
+    assertTrue(e.getCause() instanceof RejectedExecutionException);
+    assertEquals(0, executions.get());
+  }
+
+  @Test
+  void shouldRequireExecutor() {
+    assertThrows(IllegalArgumentException.class,
+        () -> new SqlSessionBatchLoader<>(sqlSessionFactory, FIND_BY_IDS, "id", 2, 0, null));
+  }
+
+  @Test
+  void shouldRequireKeyPropertyWithoutIdMapping() {
+    String statement = Mapper.class.getName() + ".findByIdsWithoutIdMapping";
+    assertThrows(SqlSessionException.class, () -> new SqlSessionBatchLoader<>(sqlSessionFactory, statement, 10, 10));
+    SqlSessionBatchLoader<Integer, Item> loader = new SqlSessionBatchLoader<>(sqlSessionFactory, statement, "id", 10, 0,
+        sqlSessionFactory.getConfiguration().getAsyncExecutor());
+    CompletableFuture<Item> item = loader.load(2);
+    loader.dispatch();
+    assertEquals("b", item.join().getName());
+  }
+
+  @Intercepts(@Signature(type = StatementHandler.class, method = "query", args = { Statement.class, ResultHandler.class }))
+  class QueryCounter implements Interceptor {
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      executions.incrementAndGet();
+      return invocation.proceed();
+    }
+  }
+
+}
@@ -0,0 +1,38 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.batch_loader;
+
+import java.util.List;
+
+import org.apache.ibatis.annotations.Result;
+import org.apache.ibatis.annotations.Results;
+import org.apache.ibatis.annotations.Select;
+
+public interface Mapper {
+
+  @Select("<script>select id, name from item where id in"
+      + "<foreach collection='list' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+  @Results({
+      @Result(property = "id", column = "id", id = true),
+      @Result(property = "name", column = "name")
+  })
+  List<Item> findByIds(List<Integer> ids);
+
+  @Select("<script>select id, name from item where id in"
+      + "<foreach collection='list' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+  List<Item> findByIdsWithoutIdMapping(List<Integer> ids);
+
+}
@@ -0,0 +1,151 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.cache_by_key;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.Reader;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CacheByKeyTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+  // 每次执行的参数个数
+  private final List<Integer> executions = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/cache_by_key/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/cache_by_key/CreateDB.sql");
+    sqlSessionFactory.getConfiguration().addInterceptor(new QueryRecorder());
+  }
+
+  @Test
+  void shouldQueryOnlyKeysMissingFromCache() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.selectById(1);
+      mapper.selectById(2);
+    }
+    executions.clear();
+
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      List<Item> items = sqlSession.getMapper(Mapper.class).selectByIds(Arrays.asList(3, 1, 9, 2));
+      assertEquals("c", items.get(0).getName());
+      assertEquals("a", items.get(1).getName());
+      assertNull(items.get(2));
+      assertEquals("b", items.get(3).getName());
+    }
+    // 只查询了3和9
+    assertEquals(Arrays.asList(2), executions);
+    executions.clear();
+
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      assertEquals("c", mapper.selectById(3).getName());
+      assertEquals(3, mapper.selectByIds(Arrays.asList(1, 2, 3)).size());
+      // 没有行的主键不缓存
+      assertNull(mapper.selectById(9));
+    }
+    assertEquals(Arrays.asList(1), executions);
+  }
+
+  @Test
+  void shouldReturnResultForEachRequestedKey() {
+    String statement = Mapper.class.getName() + ".selectById";
+    String batchStatement = Mapper.class.getName() + ".selectByIds";
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      List<Item> items = sqlSession.selectByKeys(statement, batchStatement, Arrays.asList(2, 2, 1));
+      assertEquals(3, items.size());
+      assertEquals("b", items.get(0).getName());
+      assertEquals("b", items.get(1).getName());
+      assertEquals("a", items.get(2).getName());
+    }
+    assertEquals(Arrays.asList(2), executions);
+  }
+
+  @Test
+  void shouldMatchKeysOfAnotherNumberType() {
+    String statement = Mapper.class.getName() + ".selectById";
+    String batchStatement = Mapper.class.getName() + ".selectByIds";
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      List<Item> items = sqlSession.selectByKeys(statement, batchStatement, Arrays.asList(1L, 2L));
+      assertEquals("a", items.get(0).getName());
+      assertEquals("b", items.get(1).getName());
+    }
+  }
+
+  @Test
+  void shouldNotCacheResultsOfAnotherResultMap() {
+    String statement = Mapper.class.getName() + ".selectById";
+    String batchStatement = Mapper.class.getName() + ".selectIdsByIds";
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      List<Item> items = sqlSession.selectByKeys(statement, batchStatement, Arrays.asList(1));
+      assertNull(items.get(0).getName());
+    }
+    executions.clear();
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      assertEquals("a", sqlSession.getMapper(Mapper.class).selectById(1).getName());
+    }
+    assertEquals(Arrays.asList(1), executions);
+  }
+
+  @Test
+  void shouldFlushCacheBeforeReadingLikeQuery() {
+    String statement = Mapper.class.getName() + ".selectByIdFlushingCache";
+    String batchStatement = Mapper.class.getName() + ".selectByIds";
+    for (int i = 0; i < 2; i++) {
+      try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+        assertEquals("a", sqlSession.<Item>selectByKeys(statement, batchStatement, Arrays.asList(1)).get(0).getName());
+        sqlSession.commit();
+      }
+    }
+    // 和selectOne一样每次都清空缓存后查询
+    assertEquals(Arrays.asList(1, 1), executions);
+  }
+
+  @Intercepts(@Signature(type = StatementHandler.class, method = "query", args = { Statement.class, ResultHandler.class }))
+  class QueryRecorder implements Interceptor {
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      StatementHandler handler = (StatementHandler) invocation.getTarget();
+      executions.add(handler.getBoundSql().getParameterMappings().size());
+      return invocation.proceed();
+    }
+  }
+
+}
@@ -0,0 +1,54 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.cache_by_key;
+
+import java.util.List;
+
+import org.apache.ibatis.annotations.CacheByKey;
+import org.apache.ibatis.annotations.CacheNamespace;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Result;
+import org.apache.ibatis.annotations.ResultMap;
+import org.apache.ibatis.annotations.Results;
+import org.apache.ibatis.annotations.Select;
+
+@CacheNamespace
+public interface Mapper {
+
+  @Select("select id, name from item where id = #{id}")
+  @ResultMap("item")
+  Item selectById(int id);
+
+  @Select("select id, name from item where id = #{id}")
+  @ResultMap("item")
+  @Options(flushCache = Options.FlushCachePolicy.TRUE)
+  Item selectByIdFlushingCache(int id);
+
+  @CacheByKey("selectById")
+  @Select("<script>select id, name from item where id in"
+      + "<foreach collection='list' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+  @Results(id = "item", value = {
+      @Result(property = "id", column = "id", id = true),
+      @Result(property = "name", column = "name")
+  })
+  List<Item> selectByIds(List<Integer> ids);
+
+  @Select("<script>select id from item where id in"
+      + "<foreach collection='list' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+  @Results(@Result(property = "id", column = "id", id = true))
+  List<Item> selectIdsByIds(List<Integer> ids);
+
+}
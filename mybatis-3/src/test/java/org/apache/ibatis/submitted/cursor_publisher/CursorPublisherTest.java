@@ -0,0 +1,153 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.cursor_publisher;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.cursor.Publisher;
+import org.apache.ibatis.cursor.Subscriber;
+import org.apache.ibatis.cursor.Subscription;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class CursorPublisherTest {
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  @BeforeAll
+  static void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/cursor_publisher/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/cursor_publisher/CreateDB.sql");
+  }
+
+  @Test
+  void shouldPublishRowsOnDemand() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Publisher<User> publisher = sqlSession.selectPublisher("org.apache.ibatis.submitted.cursor_publisher.Mapper.getUsers", null);
+      RecordingSubscriber subscriber = new RecordingSubscriber(0);
+      publisher.subscribe(subscriber);
+      assertEquals(0, subscriber.items.size());
+      subscriber.subscription.request(2);
+      assertEquals(2, subscriber.items.size());
+      assertEquals("User2", subscriber.items.get(1).getName());
+      subscriber.subscription.request(10);
+      assertEquals(5, subscriber.items.size());
+      assertTrue(subscriber.completed);
+      // 会话没有被关闭
+      assertEquals(5, sqlSession.selectList("org.apache.ibatis.submitted.cursor_publisher.Mapper.getUsers").size());
+    }
+  }
+
+  @Test
+  void shouldHonorDemandRequestedFromOnNext() {
+    RecordingSubscriber subscriber = new RecordingSubscriber(1);
+    usersPublisher().subscribe(subscriber);
+    subscriber.subscription.request(1);
+    assertEquals(5, subscriber.items.size());
+    assertTrue(subscriber.completed);
+    assertEquals(0, activeConnections());
+  }
+
+  @Test
+  void shouldCloseSessionOnCancel() {
+    RecordingSubscriber subscriber = new RecordingSubscriber(0);
+    usersPublisher().subscribe(subscriber);
+    subscriber.subscription.request(1);
+    assertEquals(1, activeConnections());
+    subscriber.subscription.cancel();
+    assertEquals(0, activeConnections());
+    subscriber.subscription.request(1);
+    assertEquals(1, subscriber.items.size());
+  }
+
+  @Test
+  void shouldRejectInvalidDemandAndSecondSubscriber() {
+    Publisher<User> publisher = usersPublisher();
+    RecordingSubscriber subscriber = new RecordingSubscriber(0);
+    publisher.subscribe(subscriber);
+    subscriber.subscription.request(0);
+    assertTrue(subscriber.error instanceof IllegalArgumentException);
+
+    RecordingSubscriber second = new RecordingSubscriber(0);
+    publisher.subscribe(second);
+    assertTrue(second.error instanceof IllegalStateException);
+  }
+
+  /**
+   * Mapper 返回的发布者使用自己的会话，获取 Mapper 的会话关闭后仍然可以订阅
+   */
+  private Publisher<User> usersPublisher() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      return sqlSession.getMapper(Mapper.class).getUsers();
+    }
+  }
+
+  private int activeConnections() {
+    return ((PooledDataSource) sqlSessionFactory.getConfiguration().getEnvironment().getDataSource())
+        .getPoolState().getActiveConnectionCount();
+  }
+
+  private static class RecordingSubscriber implements Subscriber<User> {
+
+    private final int requestOnNext;
+    private final List<User> items = new ArrayList<>();
+    private Subscription subscription;
+    private Throwable error;
+    private boolean completed;
+
+    RecordingSubscriber(int requestOnNext) {
+      this.requestOnNext = requestOnNext;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(User item) {
+      items.add(item);
+      if (requestOnNext > 0) {
+        subscription.request(requestOnNext);
+      }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      this.error = throwable;
+    }
+
+    @Override
+    public void onComplete() {
+      this.completed = true;
+    }
+  }
+
+}
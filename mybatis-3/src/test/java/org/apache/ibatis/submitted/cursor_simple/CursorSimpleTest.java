@@ -18,12 +18,15 @@ package org.apache.ibatis.submitted.cursor_simple;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 
 import org.apache.ibatis.BaseDataTest;
 import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.cursor.defaults.DefaultCursor;
+import org.apache.ibatis.cursor.defaults.PrefetchingCursor;
 import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.session.SqlSession;
@@ -157,6 +160,34 @@ class CursorSimpleTest {
     }
   }
 
+  @Test
+  void testCursorPrefetchedInBackground() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Assertions.assertTrue(sqlSession.selectCursor("getAllUsers") instanceof DefaultCursor);
+      Cursor<User> usersCursor = sqlSession.selectCursor("getAllUsersPrefetched", null, new RowBounds(1, 3));
+      Assertions.assertTrue(usersCursor instanceof PrefetchingCursor);
+
+      List<String> names = new ArrayList<>();
+      for (User user : usersCursor) {
+        names.add(user.getName());
+      }
+      Assertions.assertEquals(Arrays.asList("User2", "User3", "User4"), names);
+      Assertions.assertEquals(3, usersCursor.getCurrentIndex());
+      Assertions.assertFalse(usersCursor.isOpen());
+      Assertions.assertTrue(usersCursor.isConsumed());
+    }
+  }
+
+  @Test
+  void testCursorNotPrefetchedWithLazyLoading() {
+    sqlSessionFactory.getConfiguration().setLazyLoadingEnabled(true);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Assertions.assertTrue(sqlSession.selectCursor("getAllUsersPrefetched") instanceof DefaultCursor);
+    } finally {
+      sqlSessionFactory.getConfiguration().setLazyLoadingEnabled(false);
+    }
+  }
+
   @Test
   void testCursorIteratorNoSuchElementExceptionWithHasNext() throws IOException {
 
@@ -0,0 +1,149 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.dirty_checking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.Reader;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.executor.BatchExecutor;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DirtyCheckingTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+  private final List<String> updates = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/dirty_checking/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/dirty_checking/CreateDB.sql");
+    sqlSessionFactory.getConfiguration().addInterceptor(new UpdateRecorder());
+  }
+
+  @Test
+  void shouldUpdateOnlyChangedColumns() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Author author = sqlSession.getMapper(Mapper.class).selectAuthor(1);
+      author.setName("james");
+      assertEquals(1, sqlSession.updateChanged("author", author));
+      sqlSession.commit();
+    }
+    assertEquals("update author set name = ? where id = ?", updates.get(0));
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Author author = sqlSession.getMapper(Mapper.class).selectAuthor(1);
+      assertEquals("james", author.getName());
+      assertEquals("writes about java", author.getBio());
+    }
+  }
+
+  @Test
+  void shouldSkipUpdateWithoutChanges() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Author author = sqlSession.getMapper(Mapper.class).selectAuthor(2);
+      assertEquals(0, sqlSession.updateChanged("author", author));
+      author.setBio("writes about databases");
+      assertEquals(1, sqlSession.updateChanged("author", author));
+      // 更新后的值成为新的原始值
+      assertEquals(0, sqlSession.updateChanged("author", author));
+    }
+    assertEquals(1, updates.size());
+    assertEquals("update author set bio = ? where id = ?", updates.get(0));
+  }
+
+  @Test
+  void shouldForgetLoadedObjectsWhenTransactionEnds() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Author author = sqlSession.getMapper(Mapper.class).selectAuthor(2);
+      author.setName("sue");
+      sqlSession.updateChanged("author", author);
+      sqlSession.rollback();
+      assertThrows(PersistenceException.class, () -> sqlSession.updateChanged("author", author));
+
+      Author reloaded = sqlSession.getMapper(Mapper.class).selectAuthor(2);
+      sqlSession.commit(true);
+      assertThrows(PersistenceException.class, () -> sqlSession.updateChanged("author", reloaded));
+    }
+  }
+
+  @Test
+  void shouldRefreshBatchedUpdatesAfterFlush() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Author author = sqlSession.getMapper(Mapper.class).selectAuthor(2);
+      author.setBio("writes about databases");
+      assertEquals(BatchExecutor.BATCH_UPDATE_RETURN_VALUE, sqlSession.updateChanged("author", author));
+      sqlSession.flushStatements();
+      assertEquals(0, sqlSession.updateChanged("author", author));
+
+      // 执行失败的批量更新不改变原始值
+      author.setName("a name longer than the column");
+      sqlSession.updateChanged("author", author);
+      assertThrows(PersistenceException.class, sqlSession::flushStatements);
+      author.setName("sally");
+      assertEquals(0, sqlSession.updateChanged("author", author));
+    }
+  }
+
+  @Test
+  void shouldNotTrackObjectsOfResultHandlers() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      List<Author> authors = new ArrayList<>();
+      sqlSession.select(Mapper.class.getName() + ".selectAuthor", 1, context -> authors.add((Author) context.getResultObject()));
+      assertThrows(PersistenceException.class, () -> sqlSession.updateChanged("author", authors.get(0)));
+    }
+  }
+
+  @Test
+  void shouldRejectObjectsNotLoadedInSession() {
+    Author author = new Author();
+    author.setId(1);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      PersistenceException e = assertThrows(PersistenceException.class, () -> sqlSession.updateChanged("author", author));
+      assertTrue(e.getMessage().contains("Cannot find the original values"));
+    }
+  }
+
+  @Intercepts(@Signature(type = StatementHandler.class, method = "update", args = Statement.class))
+  class UpdateRecorder implements Interceptor {
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      updates.add(((StatementHandler) invocation.getTarget()).getBoundSql().getSql());
+      return invocation.proceed();
+    }
+  }
+
+}
@@ -22,11 +22,14 @@ import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.ibatis.BaseDataTest;
 import org.apache.ibatis.exceptions.PersistenceException;
 import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.session.SqlSessionFactoryBuilder;
@@ -139,4 +142,60 @@ class ForEachTest {
     }
   }
 
+  @Test
+  void shouldSplitLargeCollectionIntoChunks() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<User> users = mapper.selectByIdsInChunks(Arrays.asList(1, 3, 5, 6, 7));
+      Assertions.assertEquals(4, users.size());
+      Assertions.assertEquals("User6", users.get(3).getName());
+      Assertions.assertEquals(5, mapper.deleteByIdsInChunks(new Integer[] { 1, 2, 3, 4, 5 }));
+      sqlSession.rollback(true);
+    }
+  }
+
+  @Test
+  void shouldSplitCollectionPropertyOfBeanIntoChunks() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      User user = new User();
+      user.setName("User3");
+      List<User> friends = new ArrayList<>();
+      for (int id : new int[] { 1, 2, 3, 5, 6 }) {
+        User friend = new User();
+        friend.setId(id);
+        friends.add(friend);
+      }
+      user.setFriendList(friends);
+      List<User> users = mapper.selectFriendsInChunks(user);
+      Assertions.assertEquals(4, users.size());
+      Assertions.assertEquals("User6", users.get(3).getName());
+      // 参数对象本身不被修改
+      Assertions.assertEquals(5, user.getFriendList().size());
+    }
+  }
+
+  @Test
+  void shouldBindCollectionAsArray() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      Assertions.assertEquals(3, mapper.countByIdArray(Arrays.asList(2, 4, 6, 8)));
+      Assertions.assertEquals(1, mapper.countByIdArray(Collections.singletonList(1)));
+      Map<String, Object> parameter = new HashMap<>();
+      parameter.put("ids", Arrays.asList(2, 4, 6, 8));
+      BoundSql boundSql = sqlSessionFactory.getConfiguration()
+          .getMappedStatement("org.apache.ibatis.submitted.foreach.Mapper.countByIdArray").getBoundSql(parameter);
+      Assertions.assertTrue(boundSql.getSql().endsWith("IN (UNNEST(?))"));
+      Assertions.assertEquals(1, boundSql.getParameterMappings().size());
+    }
+  }
+
+  @Test
+  void shouldPadCollectionWithLastItem() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      Assertions.assertEquals(3, mapper.countByPaddedIds(Arrays.asList(1, 3, 5)));
+    }
+  }
+
 }
@@ -34,4 +34,14 @@ public interface Mapper {
   int itemVariableConflict(@Param("id") Integer id, @Param("ids") List<Integer> ids, @Param("ids2") List<Integer> ids2);
 
   int indexVariableConflict(@Param("idx") Integer id, @Param("idxs") List<Integer> ids, @Param("idxs2") List<Integer> ids2);
+
+  List<User> selectByIdsInChunks(@Param("ids") List<Integer> ids);
+
+  int deleteByIdsInChunks(@Param("ids") Integer[] ids);
+
+  List<User> selectFriendsInChunks(User user);
+
+  int countByIdArray(@Param("ids") List<Integer> ids);
+
+  int countByPaddedIds(@Param("ids") List<Integer> ids);
 }
@@ -0,0 +1,149 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.identity_map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.Reader;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class IdentityMapTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+  private final AtomicInteger executions = new AtomicInteger();
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/identity_map/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/identity_map/CreateDB.sql");
+    sqlSessionFactory.getConfiguration().addInterceptor(new QueryCounter());
+  }
+
+  @Test
+  void shouldReuseRowsLoadedByDifferentStatements() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      Author author = mapper.selectAuthor(1);
+      List<Author> authors = mapper.selectAuthors();
+      List<Blog> blogs = mapper.selectBlogs();
+
+      assertSame(author, authors.get(0));
+      // 连接查询中的关联对象也复用
+      assertSame(author, blogs.get(0).getAuthor());
+      assertSame(author, blogs.get(1).getAuthor());
+      assertSame(authors.get(1), blogs.get(2).getAuthor());
+      assertEquals(3, executions.get());
+    }
+  }
+
+  @Test
+  void shouldAnswerLookupByIdWithoutQuery() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<Author> authors = mapper.selectAuthors();
+      assertSame(authors.get(1), mapper.selectAuthor(2));
+      assertEquals(1, executions.get());
+
+      Author author = new Author();
+      author.setId(2);
+      author.setName("sue");
+      mapper.updateAuthorName(author);
+      // 写操作后清空，重新查询
+      Author reloaded = mapper.selectAuthor(2);
+      assertNotSame(authors.get(1), reloaded);
+      assertEquals("sue", reloaded.getName());
+      assertEquals(2, executions.get());
+      sqlSession.rollback();
+    }
+  }
+
+  @Test
+  void shouldMatchLookupParameterOfAnotherNumberType() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<Author> authors = mapper.selectAuthors();
+      assertSame(authors.get(1), mapper.selectAuthorByLongId(2L));
+      assertEquals(1, executions.get());
+    }
+  }
+
+  @Test
+  void shouldNotReuseObjectsOfAnotherResultMap() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      Author partial = mapper.selectAuthorIds().get(0);
+      Author author = mapper.selectAuthors().get(0);
+      assertNotSame(partial, author);
+      assertEquals("jim", author.getName());
+    }
+  }
+
+  @Test
+  void shouldNotRegisterObjectsMappedByPrefetchingCursor() throws Exception {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      try (Cursor<Author> cursor = sqlSession.selectCursor(Mapper.class.getName() + ".selectAuthorsPrefetched")) {
+        cursor.forEach(author -> assertNotNull(author.getName()));
+      }
+      // 游标的执行不经过 StatementHandler.query
+      mapper.selectAuthor(1);
+      assertEquals(1, executions.get());
+    }
+  }
+
+  @Test
+  void shouldMaterializeSeparateObjectsWhenDisabled() {
+    sqlSessionFactory.getConfiguration().setUseIdentityMap(false);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      Author author = mapper.selectAuthor(1);
+      assertNotSame(author, mapper.selectAuthors().get(0));
+    }
+  }
+
+  @Intercepts(@Signature(type = StatementHandler.class, method = "query", args = { Statement.class, ResultHandler.class }))
+  class QueryCounter implements Interceptor {
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      executions.incrementAndGet();
+      return invocation.proceed();
+    }
+  }
+
+}
@@ -0,0 +1,34 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.identity_map;
+
+import java.util.List;
+
+public interface Mapper {
+
+  Author selectAuthor(int id);
+
+  Author selectAuthorByLongId(long id);
+
+  List<Author> selectAuthorIds();
+
+  List<Author> selectAuthors();
+
+  List<Blog> selectBlogs();
+
+  int updateAuthorName(Author author);
+
+}
@@ -71,6 +71,19 @@ class Jdbc3KeyGeneratorTest {
     }
   }
 
+  @Test
+  void shouldKeepKeyAssignmentPlanOnStatement() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      try {
+        sqlSession.getMapper(CountryMapper.class).insertBean(new Country("China", "CN"));
+      } finally {
+        sqlSession.rollback();
+      }
+    }
+    assertNotNull(sqlSessionFactory.getConfiguration()
+        .getMappedStatement(CountryMapper.class.getName() + ".insertBean").getKeyGeneratorState());
+  }
+
   @Test
   void shouldAssignKeyToBean_batch() {
     try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
@@ -90,6 +103,29 @@ class Jdbc3KeyGeneratorTest {
     }
   }
 
+  @Test
+  void shouldAssignKeyToBeansOfDifferentClasses_batch() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      try {
+        CountryMapper mapper = sqlSession.getMapper(CountryMapper.class);
+        Country country1 = new Country("China", "CN");
+        mapper.insertBean(country1);
+        Country country2 = new Country("Canada", "CA") {
+        };
+        mapper.insertBean(country2);
+        Country country3 = new Country("Japan", "JP");
+        mapper.insertBean(country3);
+        sqlSession.flushStatements();
+        sqlSession.clearCache();
+        assertNotNull(country1.getId());
+        assertNotNull(country2.getId());
+        assertNotNull(country3.getId());
+      } finally {
+        sqlSession.rollback();
+      }
+    }
+  }
+
   @Test
   void shouldAssignKeyToNamedBean() {
     try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
@@ -0,0 +1,54 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.query_coalescing;
+
+import java.util.List;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.One;
+import org.apache.ibatis.annotations.Result;
+import org.apache.ibatis.annotations.Results;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.mapping.FetchType;
+
+public interface Mapper {
+
+  @Select("select id, name from item order by id")
+  List<Item> list();
+
+  @Select("select id, name from item where id = #{id}")
+  Item find(int id);
+
+  @Select("select id, name from item order by id")
+  @Results(id = "lazyParent", value = {
+      @Result(property = "id", column = "id", id = true),
+      @Result(property = "name", column = "name"),
+      @Result(property = "parent", column = "id", one = @One(select = "find", fetchType = FetchType.LAZY))
+  })
+  List<Item> listWithLazyParent();
+
+  @Select("select id, name from item order by id")
+  @Results({
+      @Result(property = "id", column = "id", id = true),
+      @Result(property = "name", column = "name"),
+      @Result(property = "parent", one = @One(resultMap = "org.apache.ibatis.submitted.query_coalescing.Mapper.lazyParent"))
+  })
+  List<Item> listWithNestedLazyParent();
+
+  @Insert("insert into audit (id) values (#{id})")
+  int audit(int id);
+
+}
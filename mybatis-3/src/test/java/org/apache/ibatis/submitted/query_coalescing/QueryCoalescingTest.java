@@ -0,0 +1,165 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.query_coalescing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Reader;
+import java.io.Serializable;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.QueryCoalescer;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class QueryCoalescingTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+  private final AtomicInteger executions = new AtomicInteger();
+  private final CountDownLatch started = new CountDownLatch(1);
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/query_coalescing/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/query_coalescing/CreateDB.sql");
+    sqlSessionFactory.getConfiguration().addInterceptor(new BlockFirstQuery());
+  }
+
+  @Test
+  void shouldShareInFlightQueryAcrossSessions() throws Exception {
+    CompletableFuture<List<Item>> leader = CompletableFuture.supplyAsync(this::list);
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    CompletableFuture<List<Item>> follower = new CompletableFuture<>();
+    Thread thread = new Thread(() -> follower.complete(list()));
+    thread.start();
+    awaitWaiting(thread);
+    release.countDown();
+
+    List<Item> first = leader.get(5, TimeUnit.SECONDS);
+    List<Item> second = follower.get(5, TimeUnit.SECONDS);
+    assertEquals(1, executions.get());
+    assertEquals(1, sqlSessionFactory.getConfiguration().getQueryCoalescer().getCoalescedCount());
+    assertEquals(2, second.size());
+    assertEquals("b", second.get(1).getName());
+    assertNotSame(first, second);
+    assertNotSame(first.get(0), second.get(0));
+  }
+
+  @Test
+  void shouldNotCoalesceAfterWriteInSameTransaction() throws Exception {
+    CompletableFuture<List<Item>> leader = CompletableFuture.supplyAsync(this::list);
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.audit(1);
+      // 不等待被阻塞的查询，直接访问数据库
+      assertEquals(2, mapper.list().size());
+    }
+    release.countDown();
+    assertEquals(2, leader.get(5, TimeUnit.SECONDS).size());
+    assertEquals(2, executions.get());
+    assertEquals(0, sqlSessionFactory.getConfiguration().getQueryCoalescer().getCoalescedCount());
+  }
+
+  @Test
+  void shouldNotCoalesceWhenNestedResultMapHasLazySelect() throws Exception {
+    CompletableFuture<List<Item>> leader = CompletableFuture.supplyAsync(() -> {
+      try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+        return sqlSession.getMapper(Mapper.class).listWithNestedLazyParent();
+      }
+    });
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      // 结果中的延迟加载代理属于执行查询的会话，不能和被阻塞的查询合并
+      assertEquals(2, sqlSession.getMapper(Mapper.class).listWithNestedLazyParent().size());
+    }
+    release.countDown();
+    assertEquals(2, leader.get(5, TimeUnit.SECONDS).size());
+    assertEquals(2, executions.get());
+    assertEquals(0, sqlSessionFactory.getConfiguration().getQueryCoalescer().getCoalescedCount());
+  }
+
+  @Test
+  void shouldNotCopyResultsWithoutFollowers() throws Exception {
+    CopyCounter result = new CopyCounter();
+    List<CopyCounter> results = new QueryCoalescer().execute(new CacheKey(), () -> Collections.singletonList(result));
+    assertSame(result, results.get(0));
+    assertEquals(0, result.copies);
+  }
+
+  private List<Item> list() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      return sqlSession.getMapper(Mapper.class).list();
+    }
+  }
+
+  private static void awaitWaiting(Thread thread) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (thread.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+
+  static class CopyCounter implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private transient int copies;
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+      copies++;
+      out.defaultWriteObject();
+    }
+  }
+
+  @Intercepts(@Signature(type = StatementHandler.class, method = "query", args = { Statement.class, ResultHandler.class }))
+  class BlockFirstQuery implements Interceptor {
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      if (executions.incrementAndGet() == 1) {
+        started.countDown();
+        release.await(5, TimeUnit.SECONDS);
+      }
+      return invocation.proceed();
+    }
+  }
+
+}
@@ -0,0 +1,54 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.replica_routing;
+
+import java.util.Map;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.One;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Result;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.SelectKey;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.mapping.FetchType;
+import org.apache.ibatis.mapping.StatementRoute;
+
+public interface Mapper {
+
+  @Select("select name from item where id = #{id}")
+  String getName(int id);
+
+  String getNameFromPrimary(int id);
+
+  @Select("select id from item where id = #{id}")
+  @Result(property = "id", column = "id", id = true)
+  @Result(property = "name", column = "id", one = @One(select = "getName", fetchType = FetchType.LAZY))
+  Item getItem(int id);
+
+  @Select("select name from item where id = #{id}")
+  @Options(route = StatementRoute.REPLICA)
+  String getNameFromReplica(int id);
+
+  @Update("update item set name = #{name} where id = #{id}")
+  int rename(@Param("id") int id, @Param("name") String name);
+
+  @Insert("insert into item (id, name) values (#{id}, #{name})")
+  @SelectKey(statement = "select max(id) + 1 from item where name = 'primary'", keyProperty = "id", before = true, resultType = int.class)
+  int insert(Map<String, Object> item);
+
+}
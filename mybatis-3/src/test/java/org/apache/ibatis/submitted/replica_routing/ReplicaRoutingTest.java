@@ -0,0 +1,147 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.replica_routing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.datasource.routing.LoadBalancing;
+import org.apache.ibatis.datasource.routing.Replica;
+import org.apache.ibatis.datasource.routing.ReplicaSet;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ReplicaRoutingTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+  private ReplicaSet replicas;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/replica_routing/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    Environment environment = sqlSessionFactory.getConfiguration().getEnvironment();
+    replicas = environment.getReplicas();
+    createItem(environment.getDataSource(), "primary");
+    createItem(replicas.getReplicas().get(0).getDataSource(), "replica");
+  }
+
+  @Test
+  void shouldParseReplicas() {
+    assertEquals(LoadBalancing.LEAST_OUTSTANDING, replicas.getLoadBalancing());
+    assertEquals(1, replicas.getReplicas().size());
+    assertEquals(2, replicas.getReplicas().get(0).getWeight());
+  }
+
+  @Test
+  void shouldReadFromReplicaOutsideWriteTransaction() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      assertEquals("replica", sqlSession.getMapper(Mapper.class).getName(1));
+      assertEquals(1, replicas.getReplicas().get(0).getOutstanding());
+    }
+    assertEquals(0, replicas.getReplicas().get(0).getOutstanding());
+  }
+
+  @Test
+  void shouldStayOnPrimaryAfterFirstWrite() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.rename(1, "written");
+      assertEquals("written", mapper.getName(1));
+      sqlSession.commit();
+      // 事务结束后重新读副本
+      assertEquals("replica", mapper.getName(1));
+    }
+  }
+
+  @Test
+  void shouldHonourStatementRoutes() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      assertEquals("primary", mapper.getNameFromPrimary(1));
+      mapper.rename(1, "written");
+      assertEquals("replica", mapper.getNameFromReplica(1));
+    }
+  }
+
+  @Test
+  void shouldRunSelectKeyOnPrimary() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      Map<String, Object> item = new HashMap<>();
+      item.put("name", "inserted");
+      mapper.insert(item);
+      assertEquals(2, item.get("id"));
+      assertEquals("inserted", mapper.getNameFromPrimary(2));
+    }
+  }
+
+  @Test
+  void shouldLoadLazilyFromPrimaryAfterWrite() throws Exception {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(true)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.rename(1, "written");
+      Item item = mapper.getItem(1);
+      // 在其它线程触发加载时使用新的执行器
+      assertEquals("written", CompletableFuture.supplyAsync(item::getName).get());
+    }
+  }
+
+  @Test
+  void shouldFallBackToPrimaryWhenReplicaIsUnavailable() {
+    Replica broken = new Replica(new UnpooledDataSource("no.such.Driver", "jdbc:none", null, null), 1);
+    Configuration configuration = sqlSessionFactory.getConfiguration();
+    Environment environment = configuration.getEnvironment();
+    configuration.setEnvironment(new Environment.Builder(environment.getId())
+        .transactionFactory(environment.getTransactionFactory())
+        .dataSource(environment.getDataSource())
+        .replicas(new ReplicaSet(LoadBalancing.WEIGHTED, Collections.singletonList(broken)))
+        .build());
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      assertEquals("primary", sqlSession.getMapper(Mapper.class).getName(1));
+    }
+    assertEquals(0, broken.getOutstanding());
+  }
+
+  private void createItem(DataSource dataSource, String name) throws Exception {
+    BaseDataTest.runScript(dataSource, "org/apache/ibatis/submitted/replica_routing/CreateDB.sql");
+    try (Connection connection = dataSource.getConnection()) {
+      ScriptRunner runner = new ScriptRunner(connection);
+      runner.setLogWriter(null);
+      runner.runScript(new StringReader("insert into item (id, name) values (1, '" + name + "');"));
+    }
+  }
+
+}
@@ -0,0 +1,41 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.selectkey_prefetch;
+
+import java.util.List;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.SelectKey;
+
+public interface Mapper {
+
+  @Insert("insert into item (id, name) values (#{id}, #{name})")
+  @SelectKey(statement = "select next value for item_seq from unnest(sequence_array(1, 4, 1))",
+      keyProperty = "id", before = true, resultType = Integer.class, prefetch = 4)
+  int insert(Item item);
+
+  @Select("select id from item order by id")
+  List<Integer> selectIds();
+
+  @Select("select next value for item_seq from (values(0))")
+  int nextValue();
+
+  @Select("select count(*) from item where name = #{name}")
+  int count(@Param("name") String name);
+
+}
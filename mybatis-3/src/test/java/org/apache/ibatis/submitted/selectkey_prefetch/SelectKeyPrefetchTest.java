@@ -0,0 +1,97 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.selectkey_prefetch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.SelectKey;
+import org.apache.ibatis.executor.keygen.SelectKeyGenerator;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SelectKeyPrefetchTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/selectkey_prefetch/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/selectkey_prefetch/CreateDB.sql");
+  }
+
+  @Test
+  void shouldParsePrefetch() {
+    SelectKeyGenerator keyGenerator = (SelectKeyGenerator) sqlSessionFactory.getConfiguration()
+        .getKeyGenerator(Mapper.class.getName() + ".insert" + SelectKeyGenerator.SELECT_KEY_SUFFIX);
+    assertEquals(4, keyGenerator.getPrefetch());
+  }
+
+  @Test
+  void shouldHandOutPrefetchedKeys() {
+    List<Item> items = new ArrayList<>();
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 0; i < 10; i++) {
+        Item item = new Item("item" + i);
+        mapper.insert(item);
+        items.add(item);
+      }
+      sqlSession.flushStatements();
+      sqlSession.commit();
+    }
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<Integer> ids = mapper.selectIds();
+      assertEquals(10, new HashSet<>(ids).size());
+      int next = mapper.nextValue();
+      for (Item item : items) {
+        assertTrue(ids.contains(item.getId()));
+        assertTrue(item.getId() < next);
+      }
+    }
+  }
+
+  @Test
+  void shouldRejectPrefetchAfterInsert() {
+    assertThrows(IllegalArgumentException.class,
+        () -> sqlSessionFactory.getConfiguration().addMapper(PrefetchAfterMapper.class));
+  }
+
+  interface PrefetchAfterMapper {
+    @Insert("insert into item (id, name) values (#{id}, #{name})")
+    @SelectKey(statement = "select next value for item_seq from unnest(sequence_array(1, 4, 1))",
+        keyProperty = "id", before = false, resultType = Integer.class, prefetch = 4)
+    int insert(Item item);
+  }
+
+}
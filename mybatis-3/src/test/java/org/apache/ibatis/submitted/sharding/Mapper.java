@@ -0,0 +1,72 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.sharding;
+
+import java.util.List;
+
+import org.apache.ibatis.annotations.CacheNamespace;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.One;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Result;
+import org.apache.ibatis.annotations.Results;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.SelectKey;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.mapping.FetchType;
+import org.apache.ibatis.session.RowBounds;
+
+@CacheNamespace
+public interface Mapper {
+
+  @Insert("insert into item (id, tenant_id, name) values (#{id}, #{tenantId}, #{name})")
+  int insert(Item item);
+
+  @Insert("insert into item (id, tenant_id, name) values (#{id}, #{tenantId}, #{name})")
+  @SelectKey(statement = "select next value for item_seq from unnest(sequence_array(1, 4, 1))",
+      keyProperty = "id", before = true, resultType = Integer.class, prefetch = 4)
+  int insertWithSequence(Item item);
+
+  @Select("select next value for item_seq from (values(0))")
+  int nextValue(@Param("tenantId") int tenantId);
+
+  @Select("select id, tenant_id as tenantId, name from item where tenant_id = #{tenantId} order by id")
+  List<Item> findByTenant(@Param("tenantId") int tenantId);
+
+  @Select("select id, tenant_id as tenantId, name from item order by id")
+  List<Item> findAll();
+
+  @Select("select id, tenant_id as tenantId, name from item order by id")
+  List<Item> findPage(RowBounds rowBounds);
+
+  @Select("select id, tenant_id as tenantId, name from item where name = #{name}")
+  Item findByName(@Param("name") String name);
+
+  @Select("select id, tenant_id as tenantId from item where id = #{id} and tenant_id = #{tenantId}")
+  @Results({
+      @Result(property = "id", column = "id", id = true),
+      @Result(property = "tenantId", column = "tenantId"),
+      @Result(property = "name", column = "id", one = @One(select = "findName", fetchType = FetchType.LAZY))
+  })
+  Item findWithLazyName(Item key);
+
+  @Select("select name from item where id = #{id}")
+  String findName(int id);
+
+  @Update("update item set name = #{name}")
+  int renameAll(@Param("name") String name);
+
+}
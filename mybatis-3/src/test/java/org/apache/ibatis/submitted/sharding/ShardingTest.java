@@ -0,0 +1,160 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.sharding;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionException;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.session.sharding.ShardedSqlSessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ShardingTest {
+
+  private ShardedSqlSessionFactory sqlSessionFactory;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    Configuration configuration;
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/sharding/mybatis-config.xml")) {
+      configuration = new SqlSessionFactoryBuilder().build(reader).getConfiguration();
+    }
+    Map<String, DataSource> shards = new LinkedHashMap<>();
+    shards.put("shard0", configuration.getEnvironment().getDataSource());
+    shards.put("shard1", new UnpooledDataSource("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:sharding_shard1", "sa", null));
+    for (DataSource dataSource : shards.values()) {
+      BaseDataTest.runScript(dataSource, "org/apache/ibatis/submitted/sharding/CreateDB.sql");
+    }
+    sqlSessionFactory = new ShardedSqlSessionFactory(configuration, shards, "tenantId",
+        tenantId -> "shard" + ((Integer) tenantId % 2));
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insert(new Item(1, 10, "a"));
+      mapper.insert(new Item(2, 11, "b"));
+      mapper.insert(new Item(3, 10, "c"));
+      mapper.insert(new Item(4, 11, "d"));
+      sqlSession.commit();
+    }
+  }
+
+  @Test
+  void shouldRouteByShardKey() {
+    try (SqlSession sqlSession = sqlSessionFactory.openShardSession("shard0")) {
+      assertEquals(2, sqlSession.getMapper(Mapper.class).findAll().size());
+    }
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      List<Item> items = sqlSession.getMapper(Mapper.class).findByTenant(11);
+      assertEquals("b,d", names(items));
+    }
+  }
+
+  @Test
+  void shouldScatterGatherWithoutShardKey() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      assertEquals("a,c,b,d", names(mapper.findAll()));
+      assertEquals("c,b", names(mapper.findPage(new RowBounds(1, 2))));
+      assertEquals(Integer.valueOf(11), mapper.findByName("d").getTenantId());
+    }
+  }
+
+  @Test
+  void shouldNotShareCachedResultsAcrossShards() {
+    for (String shard : sqlSessionFactory.getShardNames()) {
+      try (SqlSession sqlSession = sqlSessionFactory.openShardSession(shard)) {
+        sqlSession.getMapper(Mapper.class).findAll();
+      }
+    }
+    try (SqlSession sqlSession = sqlSessionFactory.openShardSession("shard1")) {
+      assertEquals("b,d", names(sqlSession.getMapper(Mapper.class).findAll()));
+    }
+  }
+
+  @Test
+  void shouldLoadLazilyFromSameShardAfterClose() {
+    Item item;
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      item = sqlSession.getMapper(Mapper.class).findWithLazyName(new Item(2, 11, null));
+    }
+    assertEquals("b", item.getName());
+  }
+
+  @Test
+  void shouldPrefetchKeysPerShard() {
+    List<Item> items = new ArrayList<>();
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 0; i < 6; i++) {
+        Item item = new Item(null, 10 + i % 2, "n" + i);
+        mapper.insertWithSequence(item);
+        items.add(item);
+      }
+      sqlSession.commit();
+    }
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int tenantId = 10; tenantId <= 11; tenantId++) {
+        // 主键取自所在分片的序列
+        int next = mapper.nextValue(tenantId);
+        for (Item item : items) {
+          if (item.getTenantId() == tenantId) {
+            assertTrue(item.getId() < next);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void shouldRequireScatterExecutor() {
+    Configuration configuration = sqlSessionFactory.getConfiguration();
+    Map<String, DataSource> shards = Collections.singletonMap("shard0", configuration.getEnvironment().getDataSource());
+    assertThrows(IllegalArgumentException.class,
+        () -> new ShardedSqlSessionFactory(configuration, shards, "tenantId", tenantId -> "shard0", null));
+  }
+
+  @Test
+  void shouldRejectWritesWithoutShardKey() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      assertThrows(SqlSessionException.class, () -> mapper.renameAll("x"));
+    }
+  }
+
+  private static String names(List<Item> items) {
+    return items.stream().map(Item::getName).collect(Collectors.joining(","));
+  }
+
+}
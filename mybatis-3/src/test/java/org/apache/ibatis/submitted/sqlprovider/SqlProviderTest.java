@@ -31,6 +31,7 @@ import java.util.Map;
 
 import org.apache.ibatis.BaseDataTest;
 import org.apache.ibatis.annotations.DeleteProvider;
+import org.apache.ibatis.annotations.DeterministicProvider;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.SelectProvider;
 import org.apache.ibatis.binding.MapperMethod;
@@ -933,4 +934,41 @@ class SqlProviderTest {
     }
   }
 
+  @Test
+  void shouldCacheSqlOfDeterministicProvider() throws NoSuchMethodException {
+    Configuration configuration = new Configuration();
+    Method mapperMethod = DeterministicMapper.class.getMethod("selectByName", String.class, String.class);
+    ProviderSqlSource sqlSource = new ProviderSqlSource(configuration,
+        mapperMethod.getAnnotation(SelectProvider.class), DeterministicMapper.class, mapperMethod);
+    DeterministicMapper.SqlProvider.invocations = 0;
+
+    assertEquals("SELECT * FROM users WHERE name = ? ORDER BY id", sqlSource.getBoundSql(deterministicParameter("a", "id")).getSql());
+    assertEquals("SELECT * FROM users WHERE name = ? ORDER BY id", sqlSource.getBoundSql(deterministicParameter("b", "id")).getSql());
+    assertEquals(1, DeterministicMapper.SqlProvider.invocations);
+    assertEquals("SELECT * FROM users WHERE name = ? ORDER BY name", sqlSource.getBoundSql(deterministicParameter("a", "name")).getSql());
+    assertEquals(2, DeterministicMapper.SqlProvider.invocations);
+  }
+
+  private Map<String, Object> deterministicParameter(String name, String orderBy) {
+    Map<String, Object> parameter = new MapperMethod.ParamMap<>();
+    parameter.put("name", name);
+    parameter.put("orderBy", orderBy);
+    return parameter;
+  }
+
+  interface DeterministicMapper {
+    @DeterministicProvider("orderBy")
+    @SelectProvider(type = SqlProvider.class)
+    List<User> selectByName(@Param("name") String name, @Param("orderBy") String orderBy);
+
+    class SqlProvider {
+      static int invocations;
+
+      public static String provideSql(@Param("orderBy") String orderBy) {
+        invocations++;
+        return "SELECT * FROM users WHERE name = #{name} ORDER BY " + orderBy;
+      }
+    }
+  }
+
 }
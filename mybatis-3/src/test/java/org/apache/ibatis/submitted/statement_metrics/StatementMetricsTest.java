@@ -0,0 +1,177 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.statement_metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.executor.metrics.StatementMetricsSnapshot;
+import org.apache.ibatis.executor.metrics.StatementPhase;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class StatementMetricsTest {
+
+  private static final String SELECT_NAMES = "org.apache.ibatis.submitted.statement_metrics.Mapper.selectNames";
+  private static final String INSERT_ITEM = "org.apache.ibatis.submitted.statement_metrics.Mapper.insertItem";
+  private static final String RENAME_ITEM = "org.apache.ibatis.submitted.statement_metrics.Mapper.renameItem";
+  private static final String SELECT_MISSING = "org.apache.ibatis.submitted.statement_metrics.Mapper.selectFromMissingTable";
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/statement_metrics/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/statement_metrics/CreateDB.sql");
+  }
+
+  @Test
+  void shouldRecordQueryPhasesAndRows() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.selectNames();
+      sqlSession.clearCache();
+      mapper.selectNames();
+      // 命中一级缓存，不计入统计
+      mapper.selectNames();
+    }
+    StatementMetricsSnapshot snapshot = sqlSessionFactory.getConfiguration().getMetricsSnapshot().get(SELECT_NAMES);
+    assertEquals(2, snapshot.getCalls());
+    assertEquals(6, snapshot.getRows());
+    assertEquals(0, snapshot.getErrors());
+    for (StatementPhase phase : StatementPhase.values()) {
+      assertEquals(2, snapshot.getLatency(phase).getCount(), phase.name());
+    }
+    assertTrue(snapshot.getLatency(StatementPhase.TOTAL).getSum() >= snapshot.getLatency(StatementPhase.MAPPING).getSum());
+  }
+
+  @Test
+  void shouldRecordRowsOfCursorsAndResultHandlers() throws Exception {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      try (Cursor<String> cursor = sqlSession.selectCursor(SELECT_NAMES)) {
+        cursor.forEach(name -> { });
+      }
+      sqlSession.clearCache();
+      sqlSession.select(SELECT_NAMES, context -> { });
+    }
+    StatementMetricsSnapshot snapshot = sqlSessionFactory.getConfiguration().getMetricsSnapshot().get(SELECT_NAMES);
+    assertEquals(6, snapshot.getRows());
+  }
+
+  @Test
+  void shouldRecordUpdateCounts() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.renameItem(1, "x");
+      mapper.renameItem(99, "x");
+    }
+    StatementMetricsSnapshot snapshot = sqlSessionFactory.getConfiguration().getMetricsSnapshot().get(RENAME_ITEM);
+    assertEquals(2, snapshot.getCalls());
+    assertEquals(1, snapshot.getRows());
+    assertEquals(0, snapshot.getLatency(StatementPhase.MAPPING).getCount());
+  }
+
+  @Test
+  void shouldRecordBatchSizes() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 10; i < 15; i++) {
+        mapper.insertItem(i, "n" + i);
+      }
+      sqlSession.flushStatements();
+      mapper.insertItem(20, "n20");
+      sqlSession.flushStatements();
+    }
+    StatementMetricsSnapshot snapshot = sqlSessionFactory.getConfiguration().getMetricsSnapshot().get(INSERT_ITEM);
+    assertEquals(6, snapshot.getCalls());
+    assertEquals(2, snapshot.getBatchSizes().getCount());
+    assertEquals(6, snapshot.getBatchSizes().getSum());
+    assertEquals(5, snapshot.getBatchSizes().getMax());
+    assertEquals(2, snapshot.getLatency(StatementPhase.EXECUTE).getCount());
+  }
+
+  @Test
+  void shouldRecordExceptions() throws Exception {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      assertThrows(PersistenceException.class, mapper::selectFromMissingTable);
+    }
+    StatementMetricsSnapshot snapshot = sqlSessionFactory.getConfiguration().getMetricsSnapshot().get(SELECT_MISSING);
+    assertEquals(1, snapshot.getCalls());
+    assertEquals(1, snapshot.getErrors());
+    assertEquals(1, snapshot.getExceptions().size());
+    String type = snapshot.getExceptions().keySet().iterator().next();
+    assertTrue(SQLException.class.isAssignableFrom(Class.forName(type)));
+    assertEquals(1L, snapshot.getExceptions().get(type));
+  }
+
+  @Test
+  void shouldNotRecordWhenDisabled() {
+    Configuration configuration = sqlSessionFactory.getConfiguration();
+    configuration.setMetricsEnabled(false);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      sqlSession.getMapper(Mapper.class).selectNames();
+    }
+    assertTrue(configuration.getMetricsSnapshot().isEmpty());
+    assertNull(configuration.getMetricsRegistry().snapshot(SELECT_NAMES));
+  }
+
+  @Test
+  void shouldExposeMetricsThroughJmx() throws Exception {
+    Configuration configuration = sqlSessionFactory.getConfiguration();
+    String name = "org.apache.ibatis:type=StatementMetrics,name=statement_metrics";
+    configuration.setMetricsJmxName(name);
+    try {
+      try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+        sqlSession.getMapper(Mapper.class).selectNames();
+      }
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = new ObjectName(name);
+      Object calls = server.invoke(objectName, "getCalls", new Object[] { SELECT_NAMES }, new String[] { String.class.getName() });
+      assertEquals(1L, calls);
+      String[] ids = (String[]) server.getAttribute(objectName, "StatementIds");
+      assertEquals(SELECT_NAMES, ids[0]);
+      server.invoke(objectName, "reset", new Object[0], new String[0]);
+      assertEquals(0, configuration.getMetricsRegistry().getCalls(SELECT_NAMES));
+    } finally {
+      configuration.setMetricsJmxName(null);
+    }
+    assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(name)));
+  }
+
+}
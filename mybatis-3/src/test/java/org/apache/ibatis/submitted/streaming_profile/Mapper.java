@@ -0,0 +1,55 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.streaming_profile;
+
+import java.util.List;
+
+import org.apache.ibatis.annotations.One;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Result;
+import org.apache.ibatis.annotations.ResultType;
+import org.apache.ibatis.annotations.Results;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.ResultHandler;
+
+public interface Mapper {
+
+  @Select("select name from item order by id")
+  Cursor<String> cursor();
+
+  @Select("select name from item order by id")
+  @ResultType(String.class)
+  void handle(ResultHandler<String> handler);
+
+  @Select("select name from item order by id")
+  List<String> list();
+
+  @Select("select name from item order by id")
+  @Options(fetchSize = 2)
+  Cursor<String> cursorWithFetchSize();
+
+  @Select("select id from item order by id")
+  @Results({
+      @Result(property = "id", column = "id", id = true),
+      @Result(property = "name", column = "id", one = @One(select = "findName")) })
+  @ResultType(Item.class)
+  void handleWithNestedQuery(ResultHandler<Item> handler);
+
+  @Select("select name from item where id = #{id}")
+  String findName(int id);
+
+}
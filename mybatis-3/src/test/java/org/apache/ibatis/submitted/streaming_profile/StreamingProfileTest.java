@@ -0,0 +1,152 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.streaming_profile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.Reader;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.executor.statement.StreamingProfile;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class StreamingProfileTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+  private final List<Integer> fetchSizes = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/streaming_profile/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/streaming_profile/CreateDB.sql");
+    sqlSessionFactory.getConfiguration().addStreamingProfile("hsql", new StreamingProfile(7, true, true));
+    sqlSessionFactory.getConfiguration().addInterceptor(new FetchSizeRecorder());
+  }
+
+  @Test
+  void shouldHaveBuiltInProfiles() {
+    assertEquals(Integer.MIN_VALUE, sqlSessionFactory.getConfiguration().getStreamingProfile("mysql").getFetchSize());
+    assertTrue(sqlSessionFactory.getConfiguration().getStreamingProfile("postgresql").isRequiresManualCommit());
+    assertNotNull(sqlSessionFactory.getConfiguration().getStreamingProfile("oracle"));
+  }
+
+  @Test
+  void shouldMatchDatabaseIdIgnoringCase() {
+    // VendorDatabaseIdProvider 不配置别名时返回产品名
+    assertNotNull(sqlSessionFactory.getConfiguration().getStreamingProfile("MySQL"));
+    assertNotNull(sqlSessionFactory.getConfiguration().getStreamingProfile("PostgreSQL"));
+    assertNotNull(sqlSessionFactory.getConfiguration().getStreamingProfile("Oracle"));
+    sqlSessionFactory.getConfiguration().addStreamingProfile("H2", new StreamingProfile(5, false, false));
+    assertEquals(5, sqlSessionFactory.getConfiguration().getStreamingProfile("h2").getFetchSize());
+  }
+
+  @Test
+  void shouldResetFetchSizeOfReusedStatement() throws Exception {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.REUSE)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.handle(context -> { });
+      mapper.list();
+    }
+    assertEquals(7, fetchSizes.get(0).intValue());
+    assertTrue(fetchSizes.get(1) != 7);
+  }
+
+  @Test
+  void shouldNotStreamResultsWithNestedQueries() throws Exception {
+    List<Item> items = new ArrayList<>();
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      sqlSession.getMapper(Mapper.class).handleWithNestedQuery(context -> items.add(context.getResultObject()));
+    }
+    assertEquals(3, items.size());
+    assertEquals("a", items.get(0).getName());
+    // 最后一条是外层查询，嵌套查询先完成
+    assertTrue(fetchSizes.get(fetchSizes.size() - 1) != 7);
+  }
+
+  @Test
+  void shouldApplyProfileToCursorsAndResultHandlers() throws Exception {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      try (Cursor<String> cursor = mapper.cursor()) {
+        List<String> names = new ArrayList<>();
+        cursor.forEach(names::add);
+        assertEquals(3, names.size());
+      }
+      List<String> handled = new ArrayList<>();
+      mapper.handle(context -> handled.add(context.getResultObject()));
+      assertEquals(3, handled.size());
+      mapper.list();
+    }
+    assertEquals(7, fetchSizes.get(0).intValue());
+    assertEquals(7, fetchSizes.get(1).intValue());
+    assertTrue(fetchSizes.get(2) != 7);
+  }
+
+  @Test
+  void shouldKeepStatementFetchSize() throws Exception {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      try (Cursor<String> cursor = sqlSession.getMapper(Mapper.class).cursorWithFetchSize()) {
+        cursor.forEach(name -> { });
+      }
+    }
+    assertEquals(2, fetchSizes.get(0).intValue());
+  }
+
+  @Test
+  void shouldNotApplyProfileWhenDisabled() throws Exception {
+    sqlSessionFactory.getConfiguration().setStreamingResults(false);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      try (Cursor<String> cursor = sqlSession.getMapper(Mapper.class).cursor()) {
+        cursor.forEach(name -> { });
+      }
+    }
+    assertTrue(fetchSizes.get(0) != 7);
+  }
+
+  @Intercepts({
+      @Signature(type = StatementHandler.class, method = "queryCursor", args = { Statement.class }),
+      @Signature(type = StatementHandler.class, method = "query", args = { Statement.class, ResultHandler.class }) })
+  class FetchSizeRecorder implements Interceptor {
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      Object result = invocation.proceed();
+      fetchSizes.add(((Statement) invocation.getArgs()[0]).getFetchSize());
+      return result;
+    }
+  }
+
+}
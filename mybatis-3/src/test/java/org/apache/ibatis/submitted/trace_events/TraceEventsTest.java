@@ -0,0 +1,164 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.trace_events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.trace.TraceListener;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TraceEventsTest {
+
+  private static final String SELECT_NAMES = "org.apache.ibatis.submitted.trace_events.Mapper.selectNames";
+  private static final String RENAME_ITEM = "org.apache.ibatis.submitted.trace_events.Mapper.renameItem";
+
+  private SqlSessionFactory sqlSessionFactory;
+  private final List<String> events = new CopyOnWriteArrayList<>();
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/trace_events/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/trace_events/CreateDB.sql");
+    sqlSessionFactory.getConfiguration().setTraceListener(new RecordingListener());
+  }
+
+  @Test
+  void shouldEmitStatementAndMappingEvents() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.selectNames();
+      mapper.renameItem(1, "x");
+      sqlSession.commit();
+    }
+    int sqlHash = sqlSessionFactory.getConfiguration().getMappedStatement(SELECT_NAMES).getBoundSql(null).getSql().hashCode();
+    assertEquals("cache " + SELECT_NAMES + " miss", events.get(0));
+    assertEquals("mapped " + SELECT_NAMES + " 3", events.get(1));
+    assertEquals("query " + SELECT_NAMES + " " + sqlHash + " 3", events.get(2));
+    int updateHash = sqlSessionFactory.getConfiguration().getMappedStatement(RENAME_ITEM).getBoundSql(null).getSql().hashCode();
+    assertEquals("update " + RENAME_ITEM + " " + updateHash + " 1", events.get(3));
+    assertEquals(4, events.size());
+  }
+
+  @Test
+  void shouldOnlyEmitEventsOfItsConfiguration() throws Exception {
+    SqlSessionFactory other;
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/trace_events/mybatis-config.xml")) {
+      other = new SqlSessionFactoryBuilder().build(reader);
+    }
+    try (SqlSession sqlSession = other.openSession()) {
+      sqlSession.getMapper(Mapper.class).selectNames();
+    }
+    assertTrue(events.isEmpty());
+  }
+
+  @Test
+  void shouldEmitCacheHits() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      sqlSession.getMapper(Mapper.class).selectNames();
+    }
+    events.clear();
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      sqlSession.getMapper(Mapper.class).selectNames();
+    }
+    assertEquals(1, events.size());
+    assertEquals("cache " + SELECT_NAMES + " hit", events.get(0));
+  }
+
+  @Test
+  void shouldEmitConnectionWaits() throws Exception {
+    PooledDataSource dataSource = (PooledDataSource) sqlSessionFactory.getConfiguration().getEnvironment().getDataSource();
+    dataSource.setTraceListener(new RecordingListener());
+    CompletableFuture<Void> waiter;
+    try (Connection held = dataSource.getConnection()) {
+      waiter = CompletableFuture.runAsync(() -> {
+        try (Connection connection = dataSource.getConnection()) {
+          assertTrue(connection.isValid(1));
+        } catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+      });
+      // 计数在进入等待之前、持有同一把锁时增加，读到1时等待的线程已经释放了锁
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (dataSource.getPoolState().getHadToWaitCount() == 0) {
+        assertTrue(System.nanoTime() < deadline);
+        Thread.yield();
+      }
+    }
+    waiter.get(5, TimeUnit.SECONDS);
+    assertEquals(1, events.size());
+    assertEquals("wait jdbc:hsqldb:mem:trace_events true", events.get(0));
+  }
+
+  @Test
+  void shouldNotEmitWhenDisabled() {
+    sqlSessionFactory.getConfiguration().setTraceListener(null);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      sqlSession.getMapper(Mapper.class).selectNames();
+    }
+    assertNull(sqlSessionFactory.getConfiguration().getTraceListener());
+    assertTrue(events.isEmpty());
+  }
+
+  private class RecordingListener implements TraceListener {
+
+    @Override
+    public void queryExecuted(String statementId, int sqlHash, int rows, long durationNanos, Throwable error) {
+      assertTrue(durationNanos > 0);
+      events.add("query " + statementId + " " + sqlHash + " " + rows);
+    }
+
+    @Override
+    public void updateExecuted(String statementId, int sqlHash, int rows, long durationNanos, Throwable error) {
+      events.add("update " + statementId + " " + sqlHash + " " + rows);
+    }
+
+    @Override
+    public void cacheLookup(String cacheId, String statementId, boolean hit) {
+      events.add("cache " + statementId + (hit ? " hit" : " miss"));
+    }
+
+    @Override
+    public void connectionWaited(String url, long durationNanos, boolean obtained) {
+      assertTrue(durationNanos > 0);
+      events.add("wait " + url + " " + obtained);
+    }
+
+    @Override
+    public void resultsMapped(String statementId, int rows, long durationNanos) {
+      events.add("mapped " + statementId + " " + rows);
+    }
+  }
+
+}